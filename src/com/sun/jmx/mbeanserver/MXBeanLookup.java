@@ -31,6 +31,7 @@ import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Proxy;
 import java.security.AccessController;
+import java.util.concurrent.ConcurrentWeakHashMap;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.JMX;
 import javax.management.MBeanServerConnection;
@@ -90,6 +91,10 @@ public class MXBeanLookup {
     }
 
     static MXBeanLookup lookupFor(MBeanServerConnection mbsc) {
+        WeakReference<MXBeanLookup> fastLookup = mbscToLookup.get(mbsc);
+        MXBeanLookup existing = (fastLookup == null) ? null : fastLookup.get();
+        if (existing != null)
+            return existing;
         synchronized (mbscToLookup) {
             WeakReference<MXBeanLookup> weakLookup = mbscToLookup.get(mbsc);
             MXBeanLookup lookup = (weakLookup == null) ? null : weakLookup.get();
@@ -113,7 +118,7 @@ public class MXBeanLookup {
         return proxy;
     }
 
-    synchronized ObjectName mxbeanToObjectName(Object mxbean)
+    ObjectName mxbeanToObjectName(Object mxbean)
     throws OpenDataException {
         String wrong;
         if (mxbean instanceof Proxy) {
@@ -128,7 +133,7 @@ public class MXBeanLookup {
             } else
                 wrong = "not a JMX proxy";
         } else {
-            ObjectName name = mxbeanToObjectName.get(mxbean);
+            ObjectName name = (mxbean == null) ? null : mxbeanToObjectName.get(mxbean);
             if (name != null)
                 return name;
             wrong = "not an MXBean registered in this MBeanServer";
@@ -155,12 +160,8 @@ public class MXBeanLookup {
         mxbeanToObjectName.put(mxbean, name);
     }
 
-    synchronized boolean removeReference(ObjectName name, Object mxbean) {
-        if (name.equals(mxbeanToObjectName.get(mxbean))) {
-            mxbeanToObjectName.remove(mxbean);
-            return true;
-        } else
-            return false;
+    boolean removeReference(ObjectName name, Object mxbean) {
+        return mxbeanToObjectName.remove(mxbean, name);
         /* removeReference can be called when the above condition fails,
          * notably if you try to register the same MXBean twice.
          */
@@ -178,11 +179,11 @@ public class MXBeanLookup {
             new ThreadLocal<MXBeanLookup>();
 
     private final MBeanServerConnection mbsc;
-    private final WeakIdentityHashMap<Object, ObjectName>
-        mxbeanToObjectName = WeakIdentityHashMap.make();
+    private final ConcurrentWeakHashMap<Object, ObjectName>
+        mxbeanToObjectName = ConcurrentWeakHashMap.newIdentityMap();
     private final Map<ObjectName, WeakReference<Object>>
         objectNameToProxy = newMap();
-    private static final WeakIdentityHashMap<MBeanServerConnection,
-                                             WeakReference<MXBeanLookup>>
-        mbscToLookup = WeakIdentityHashMap.make();
+    private static final ConcurrentWeakHashMap<MBeanServerConnection,
+                                               WeakReference<MXBeanLookup>>
+        mbscToLookup = ConcurrentWeakHashMap.newIdentityMap();
 }
@@ -30,7 +30,7 @@ import com.sun.beans.finder.PropertyEditorFinder;
 
 import java.awt.GraphicsEnvironment;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentWeakHashMap;
 
 /**
  * The {@code ThreadGroupContext} is an application-dependent
@@ -41,11 +41,8 @@ import java.util.WeakHashMap;
  */
 final class ThreadGroupContext {
 
-    private static final WeakIdentityMap<ThreadGroupContext> contexts = new WeakIdentityMap<ThreadGroupContext>() {
-        protected ThreadGroupContext create(Object key) {
-            return new ThreadGroupContext();
-        }
-    };
+    private static final ConcurrentWeakHashMap<ThreadGroup, ThreadGroupContext> contexts =
+            ConcurrentWeakHashMap.newIdentityMap();
 
     /**
      * Returns the appropriate {@code ThreadGroupContext} for the caller,
@@ -54,13 +51,14 @@ final class ThreadGroupContext {
      * @return  the application-dependent context
      */
     static ThreadGroupContext getContext() {
-        return contexts.get(Thread.currentThread().getThreadGroup());
+        return contexts.computeIfAbsent(Thread.currentThread().getThreadGroup(),
+                                        group -> new ThreadGroupContext());
     }
 
     private volatile boolean isDesignTime;
     private volatile Boolean isGuiAvailable;
 
-    private Map<Class<?>, BeanInfo> beanInfoCache;
+    private final Map<Class<?>, BeanInfo> beanInfoCache = new ConcurrentWeakHashMap<>();
     private BeanInfoFinder beanInfoFinder;
     private PropertyEditorFinder propertyEditorFinder;
 
@@ -89,28 +87,19 @@ final class ThreadGroupContext {
 
 
     BeanInfo getBeanInfo(Class<?> type) {
-        return (this.beanInfoCache != null)
-                ? this.beanInfoCache.get(type)
-                : null;
+        return this.beanInfoCache.get(type);
     }
 
     BeanInfo putBeanInfo(Class<?> type, BeanInfo info) {
-        if (this.beanInfoCache == null) {
-            this.beanInfoCache = new WeakHashMap<>();
-        }
         return this.beanInfoCache.put(type, info);
     }
 
     void removeBeanInfo(Class<?> type) {
-        if (this.beanInfoCache != null) {
-            this.beanInfoCache.remove(type);
-        }
+        this.beanInfoCache.remove(type);
     }
 
     void clearBeanInfoCache() {
-        if (this.beanInfoCache != null) {
-            this.beanInfoCache.clear();
-        }
+        this.beanInfoCache.clear();
     }
 
 
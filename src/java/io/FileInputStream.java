@@ -26,6 +26,7 @@
 package java.io;
 
 import java.nio.channels.FileChannel;
+import sun.misc.BlockingIO;
 import sun.nio.ch.FileChannelImpl;
 
 
@@ -204,11 +205,33 @@ class FileInputStream extends InputStream
      * @exception  IOException  if an I/O error occurs.
      */
     public int read() throws IOException {
+        if (BlockingIO.inForkJoinPool())
+            return new ManagedRead() {
+                protected int perform() throws IOException {
+                    return read0();
+                }
+            }.run();
         return read0();
     }
 
     private native int read0() throws IOException;
 
+    /**
+     * A read by a worker of a ForkJoinPool, performed without
+     * compensation when input is already available, as it is before the
+     * end of a regular file, so that only reads that may block, such as
+     * those of pipes and devices, are compensated.
+     */
+    private abstract class ManagedRead extends BlockingIO {
+        protected boolean isReady() {
+            try {
+                return available0() > 0;
+            } catch (IOException ex) {
+                return false;
+            }
+        }
+    }
+
     /**
      * Reads a subarray as a sequence of bytes.
      * @param b the data to be written
@@ -218,6 +241,26 @@ class FileInputStream extends InputStream
      */
     private native int readBytes(byte b[], int off, int len) throws IOException;
 
+    /**
+     * Reads a subarray as a sequence of bytes, within a managed block
+     * when called by a worker of a ForkJoinPool, so that the pool may
+     * compensate for the blocked worker.
+     * @param b the data to be written
+     * @param off the start offset in the data
+     * @param len the number of bytes that are written
+     * @exception IOException If an I/O error has occurred.
+     */
+    private int readBytesManaged(final byte b[], final int off, final int len)
+        throws IOException {
+        if (BlockingIO.inForkJoinPool())
+            return new ManagedRead() {
+                protected int perform() throws IOException {
+                    return readBytes(b, off, len);
+                }
+            }.run();
+        return readBytes(b, off, len);
+    }
+
     /**
      * Reads up to <code>b.length</code> bytes of data from this input
      * stream into an array of bytes. This method blocks until some input
@@ -230,7 +273,7 @@ class FileInputStream extends InputStream
      * @exception  IOException  if an I/O error occurs.
      */
     public int read(byte b[]) throws IOException {
-        return readBytes(b, 0, b.length);
+        return readBytesManaged(b, 0, b.length);
     }
 
     /**
@@ -252,7 +295,7 @@ class FileInputStream extends InputStream
      * @exception  IOException  if an I/O error occurs.
      */
     public int read(byte b[], int off, int len) throws IOException {
-        return readBytes(b, off, len);
+        return readBytesManaged(b, off, len);
     }
 
     /**
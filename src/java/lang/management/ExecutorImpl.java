@@ -0,0 +1,106 @@
+package java.lang.management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorStatistics;
+import javax.management.ObjectName;
+
+import sun.management.Util;
+
+/**
+ * Implementation of {@link ExecutorMXBean} over the {@link
+ * ExecutorStatistics} of a pool.
+ */
+class ExecutorImpl implements ExecutorMXBean {
+
+    /** The domain and type of the ObjectNames of ExecutorMXBeans */
+    static final String EXECUTOR_MXBEAN_DOMAIN_TYPE =
+        "java.util.concurrent:type=Executor";
+
+    private final ExecutorStatistics statistics;
+
+    ExecutorImpl(ExecutorStatistics statistics) {
+        this.statistics = statistics;
+    }
+
+    /**
+     * Returns the MXBeans of the pools whose statistics are enabled.
+     */
+    static List<ExecutorMXBean> getExecutorMXBeans() {
+        List<ExecutorStatistics> all = ExecutorStatistics.getAllStatistics();
+        List<ExecutorMXBean> result = new ArrayList<>(all.size());
+        for (ExecutorStatistics s : all) {
+            result.add(new ExecutorImpl(s));
+        }
+        return result;
+    }
+
+    public String getName() {
+        return statistics.getName();
+    }
+
+    public String getExecutorClassName() {
+        return statistics.getExecutorClassName();
+    }
+
+    public long getCompletedTaskCount() {
+        return statistics.getCompletedTaskCount();
+    }
+
+    public long getFailedTaskCount() {
+        return statistics.getFailedTaskCount();
+    }
+
+    public long getRejectedTaskCount() {
+        return statistics.getRejectedTaskCount();
+    }
+
+    public long getStealCount() {
+        return statistics.getStealCount();
+    }
+
+    public long getIdleParkCount() {
+        return statistics.getIdleParkCount();
+    }
+
+    public long getCompensationCount() {
+        return statistics.getCompensationCount();
+    }
+
+    public long getTotalQueueWaitTime() {
+        return statistics.getTotalQueueWaitTime();
+    }
+
+    public long getTotalExecutionTime() {
+        return statistics.getTotalExecutionTime();
+    }
+
+    public long[] getQueueWaitTimeHistogram() {
+        return statistics.getQueueWaitTimeHistogram();
+    }
+
+    public long[] getExecutionTimeHistogram() {
+        return statistics.getExecutionTimeHistogram();
+    }
+
+    public long getQueueWaitTimePercentile(double percentile) {
+        return statistics.getQueueWaitTimePercentile(percentile);
+    }
+
+    public long getExecutionTimePercentile(double percentile) {
+        return statistics.getExecutionTimePercentile(percentile);
+    }
+
+    public void reset() {
+        SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            sm.checkPermission(new ManagementPermission("control"));
+        }
+        statistics.reset();
+    }
+
+    public ObjectName getObjectName() {
+        return Util.newObjectName(EXECUTOR_MXBEAN_DOMAIN_TYPE,
+                                  statistics.getName());
+    }
+}
@@ -0,0 +1,165 @@
+package java.lang.management;
+
+/**
+ * The management interface for the statistics of a thread pool, a
+ * {@link java.util.concurrent.ThreadPoolExecutor} or {@link
+ * java.util.concurrent.ForkJoinPool} whose statistics are enabled with
+ * its {@code setStatisticsEnabled} method.  The statistics explain
+ * where the latency of tasks goes: into waiting in the queue, or into
+ * running, and how often the pool rejects tasks, and its workers steal
+ * tasks or park for lack of them.  See {@link
+ * java.util.concurrent.ExecutorStatistics} for what each pool records.
+ *
+ * <p> A class implementing this interface is an
+ * {@link javax.management.MXBean}. A Java
+ * virtual machine has one instance of this interface for each pool
+ * whose statistics are enabled. The {@link
+ * java.lang.management.ManagementFactory#getPlatformMXBeans getPlatformMXBeans}
+ * method can be used to obtain the list of {@code ExecutorMXBean} objects
+ * representing the management interfaces for such pools as follows:
+ * <pre>
+ *     List&lt;ExecutorMXBean&gt; pools = ManagementFactory.getPlatformMXBeans(ExecutorMXBean.class);
+ * </pre>
+ * <p> The management interfaces are also registered with the platform {@link
+ * javax.management.MBeanServer MBeanServer} once it is created: each
+ * is registered as soon as the statistics of its pool are enabled, and
+ * unregistered as soon as they are disabled.  The {@link
+ * javax.management.ObjectName ObjectName} that uniquely identifies the
+ * management interface within the {@code MBeanServer} takes the form:
+ * <pre>
+ *     java.util.concurrent:type=Executor,name=<i>pool name</i>
+ * </pre>
+ * where <em>pool name</em> is the {@link #getName name} of the pool.
+ *
+ * <p> Times are in nanoseconds.  The histograms have one bucket per power
+ * of two: element <i>i</i> of a histogram counts the times from
+ * 2<sup><i>i</i></sup> to 2<sup><i>i</i>+1</sup>-1 nanoseconds.
+ *
+ * @see java.util.concurrent.ExecutorStatistics
+ * @since   1.8
+ */
+public interface ExecutorMXBean extends PlatformManagedObject {
+
+    /**
+     * Returns the name of the pool.
+     *
+     * @return  The name of the pool
+     */
+    String getName();
+
+    /**
+     * Returns the name of the class of the pool.
+     *
+     * @return  The name of the class of the pool
+     */
+    String getExecutorClassName();
+
+    /**
+     * Returns the number of tasks that have completed execution.
+     *
+     * @return  The number of completed tasks
+     */
+    long getCompletedTaskCount();
+
+    /**
+     * Returns the number of tasks that completed by throwing an exception.
+     *
+     * @return  The number of failed tasks
+     */
+    long getFailedTaskCount();
+
+    /**
+     * Returns the number of tasks the pool rejected.
+     *
+     * @return  The number of rejected tasks
+     */
+    long getRejectedTaskCount();
+
+    /**
+     * Returns the number of tasks stolen by the workers of a fork/join
+     * pool, or zero for other pools.
+     *
+     * @return  The number of steals
+     */
+    long getStealCount();
+
+    /**
+     * Returns the number of times the workers of a fork/join pool parked
+     * for lack of tasks, or zero for other pools.
+     *
+     * @return  The number of idle parks
+     */
+    long getIdleParkCount();
+
+    /**
+     * Returns the number of times a fork/join pool released an idle
+     * worker or created a spare one to replace a worker blocked in a
+     * managed block, or zero for other pools.
+     *
+     * @return  The number of compensations
+     */
+    long getCompensationCount();
+
+    /**
+     * Returns the total time tasks waited in the queue.
+     *
+     * @return  The total queue wait time in nanoseconds
+     */
+    long getTotalQueueWaitTime();
+
+    /**
+     * Returns the total time tasks took to execute.
+     *
+     * @return  The total execution time in nanoseconds
+     */
+    long getTotalExecutionTime();
+
+    /**
+     * Returns the histogram of the times tasks waited in the queue.
+     *
+     * @return  The count of each power-of-two bucket of queue wait times
+     */
+    long[] getQueueWaitTimeHistogram();
+
+    /**
+     * Returns the histogram of the times tasks took to execute.
+     *
+     * @return  The count of each power-of-two bucket of execution times
+     */
+    long[] getExecutionTimeHistogram();
+
+    /**
+     * Returns an upper bound of the given percentile of the times tasks
+     * waited in the queue: the upper bound of the histogram bucket in
+     * which the percentile falls.
+     *
+     * @param percentile  The percentile, from 0 to 100
+     * @return  The upper bound in nanoseconds, or 0 if no times were
+     *          recorded
+     * @throws IllegalArgumentException if {@code percentile} is not
+     *         between 0 and 100
+     */
+    long getQueueWaitTimePercentile(double percentile);
+
+    /**
+     * Returns an upper bound of the given percentile of the times tasks
+     * took to execute: the upper bound of the histogram bucket in which
+     * the percentile falls.
+     *
+     * @param percentile  The percentile, from 0 to 100
+     * @return  The upper bound in nanoseconds, or 0 if no times were
+     *          recorded
+     * @throws IllegalArgumentException if {@code percentile} is not
+     *         between 0 and 100
+     */
+    long getExecutionTimePercentile(double percentile);
+
+    /**
+     * Resets all counters and histograms of the pool to zero.
+     *
+     * @throws java.lang.SecurityException if a security manager
+     *         exists and the caller does not have
+     *         ManagementPermission("control").
+     */
+    void reset();
+}
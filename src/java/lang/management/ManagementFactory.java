@@ -39,12 +39,14 @@ import javax.management.MBeanRegistrationException;
 import javax.management.NotCompliantMBeanException;
 import javax.management.StandardEmitterMBean;
 import javax.management.StandardMBean;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ExecutorStatistics;
 import java.security.AccessController;
 import java.security.Permission;
 import java.security.PrivilegedAction;
@@ -53,6 +55,8 @@ import java.security.PrivilegedExceptionAction;
 import javax.management.JMX;
 import sun.management.ManagementFactoryHelper;
 import sun.management.ExtendedPlatformComponent;
+import sun.management.Util;
+import sun.misc.ExecutorStatisticsHook;
 
 /**
  * The {@code ManagementFactory} class is a factory class for getting
@@ -220,6 +224,10 @@ import sun.management.ExtendedPlatformComponent;
  * <td> {@link BufferPoolMXBean} </td>
  * <td> {@code java.nio:type=BufferPool,name=}<i>pool name</i></td>
  * </tr>
+ * <tr>
+ * <td> {@link ExecutorMXBean} </td>
+ * <td> {@code java.util.concurrent:type=Executor,name=}<i>pool name</i></td>
+ * </tr>
  * </table>
  * </blockquote>
  *
@@ -468,6 +476,8 @@ public class ManagementFactory {
         if (platformMBeanServer == null) {
             platformMBeanServer = MBeanServerFactory.createMBeanServer();
             for (PlatformComponent pc : PlatformComponent.values()) {
+                if (pc == PlatformComponent.EXECUTOR)
+                    continue;   // registered by updateExecutorMXBean
                 List<? extends PlatformManagedObject> list =
                     pc.getMXBeans(pc.getMXBeanInterface());
                 for (PlatformManagedObject o : list) {
@@ -496,10 +506,85 @@ public class ManagementFactory {
                     addMXBean(platformMBeanServer, o);
                 }
             }
+            ExecutorStatisticsHook.setListener(ManagementFactory::updateExecutorMXBean);
+            for (ExecutorStatistics es : ExecutorStatistics.getAllStatistics()) {
+                updateExecutorMXBean(es.getName());
+            }
+        } else {
+            updateExecutorMXBeans();
         }
         return platformMBeanServer;
     }
 
+    /**
+     * The statistics of the ExecutorMXBeans registered in the platform
+     * MBeanServer, by pool name.  Guarded by the ManagementFactory class.
+     */
+    private static final Map<String, ExecutorStatistics> executorMXBeans =
+        new HashMap<>();
+
+    /**
+     * Brings the ExecutorMXBean of the pool of the given name up to date
+     * with the pool's statistics: registers it when they are enabled,
+     * replaces it when they are re-enabled, and unregisters it when they
+     * are disabled.  Invoked by the pools through ExecutorStatisticsHook
+     * each time their statistics change, once the platform MBeanServer
+     * exists, in whatever order the changes are reported.
+     */
+    private static synchronized void updateExecutorMXBean(String name) {
+        final MBeanServer mbs = platformMBeanServer;
+        ExecutorStatistics current = null;
+        for (ExecutorStatistics es : ExecutorStatistics.getAllStatistics()) {
+            if (es.getName().equals(name)) {
+                current = es;
+            }
+        }
+        ExecutorStatistics registered = executorMXBeans.get(name);
+        if (mbs == null || current == registered) {
+            return;
+        }
+        if (registered != null) {
+            executorMXBeans.remove(name);
+            final ObjectName on = Util.newObjectName(
+                ExecutorImpl.EXECUTOR_MXBEAN_DOMAIN_TYPE, name);
+            try {
+                AccessController.doPrivileged(new PrivilegedExceptionAction<Void>() {
+                    public Void run() throws InstanceNotFoundException,
+                                             MBeanRegistrationException {
+                        mbs.unregisterMBean(on);
+                        return null;
+                    }
+                });
+            } catch (PrivilegedActionException e) {
+                // already unregistered by the application
+            }
+        }
+        if (current != null) {
+            addMXBean(mbs, new ExecutorImpl(current));
+            executorMXBeans.put(name, current);
+        }
+    }
+
+    /**
+     * Unregisters the ExecutorMXBeans of the pools that were garbage
+     * collected while their statistics were enabled, which report no
+     * change.  Call only while holding the ManagementFactory class lock.
+     */
+    private static void updateExecutorMXBeans() {
+        if (executorMXBeans.isEmpty()) {
+            return;
+        }
+        Set<String> live = new HashSet<>();
+        for (ExecutorStatistics es : ExecutorStatistics.getAllStatistics()) {
+            live.add(es.getName());
+        }
+        for (String name : new ArrayList<>(executorMXBeans.keySet())) {
+            if (!live.contains(name)) {
+                updateExecutorMXBean(name);
+            }
+        }
+    }
+
     /**
      * Returns a proxy for a platform MXBean interface of a
      * given <a href="#MXBeanNames">MXBean name</a>
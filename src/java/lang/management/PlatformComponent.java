@@ -216,6 +216,19 @@ enum PlatformComponent {
             }
         }),
 
+    /**
+     * Thread pools whose statistics are enabled.
+     */
+    EXECUTOR(
+        "java.lang.management.ExecutorMXBean",
+        "java.util.concurrent", "Executor", keyProperties("name"),
+        false, // zero or more instances
+        new MXBeanFetcher<ExecutorMXBean>() {
+            public List<ExecutorMXBean> getMXBeans() {
+                return ExecutorImpl.getExecutorMXBeans();
+            }
+        }),
+
 
     // Sun Platform Extension
 
@@ -30,6 +30,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
 
+import sun.misc.BlockingIO;
 import sun.net.ConnectionResetException;
 
 /**
@@ -99,7 +100,10 @@ class SocketInputStream extends FileInputStream
     // wrap native call to allow instrumentation
     /**
      * Reads into an array of bytes at the specified offset using
-     * the received socket primitive.
+     * the received socket primitive.  When called by a worker of a
+     * ForkJoinPool, and no input is available yet, reads within a
+     * managed block, so that the pool may compensate for the blocked
+     * worker.
      * @param fd the FileDescriptor
      * @param b the buffer into which the data is read
      * @param off the start offset of the data
@@ -109,10 +113,23 @@ class SocketInputStream extends FileInputStream
      *          returned when the end of the stream is reached.
      * @exception IOException If an I/O error has occurred.
      */
-    private int socketRead(FileDescriptor fd,
-                           byte b[], int off, int len,
-                           int timeout)
+    private int socketRead(final FileDescriptor fd,
+                           final byte b[], final int off, final int len,
+                           final int timeout)
         throws IOException {
+        if (BlockingIO.inForkJoinPool())
+            return new BlockingIO() {
+                protected int perform() throws IOException {
+                    return socketRead0(fd, b, off, len, timeout);
+                }
+                protected boolean isReady() {
+                    try {
+                        return impl.available() > 0;
+                    } catch (IOException ex) {
+                        return false;
+                    }
+                }
+            }.run();
         return socketRead0(fd, b, off, len, timeout);
     }
 
@@ -71,6 +71,14 @@ public class Arrays {
      */
     private static final int MIN_ARRAY_SORT_GRAN = 1 << 13;
 
+    /**
+     * 最小数组长度，达到该长度时，int、long、float、double 数组的并行排序改用基数排序。
+     * 基数排序对每个元素只做固定次数（int 最多 4 次，long 最多 8 次）的计数和搬移，不做比较，
+     * 数组越大相对归并排序的优势越明显；数组较小时，每趟按块计数的开销占比过高。
+     * 1<<20 = 1048576
+     */
+    private static final int MIN_ARRAY_RADIX_SORT = 1 << 20;
+
     // Suppresses default constructor, ensuring non-instantiability.
     private Arrays() {}
 
@@ -653,6 +661,10 @@ public class Arrays {
      * working space no greater than the size of the original array. The
      * {@link ForkJoinPool#commonPool() ForkJoin common pool} is used to
      * execute any parallel tasks.
+     * Arrays of at least about a million elements are instead sorted by
+     * a parallel radix sort, which makes a fixed number of passes over the
+     * array, each moving every element once, and requires the same
+     * working space.
      *
      * @param a the array to be sorted
      *
@@ -663,6 +675,8 @@ public class Arrays {
         if (n <= MIN_ARRAY_SORT_GRAN ||
             (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
             DualPivotQuicksort.sort(a, 0, n - 1, null, 0, 0);
+        else if (n >= MIN_ARRAY_RADIX_SORT)
+            ArraysParallelRadixSort.sort(a, 0, n, p);
         else
             new ArraysParallelSortHelpers.FJInt.Sorter
                 (null, a, new int[n], 0, n, 0,
@@ -686,6 +700,10 @@ public class Arrays {
      * space no greater than the size of the specified range of the original
      * array. The {@link ForkJoinPool#commonPool() ForkJoin common pool} is
      * used to execute any parallel tasks.
+     * Ranges of at least about a million elements are instead sorted by
+     * a parallel radix sort, which makes a fixed number of passes over the
+     * array, each moving every element once, and requires the same
+     * working space.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element, inclusive, to be sorted
@@ -703,6 +721,8 @@ public class Arrays {
         if (n <= MIN_ARRAY_SORT_GRAN ||
             (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
             DualPivotQuicksort.sort(a, fromIndex, toIndex - 1, null, 0, 0);
+        else if (n >= MIN_ARRAY_RADIX_SORT)
+            ArraysParallelRadixSort.sort(a, fromIndex, n, p);
         else
             new ArraysParallelSortHelpers.FJInt.Sorter
                 (null, a, new int[n], fromIndex, n, 0,
@@ -723,6 +743,10 @@ public class Arrays {
      * working space no greater than the size of the original array. The
      * {@link ForkJoinPool#commonPool() ForkJoin common pool} is used to
      * execute any parallel tasks.
+     * Arrays of at least about a million elements are instead sorted by
+     * a parallel radix sort, which makes a fixed number of passes over the
+     * array, each moving every element once, and requires the same
+     * working space.
      *
      * @param a the array to be sorted
      *
@@ -733,6 +757,8 @@ public class Arrays {
         if (n <= MIN_ARRAY_SORT_GRAN ||
             (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
             DualPivotQuicksort.sort(a, 0, n - 1, null, 0, 0);
+        else if (n >= MIN_ARRAY_RADIX_SORT)
+            ArraysParallelRadixSort.sort(a, 0, n, p);
         else
             new ArraysParallelSortHelpers.FJLong.Sorter
                 (null, a, new long[n], 0, n, 0,
@@ -756,6 +782,10 @@ public class Arrays {
      * space no greater than the size of the specified range of the original
      * array. The {@link ForkJoinPool#commonPool() ForkJoin common pool} is
      * used to execute any parallel tasks.
+     * Ranges of at least about a million elements are instead sorted by
+     * a parallel radix sort, which makes a fixed number of passes over the
+     * array, each moving every element once, and requires the same
+     * working space.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element, inclusive, to be sorted
@@ -773,6 +803,8 @@ public class Arrays {
         if (n <= MIN_ARRAY_SORT_GRAN ||
             (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
             DualPivotQuicksort.sort(a, fromIndex, toIndex - 1, null, 0, 0);
+        else if (n >= MIN_ARRAY_RADIX_SORT)
+            ArraysParallelRadixSort.sort(a, fromIndex, n, p);
         else
             new ArraysParallelSortHelpers.FJLong.Sorter
                 (null, a, new long[n], fromIndex, n, 0,
@@ -801,6 +833,10 @@ public class Arrays {
      * working space no greater than the size of the original array. The
      * {@link ForkJoinPool#commonPool() ForkJoin common pool} is used to
      * execute any parallel tasks.
+     * Arrays of at least about a million elements are instead sorted by
+     * a parallel radix sort, which makes a fixed number of passes over the
+     * array, each moving every element once, and requires the same
+     * working space.
      *
      * @param a the array to be sorted
      *
@@ -811,6 +847,8 @@ public class Arrays {
         if (n <= MIN_ARRAY_SORT_GRAN ||
             (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
             DualPivotQuicksort.sort(a, 0, n - 1, null, 0, 0);
+        else if (n >= MIN_ARRAY_RADIX_SORT)
+            ArraysParallelRadixSort.sort(a, 0, n, p);
         else
             new ArraysParallelSortHelpers.FJFloat.Sorter
                 (null, a, new float[n], 0, n, 0,
@@ -842,6 +880,10 @@ public class Arrays {
      * space no greater than the size of the specified range of the original
      * array. The {@link ForkJoinPool#commonPool() ForkJoin common pool} is
      * used to execute any parallel tasks.
+     * Ranges of at least about a million elements are instead sorted by
+     * a parallel radix sort, which makes a fixed number of passes over the
+     * array, each moving every element once, and requires the same
+     * working space.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element, inclusive, to be sorted
@@ -859,6 +901,8 @@ public class Arrays {
         if (n <= MIN_ARRAY_SORT_GRAN ||
             (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
             DualPivotQuicksort.sort(a, fromIndex, toIndex - 1, null, 0, 0);
+        else if (n >= MIN_ARRAY_RADIX_SORT)
+            ArraysParallelRadixSort.sort(a, fromIndex, n, p);
         else
             new ArraysParallelSortHelpers.FJFloat.Sorter
                 (null, a, new float[n], fromIndex, n, 0,
@@ -887,6 +931,10 @@ public class Arrays {
      * working space no greater than the size of the original array. The
      * {@link ForkJoinPool#commonPool() ForkJoin common pool} is used to
      * execute any parallel tasks.
+     * Arrays of at least about a million elements are instead sorted by
+     * a parallel radix sort, which makes a fixed number of passes over the
+     * array, each moving every element once, and requires the same
+     * working space.
      *
      * @param a the array to be sorted
      *
@@ -897,6 +945,8 @@ public class Arrays {
         if (n <= MIN_ARRAY_SORT_GRAN ||
             (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
             DualPivotQuicksort.sort(a, 0, n - 1, null, 0, 0);
+        else if (n >= MIN_ARRAY_RADIX_SORT)
+            ArraysParallelRadixSort.sort(a, 0, n, p);
         else
             new ArraysParallelSortHelpers.FJDouble.Sorter
                 (null, a, new double[n], 0, n, 0,
@@ -928,6 +978,10 @@ public class Arrays {
      * space no greater than the size of the specified range of the original
      * array. The {@link ForkJoinPool#commonPool() ForkJoin common pool} is
      * used to execute any parallel tasks.
+     * Ranges of at least about a million elements are instead sorted by
+     * a parallel radix sort, which makes a fixed number of passes over the
+     * array, each moving every element once, and requires the same
+     * working space.
      *
      * @param a the array to be sorted
      * @param fromIndex the index of the first element, inclusive, to be sorted
@@ -945,6 +999,8 @@ public class Arrays {
         if (n <= MIN_ARRAY_SORT_GRAN ||
             (p = ForkJoinPool.getCommonPoolParallelism()) == 1)
             DualPivotQuicksort.sort(a, fromIndex, toIndex - 1, null, 0, 0);
+        else if (n >= MIN_ARRAY_RADIX_SORT)
+            ArraysParallelRadixSort.sort(a, fromIndex, n, p);
         else
             new ArraysParallelSortHelpers.FJDouble.Sorter
                 (null, a, new double[n], fromIndex, n, 0,
@@ -952,6 +1008,106 @@ public class Arrays {
                  MIN_ARRAY_SORT_GRAN : g).invoke();
     }
 
+    /**
+     * Returns the permutation that sorts the specified array into ascending
+     * numerical order, leaving the array unchanged: {@code a[idx[0]]},
+     * {@code a[idx[1]]}, ... are in ascending order, where {@code idx} is
+     * the returned array.  The sort is stable: the indices of equal
+     * elements are in ascending order.
+     *
+     * @implNote The permutation is computed by a parallel radix sort of the
+     * elements paired with their indices, which requires working space for
+     * two copies of the array and of its indices. The {@link
+     * ForkJoinPool#commonPool() ForkJoin common pool} is used to execute
+     * any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @return the indices of the elements of {@code a} in sorted order
+     *
+     * @since 1.8
+     */
+    public static int[] parallelSortIndex(int[] a) {
+        return ArraysParallelRadixSort.sortIndex(a, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Returns the permutation that sorts the specified array into ascending
+     * numerical order, leaving the array unchanged: {@code a[idx[0]]},
+     * {@code a[idx[1]]}, ... are in ascending order, where {@code idx} is
+     * the returned array.  The sort is stable: the indices of equal
+     * elements are in ascending order.
+     *
+     * @implNote The permutation is computed by a parallel radix sort of the
+     * elements paired with their indices, which requires working space for
+     * two copies of the array and of its indices. The {@link
+     * ForkJoinPool#commonPool() ForkJoin common pool} is used to execute
+     * any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @return the indices of the elements of {@code a} in sorted order
+     *
+     * @since 1.8
+     */
+    public static int[] parallelSortIndex(long[] a) {
+        return ArraysParallelRadixSort.sortIndex(a, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Returns the permutation that sorts the specified array into ascending
+     * numerical order, leaving the array unchanged: {@code a[idx[0]]},
+     * {@code a[idx[1]]}, ... are in ascending order, where {@code idx} is
+     * the returned array.  The sort is stable: the indices of equal
+     * elements are in ascending order.
+     *
+     * <p>The order is the total order imposed by the method
+     * {@link Float#compareTo}, as for {@link #parallelSort(float[])}:
+     * {@code -0.0f} is treated as less than value {@code 0.0f} and
+     * {@code Float.NaN} is considered greater than any other value and all
+     * {@code Float.NaN} values are considered equal.
+     *
+     * @implNote The permutation is computed by a parallel radix sort of the
+     * elements paired with their indices, which requires working space for
+     * two copies of the array and of its indices. The {@link
+     * ForkJoinPool#commonPool() ForkJoin common pool} is used to execute
+     * any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @return the indices of the elements of {@code a} in sorted order
+     *
+     * @since 1.8
+     */
+    public static int[] parallelSortIndex(float[] a) {
+        return ArraysParallelRadixSort.sortIndex(a, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    /**
+     * Returns the permutation that sorts the specified array into ascending
+     * numerical order, leaving the array unchanged: {@code a[idx[0]]},
+     * {@code a[idx[1]]}, ... are in ascending order, where {@code idx} is
+     * the returned array.  The sort is stable: the indices of equal
+     * elements are in ascending order.
+     *
+     * <p>The order is the total order imposed by the method
+     * {@link Double#compareTo}, as for {@link #parallelSort(double[])}:
+     * {@code -0.0d} is treated as less than value {@code 0.0d} and
+     * {@code Double.NaN} is considered greater than any other value and all
+     * {@code Double.NaN} values are considered equal.
+     *
+     * @implNote The permutation is computed by a parallel radix sort of the
+     * elements paired with their indices, which requires working space for
+     * two copies of the array and of its indices. The {@link
+     * ForkJoinPool#commonPool() ForkJoin common pool} is used to execute
+     * any parallel tasks.
+     *
+     * @param a the array to be sorted
+     * @return the indices of the elements of {@code a} in sorted order
+     *
+     * @since 1.8
+     */
+    public static int[] parallelSortIndex(double[] a) {
+        return ArraysParallelRadixSort.sortIndex(a, ForkJoinPool.getCommonPoolParallelism());
+    }
+
     /**
      * Sorts the specified array of objects into ascending order, according
      * to the {@linkplain Comparable natural ordering} of its elements.
@@ -0,0 +1,464 @@
+package java.util;
+
+import java.util.concurrent.CountedCompleter;
+
+/**
+ * Parallel least-significant-digit radix sorts of primitive arrays, used by
+ * Arrays.parallelSort for large int, long, float and double arrays, and by
+ * Arrays.parallelSortIndex.
+ *
+ * Keys are mapped to unsigned integers that compare in the same order as
+ * the values, and sorted eight bits at a time, least significant digit
+ * first, so an int key takes at most four passes and a long key at most
+ * eight, whatever the length of the array.  Each pass is stable and
+ * moves every element once between the array and a workspace of the same
+ * size:
+ *
+ * 1. The range is cut into blocks, one or a few per worker, and each
+ *    block counts the occurrences of each digit value, in parallel.
+ * 2. The counts are turned into one starting offset per digit value
+ *    and block, sequentially: all elements with a smaller digit come
+ *    first, and within a digit value, those of earlier blocks.
+ * 3. Each block moves its elements to their offsets in the other
+ *    array, in parallel.
+ *
+ * A pass whose digit is the same for all elements would move nothing,
+ * and is skipped after step 1; this makes sorting of small-magnitude
+ * keys, such as long values that fit in an int, cost little more than
+ * the passes over their varying digits.  If an odd number of passes
+ * were made, the result ends in the workspace and is copied back.
+ *
+ * The key maps are the usual ones: the sign bit of an int or long is
+ * flipped; a float or double with the sign bit set has all its bits
+ * flipped, otherwise only its sign bit, which orders -0.0 before 0.0 and
+ * negative values by decreasing magnitude.  NaNs would then sort by sign
+ * and payload, so the direct float and double sorts first move all NaNs
+ * to the end of the range, as DualPivotQuicksort does, and sort the rest;
+ * the index sorts map all NaNs to the canonical NaN, as
+ * Float.floatToIntBits does, so that they compare equal and are ordered
+ * by index.
+ *
+ * Like ArraysParallelSortHelpers, the sorters for each type are identical
+ * to each other except for type declarations and key maps.
+ */
+/*package*/ class ArraysParallelRadixSort {
+
+    /** Number of bits sorted in each pass. */
+    static final int DIGIT_BITS = 8;
+
+    /** Number of distinct digit values. */
+    static final int RADIX = 1 << DIGIT_BITS;
+
+    /**
+     * The minimum number of elements per block.  Each block keeps one
+     * count per digit value, and smaller blocks would spend more time on
+     * their counts than on their elements.
+     */
+    static final int MIN_BLOCK_SIZE = 1 << 14;
+
+    /** Phases of a pass, run on each block. */
+    static final int INIT = 0, COUNT = 1, SCATTER = 2, COPY = 3;
+
+    /**
+     * Returns the number of blocks to cut n elements into for the given
+     * parallelism: four per worker, as in Arrays.parallelSort, as long as
+     * they are not smaller than MIN_BLOCK_SIZE.
+     */
+    static int blocks(int n, int parallelism) {
+        return Math.max(1, Math.min(parallelism << 2, n / MIN_BLOCK_SIZE));
+    }
+
+    /**
+     * Sorts size elements of a from base, using the given parallelism.
+     */
+    static void sort(int[] a, int base, int size, int parallelism) {
+        new IntSorter(a, base, size, blocks(size, parallelism)).sort();
+    }
+
+    static void sort(long[] a, int base, int size, int parallelism) {
+        new LongSorter(a, base, size, blocks(size, parallelism)).sort();
+    }
+
+    static void sort(float[] a, int base, int size, int parallelism) {
+        int hi = base + size;
+        for (int i = hi - 1; i >= base; i--) { // move NaNs to the end
+            float v = a[i];
+            if (v != v) {
+                a[i] = a[--hi];
+                a[hi] = v;
+            }
+        }
+        size = hi - base;
+        new FloatSorter(a, base, size, blocks(size, parallelism)).sort();
+    }
+
+    static void sort(double[] a, int base, int size, int parallelism) {
+        int hi = base + size;
+        for (int i = hi - 1; i >= base; i--) { // move NaNs to the end
+            double v = a[i];
+            if (v != v) {
+                a[i] = a[--hi];
+                a[hi] = v;
+            }
+        }
+        size = hi - base;
+        new DoubleSorter(a, base, size, blocks(size, parallelism)).sort();
+    }
+
+    /**
+     * Returns the permutation that stably sorts a, using the given
+     * parallelism.
+     */
+    static int[] sortIndex(int[] a, int parallelism) {
+        IntIndexSorter s = new IntIndexSorter(a, null, blocks(a.length, parallelism));
+        s.sort();
+        return s.swapped ? s.xw : s.x;
+    }
+
+    static int[] sortIndex(float[] a, int parallelism) {
+        IntIndexSorter s = new IntIndexSorter(null, a, blocks(a.length, parallelism));
+        s.sort();
+        return s.swapped ? s.xw : s.x;
+    }
+
+    static int[] sortIndex(long[] a, int parallelism) {
+        LongIndexSorter s = new LongIndexSorter(a, null, blocks(a.length, parallelism));
+        s.sort();
+        return s.swapped ? s.xw : s.x;
+    }
+
+    static int[] sortIndex(double[] a, int parallelism) {
+        LongIndexSorter s = new LongIndexSorter(null, a, blocks(a.length, parallelism));
+        s.sort();
+        return s.swapped ? s.xw : s.x;
+    }
+
+    /**
+     * Runs one phase of a pass over a range of blocks, splitting the range
+     * in halves and forking the upper ones.
+     */
+    static final class Phase extends CountedCompleter<Void> {
+        static final long serialVersionUID = 2446542900576103244L;
+        final Sorter sorter;
+        final int lo, hi, kind;
+        Phase(CountedCompleter<?> par, Sorter sorter, int lo, int hi, int kind) {
+            super(par);
+            this.sorter = sorter; this.lo = lo; this.hi = hi; this.kind = kind;
+        }
+        public final void compute() {
+            Sorter s = sorter;
+            int l = lo, h = hi, k = kind;
+            while (h - l > 1) {
+                int mid = (l + h) >>> 1;
+                addToPendingCount(1);
+                new Phase(this, s, mid, h, k).fork();
+                h = mid;
+            }
+            s.run(l, k);
+            tryComplete();
+        }
+    }
+
+    /**
+     * The passes over one range, common to all key types.  Subclasses hold
+     * the array and workspace and implement the phases for one block.
+     */
+    abstract static class Sorter {
+        final int base, size, nblocks, blockSize, keyBits;
+        final int[][] counts;  // per block; digit counts, then offsets
+        int shift;             // of the digit of the current pass
+        boolean swapped;       // true if the elements are in the workspace
+
+        Sorter(int base, int size, int nblocks, int keyBits) {
+            this.base = base; this.size = size; this.nblocks = nblocks;
+            this.blockSize = (size + nblocks - 1) / nblocks;
+            this.keyBits = keyBits;
+            this.counts = new int[nblocks][RADIX];
+        }
+
+        /** Prepares the elements lo ... hi - 1 of the range; optional. */
+        void init(int lo, int hi) { }
+
+        /** Counts the digits of elements lo ... hi - 1 into c. */
+        abstract void count(int lo, int hi, int[] c);
+
+        /** Moves elements lo ... hi - 1 to the offsets in c. */
+        abstract void scatter(int lo, int hi, int[] c);
+
+        /** Copies elements lo ... hi - 1 from the workspace. */
+        abstract void copyBack(int lo, int hi);
+
+        /** Returns true if the result must be in the original array. */
+        boolean needsCopyBack() {
+            return true;
+        }
+
+        final void run(int b, int kind) {
+            int lo = b * blockSize, hi = Math.min(lo + blockSize, size);
+            if (lo >= hi)
+                return;
+            switch (kind) {
+            case INIT:    init(lo, hi); break;
+            case COUNT:   int[] c = counts[b]; Arrays.fill(c, 0); count(lo, hi, c); break;
+            case SCATTER: scatter(lo, hi, counts[b]); break;
+            default:      copyBack(lo, hi); break;
+            }
+        }
+
+        final void phase(int kind) {
+            if (nblocks == 1)
+                run(0, kind);
+            else
+                new Phase(null, this, 0, nblocks, kind).invoke();
+        }
+
+        /**
+         * Turns the counts of the current pass into offsets, returning
+         * false if all elements have the same digit.
+         */
+        final boolean offsets() {
+            int[][] cs = counts;
+            int sum = 0;
+            for (int d = 0; d < RADIX; d++) {
+                int start = sum;
+                for (int[] c : cs) {
+                    int n = c[d];
+                    c[d] = sum;
+                    sum += n;
+                }
+                if (sum - start == size)
+                    return false;
+            }
+            return true;
+        }
+
+        final void sort() {
+            phase(INIT);
+            if (size < 2)
+                return;
+            for (shift = 0; shift < keyBits; shift += DIGIT_BITS) {
+                phase(COUNT);
+                if (offsets()) {
+                    phase(SCATTER);
+                    swapped = !swapped;
+                }
+            }
+            if (swapped && needsCopyBack())
+                phase(COPY);
+        }
+    }
+
+    static final class IntSorter extends Sorter {
+        final int[] a, w; // main and workspace arrays
+        IntSorter(int[] a, int base, int size, int nblocks) {
+            super(base, size, nblocks, 32);
+            this.a = a; this.w = new int[size];
+        }
+        void count(int lo, int hi, int[] c) {
+            int[] src = swapped ? w : a;
+            int sb = swapped ? 0 : base, s = shift;
+            for (int i = sb + lo, e = sb + hi; i < e; i++)
+                c[((src[i] ^ Integer.MIN_VALUE) >>> s) & 0xFF]++;
+        }
+        void scatter(int lo, int hi, int[] c) {
+            int[] src = swapped ? w : a, dst = swapped ? a : w;
+            int sb = swapped ? 0 : base, db = swapped ? base : 0, s = shift;
+            for (int i = sb + lo, e = sb + hi; i < e; i++) {
+                int v = src[i];
+                dst[db + c[((v ^ Integer.MIN_VALUE) >>> s) & 0xFF]++] = v;
+            }
+        }
+        void copyBack(int lo, int hi) {
+            System.arraycopy(w, lo, a, base + lo, hi - lo);
+        }
+    }
+
+    static final class LongSorter extends Sorter {
+        final long[] a, w; // main and workspace arrays
+        LongSorter(long[] a, int base, int size, int nblocks) {
+            super(base, size, nblocks, 64);
+            this.a = a; this.w = new long[size];
+        }
+        void count(int lo, int hi, int[] c) {
+            long[] src = swapped ? w : a;
+            int sb = swapped ? 0 : base, s = shift;
+            for (int i = sb + lo, e = sb + hi; i < e; i++)
+                c[(int) ((src[i] ^ Long.MIN_VALUE) >>> s) & 0xFF]++;
+        }
+        void scatter(int lo, int hi, int[] c) {
+            long[] src = swapped ? w : a, dst = swapped ? a : w;
+            int sb = swapped ? 0 : base, db = swapped ? base : 0, s = shift;
+            for (int i = sb + lo, e = sb + hi; i < e; i++) {
+                long v = src[i];
+                dst[db + c[(int) ((v ^ Long.MIN_VALUE) >>> s) & 0xFF]++] = v;
+            }
+        }
+        void copyBack(int lo, int hi) {
+            System.arraycopy(w, lo, a, base + lo, hi - lo);
+        }
+    }
+
+    /** Maps the bits of a float that is not NaN to an unsigned key. */
+    static int key(int bits) {
+        return bits ^ ((bits >> 31) | Integer.MIN_VALUE);
+    }
+
+    /** Maps the bits of a double that is not NaN to an unsigned key. */
+    static long key(long bits) {
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    static final class FloatSorter extends Sorter {
+        final float[] a, w; // main and workspace arrays
+        FloatSorter(float[] a, int base, int size, int nblocks) {
+            super(base, size, nblocks, 32);
+            this.a = a; this.w = new float[size];
+        }
+        void count(int lo, int hi, int[] c) {
+            float[] src = swapped ? w : a;
+            int sb = swapped ? 0 : base, s = shift;
+            for (int i = sb + lo, e = sb + hi; i < e; i++)
+                c[(key(Float.floatToRawIntBits(src[i])) >>> s) & 0xFF]++;
+        }
+        void scatter(int lo, int hi, int[] c) {
+            float[] src = swapped ? w : a, dst = swapped ? a : w;
+            int sb = swapped ? 0 : base, db = swapped ? base : 0, s = shift;
+            for (int i = sb + lo, e = sb + hi; i < e; i++) {
+                float v = src[i];
+                dst[db + c[(key(Float.floatToRawIntBits(v)) >>> s) & 0xFF]++] = v;
+            }
+        }
+        void copyBack(int lo, int hi) {
+            System.arraycopy(w, lo, a, base + lo, hi - lo);
+        }
+    }
+
+    static final class DoubleSorter extends Sorter {
+        final double[] a, w; // main and workspace arrays
+        DoubleSorter(double[] a, int base, int size, int nblocks) {
+            super(base, size, nblocks, 64);
+            this.a = a; this.w = new double[size];
+        }
+        void count(int lo, int hi, int[] c) {
+            double[] src = swapped ? w : a;
+            int sb = swapped ? 0 : base, s = shift;
+            for (int i = sb + lo, e = sb + hi; i < e; i++)
+                c[(int) (key(Double.doubleToRawLongBits(src[i])) >>> s) & 0xFF]++;
+        }
+        void scatter(int lo, int hi, int[] c) {
+            double[] src = swapped ? w : a, dst = swapped ? a : w;
+            int sb = swapped ? 0 : base, db = swapped ? base : 0, s = shift;
+            for (int i = sb + lo, e = sb + hi; i < e; i++) {
+                double v = src[i];
+                dst[db + c[(int) (key(Double.doubleToRawLongBits(v)) >>> s) & 0xFF]++] = v;
+            }
+        }
+        void copyBack(int lo, int hi) {
+            System.arraycopy(w, lo, a, base + lo, hi - lo);
+        }
+    }
+
+    /**
+     * Sorts the keys of an int or float array together with their indices,
+     * leaving the input array unchanged.
+     */
+    static final class IntIndexSorter extends Sorter {
+        final int[] ia;   // input, if int
+        final float[] fa; // input, if float
+        final int[] k, kw, x, xw; // keys and indices, and their workspaces
+        IntIndexSorter(int[] ia, float[] fa, int nblocks) {
+            super(0, (ia != null) ? ia.length : fa.length, nblocks, 32);
+            this.ia = ia; this.fa = fa;
+            int n = size;
+            k = new int[n]; kw = new int[n]; x = new int[n]; xw = new int[n];
+        }
+        void init(int lo, int hi) {
+            int[] k = this.k, x = this.x;
+            if (ia != null) {
+                for (int i = lo; i < hi; i++) {
+                    k[i] = ia[i] ^ Integer.MIN_VALUE;
+                    x[i] = i;
+                }
+            } else {
+                for (int i = lo; i < hi; i++) {
+                    k[i] = key(Float.floatToIntBits(fa[i]));
+                    x[i] = i;
+                }
+            }
+        }
+        void count(int lo, int hi, int[] c) {
+            int[] src = swapped ? kw : k;
+            int s = shift;
+            for (int i = lo; i < hi; i++)
+                c[(src[i] >>> s) & 0xFF]++;
+        }
+        void scatter(int lo, int hi, int[] c) {
+            int[] src = swapped ? kw : k, dst = swapped ? k : kw;
+            int[] xs = swapped ? xw : x, xd = swapped ? x : xw;
+            int s = shift;
+            for (int i = lo; i < hi; i++) {
+                int v = src[i];
+                int j = c[(v >>> s) & 0xFF]++;
+                dst[j] = v;
+                xd[j] = xs[i];
+            }
+        }
+        void copyBack(int lo, int hi) { }
+        boolean needsCopyBack() {
+            return false;
+        }
+    }
+
+    /**
+     * Sorts the keys of a long or double array together with their
+     * indices, leaving the input array unchanged.
+     */
+    static final class LongIndexSorter extends Sorter {
+        final long[] la;   // input, if long
+        final double[] da; // input, if double
+        final long[] k, kw; // keys and their workspace
+        final int[] x, xw;  // indices and their workspace
+        LongIndexSorter(long[] la, double[] da, int nblocks) {
+            super(0, (la != null) ? la.length : da.length, nblocks, 64);
+            this.la = la; this.da = da;
+            int n = size;
+            k = new long[n]; kw = new long[n]; x = new int[n]; xw = new int[n];
+        }
+        void init(int lo, int hi) {
+            long[] k = this.k;
+            int[] x = this.x;
+            if (la != null) {
+                for (int i = lo; i < hi; i++) {
+                    k[i] = la[i] ^ Long.MIN_VALUE;
+                    x[i] = i;
+                }
+            } else {
+                for (int i = lo; i < hi; i++) {
+                    k[i] = key(Double.doubleToLongBits(da[i]));
+                    x[i] = i;
+                }
+            }
+        }
+        void count(int lo, int hi, int[] c) {
+            long[] src = swapped ? kw : k;
+            int s = shift;
+            for (int i = lo; i < hi; i++)
+                c[(int) (src[i] >>> s) & 0xFF]++;
+        }
+        void scatter(int lo, int hi, int[] c) {
+            long[] src = swapped ? kw : k, dst = swapped ? k : kw;
+            int[] xs = swapped ? xw : x, xd = swapped ? x : xw;
+            int s = shift;
+            for (int i = lo; i < hi; i++) {
+                long v = src[i];
+                int j = c[(int) (v >>> s) & 0xFF]++;
+                dst[j] = v;
+                xd[j] = xs[i];
+            }
+        }
+        void copyBack(int lo, int hi) { }
+        boolean needsCopyBack() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,1999 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * A B+-tree based {@link NavigableMap} implementation.  The map is sorted
+ * according to the {@linkplain Comparable natural ordering} of its keys, or
+ * by a {@link Comparator} provided at map creation time, depending on which
+ * constructor is used, exactly like {@link TreeMap}.
+ *
+ * <p>Where a {@code TreeMap} allocates one red-black tree node per mapping,
+ * this map keeps up to {@value #NODE_CAPACITY} keys in each node, in sorted
+ * arrays that are searched by binary search.  All mappings live in the
+ * leaves, which are linked to their neighbours in both directions, so the
+ * tree is only a few levels deep even for tens of millions of mappings: a
+ * lookup visits three or four nodes instead of two dozen, a
+ * {@link #floorKey floorKey} or {@link #ceilingKey ceilingKey} that misses
+ * the leaf steps to the adjacent leaf without climbing the tree, and a range
+ * scan reads the keys of each leaf sequentially.  The map does not allocate
+ * an object per mapping, which also makes it much smaller than a
+ * {@code TreeMap}.
+ *
+ * <p>A map constructed from a {@link SortedMap}, or filled by
+ * {@link #putAll putAll} from a {@code SortedMap} with the same ordering
+ * while empty, is bulk loaded: its leaves are filled in order and the inner
+ * levels are built bottom-up, in linear time.
+ *
+ * <p>The collections returned by the views of this map, including
+ * {@link #subMap subMap}, {@link #headMap headMap}, {@link #tailMap tailMap}
+ * and {@link #descendingMap descendingMap}, have the semantics of the
+ * corresponding {@code TreeMap} views.  Their iterators are <i>fail-fast</i>:
+ * if the map is structurally modified at any time after an iterator is
+ * created, in any way except through the iterator's own {@code remove}
+ * method, the iterator throws a {@link ConcurrentModificationException} on a
+ * best-effort basis.  {@code Map.Entry} pairs returned by the navigation
+ * methods are snapshots, and do not support {@code setValue}; entries
+ * returned by the iterators of the entry set views do.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a map concurrently, and at least one of the
+ * threads modifies the map structurally, it <em>must</em> be synchronized
+ * externally.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see TreeMap
+ * @see NavigableMap
+ * @since 1.8
+ */
+public class BTreeMap<K,V>
+        extends AbstractMap<K,V>
+        implements NavigableMap<K,V>, Cloneable, Serializable {
+
+    private static final long serialVersionUID = 5162416983429376613L;
+
+    /**
+     * The maximum number of keys held by a node.  Nodes that are not the
+     * root hold at least half as many, except right after a split at the
+     * end of the key range, which leaves the left node full.
+     */
+    static final int NODE_CAPACITY = 64;
+
+    /**
+     * Nodes with fewer keys than this after a removal are merged with a
+     * sibling, or take keys from it.
+     */
+    static final int MIN_FILL = NODE_CAPACITY / 2;
+
+    /*
+     * Relations used by findNear, as in ConcurrentSkipListMap.  A
+     * descending view flips LT and GT by toggling the LT bit.
+     */
+    private static final int EQ = 1;
+    private static final int LT = 2;
+    private static final int GT = 0; // Actually checked as !LT
+
+    /**
+     * The comparator used to maintain order in this map, or
+     * null if it uses the natural ordering of its keys.
+     *
+     * @serial
+     */
+    private final Comparator<? super K> comparator;
+
+    /**
+     * The root node, or null if the map is empty.
+     */
+    private transient Node root;
+
+    /**
+     * The leftmost and rightmost leaves, or null if the map is empty.
+     */
+    private transient Leaf head, tail;
+
+    /**
+     * The number of inner levels above the leaves.
+     */
+    private transient int height;
+
+    /**
+     * The number of entries in the tree
+     */
+    private transient int size = 0;
+
+    /**
+     * The number of structural modifications to the tree.
+     */
+    private transient int modCount = 0;
+
+    /**
+     * Constructs a new, empty map, using the natural ordering of its keys.
+     * All keys inserted into the map must implement the {@link Comparable}
+     * interface, as for {@link TreeMap#TreeMap()}.
+     */
+    public BTreeMap() {
+        comparator = null;
+    }
+
+    /**
+     * Constructs a new, empty map, ordered according to the given
+     * comparator.
+     *
+     * @param comparator the comparator that will be used to order this map.
+     *                   If {@code null}, the {@linkplain Comparable natural
+     *                   ordering} of the keys will be used.
+     */
+    public BTreeMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given map,
+     * ordered according to the <em>natural ordering</em> of its keys.
+     *
+     * @param m the map whose mappings are to be placed in this map
+     * @throws ClassCastException   if the keys in m are not {@link Comparable},
+     *                              or are not mutually comparable
+     * @throws NullPointerException if the specified map is null
+     */
+    public BTreeMap(Map<? extends K, ? extends V> m) {
+        comparator = null;
+        putAll(m);
+    }
+
+    /**
+     * Constructs a new map containing the same mappings and using the same
+     * ordering as the specified sorted map.  The map is bulk loaded, in
+     * linear time.
+     *
+     * @param m the sorted map whose mappings are to be placed in this map,
+     *          and whose comparator is to be used to sort this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public BTreeMap(SortedMap<K, ? extends V> m) {
+        comparator = m.comparator();
+        try {
+            buildFromSorted(m.size(), m.entrySet().iterator(), null);
+        } catch (java.io.IOException | ClassNotFoundException cannotHappen) {
+        }
+    }
+
+    /* ---------------- Nodes -------------- */
+
+    /**
+     * A node of the tree: the first {@code size} elements of {@code keys}
+     * are in ascending order, the rest are null.
+     */
+    abstract static class Node {
+        final Object[] keys = new Object[NODE_CAPACITY];
+        int size;
+    }
+
+    /**
+     * A leaf, holding the values of its keys and linked to its neighbours.
+     * A leaf is never empty, unless it is the root of an empty map.
+     */
+    static final class Leaf extends Node {
+        final Object[] vals = new Object[NODE_CAPACITY];
+        Leaf prev, next;
+
+        void insert(int i, Object key, Object value) {
+            int numMoved = size - i;
+            if (numMoved > 0) {
+                System.arraycopy(keys, i, keys, i + 1, numMoved);
+                System.arraycopy(vals, i, vals, i + 1, numMoved);
+            }
+            keys[i] = key;
+            vals[i] = value;
+            size++;
+        }
+
+        void remove(int i) {
+            int numMoved = size - i - 1;
+            if (numMoved > 0) {
+                System.arraycopy(keys, i + 1, keys, i, numMoved);
+                System.arraycopy(vals, i + 1, vals, i, numMoved);
+            }
+            keys[--size] = null;
+            vals[size] = null;
+        }
+
+        /**
+         * Splits this full leaf around the insertion of the given mapping
+         * at index i, and returns the new right sibling, linked after this
+         * leaf.  Appending past the last leaf leaves this leaf full, so that
+         * ascending insertions fill the leaves completely.
+         */
+        Leaf splitInsert(int i, Object key, Object value) {
+            Leaf r = new Leaf();
+            int n = size;
+            int m = (next == null && i == n) ? n : (n + 1) >>> 1; // stays left
+            if (i < m) {
+                System.arraycopy(keys, m - 1, r.keys, 0, n - m + 1);
+                System.arraycopy(vals, m - 1, r.vals, 0, n - m + 1);
+                System.arraycopy(keys, i, keys, i + 1, m - 1 - i);
+                System.arraycopy(vals, i, vals, i + 1, m - 1 - i);
+                keys[i] = key;
+                vals[i] = value;
+            } else {
+                int j = i - m;
+                System.arraycopy(keys, m, r.keys, 0, j);
+                System.arraycopy(vals, m, r.vals, 0, j);
+                r.keys[j] = key;
+                r.vals[j] = value;
+                System.arraycopy(keys, i, r.keys, j + 1, n - i);
+                System.arraycopy(vals, i, r.vals, j + 1, n - i);
+            }
+            Arrays.fill(keys, m, n, null);
+            Arrays.fill(vals, m, n, null);
+            size = m;
+            r.size = n + 1 - m;
+            r.prev = this;
+            if ((r.next = next) != null)
+                next.prev = r;
+            next = r;
+            return r;
+        }
+    }
+
+    /**
+     * An inner node: {@code size} separator keys and {@code size + 1}
+     * children.  All keys in the subtree of {@code children[i]} are less
+     * than {@code keys[i]}, and all keys in the subtree of
+     * {@code children[i + 1]} are greater than or equal to it.  Separators
+     * are not updated when keys are removed, so a separator need not be a
+     * key of the map.
+     */
+    static final class Inner extends Node {
+        final Node[] children = new Node[NODE_CAPACITY + 1];
+
+        void insert(int i, Object key, Node right) {
+            int numMoved = size - i;
+            if (numMoved > 0) {
+                System.arraycopy(keys, i, keys, i + 1, numMoved);
+                System.arraycopy(children, i + 1, children, i + 2, numMoved);
+            }
+            keys[i] = key;
+            children[i + 1] = right;
+            size++;
+        }
+
+        /**
+         * Removes separator i and the child to its right.
+         */
+        void remove(int i) {
+            int numMoved = size - i - 1;
+            if (numMoved > 0) {
+                System.arraycopy(keys, i + 1, keys, i, numMoved);
+                System.arraycopy(children, i + 2, children, i + 1, numMoved);
+            }
+            keys[--size] = null;
+            children[size + 1] = null;
+        }
+    }
+
+    /* ---------------- Searching -------------- */
+
+    /**
+     * Compares two keys using the correct comparison method for this map.
+     */
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+        return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+                : comparator.compare((K) k1, (K) k2);
+    }
+
+    /**
+     * Binary search for key among the first n keys, with the result
+     * convention of {@link Arrays#binarySearch(Object[], Object)}.
+     */
+    @SuppressWarnings("unchecked")
+    final int search(Object[] keys, int n, Object key) {
+        int lo = 0, hi = n - 1;
+        Comparator<? super K> cpr = comparator;
+        if (cpr == null) {
+            Comparable<? super K> k = (Comparable<? super K>) key;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = k.compareTo((K) keys[mid]);
+                if (c > 0)
+                    lo = mid + 1;
+                else if (c < 0)
+                    hi = mid - 1;
+                else
+                    return mid;
+            }
+        } else {
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = cpr.compare((K) key, (K) keys[mid]);
+                if (c > 0)
+                    lo = mid + 1;
+                else if (c < 0)
+                    hi = mid - 1;
+                else
+                    return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Returns the index of the child of x whose subtree may hold key.
+     */
+    private int childIndex(Inner x, Object key) {
+        int i = search(x.keys, x.size, key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /**
+     * Returns the leaf that holds key, if present, or else the leaf into
+     * which it would be inserted; null if the map is empty.
+     */
+    private Leaf leafFor(Object key) {
+        if (key == null && comparator == null)
+            throw new NullPointerException();
+        Node x = root;
+        if (x == null)
+            return null;
+        for (int h = height; h > 0; h--) {
+            Inner in = (Inner) x;
+            x = in.children[childIndex(in, key)];
+        }
+        return (Leaf) x;
+    }
+
+    /**
+     * Returns the position of the entry for the given key with the given
+     * relation to it, or null if there is no such entry.  Because the
+     * leaves are linked, the answer is either in the leaf that key is
+     * routed to or at the near end of one of its neighbours.
+     *
+     * @param key the key
+     * @param rel the relation -- OR'ed combination of EQ, LT, GT
+     */
+    final Entry findNear(Object key, int rel) {
+        Leaf l = leafFor(key);
+        if (l == null)
+            return null;
+        int i = search(l.keys, l.size, key), j;
+        if (i >= 0)
+            j = ((rel & EQ) != 0) ? i : ((rel & LT) != 0) ? i - 1 : i + 1;
+        else
+            j = ((rel & LT) != 0) ? -i - 2 : -i - 1;
+        if (j >= l.size) {
+            l = l.next;
+            j = 0;
+        } else if (j < 0 && (l = l.prev) != null) {
+            j = l.size - 1;
+        }
+        return (l == null) ? null : new Entry(l, j);
+    }
+
+    final Entry firstPos() {
+        Leaf l = head;
+        return (l == null) ? null : new Entry(l, 0);
+    }
+
+    final Entry lastPos() {
+        Leaf l = tail;
+        return (l == null) ? null : new Entry(l, l.size - 1);
+    }
+
+    /**
+     * Return SimpleImmutableEntry for entry, or null if null
+     */
+    static <K,V> Map.Entry<K,V> exportEntry(BTreeMap<K,V>.Entry e) {
+        return (e == null) ? null :
+                new AbstractMap.SimpleImmutableEntry<>(e.key, e.value);
+    }
+
+    /**
+     * Returns the key corresponding to the specified Entry.
+     *
+     * @throws NoSuchElementException if the Entry is null
+     */
+    static <K> K key(BTreeMap<K,?>.Entry e) {
+        if (e == null)
+            throw new NoSuchElementException();
+        return e.key;
+    }
+
+    /**
+     * Return key for entry, or null if null
+     */
+    static <K> K keyOrNull(BTreeMap<K,?>.Entry e) {
+        return (e == null) ? null : e.key;
+    }
+
+    /* ---------------- Query Operations -------------- */
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key key whose presence in this map is to be tested
+     * @return {@code true} if this map contains a mapping for the
+     *         specified key
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    public boolean containsKey(Object key) {
+        Leaf l = leafFor(key);
+        return l != null && search(l.keys, l.size, key) >= 0;
+    }
+
+    /**
+     * Returns {@code true} if this map maps one or more keys to the
+     * specified value.  This operation requires time linear in the map
+     * size, but scans the leaves sequentially.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return {@code true} if a mapping to {@code value} exists;
+     *         {@code false} otherwise
+     */
+    public boolean containsValue(Object value) {
+        for (Leaf l = head; l != null; l = l.next) {
+            Object[] vals = l.vals;
+            for (int i = 0, n = l.size; i < n; i++)
+                if (Objects.equals(value, vals[i]))
+                    return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     *
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf l = leafFor(key);
+        if (l == null)
+            return null;
+        int i = search(l.keys, l.size, key);
+        return (i >= 0) ? (V) l.vals[i] : null;
+    }
+
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    public K firstKey() {
+        Leaf l = head;
+        if (l == null)
+            throw new NoSuchElementException();
+        return (K) l.keys[0];
+    }
+
+    /**
+     * @throws NoSuchElementException {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    public K lastKey() {
+        Leaf l = tail;
+        if (l == null)
+            throw new NoSuchElementException();
+        return (K) l.keys[l.size - 1];
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.
+     * If this map is empty and the specified map is a {@link SortedMap}
+     * with the same ordering, this map is bulk loaded in linear time.
+     *
+     * @param map mappings to be stored in this map
+     * @throws ClassCastException   if the class of a specified key or value
+     *                              prevents it from being stored in this map
+     * @throws NullPointerException if the specified map is null or
+     *                              the specified map contains a null key and this map does not
+     *                              permit null keys
+     */
+    public void putAll(Map<? extends K, ? extends V> map) {
+        int mapSize = map.size();
+        if (size == 0 && mapSize != 0 && map instanceof SortedMap) {
+            Comparator<?> c = ((SortedMap<?,?>) map).comparator();
+            if (c == comparator || (c != null && c.equals(comparator))) {
+                ++modCount;
+                try {
+                    buildFromSorted(mapSize, map.entrySet().iterator(), null);
+                } catch (java.io.IOException | ClassNotFoundException cannotHappen) {
+                }
+                return;
+            }
+        }
+        super.putAll(map);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}.
+     *         (A {@code null} return can also indicate that the map
+     *         previously associated {@code null} with {@code key}.)
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (root == null) {
+            compare(key, key); // type (and possibly null) check
+
+            Leaf l = new Leaf();
+            l.keys[0] = key;
+            l.vals[0] = value;
+            l.size = 1;
+            root = head = tail = l;
+            height = 0;
+            size = 1;
+            modCount++;
+            return null;
+        }
+        Leaf l = leafFor(key);
+        int i = search(l.keys, l.size, key);
+        if (i >= 0) {
+            Object oldValue = l.vals[i];
+            l.vals[i] = value;
+            return (V) oldValue;
+        }
+        if (l.size < NODE_CAPACITY)
+            l.insert(-i - 1, key, value);
+        else
+            splitInsert(key, value);
+        size++;
+        modCount++;
+        return null;
+    }
+
+    /**
+     * Inserts a key that is known to be absent and whose leaf is full,
+     * splitting the leaf and as many of its ancestors as needed.
+     */
+    private void splitInsert(Object key, Object value) {
+        int height = this.height;
+        Inner[] path = new Inner[height];
+        int[] pos = new int[height];
+        Node x = root;
+        for (int d = 0; d < height; d++) {
+            Inner in = (Inner) x;
+            int ci = childIndex(in, key);
+            path[d] = in;
+            pos[d] = ci;
+            x = in.children[ci];
+        }
+        Leaf l = (Leaf) x;
+        int i = -search(l.keys, l.size, key) - 1;
+        boolean append = l.next == null && i == l.size;
+        Leaf r = l.splitInsert(i, key, value);
+        if (r.next == null)
+            tail = r;
+
+        Object sep = r.keys[0];
+        Node right = r;
+        for (int d = height - 1; d >= 0; d--) {
+            Inner p = path[d];
+            int ci = pos[d];
+            if (p.size < NODE_CAPACITY) {
+                p.insert(ci, sep, right);
+                return;
+            }
+            // Split p around the new separator, promoting its middle key
+            Object[] tk = new Object[NODE_CAPACITY + 1];
+            Node[] tc = new Node[NODE_CAPACITY + 2];
+            System.arraycopy(p.keys, 0, tk, 0, ci);
+            tk[ci] = sep;
+            System.arraycopy(p.keys, ci, tk, ci + 1, NODE_CAPACITY - ci);
+            System.arraycopy(p.children, 0, tc, 0, ci + 1);
+            tc[ci + 1] = right;
+            System.arraycopy(p.children, ci + 1, tc, ci + 2, NODE_CAPACITY - ci);
+            int m = append ? NODE_CAPACITY - 1 : NODE_CAPACITY >>> 1;
+            Inner pr = new Inner();
+            System.arraycopy(tk, m + 1, pr.keys, 0, NODE_CAPACITY - m);
+            System.arraycopy(tc, m + 1, pr.children, 0, NODE_CAPACITY - m + 1);
+            pr.size = NODE_CAPACITY - m;
+            System.arraycopy(tk, 0, p.keys, 0, m);
+            System.arraycopy(tc, 0, p.children, 0, m + 1);
+            Arrays.fill(p.keys, m, NODE_CAPACITY, null);
+            Arrays.fill(p.children, m + 1, NODE_CAPACITY + 1, null);
+            p.size = m;
+            sep = tk[m];
+            right = pr;
+        }
+        Inner nr = new Inner();
+        nr.keys[0] = sep;
+        nr.children[0] = root;
+        nr.children[1] = right;
+        nr.size = 1;
+        root = nr;
+        this.height = height + 1;
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param key key for which mapping should be removed
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}.
+     *         (A {@code null} return can also indicate that the map
+     *         previously associated {@code null} with {@code key}.)
+     * @throws ClassCastException   if the specified key cannot be compared
+     *                              with the keys currently in the map
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        Leaf l = leafFor(key);
+        if (l == null)
+            return null;
+        int i = search(l.keys, l.size, key);
+        if (i < 0)
+            return null;
+        Object oldValue = l.vals[i];
+        deleteAt(l, i, key);
+        return (V) oldValue;
+    }
+
+    /**
+     * Removes the entry at index i of leaf l, whose key is key, and
+     * rebalances the tree if the leaf falls below the minimum fill.
+     */
+    private void deleteAt(Leaf l, int i, Object key) {
+        l.remove(i);
+        size--;
+        modCount++;
+        if (l.size >= MIN_FILL)
+            return;
+        if (height == 0) {
+            if (l.size == 0)
+                root = head = tail = null;
+            return;
+        }
+        rebalance(key);
+    }
+
+    /**
+     * Restores the minimum fill of the nodes on the path to key, bottom
+     * up, by merging each underfull node with a sibling when both fit in
+     * one node, or else moving keys from the sibling to even them out.
+     * Routing by key still reaches the leaf the key was removed from,
+     * since no separator has changed yet.
+     */
+    private void rebalance(Object key) {
+        int height = this.height;
+        Inner[] path = new Inner[height];
+        int[] pos = new int[height];
+        Node x = root;
+        for (int d = 0; d < height; d++) {
+            Inner in = (Inner) x;
+            int ci = childIndex(in, key);
+            path[d] = in;
+            pos[d] = ci;
+            x = in.children[ci];
+        }
+        for (int d = height - 1; d >= 0 && x.size < MIN_FILL; d--) {
+            Inner p = path[d];
+            int s = Math.max(pos[d] - 1, 0); // separator between x and a sibling
+            boolean merged = (x instanceof Leaf)
+                    ? rebalanceLeaves(p, s, (Leaf) p.children[s], (Leaf) p.children[s + 1])
+                    : rebalanceInners(p, s, (Inner) p.children[s], (Inner) p.children[s + 1]);
+            if (!merged)
+                break;
+            x = p;
+        }
+        Node r = root;
+        if (r.size == 0 && r instanceof Inner) {
+            root = ((Inner) r).children[0];
+            this.height = height - 1;
+        }
+    }
+
+    /**
+     * Merges or evens out adjacent leaves left and right, the children of
+     * p around separator s.  Returns true if they were merged, removing a
+     * separator from p.
+     */
+    private boolean rebalanceLeaves(Inner p, int s, Leaf left, Leaf right) {
+        int ln = left.size, rn = right.size;
+        if (ln + rn <= NODE_CAPACITY) {
+            System.arraycopy(right.keys, 0, left.keys, ln, rn);
+            System.arraycopy(right.vals, 0, left.vals, ln, rn);
+            left.size = ln + rn;
+            if ((left.next = right.next) != null)
+                left.next.prev = left;
+            else
+                tail = left;
+            p.remove(s);
+            return true;
+        }
+        int k = (ln + rn) / 2 - ln; // keys to move from right to left
+        if (k > 0) {
+            System.arraycopy(right.keys, 0, left.keys, ln, k);
+            System.arraycopy(right.vals, 0, left.vals, ln, k);
+            System.arraycopy(right.keys, k, right.keys, 0, rn - k);
+            System.arraycopy(right.vals, k, right.vals, 0, rn - k);
+            Arrays.fill(right.keys, rn - k, rn, null);
+            Arrays.fill(right.vals, rn - k, rn, null);
+        } else {
+            k = -k; // keys to move from left to right
+            System.arraycopy(right.keys, 0, right.keys, k, rn);
+            System.arraycopy(right.vals, 0, right.vals, k, rn);
+            System.arraycopy(left.keys, ln - k, right.keys, 0, k);
+            System.arraycopy(left.vals, ln - k, right.vals, 0, k);
+            Arrays.fill(left.keys, ln - k, ln, null);
+            Arrays.fill(left.vals, ln - k, ln, null);
+            k = -k;
+        }
+        left.size = ln + k;
+        right.size = rn - k;
+        p.keys[s] = right.keys[0];
+        return false;
+    }
+
+    /**
+     * Merges or evens out adjacent inner nodes left and right, the children
+     * of p around separator s, rotating keys through the separator.
+     * Returns true if they were merged, removing a separator from p.
+     */
+    private boolean rebalanceInners(Inner p, int s, Inner left, Inner right) {
+        int ln = left.size, rn = right.size;
+        if (ln + rn + 1 <= NODE_CAPACITY) {
+            left.keys[ln] = p.keys[s];
+            System.arraycopy(right.keys, 0, left.keys, ln + 1, rn);
+            System.arraycopy(right.children, 0, left.children, ln + 1, rn + 1);
+            left.size = ln + rn + 1;
+            p.remove(s);
+            return true;
+        }
+        int k = (ln + rn) / 2 - ln; // keys to move from right to left
+        if (k > 0) {
+            left.keys[ln] = p.keys[s];
+            System.arraycopy(right.keys, 0, left.keys, ln + 1, k - 1);
+            System.arraycopy(right.children, 0, left.children, ln + 1, k);
+            p.keys[s] = right.keys[k - 1];
+            System.arraycopy(right.keys, k, right.keys, 0, rn - k);
+            System.arraycopy(right.children, k, right.children, 0, rn - k + 1);
+            Arrays.fill(right.keys, rn - k, rn, null);
+            Arrays.fill(right.children, rn - k + 1, rn + 1, null);
+        } else if (k < 0) {
+            k = -k; // keys to move from left to right
+            System.arraycopy(right.keys, 0, right.keys, k, rn);
+            System.arraycopy(right.children, 0, right.children, k, rn + 1);
+            right.keys[k - 1] = p.keys[s];
+            System.arraycopy(left.keys, ln - k + 1, right.keys, 0, k - 1);
+            System.arraycopy(left.children, ln - k + 1, right.children, 0, k);
+            p.keys[s] = left.keys[ln - k];
+            Arrays.fill(left.keys, ln - k, ln, null);
+            Arrays.fill(left.children, ln - k + 1, ln + 1, null);
+            k = -k;
+        }
+        left.size = ln + k;
+        right.size = rn - k;
+        return false;
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     * The map will be empty after this call returns.
+     */
+    public void clear() {
+        modCount++;
+        size = 0;
+        height = 0;
+        root = head = tail = null;
+    }
+
+    /**
+     * Returns a shallow copy of this {@code BTreeMap} instance.  (The keys
+     * and values themselves are not cloned.)
+     *
+     * @return a shallow copy of this map
+     */
+    public Object clone() {
+        BTreeMap<?,?> clone;
+        try {
+            clone = (BTreeMap<?,?>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+
+        // Put clone into "virgin" state (except for comparator)
+        clone.root = clone.head = clone.tail = null;
+        clone.size = 0;
+        clone.height = 0;
+        clone.modCount = 0;
+        clone.entrySet = null;
+        clone.navigableKeySet = null;
+        clone.descendingMap = null;
+
+        // Initialize clone with our mappings
+        try {
+            clone.buildFromSorted(size, entrySet().iterator(), null);
+        } catch (java.io.IOException | ClassNotFoundException cannotHappen) {
+        }
+
+        return clone;
+    }
+
+    // NavigableMap API methods
+
+    public Map.Entry<K,V> firstEntry() {
+        return exportEntry(firstPos());
+    }
+
+    public Map.Entry<K,V> lastEntry() {
+        return exportEntry(lastPos());
+    }
+
+    public Map.Entry<K,V> pollFirstEntry() {
+        Entry p = firstPos();
+        if (p != null)
+            deleteAt(p.leaf, p.index, p.key);
+        return exportEntry(p);
+    }
+
+    public Map.Entry<K,V> pollLastEntry() {
+        Entry p = lastPos();
+        if (p != null)
+            deleteAt(p.leaf, p.index, p.key);
+        return exportEntry(p);
+    }
+
+    /**
+     * @throws ClassCastException   {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    public Map.Entry<K,V> lowerEntry(K key) {
+        return exportEntry(findNear(key, LT));
+    }
+
+    /**
+     * @throws ClassCastException   {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    public K lowerKey(K key) {
+        return keyOrNull(findNear(key, LT));
+    }
+
+    /**
+     * @throws ClassCastException   {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    public Map.Entry<K,V> floorEntry(K key) {
+        return exportEntry(findNear(key, LT | EQ));
+    }
+
+    /**
+     * @throws ClassCastException   {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    public K floorKey(K key) {
+        return keyOrNull(findNear(key, LT | EQ));
+    }
+
+    /**
+     * @throws ClassCastException   {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    public Map.Entry<K,V> ceilingEntry(K key) {
+        return exportEntry(findNear(key, GT | EQ));
+    }
+
+    /**
+     * @throws ClassCastException   {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    public K ceilingKey(K key) {
+        return keyOrNull(findNear(key, GT | EQ));
+    }
+
+    /**
+     * @throws ClassCastException   {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    public Map.Entry<K,V> higherEntry(K key) {
+        return exportEntry(findNear(key, GT));
+    }
+
+    /**
+     * @throws ClassCastException   {@inheritDoc}
+     * @throws NullPointerException if the specified key is null
+     *                              and this map uses natural ordering, or its comparator
+     *                              does not permit null keys
+     */
+    public K higherKey(K key) {
+        return keyOrNull(findNear(key, GT));
+    }
+
+    // Views
+
+    /**
+     * Fields initialized to contain an instance of the entry set view
+     * the first time this view is requested.  Views are stateless, so
+     * there's no reason to create more than one.
+     */
+    private transient EntrySet<K,V> entrySet;
+    private transient KeySet<K> navigableKeySet;
+    private transient NavigableMap<K,V> descendingMap;
+
+    /**
+     * Returns a {@link NavigableSet} view of the keys contained in this map,
+     * in ascending order, with the semantics of {@link TreeMap#keySet}.
+     */
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    public NavigableSet<K> navigableKeySet() {
+        KeySet<K> nks = navigableKeySet;
+        return (nks != null) ? nks : (navigableKeySet = new KeySet<>(this));
+    }
+
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this map,
+     * in the ascending order of the corresponding keys, with the semantics
+     * of {@link TreeMap#values}.
+     */
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        return (vs != null) ? vs : (values = new Values<>(this));
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map, in
+     * ascending key order, with the semantics of {@link TreeMap#entrySet}.
+     * The entries returned by its iterator support {@code setValue}.
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        EntrySet<K,V> es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet<>(this));
+    }
+
+    public NavigableMap<K,V> descendingMap() {
+        NavigableMap<K,V> km = descendingMap;
+        return (km != null) ? km :
+                (descendingMap = new SubMap<>(this,
+                        true, null, true,
+                        true, null, true, true));
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException     if {@code fromKey} or {@code toKey} is
+     *                                  null and this map uses natural ordering, or its comparator
+     *                                  does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public NavigableMap<K,V> subMap(K fromKey, boolean fromInclusive,
+                                    K toKey, boolean toInclusive) {
+        return new SubMap<>(this,
+                false, fromKey, fromInclusive,
+                false, toKey, toInclusive, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException     if {@code toKey} is null
+     *                                  and this map uses natural ordering, or its comparator
+     *                                  does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public NavigableMap<K,V> headMap(K toKey, boolean inclusive) {
+        return new SubMap<>(this,
+                true, null, true,
+                false, toKey, inclusive, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException     if {@code fromKey} is null
+     *                                  and this map uses natural ordering, or its comparator
+     *                                  does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public NavigableMap<K,V> tailMap(K fromKey, boolean inclusive) {
+        return new SubMap<>(this,
+                false, fromKey, inclusive,
+                true, null, true, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException     if {@code fromKey} or {@code toKey} is
+     *                                  null and this map uses natural ordering, or its comparator
+     *                                  does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public SortedMap<K,V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException     if {@code toKey} is null
+     *                                  and this map uses natural ordering, or its comparator
+     *                                  does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public SortedMap<K,V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    /**
+     * @throws ClassCastException       {@inheritDoc}
+     * @throws NullPointerException     if {@code fromKey} is null
+     *                                  and this map uses natural ordering, or its comparator
+     *                                  does not permit null keys
+     * @throws IllegalArgumentException {@inheritDoc}
+     */
+    public SortedMap<K,V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (Leaf l = head; l != null; l = l.next) {
+            for (int i = 0, n = l.size; i < n; i++)
+                action.accept((K) l.keys[i], (V) l.vals[i]);
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        Objects.requireNonNull(function);
+        int expectedModCount = modCount;
+        for (Leaf l = head; l != null; l = l.next) {
+            for (int i = 0, n = l.size; i < n; i++)
+                l.vals[i] = function.apply((K) l.keys[i], (V) l.vals[i]);
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    // View class support
+
+    /*
+     * View classes are static, delegating to a NavigableMap to allow use
+     * by SubMaps, which outweighs the ugliness of needing type-tests for
+     * Iterator methods.
+     */
+
+    static final class Values<E> extends AbstractCollection<E> {
+        final NavigableMap<?, E> m;
+
+        Values(NavigableMap<?, E> map) {
+            m = map;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterator<E> iterator() {
+            if (m instanceof BTreeMap)
+                return ((BTreeMap<?,E>) m).valueIterator();
+            else
+                return ((SubMap<?,E>) m).valueIterator();
+        }
+
+        public int size() {
+            return m.size();
+        }
+
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        public boolean contains(Object o) {
+            return m.containsValue(o);
+        }
+
+        public void clear() {
+            m.clear();
+        }
+
+        public Spliterator<E> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.ORDERED);
+        }
+    }
+
+    static final class EntrySet<K,V> extends AbstractSet<Map.Entry<K,V>> {
+        final NavigableMap<K,V> m;
+
+        EntrySet(NavigableMap<K,V> map) {
+            m = map;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterator<Map.Entry<K,V>> iterator() {
+            if (m instanceof BTreeMap)
+                return ((BTreeMap<K,V>) m).entryIterator();
+            else
+                return ((SubMap<K,V>) m).entryIterator();
+        }
+
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> entry = (Map.Entry<?,?>) o;
+            Object key = entry.getKey();
+            V value = m.get(key);
+            return Objects.equals(value, entry.getValue()) &&
+                    (value != null || m.containsKey(key));
+        }
+
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> entry = (Map.Entry<?,?>) o;
+            return m.remove(entry.getKey(), entry.getValue());
+        }
+
+        public int size() {
+            return m.size();
+        }
+
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        public void clear() {
+            m.clear();
+        }
+
+        public Spliterator<Map.Entry<K,V>> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.ORDERED | Spliterator.DISTINCT);
+        }
+    }
+
+    static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+        private final NavigableMap<E, ?> m;
+
+        KeySet(NavigableMap<E,?> map) {
+            m = map;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Iterator<E> iterator() {
+            if (m instanceof BTreeMap)
+                return ((BTreeMap<E,?>) m).keyIterator();
+            else
+                return ((SubMap<E,?>) m).keyIterator();
+        }
+
+        public Iterator<E> descendingIterator() {
+            return descendingSet().iterator();
+        }
+
+        public int size() { return m.size(); }
+        public boolean isEmpty() { return m.isEmpty(); }
+        public boolean contains(Object o) { return m.containsKey(o); }
+        public void clear() { m.clear(); }
+        public E lower(E e) { return m.lowerKey(e); }
+        public E floor(E e) { return m.floorKey(e); }
+        public E ceiling(E e) { return m.ceilingKey(e); }
+        public E higher(E e) { return m.higherKey(e); }
+        public E first() { return m.firstKey(); }
+        public E last() { return m.lastKey(); }
+        public Comparator<? super E> comparator() { return m.comparator(); }
+        public E pollFirst() {
+            Map.Entry<E,?> e = m.pollFirstEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        public E pollLast() {
+            Map.Entry<E,?> e = m.pollLastEntry();
+            return (e == null) ? null : e.getKey();
+        }
+        public boolean remove(Object o) {
+            int oldSize = size();
+            m.remove(o);
+            return size() != oldSize;
+        }
+        public NavigableSet<E> subSet(E fromElement, boolean fromInclusive,
+                                      E toElement,   boolean toInclusive) {
+            return new KeySet<>(m.subMap(fromElement, fromInclusive,
+                                         toElement,   toInclusive));
+        }
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return new KeySet<>(m.headMap(toElement, inclusive));
+        }
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return new KeySet<>(m.tailMap(fromElement, inclusive));
+        }
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
+        }
+        public SortedSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
+        }
+        public SortedSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
+        }
+        public NavigableSet<E> descendingSet() {
+            return new KeySet<>(m.descendingMap());
+        }
+    }
+
+    Iterator<K> keyIterator() {
+        return new KeyIterator(firstPos(), null, false);
+    }
+
+    Iterator<V> valueIterator() {
+        return new ValueIterator(firstPos(), null, false);
+    }
+
+    Iterator<Map.Entry<K,V>> entryIterator() {
+        return new EntryIterator(firstPos(), null, false);
+    }
+
+    /**
+     * Base class for the iterators of the map and of its views.  It walks
+     * the leaf chain in either direction, from a starting position to the
+     * bound of an optional range.
+     */
+    abstract class Iter<T> implements Iterator<T> {
+        /** the leaf and index of the next entry to return, or null */
+        Leaf next;
+        int nextIndex;
+        /** the leaf and index of the last entry returned, or null */
+        Leaf lastReturned;
+        int lastIndex;
+        /**
+         * The end of the range within the leaf of next: the index past the
+         * last entry to return when ascending, or the index of the last
+         * entry to return when descending.  Computed once per leaf, so
+         * that only the leaf holding a bound compares keys with it.
+         */
+        int limit;
+        /** the range to stay within, or null for the whole map */
+        final SubMap<K,V> range;
+        final boolean descending;
+        int expectedModCount;
+
+        Iter(Entry first, SubMap<K,V> range, boolean descending) {
+            this.range = range;
+            this.descending = descending;
+            expectedModCount = modCount;
+            if (first != null) {
+                next = first.leaf;
+                nextIndex = first.index;
+                limit = limitIn(next);
+            }
+        }
+
+        private int limitIn(Leaf l) {
+            SubMap<K,V> r = range;
+            if (r == null)
+                return descending ? 0 : l.size;
+            return descending ? r.lowIndex(l) : r.highIndex(l);
+        }
+
+        public final boolean hasNext() {
+            return next != null;
+        }
+
+        /**
+         * Moves past the next entry, which becomes the last returned.
+         */
+        final void advance() {
+            Leaf l = next;
+            if (l == null)
+                throw new NoSuchElementException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            int i = nextIndex;
+            lastReturned = l;
+            lastIndex = i;
+            if (descending) {
+                if (--i < limit) {
+                    if (i >= 0 || (l = l.prev) == null)
+                        l = null;
+                    else if ((i = l.size - 1) < (limit = limitIn(l)))
+                        l = null;
+                }
+            } else if (++i >= limit) {
+                if (i < l.size || (l = l.next) == null)
+                    l = null;
+                else if ((limit = limitIn(l)) == (i = 0))
+                    l = null;
+            }
+            next = l;
+            nextIndex = i;
+        }
+
+        public void remove() {
+            Leaf l = lastReturned;
+            if (l == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            Object nextKey = (next == null) ? null : next.keys[nextIndex];
+            deleteAt(l, lastIndex, l.keys[lastIndex]);
+            lastReturned = null;
+            // Entries may have moved between leaves; find the next one again
+            if (next != null) {
+                Entry p = findNear(nextKey, EQ);
+                next = p.leaf;
+                nextIndex = p.index;
+                limit = limitIn(next);
+            }
+            expectedModCount = modCount;
+        }
+    }
+
+    final class EntryIterator extends Iter<Map.Entry<K,V>> {
+        EntryIterator(Entry first, SubMap<K,V> range, boolean descending) {
+            super(first, range, descending);
+        }
+        public Map.Entry<K,V> next() {
+            advance();
+            return new Entry(lastReturned, lastIndex);
+        }
+    }
+
+    final class ValueIterator extends Iter<V> {
+        ValueIterator(Entry first, SubMap<K,V> range, boolean descending) {
+            super(first, range, descending);
+        }
+        @SuppressWarnings("unchecked")
+        public V next() {
+            advance();
+            return (V) lastReturned.vals[lastIndex];
+        }
+    }
+
+    final class KeyIterator extends Iter<K> {
+        KeyIterator(Entry first, SubMap<K,V> range, boolean descending) {
+            super(first, range, descending);
+        }
+        @SuppressWarnings("unchecked")
+        public K next() {
+            advance();
+            return (K) lastReturned.keys[lastIndex];
+        }
+    }
+
+    /**
+     * A position in a leaf, together with the mapping found there.  Used
+     * internally by the navigation methods, and returned as a mutable
+     * entry by the entry iterators: {@code setValue} writes through to the
+     * map for as long as the key is mapped.
+     */
+    final class Entry implements Map.Entry<K,V> {
+        final Leaf leaf;
+        final int index;
+        final K key;
+        V value;
+
+        @SuppressWarnings("unchecked")
+        Entry(Leaf leaf, int index) {
+            this.leaf = leaf;
+            this.index = index;
+            this.key = (K) leaf.keys[index];
+            this.value = (V) leaf.vals[index];
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            V oldValue = this.value;
+            this.value = value;
+            Leaf l = leaf;
+            int i = index;
+            if (i < l.size && l.keys[i] == key) {
+                l.vals[i] = value;
+            } else { // the entry has moved since it was returned
+                Entry p = findNear(key, EQ | GT);
+                if (p != null && compare(p.key, key) == 0)
+                    p.leaf.vals[p.index] = value;
+            }
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?,?> e = (Map.Entry<?,?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(value, e.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    // SubMaps
+
+    /**
+     * A view of a range of a {@code BTreeMap}, in either direction.  Bounds
+     * follow the conventions of {@link TreeMap}'s submaps: a range is either
+     * unbounded at an end ({@code fromStart}, {@code toEnd}) or bounded by a
+     * key, inclusively or not.  Attempts to add mappings outside the range
+     * throw {@link IllegalArgumentException}.
+     *
+     * @serial include
+     */
+    static final class SubMap<K,V> extends AbstractMap<K,V>
+            implements NavigableMap<K,V>, Serializable {
+        private static final long serialVersionUID = -3520928416426386221L;
+
+        /**
+         * The backing map.
+         */
+        final BTreeMap<K,V> m;
+
+        /**
+         * Endpoints are represented as triples (fromStart, lo,
+         * loInclusive) and (toEnd, hi, hiInclusive). If fromStart is
+         * true, then the low (absolute) bound is the start of the
+         * backing map, and the other values are ignored. Otherwise,
+         * if loInclusive is true, lo is an inclusive bound, else lo
+         * is an exclusive bound. Similarly for the upper bound.
+         */
+        final K lo, hi;
+        final boolean fromStart, toEnd;
+        final boolean loInclusive, hiInclusive;
+
+        /** direction */
+        final boolean isDescending;
+
+        // Lazily initialized view holders
+        private transient KeySet<K> keySetView;
+        private transient Set<Map.Entry<K,V>> entrySetView;
+        private transient Collection<V> valuesView;
+
+        SubMap(BTreeMap<K,V> m,
+               boolean fromStart, K lo, boolean loInclusive,
+               boolean toEnd, K hi, boolean hiInclusive,
+               boolean isDescending) {
+            if (!fromStart && !toEnd) {
+                if (m.compare(lo, hi) > 0)
+                    throw new IllegalArgumentException("fromKey > toKey");
+            } else {
+                if (!fromStart) // type check
+                    m.compare(lo, lo);
+                if (!toEnd)
+                    m.compare(hi, hi);
+            }
+            this.m = m;
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.isDescending = isDescending;
+        }
+
+        /* ----------------  Utilities -------------- */
+
+        final boolean tooLow(Object key) {
+            if (!fromStart) {
+                int c = m.compare(key, lo);
+                if (c < 0 || (c == 0 && !loInclusive))
+                    return true;
+            }
+            return false;
+        }
+
+        final boolean tooHigh(Object key) {
+            if (!toEnd) {
+                int c = m.compare(key, hi);
+                if (c > 0 || (c == 0 && !hiInclusive))
+                    return true;
+            }
+            return false;
+        }
+
+        final boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        final boolean inClosedRange(Object key) {
+            return (fromStart || m.compare(key, lo) >= 0)
+                    && (toEnd || m.compare(hi, key) >= 0);
+        }
+
+        final boolean inRange(Object key, boolean inclusive) {
+            return inclusive ? inRange(key) : inClosedRange(key);
+        }
+
+        /**
+         * Returns the position of the lowest entry in range (ignoring
+         * directionality), or null if the range is empty.
+         */
+        final BTreeMap<K,V>.Entry lowestPos() {
+            BTreeMap<K,V>.Entry e = fromStart ? m.firstPos() :
+                    m.findNear(lo, loInclusive ? GT | EQ : GT);
+            return (e == null || tooHigh(e.key)) ? null : e;
+        }
+
+        /**
+         * Returns the position of the highest entry in range (ignoring
+         * directionality), or null if the range is empty.
+         */
+        final BTreeMap<K,V>.Entry highestPos() {
+            BTreeMap<K,V>.Entry e = toEnd ? m.lastPos() :
+                    m.findNear(hi, hiInclusive ? LT | EQ : LT);
+            return (e == null || tooLow(e.key)) ? null : e;
+        }
+
+        /**
+         * Returns the index in l of its first entry above the range, or the
+         * size of l if there is none.
+         */
+        final int highIndex(Leaf l) {
+            int n = l.size;
+            if (!tooHigh(l.keys[n - 1]))
+                return n;
+            int j = m.search(l.keys, n, hi);
+            return (j < 0) ? -j - 1 : hiInclusive ? j + 1 : j;
+        }
+
+        /**
+         * Returns the index in l of its first entry that is not below the
+         * range, or the size of l if there is none.
+         */
+        final int lowIndex(Leaf l) {
+            if (!tooLow(l.keys[0]))
+                return 0;
+            int j = m.search(l.keys, l.size, lo);
+            return (j < 0) ? -j - 1 : loInclusive ? j : j + 1;
+        }
+
+        /**
+         * Submap version of BTreeMap.findNear, with rel relative to the
+         * direction of this view.
+         */
+        final BTreeMap<K,V>.Entry findNear(K key, int rel) {
+            if (isDescending)
+                rel ^= LT;
+            if (tooLow(key))
+                return ((rel & LT) != 0) ? null : lowestPos();
+            if (tooHigh(key))
+                return ((rel & LT) != 0) ? highestPos() : null;
+            BTreeMap<K,V>.Entry e = m.findNear(key, rel);
+            return (e == null || !inRange(e.key)) ? null : e;
+        }
+
+        final BTreeMap<K,V>.Entry firstPos() {
+            return isDescending ? highestPos() : lowestPos();
+        }
+
+        final BTreeMap<K,V>.Entry lastPos() {
+            return isDescending ? lowestPos() : highestPos();
+        }
+
+        /* ----------------  Map API methods -------------- */
+
+        public boolean containsKey(Object key) {
+            return inRange(key) && m.containsKey(key);
+        }
+
+        public V get(Object key) {
+            return !inRange(key) ? null : m.get(key);
+        }
+
+        public V put(K key, V value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return m.put(key, value);
+        }
+
+        public V remove(Object key) {
+            return !inRange(key) ? null : m.remove(key);
+        }
+
+        /**
+         * Counts the entries in range, a leaf at a time: only the leaf at
+         * the upper end of the range is searched.
+         */
+        public int size() {
+            BTreeMap<K,V>.Entry e = lowestPos();
+            if (e == null)
+                return 0;
+            long count = 0;
+            Leaf l = e.leaf;
+            for (int i = e.index; ; i = 0) {
+                int n = l.size, end = highIndex(l);
+                count += end - i;
+                if (end < n || (l = l.next) == null)
+                    break;
+            }
+            return count >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) count;
+        }
+
+        public boolean isEmpty() {
+            return lowestPos() == null;
+        }
+
+        public boolean containsValue(Object value) {
+            for (Iterator<V> it = valueIterator(); it.hasNext(); )
+                if (Objects.equals(value, it.next()))
+                    return true;
+            return false;
+        }
+
+        public void clear() {
+            for (Iterator<K> it = keyIterator(); it.hasNext(); ) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        /* ----------------  SortedMap API methods -------------- */
+
+        public Comparator<? super K> comparator() {
+            Comparator<? super K> cmp = m.comparator();
+            if (isDescending)
+                return Collections.reverseOrder(cmp);
+            else
+                return cmp;
+        }
+
+        /**
+         * Utility to create submaps, where given bounds must lie within
+         * this range and unbounded ends inherit the bounds of this range.
+         */
+        SubMap<K,V> newSubMap(boolean fromStart, K fromKey, boolean fromInclusive,
+                              boolean toEnd, K toKey, boolean toInclusive) {
+            if (isDescending) { // flip senses
+                boolean ts = fromStart;
+                fromStart = toEnd;
+                toEnd = ts;
+                K tk = fromKey;
+                fromKey = toKey;
+                toKey = tk;
+                boolean ti = fromInclusive;
+                fromInclusive = toInclusive;
+                toInclusive = ti;
+            }
+            if (fromStart) {
+                fromStart = this.fromStart;
+                fromKey = lo;
+                fromInclusive = loInclusive;
+            } else if (!inRange(fromKey, fromInclusive)) {
+                throw new IllegalArgumentException("fromKey out of range");
+            }
+            if (toEnd) {
+                toEnd = this.toEnd;
+                toKey = hi;
+                toInclusive = hiInclusive;
+            } else if (!inRange(toKey, toInclusive)) {
+                throw new IllegalArgumentException("toKey out of range");
+            }
+            return new SubMap<>(m, fromStart, fromKey, fromInclusive,
+                    toEnd, toKey, toInclusive, isDescending);
+        }
+
+        public NavigableMap<K,V> subMap(K fromKey, boolean fromInclusive,
+                                        K toKey, boolean toInclusive) {
+            return newSubMap(false, fromKey, fromInclusive, false, toKey, toInclusive);
+        }
+
+        public NavigableMap<K,V> headMap(K toKey, boolean inclusive) {
+            return newSubMap(true, null, true, false, toKey, inclusive);
+        }
+
+        public NavigableMap<K,V> tailMap(K fromKey, boolean inclusive) {
+            return newSubMap(false, fromKey, inclusive, true, null, true);
+        }
+
+        public SortedMap<K,V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        public SortedMap<K,V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        public SortedMap<K,V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        public NavigableMap<K,V> descendingMap() {
+            return new SubMap<>(m, fromStart, lo, loInclusive,
+                    toEnd, hi, hiInclusive, !isDescending);
+        }
+
+        /* ----------------  Relational methods -------------- */
+
+        public Map.Entry<K,V> ceilingEntry(K key) {
+            return exportEntry(findNear(key, GT | EQ));
+        }
+
+        public K ceilingKey(K key) {
+            return keyOrNull(findNear(key, GT | EQ));
+        }
+
+        public Map.Entry<K,V> lowerEntry(K key) {
+            return exportEntry(findNear(key, LT));
+        }
+
+        public K lowerKey(K key) {
+            return keyOrNull(findNear(key, LT));
+        }
+
+        public Map.Entry<K,V> floorEntry(K key) {
+            return exportEntry(findNear(key, LT | EQ));
+        }
+
+        public K floorKey(K key) {
+            return keyOrNull(findNear(key, LT | EQ));
+        }
+
+        public Map.Entry<K,V> higherEntry(K key) {
+            return exportEntry(findNear(key, GT));
+        }
+
+        public K higherKey(K key) {
+            return keyOrNull(findNear(key, GT));
+        }
+
+        public K firstKey() {
+            return key(firstPos());
+        }
+
+        public K lastKey() {
+            return key(lastPos());
+        }
+
+        public Map.Entry<K,V> firstEntry() {
+            return exportEntry(firstPos());
+        }
+
+        public Map.Entry<K,V> lastEntry() {
+            return exportEntry(lastPos());
+        }
+
+        public Map.Entry<K,V> pollFirstEntry() {
+            BTreeMap<K,V>.Entry e = firstPos();
+            if (e != null)
+                m.deleteAt(e.leaf, e.index, e.key);
+            return exportEntry(e);
+        }
+
+        public Map.Entry<K,V> pollLastEntry() {
+            BTreeMap<K,V>.Entry e = lastPos();
+            if (e != null)
+                m.deleteAt(e.leaf, e.index, e.key);
+            return exportEntry(e);
+        }
+
+        /* ---------------- Submap Views -------------- */
+
+        public NavigableSet<K> keySet() {
+            return navigableKeySet();
+        }
+
+        public NavigableSet<K> navigableKeySet() {
+            KeySet<K> ks = keySetView;
+            return (ks != null) ? ks : (keySetView = new KeySet<>(this));
+        }
+
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        public Collection<V> values() {
+            Collection<V> vs = valuesView;
+            return (vs != null) ? vs : (valuesView = new Values<>(this));
+        }
+
+        public Set<Map.Entry<K,V>> entrySet() {
+            Set<Map.Entry<K,V>> es = entrySetView;
+            return (es != null) ? es : (entrySetView = new EntrySet<>(this));
+        }
+
+        Iterator<K> keyIterator() {
+            return m.new KeyIterator(firstPos(), this, isDescending);
+        }
+
+        Iterator<V> valueIterator() {
+            return m.new ValueIterator(firstPos(), this, isDescending);
+        }
+
+        Iterator<Map.Entry<K,V>> entryIterator() {
+            return m.new EntryIterator(firstPos(), this, isDescending);
+        }
+    }
+
+    // Serialization and bulk loading
+
+    /**
+     * Save the state of the {@code BTreeMap} instance to a stream (i.e.,
+     * serialize it).
+     *
+     * @serialData The <em>size</em> of the BTreeMap (the number of key-value
+     * mappings) is emitted (int), followed by the key (Object)
+     * and value (Object) for each key-value mapping represented
+     * by the BTreeMap. The key-value mappings are emitted in
+     * key-order (as determined by the BTreeMap's Comparator,
+     * or by the keys' natural ordering if the BTreeMap has no
+     * Comparator).
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws java.io.IOException {
+        // Write out the Comparator and any hidden stuff
+        s.defaultWriteObject();
+
+        // Write out size (number of Mappings)
+        s.writeInt(size);
+
+        // Write out keys and values (alternating)
+        for (Leaf l = head; l != null; l = l.next) {
+            for (int i = 0, n = l.size; i < n; i++) {
+                s.writeObject(l.keys[i]);
+                s.writeObject(l.vals[i]);
+            }
+        }
+    }
+
+    /**
+     * Reconstitute the {@code BTreeMap} instance from a stream (i.e.,
+     * deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+            throws java.io.IOException, ClassNotFoundException {
+        // Read in the Comparator and any hidden stuff
+        s.defaultReadObject();
+
+        // Read in size
+        int size = s.readInt();
+        if (size < 0)
+            throw new java.io.InvalidObjectException("Illegal size: " + size);
+
+        buildFromSorted(size, null, s);
+    }
+
+    /**
+     * Bulk loads this empty map, in linear time, from sorted data: the
+     * leaves are filled in key order, as evenly as possible, and each level
+     * of inner nodes is then built over the one below, the separator of a
+     * child being the least key of its subtree.  Data come either from an
+     * iterator over map entries, or, if it is null, from the key/value
+     * pairs of a stream.
+     *
+     * It is assumed that the comparator of the map is already set prior
+     * to calling this method.
+     *
+     * @param size the number of mappings to read
+     * @param it   if non-null, new entries are created from entries
+     *             read from this iterator.
+     * @param str  if non-null, new entries are created from keys and
+     *             values read in serialized form from this stream.
+     * @throws java.io.IOException    propagated from stream reads. This cannot
+     *                                occur if str is null.
+     * @throws ClassNotFoundException propagated from readObject.
+     *                                This cannot occur if str is null.
+     */
+    private void buildFromSorted(int size, Iterator<?> it, java.io.ObjectInputStream str)
+            throws java.io.IOException, ClassNotFoundException {
+        root = head = tail = null;
+        height = 0;
+        this.size = 0;
+        if (size == 0)
+            return;
+
+        int count = (size + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        Node[] level = new Node[count];
+        Object[] least = new Object[count];
+        int base = size / count, extra = size % count;
+        Leaf prev = null;
+        for (int n = 0; n < count; n++) {
+            Leaf l = new Leaf();
+            int cnt = base + (n < extra ? 1 : 0);
+            for (int i = 0; i < cnt; i++) {
+                if (it != null) {
+                    Map.Entry<?,?> entry = (Map.Entry<?,?>) it.next();
+                    l.keys[i] = entry.getKey();
+                    l.vals[i] = entry.getValue();
+                } else {
+                    l.keys[i] = str.readObject();
+                    l.vals[i] = str.readObject();
+                }
+            }
+            l.size = cnt;
+            if ((l.prev = prev) == null)
+                head = l;
+            else
+                prev.next = l;
+            prev = l;
+            level[n] = l;
+            least[n] = l.keys[0];
+        }
+        tail = prev;
+
+        int height = 0;
+        while (count > 1) {
+            int parents = (count + NODE_CAPACITY) / (NODE_CAPACITY + 1);
+            base = count / parents;
+            extra = count % parents;
+            for (int n = 0, c = 0; n < parents; n++) {
+                Inner p = new Inner();
+                int cnt = base + (n < extra ? 1 : 0);
+                Object min = least[c];
+                for (int j = 0; j < cnt; j++, c++) {
+                    p.children[j] = level[c];
+                    if (j > 0)
+                        p.keys[j - 1] = least[c];
+                }
+                p.size = cnt - 1;
+                // n <= the index of p's first child, so nothing unread is overwritten
+                level[n] = p;
+                least[n] = min;
+            }
+            count = parents;
+            height++;
+        }
+        root = level[0];
+        this.height = height;
+        this.size = size;
+    }
+}
@@ -0,0 +1,1232 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Hash table based implementation of the {@code Map} interface that keeps
+ * all of its state in flat arrays, in the style of a "Swiss table".  Where
+ * {@link HashMap} allocates a {@code Node} of 32 or more bytes per mapping
+ * (and a {@code TreeNode} of more than twice that once a bin is treeified),
+ * this map stores the hash of every mapping in one array and its key and
+ * value side by side in another, and allocates nothing per mapping.
+ *
+ * <p>The table is divided into groups of eight slots.  Each slot has a
+ * one-byte <em>control</em> value: either {@code EMPTY}, {@code DELETED}
+ * or, for a full slot, seven bits of the key's hash.  The eight control
+ * bytes of a group are packed into a single {@code long}, so one lookup
+ * step compares the probed key's hash bits against a whole group with a
+ * few word-wide arithmetic operations and only calls {@code equals} on the
+ * slots whose seven bits match, which is rarely more than one.  Groups are
+ * probed quadratically, and a probe stops at the first group that contains
+ * an {@code EMPTY} slot.
+ *
+ * <p>This implementation provides all of the optional map operations, and
+ * permits {@code null} values and the {@code null} key.  Like
+ * {@code HashMap}, it makes no guarantees as to the order of the map; in
+ * particular, it does not guarantee that the order will remain constant
+ * over time.  The table grows when it is seven-eighths full.
+ *
+ * <p>Typical memory use, with compressed references, is 13 bytes per slot
+ * (one control byte, a cached {@code int} hash and two references), or
+ * between 15 and 30 bytes per mapping depending on where the table is in
+ * its growth cycle, against roughly 37 to 48 bytes per mapping for
+ * {@code HashMap} with the default load factor.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a compact hash map concurrently, and at least
+ * one of the threads modifies the map structurally, it <i>must</i> be
+ * synchronized externally.
+ *
+ * <p>The iterators returned by all of this class's "collection view
+ * methods" are <i>fail-fast</i>: if the map is structurally modified at any
+ * time after the iterator is created, in any way except through the
+ * iterator's own {@code remove} method, the iterator will throw a
+ * {@link ConcurrentModificationException}.  Fail-fast behavior cannot be
+ * guaranteed and should be used only to detect bugs.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see HashMap
+ * @see LinkedHashMap
+ * @since 1.8
+ */
+public class CompactHashMap<K, V> extends AbstractMap<K, V>
+        implements Map<K, V>, Cloneable, Serializable {
+
+    private static final long serialVersionUID = -2851387163519367405L;
+
+    /*
+     * Implementation notes.
+     *
+     * The control word of group g is ctrl[g]; the control byte of slot
+     * (g << 3) + j is byte j (counting from the least significant end)
+     * of that word.  Control bytes are:
+     *
+     *   0x00 - 0x7F  full; the low seven bits of the mapping's hash (h2)
+     *   0x80         EMPTY
+     *   0xFE         DELETED (a tombstone)
+     *
+     * so the high bit of a control byte is set exactly for slots that do
+     * not hold a mapping.  The word-wide matching tricks below are those
+     * of the "SWAR" (SIMD within a register) haszero idiom; matchByte may
+     * report false positives, which are weeded out by comparing the keys.
+     *
+     * A probe starts at group (h1 & mask) and visits the groups at
+     * triangular offsets 0, 1, 3, 6, ..., which covers every group of a
+     * power-of-two table.  Because at most 7/8 of the slots may be
+     * occupied by mappings or tombstones, every probe meets an EMPTY slot.
+     *
+     * A removed mapping becomes EMPTY if its group still has an EMPTY slot,
+     * since no probe sequence can then have passed through the group;
+     * otherwise it becomes DELETED.  Tombstones are purged by rehashing the
+     * table in place when they, rather than mappings, exhaust the growth
+     * budget.
+     */
+
+    /**
+     * The number of slots in a group; one control byte per slot.
+     */
+    static final int GROUP_WIDTH = 8;
+
+    /**
+     * The default initial capacity, in slots - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The maximum capacity, in slots.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    static final long EMPTY = 0x80L;
+    static final long DELETED = 0xFEL;
+
+    static final long LSBS = 0x0101010101010101L;
+    static final long MSBS = 0x8080808080808080L;
+
+    /**
+     * A control word whose eight slots are all EMPTY.
+     */
+    static final long EMPTY_GROUP = EMPTY * LSBS;
+
+    /**
+     * The control words, one per group of eight slots, or null until
+     * first use.  Length MUST always be a power of two.
+     */
+    transient long[] ctrl;
+
+    /**
+     * The cached hashes of the keys, indexed by slot.
+     */
+    transient int[] hashes;
+
+    /**
+     * The keys and values: the key of slot i is at index 2*i and its
+     * value at index 2*i+1, so that both share a cache line.
+     */
+    transient Object[] table;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The number of slots that may still become full before the table
+     * must be grown or purged of tombstones.
+     */
+    transient int growthLeft;
+
+    /**
+     * The number of times this map has been structurally modified.
+     * This field is used to make iterators on collection-views of the
+     * map fail-fast.
+     */
+    transient int modCount;
+
+    /**
+     * The capacity, in slots, of the table to allocate on first use.
+     */
+    transient int initialCapacity;
+
+    /**
+     * Holds cached entrySet().
+     */
+    transient Set<Map.Entry<K, V>> entrySet;
+
+    /* ---------------- Static utilities -------------- */
+
+    /**
+     * Computes the hash of a key.  The hash code is multiplied by the
+     * 32-bit golden ratio so that the seven low bits, which form the
+     * control byte, and the high bits, which select the group, both
+     * depend on every bit of {@code hashCode()}.
+     */
+    static int hash(Object key) {
+        int h = (key == null) ? 0 : key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 15) ^ (h >>> 25);
+    }
+
+    /**
+     * The control byte for a hash (h2).
+     */
+    static int h2(int hash) {
+        return hash & 0x7F;
+    }
+
+    /**
+     * The first group to probe for a hash (h1).
+     */
+    static int h1(int hash) {
+        return hash >>> 7;
+    }
+
+    /**
+     * Returns a word with the high bit set in every byte of {@code group}
+     * that may equal {@code b}.
+     */
+    static long matchByte(long group, int b) {
+        long x = group ^ (LSBS * b);
+        return (x - LSBS) & ~x & MSBS;
+    }
+
+    /**
+     * Returns a word with the high bit set in every EMPTY byte of
+     * {@code group}.
+     */
+    static long matchEmpty(long group) {
+        // high bit set and bit 1 clear: EMPTY only
+        return group & (~group << 6) & MSBS;
+    }
+
+    /**
+     * Returns a word with the high bit set in every EMPTY or DELETED
+     * byte of {@code group}.
+     */
+    static long matchEmptyOrDeleted(long group) {
+        // high bit set and bit 0 clear: EMPTY or DELETED
+        return group & (~group << 7) & MSBS;
+    }
+
+    /**
+     * Returns the index within its group of the lowest byte flagged in a
+     * match word.
+     */
+    static int lowestSlot(long match) {
+        return Long.numberOfTrailingZeros(match) >>> 3;
+    }
+
+    /**
+     * Returns a power of two number of slots, of at least one group, able
+     * to hold the given number of mappings.
+     */
+    static int capacityFor(int mappings) {
+        long want = Math.max((long) mappings + ((long) mappings + 6) / 7,
+                             GROUP_WIDTH);
+        return (want >= MAXIMUM_CAPACITY) ? MAXIMUM_CAPACITY :
+                HashMap.tableSizeFor((int) want);
+    }
+
+    /**
+     * Returns the number of mappings a table of the given capacity may
+     * hold, that is, 7/8 of its slots.
+     */
+    static int maxLoad(int capacity) {
+        return capacity - (capacity >>> 3);
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Constructs an empty {@code CompactHashMap} able to hold the
+     * specified number of mappings without resizing.
+     *
+     * @param initialCapacity the expected number of mappings
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public CompactHashMap(int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        this.initialCapacity = capacityFor(initialCapacity);
+    }
+
+    /**
+     * Constructs an empty {@code CompactHashMap} with the default initial
+     * capacity (16 slots).
+     */
+    public CompactHashMap() {
+        this.initialCapacity = DEFAULT_INITIAL_CAPACITY;
+    }
+
+    /**
+     * Constructs a new {@code CompactHashMap} with the same mappings as the
+     * specified {@code Map}.
+     *
+     * @param m the map whose mappings are to be placed in this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public CompactHashMap(Map<? extends K, ? extends V> m) {
+        this.initialCapacity = capacityFor(m.size());
+        putAll(m);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code null} if this map contains no mapping for the key.
+     *
+     * <p>A return value of {@code null} does not <i>necessarily</i>
+     * indicate that the map contains no mapping for the key; it's also
+     * possible that the map explicitly maps the key to {@code null}.
+     * The {@link #containsKey containsKey} operation may be used to
+     * distinguish these two cases.
+     *
+     * @see #put(Object, Object)
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = find(hash(key), key);
+        return (i < 0) ? null : (V) table[(i << 1) + 1];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(Object key, V defaultValue) {
+        int i = find(hash(key), key);
+        return (i < 0) ? defaultValue : (V) table[(i << 1) + 1];
+    }
+
+    public boolean containsKey(Object key) {
+        return find(hash(key), key) >= 0;
+    }
+
+    /**
+     * Returns the slot holding the given key, or -1.
+     */
+    final int find(int hash, Object key) {
+        long[] c;
+        if ((c = ctrl) == null || size == 0)
+            return -1;
+        Object[] tab = table;
+        int mask = c.length - 1, h2 = h2(hash);
+        for (int g = h1(hash) & mask, step = 0; ; g = (g + ++step) & mask) {
+            long group = c[g];
+            for (long m = matchByte(group, h2); m != 0L; m &= m - 1) {
+                // seven matching hash bits make a false match rare enough
+                // that the cached hash is not worth another cache miss
+                int i = (g << 3) + lowestSlot(m);
+                Object k;
+                if ((k = tab[i << 1]) == key ||
+                        (key != null && key.equals(k)))
+                    return i;
+            }
+            if (matchEmpty(group) != 0L)
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the first EMPTY or DELETED slot on the probe sequence of
+     * the given hash.
+     */
+    static int findInsertSlot(long[] c, int hash) {
+        int mask = c.length - 1;
+        for (int g = h1(hash) & mask, step = 0; ; g = (g + ++step) & mask) {
+            long m = matchEmptyOrDeleted(c[g]);
+            if (m != 0L)
+                return (g << 3) + lowestSlot(m);
+        }
+    }
+
+    /**
+     * Returns the control byte of a slot.
+     */
+    static int ctrlAt(long[] c, int i) {
+        return (int) (c[i >>> 3] >>> ((i & 7) << 3)) & 0xFF;
+    }
+
+    /**
+     * Sets the control byte of a slot.
+     */
+    static void setCtrl(long[] c, int i, long b) {
+        int shift = (i & 7) << 3;
+        int g = i >>> 3;
+        c[g] = (c[g] & ~(0xFFL << shift)) | (b << shift);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with {@code key}, or
+     * {@code null} if there was no mapping for {@code key}.
+     * (A {@code null} return can also indicate that the map
+     * previously associated {@code null} with {@code key}.)
+     */
+    public V put(K key, V value) {
+        return putVal(hash(key), key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return putVal(hash(key), key, value, true);
+    }
+
+    /**
+     * Implements Map.put and related methods.
+     *
+     * @param hash         hash for key
+     * @param key          the key
+     * @param value        the value to put
+     * @param onlyIfAbsent if true, don't change an existing non-null value
+     * @return previous value, or null if none
+     */
+    @SuppressWarnings("unchecked")
+    final V putVal(int hash, K key, V value, boolean onlyIfAbsent) {
+        int i = find(hash, key);
+        if (i >= 0) {
+            Object[] tab = table;
+            V old = (V) tab[(i << 1) + 1];
+            if (!onlyIfAbsent || old == null)
+                tab[(i << 1) + 1] = value;
+            return old;
+        }
+        insert(hash, key, value);
+        return null;
+    }
+
+    /**
+     * Adds a mapping for a key known to be absent.  Returns its slot.
+     */
+    final int insert(int hash, Object key, Object value) {
+        if (ctrl == null)
+            allocate(initialCapacity);
+        int i = findInsertSlot(ctrl, hash);
+        if (growthLeft == 0 && ctrlAt(ctrl, i) == EMPTY) {
+            rehash();
+            i = findInsertSlot(ctrl, hash);
+        }
+        if (ctrlAt(ctrl, i) == EMPTY)
+            --growthLeft;
+        setCtrl(ctrl, i, h2(hash));
+        hashes[i] = hash;
+        table[i << 1] = key;
+        table[(i << 1) + 1] = value;
+        ++size;
+        ++modCount;
+        return i;
+    }
+
+    /**
+     * Allocates empty arrays of the given capacity.
+     */
+    final void allocate(int capacity) {
+        long[] c = new long[capacity >>> 3];
+        Arrays.fill(c, EMPTY_GROUP);
+        ctrl = c;
+        hashes = new int[capacity];
+        table = new Object[capacity << 1];
+        growthLeft = maxLoad(capacity);
+    }
+
+    /**
+     * Makes room for an insertion: doubles the table, or, when at least
+     * half of the growth budget has been consumed by tombstones, rebuilds
+     * it at the same capacity to purge them.
+     */
+    final void rehash() {
+        long[] oldCtrl = ctrl;
+        int[] oldHashes = hashes;
+        Object[] oldTab = table;
+        int oldCap = oldHashes.length, newCap;
+        if (size <= maxLoad(oldCap) >>> 1)
+            newCap = oldCap;
+        else if (oldCap >= MAXIMUM_CAPACITY)
+            throw new IllegalStateException("CompactHashMap too large");
+        else
+            newCap = oldCap << 1;
+        allocate(newCap);
+        long[] c = ctrl;
+        int[] hs = hashes;
+        Object[] tab = table;
+        for (int i = 0; i < oldCap; ++i) {
+            if (ctrlAt(oldCtrl, i) < EMPTY) {
+                int h = oldHashes[i];
+                int j = findInsertSlot(c, h);
+                setCtrl(c, j, h2(h));
+                hs[j] = h;
+                tab[j << 1] = oldTab[i << 1];
+                tab[(j << 1) + 1] = oldTab[(i << 1) + 1];
+            }
+        }
+        growthLeft -= size;
+    }
+
+    /**
+     * Removes the mapping in slot {@code i}.
+     */
+    final void removeSlot(int i) {
+        long[] c = ctrl;
+        if (matchEmpty(c[i >>> 3]) != 0L) {
+            setCtrl(c, i, EMPTY);
+            ++growthLeft;
+        } else
+            setCtrl(c, i, DELETED);
+        table[i << 1] = null;
+        table[(i << 1) + 1] = null;
+        --size;
+        ++modCount;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.
+     * These mappings will replace any mappings that this map had for
+     * any of the keys currently in the specified map.
+     *
+     * @param m mappings to be stored in this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public void putAll(Map<? extends K, ? extends V> m) {
+        int s = m.size();
+        if (s == 0)
+            return;
+        if (ctrl == null) {
+            int cap = capacityFor(s);
+            if (cap > initialCapacity)
+                initialCapacity = cap;
+        }
+        for (Map.Entry<? extends K, ? extends V> e : m.entrySet()) {
+            K key = e.getKey();
+            putVal(hash(key), key, e.getValue(), false);
+        }
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with {@code key}, or
+     * {@code null} if there was no mapping for {@code key}.
+     * (A {@code null} return can also indicate that the map
+     * previously associated {@code null} with {@code key}.)
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        int i = find(hash(key), key);
+        if (i < 0)
+            return null;
+        V old = (V) table[(i << 1) + 1];
+        removeSlot(i);
+        return old;
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        int i = find(hash(key), key);
+        if (i < 0 || !Objects.equals(table[(i << 1) + 1], value))
+            return false;
+        removeSlot(i);
+        return true;
+    }
+
+    /**
+     * Removes all of the mappings from this map.  The table keeps its
+     * capacity.
+     */
+    public void clear() {
+        ++modCount;
+        long[] c = ctrl;
+        if (c != null && size > 0) {
+            Arrays.fill(c, EMPTY_GROUP);
+            Arrays.fill(table, null);
+            size = 0;
+            growthLeft = maxLoad(hashes.length);
+        }
+    }
+
+    /**
+     * Returns {@code true} if this map maps one or more keys to the
+     * specified value.
+     *
+     * @param value value whose presence in this map is to be tested
+     * @return {@code true} if this map maps one or more keys to the
+     * specified value
+     */
+    public boolean containsValue(Object value) {
+        long[] c;
+        if ((c = ctrl) != null && size > 0) {
+            Object[] tab = table;
+            for (int i = 0, n = hashes.length; i < n; ++i) {
+                Object v;
+                if (ctrlAt(c, i) < EMPTY &&
+                        ((v = tab[(i << 1) + 1]) == value ||
+                         (value != null && value.equals(v))))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (action == null)
+            throw new NullPointerException();
+        long[] c;
+        if ((c = ctrl) != null && size > 0) {
+            Object[] tab = table;
+            int mc = modCount;
+            for (int i = 0, n = hashes.length; i < n && mc == modCount; ++i) {
+                if (ctrlAt(c, i) < EMPTY)
+                    action.accept((K) tab[i << 1], (V) tab[(i << 1) + 1]);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+        if (function == null)
+            throw new NullPointerException();
+        long[] c;
+        if ((c = ctrl) != null && size > 0) {
+            Object[] tab = table;
+            int mc = modCount;
+            for (int i = 0, n = hashes.length; i < n; ++i) {
+                if (ctrlAt(c, i) < EMPTY)
+                    tab[(i << 1) + 1] = function.apply((K) tab[i << 1],
+                                                       (V) tab[(i << 1) + 1]);
+            }
+            if (modCount != mc)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /* ---------------- Views -------------- */
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map.
+     * The set is backed by the map, so changes to the map are
+     * reflected in the set, and vice-versa.  The set supports element
+     * removal, which removes the corresponding mapping from the map,
+     * via the {@code Iterator.remove}, {@code Set.remove},
+     * {@code removeAll}, {@code retainAll}, and {@code clear}
+     * operations.  It does not support the {@code add} or
+     * {@code addAll} operations.
+     *
+     * @return a set view of the keys contained in this map
+     */
+    public Set<K> keySet() {
+        Set<K> ks = keySet;
+        if (ks == null) {
+            ks = new KeySet();
+            keySet = ks;
+        }
+        return ks;
+    }
+
+    final class KeySet extends AbstractSet<K> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            CompactHashMap.this.clear();
+        }
+
+        public final Iterator<K> iterator() {
+            return new KeyIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsKey(o);
+        }
+
+        public final boolean remove(Object key) {
+            int i = find(hash(key), key);
+            if (i < 0)
+                return false;
+            removeSlot(i);
+            return true;
+        }
+
+        public final Spliterator<K> spliterator() {
+            return new KeySpliterator<>(CompactHashMap.this, 0, -1, 0, 0);
+        }
+
+        @SuppressWarnings("unchecked")
+        public final void forEach(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            long[] c;
+            if ((c = ctrl) != null && size > 0) {
+                Object[] tab = table;
+                int mc = modCount;
+                for (int i = 0, n = hashes.length; i < n; ++i) {
+                    if (ctrlAt(c, i) < EMPTY)
+                        action.accept((K) tab[i << 1]);
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * Returns a {@link Collection} view of the values contained in this
+     * map.  The collection is backed by the map, so changes to the map are
+     * reflected in the collection, and vice-versa.  The collection supports
+     * element removal, which removes the corresponding mapping from the
+     * map, via the {@code Iterator.remove}, {@code Collection.remove},
+     * {@code removeAll}, {@code retainAll} and {@code clear} operations.
+     * It does not support the {@code add} or {@code addAll} operations.
+     *
+     * @return a view of the values contained in this map
+     */
+    public Collection<V> values() {
+        Collection<V> vs = values;
+        if (vs == null) {
+            vs = new Values();
+            values = vs;
+        }
+        return vs;
+    }
+
+    final class Values extends AbstractCollection<V> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            CompactHashMap.this.clear();
+        }
+
+        public final Iterator<V> iterator() {
+            return new ValueIterator();
+        }
+
+        public final boolean contains(Object o) {
+            return containsValue(o);
+        }
+
+        public final Spliterator<V> spliterator() {
+            return new ValueSpliterator<>(CompactHashMap.this, 0, -1, 0, 0);
+        }
+
+        @SuppressWarnings("unchecked")
+        public final void forEach(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            long[] c;
+            if ((c = ctrl) != null && size > 0) {
+                Object[] tab = table;
+                int mc = modCount;
+                for (int i = 0, n = hashes.length; i < n; ++i) {
+                    if (ctrlAt(c, i) < EMPTY)
+                        action.accept((V) tab[(i << 1) + 1]);
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map.
+     * The set is backed by the map, so changes to the map are reflected in
+     * the set, and vice-versa.  The entries are created on demand; setting
+     * the value of an entry writes through to the map as long as the
+     * mapping has not been removed.  The set supports element removal via
+     * the {@code Iterator.remove}, {@code Set.remove}, {@code removeAll},
+     * {@code retainAll} and {@code clear} operations.  It does not support
+     * the {@code add} or {@code addAll} operations.
+     *
+     * @return a set view of the mappings contained in this map
+     */
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es;
+        return (es = entrySet) == null ? (entrySet = new EntrySet()) : es;
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        public final int size() {
+            return size;
+        }
+
+        public final void clear() {
+            CompactHashMap.this.clear();
+        }
+
+        public final Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        public final boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            Object key = e.getKey();
+            int i = find(hash(key), key);
+            return i >= 0 &&
+                    Objects.equals(table[(i << 1) + 1], e.getValue());
+        }
+
+        public final boolean remove(Object o) {
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return CompactHashMap.this.remove(e.getKey(), e.getValue());
+            }
+            return false;
+        }
+
+        public final Spliterator<Map.Entry<K, V>> spliterator() {
+            return new EntrySpliterator<>(CompactHashMap.this, 0, -1, 0, 0);
+        }
+
+        public final void forEach(Consumer<? super Map.Entry<K, V>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            long[] c;
+            if ((c = ctrl) != null && size > 0) {
+                int mc = modCount;
+                for (int i = 0, n = hashes.length; i < n; ++i) {
+                    if (ctrlAt(c, i) < EMPTY)
+                        action.accept(new SlotEntry<>(CompactHashMap.this, i));
+                }
+                if (modCount != mc)
+                    throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * A map entry for the mapping in a slot.  The entry snapshots the key
+     * and value, and writes {@code setValue} through to the slot for as
+     * long as the slot still holds the same key.
+     */
+    static final class SlotEntry<K, V> implements Map.Entry<K, V> {
+        final CompactHashMap<K, V> map;
+        final int slot;
+        final K key;
+        V value;
+
+        @SuppressWarnings("unchecked")
+        SlotEntry(CompactHashMap<K, V> map, int slot) {
+            this.map = map;
+            this.slot = slot;
+            this.key = (K) map.table[slot << 1];
+            this.value = (V) map.table[(slot << 1) + 1];
+        }
+
+        public final K getKey() {
+            return key;
+        }
+
+        public final V getValue() {
+            return value;
+        }
+
+        public final V setValue(V newValue) {
+            CompactHashMap<K, V> m = map;
+            int i = slot;
+            Object[] tab = m.table;
+            if ((i << 1) >= tab.length || tab[i << 1] != key ||
+                    ctrlAt(m.ctrl, i) >= EMPTY)
+                i = m.find(hash(key), key);
+            if (i < 0)
+                throw new IllegalStateException("Entry was removed");
+            V old = value;
+            m.table[(i << 1) + 1] = value = newValue;
+            return old;
+        }
+
+        public final boolean equals(Object o) {
+            if (o == this)
+                return true;
+            if (o instanceof Map.Entry) {
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+                return Objects.equals(key, e.getKey()) &&
+                        Objects.equals(value, e.getValue());
+            }
+            return false;
+        }
+
+        public final int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(value);
+        }
+
+        public final String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    /* ---------------- Iterators -------------- */
+
+    abstract class SlotIterator {
+        int next;              // next slot to return, or capacity
+        int current;           // slot last returned, or -1
+        int expectedModCount;  // for fast-fail
+
+        SlotIterator() {
+            expectedModCount = modCount;
+            current = -1;
+            next = (ctrl == null || size == 0) ? capacity() : advance(0);
+        }
+
+        final int capacity() {
+            return (hashes == null) ? 0 : hashes.length;
+        }
+
+        final int advance(int i) {
+            long[] c = ctrl;
+            int n = hashes.length;
+            while (i < n) {
+                // skip whole groups without mappings
+                long full = ~c[i >>> 3] & MSBS;
+                full &= -1L << ((i & 7) << 3);
+                if (full != 0L)
+                    return (i & ~7) + lowestSlot(full);
+                i = (i & ~7) + GROUP_WIDTH;
+            }
+            return n;
+        }
+
+        public final boolean hasNext() {
+            return next < capacity();
+        }
+
+        final int nextSlot() {
+            int i = next;
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (i >= capacity())
+                throw new NoSuchElementException();
+            current = i;
+            next = advance(i + 1);
+            return i;
+        }
+
+        public final void remove() {
+            int i = current;
+            if (i < 0)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            current = -1;
+            // removal never moves other mappings, so iteration continues
+            removeSlot(i);
+            expectedModCount = modCount;
+        }
+    }
+
+    final class KeyIterator extends SlotIterator
+            implements Iterator<K> {
+        @SuppressWarnings("unchecked")
+        public final K next() {
+            return (K) table[nextSlot() << 1];
+        }
+    }
+
+    final class ValueIterator extends SlotIterator
+            implements Iterator<V> {
+        @SuppressWarnings("unchecked")
+        public final V next() {
+            return (V) table[(nextSlot() << 1) + 1];
+        }
+    }
+
+    final class EntryIterator extends SlotIterator
+            implements Iterator<Map.Entry<K, V>> {
+        public final Map.Entry<K, V> next() {
+            return new SlotEntry<>(CompactHashMap.this, nextSlot());
+        }
+    }
+
+    /* ---------------- Spliterators -------------- */
+
+    /**
+     * Base of the spliterators over the slots {@code [index, fence)} of the
+     * table.  Splitting halves the slot range, rounded to whole groups.
+     */
+    static class CompactHashMapSpliterator<K, V> {
+        final CompactHashMap<K, V> map;
+        int index;                  // current index, modified on advance/split
+        int fence;                  // one past last index
+        int est;                    // size estimate
+        int expectedModCount;       // for comodification checks
+
+        CompactHashMapSpliterator(CompactHashMap<K, V> m, int origin,
+                                  int fence, int est,
+                                  int expectedModCount) {
+            this.map = m;
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+        }
+
+        final int getFence() { // initialize fence and size on first use
+            int hi;
+            if ((hi = fence) < 0) {
+                CompactHashMap<K, V> m = map;
+                est = m.size;
+                expectedModCount = m.modCount;
+                hi = fence = (m.hashes == null) ? 0 : m.hashes.length;
+            }
+            return hi;
+        }
+
+        final int splitPoint() {
+            int hi = getFence(), lo = index;
+            int mid = ((lo + hi) >>> 1) & ~(GROUP_WIDTH - 1);
+            return (mid <= lo) ? -1 : mid;
+        }
+
+        public final long estimateSize() {
+            getFence(); // force init
+            return (long) est;
+        }
+
+        public final int characteristics() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
+                    distinct();
+        }
+
+        int distinct() {
+            return Spliterator.DISTINCT;
+        }
+
+        /**
+         * Returns the next full slot in [index, fence), advancing index
+         * past it, or -1.
+         */
+        final int nextSlot() {
+            int hi = getFence();
+            long[] c = map.ctrl;
+            if (c != null && map.hashes.length >= hi) {
+                while (index < hi) {
+                    int i = index++;
+                    if (ctrlAt(c, i) < EMPTY)
+                        return i;
+                }
+            }
+            return -1;
+        }
+
+        final void checkForComodification() {
+            if (map.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    static final class KeySpliterator<K, V>
+            extends CompactHashMapSpliterator<K, V>
+            implements Spliterator<K> {
+        KeySpliterator(CompactHashMap<K, V> m, int origin, int fence, int est,
+                       int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public KeySpliterator<K, V> trySplit() {
+            int lo = index, mid = splitPoint();
+            return (mid < 0) ? null :
+                    new KeySpliterator<>(map, lo, index = mid, est >>>= 1,
+                            expectedModCount);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            Object[] tab = map.table;
+            for (int i; (i = nextSlot()) >= 0; )
+                action.accept((K) tab[i << 1]);
+            checkForComodification();
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super K> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int i = nextSlot();
+            if (i < 0)
+                return false;
+            action.accept((K) map.table[i << 1]);
+            checkForComodification();
+            return true;
+        }
+    }
+
+    static final class ValueSpliterator<K, V>
+            extends CompactHashMapSpliterator<K, V>
+            implements Spliterator<V> {
+        ValueSpliterator(CompactHashMap<K, V> m, int origin, int fence,
+                         int est, int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public ValueSpliterator<K, V> trySplit() {
+            int lo = index, mid = splitPoint();
+            return (mid < 0) ? null :
+                    new ValueSpliterator<>(map, lo, index = mid, est >>>= 1,
+                            expectedModCount);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            Object[] tab = map.table;
+            for (int i; (i = nextSlot()) >= 0; )
+                action.accept((V) tab[(i << 1) + 1]);
+            checkForComodification();
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int i = nextSlot();
+            if (i < 0)
+                return false;
+            action.accept((V) map.table[(i << 1) + 1]);
+            checkForComodification();
+            return true;
+        }
+
+        @Override
+        int distinct() {
+            return 0;
+        }
+    }
+
+    static final class EntrySpliterator<K, V>
+            extends CompactHashMapSpliterator<K, V>
+            implements Spliterator<Map.Entry<K, V>> {
+        EntrySpliterator(CompactHashMap<K, V> m, int origin, int fence,
+                         int est, int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public EntrySpliterator<K, V> trySplit() {
+            int lo = index, mid = splitPoint();
+            return (mid < 0) ? null :
+                    new EntrySpliterator<>(map, lo, index = mid, est >>>= 1,
+                            expectedModCount);
+        }
+
+        public void forEachRemaining(Consumer<? super Map.Entry<K, V>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            for (int i; (i = nextSlot()) >= 0; )
+                action.accept(new SlotEntry<>(map, i));
+            checkForComodification();
+        }
+
+        public boolean tryAdvance(Consumer<? super Map.Entry<K, V>> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int i = nextSlot();
+            if (i < 0)
+                return false;
+            action.accept(new SlotEntry<>(map, i));
+            checkForComodification();
+            return true;
+        }
+    }
+
+    /* ---------------- Cloning and serialization -------------- */
+
+    /**
+     * Returns a shallow copy of this {@code CompactHashMap} instance: the
+     * keys and values themselves are not cloned.
+     *
+     * @return a shallow copy of this map
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object clone() {
+        CompactHashMap<K, V> result;
+        try {
+            result = (CompactHashMap<K, V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        result.keySet = null;
+        result.values = null;
+        result.entrySet = null;
+        result.modCount = 0;
+        if (ctrl != null) {
+            result.ctrl = ctrl.clone();
+            result.hashes = hashes.clone();
+            result.table = table.clone();
+        }
+        return result;
+    }
+
+    /**
+     * Save the state of the {@code CompactHashMap} instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData The number of key-value mappings (int), followed by the
+     * key (Object) and value (Object) for each key-value mapping.  The
+     * key-value mappings are emitted in no particular order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        int mc = modCount;
+        s.defaultWriteObject();
+        s.writeInt(size);
+        long[] c;
+        if ((c = ctrl) != null && size > 0) {
+            Object[] tab = table;
+            for (int i = 0, n = hashes.length; i < n; ++i) {
+                if (ctrlAt(c, i) < EMPTY) {
+                    s.writeObject(tab[i << 1]);
+                    s.writeObject(tab[(i << 1) + 1]);
+                }
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Reconstitute the {@code CompactHashMap} instance from a stream
+     * (i.e., deserialize it).
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                    mappings);
+        initialCapacity = capacityFor(mappings);
+        for (int i = 0; i < mappings; i++) {
+            K key = (K) s.readObject();
+            V value = (V) s.readObject();
+            putVal(hash(key), key, value, false);
+        }
+    }
+}
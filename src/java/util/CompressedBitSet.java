@@ -0,0 +1,1849 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A compressed vector of bits, with the operations of {@link BitSet}.  The
+ * bits of a {@code CompressedBitSet} are indexed by nonnegative integers,
+ * and all bits initially have the value {@code false}.
+ *
+ * <p>A {@code BitSet} allocates one word for every 64 bits up to its
+ * highest set bit, so a few large indices cost as much memory as a dense
+ * set.  This class instead splits the index space into chunks of 2<sup>16</sup>
+ * bits, keyed by the high 16 bits of the index, and stores only the chunks
+ * that contain a set bit, each in whichever of three containers is the
+ * smallest for its contents, in the manner of Roaring bitmaps:
+ * <ul>
+ * <li>a sorted array of the low 16 bits of the set indices, for chunks
+ *     with at most 4096 set bits;
+ * <li>a bitmap of 1024 words, for denser chunks;
+ * <li>a sorted array of runs of consecutive set bits, for chunks filled by
+ *     ranges, such as those set by {@link #set(int, int)}.
+ * </ul>
+ * Memory use is thus proportional to the number of set bits, or less, and
+ * never to the magnitude of the indices.  Point updates expand a run
+ * container into an array or a bitmap; {@link #compact} converts every
+ * container back to its smallest representation.
+ *
+ * <p>Logical operations proceed chunk by chunk, skipping chunks absent
+ * from either operand where the operation allows it, and combine two
+ * containers without decompressing them when one of them is an array.
+ * {@link #and(CompressedBitSet...)} intersects any number of sets at once,
+ * visiting only the chunks of the set with the fewest chunks and
+ * intersecting each chunk's containers smallest first.
+ *
+ * <p>{@link #writeTo} stores a set in a compact, position-independent
+ * little-endian form whose header gives the offset of every container, so
+ * that it can be written to a file, memory-mapped and read back with
+ * {@link #valueOf(ByteBuffer)}.
+ *
+ * <p>Unless otherwise noted, passing a null parameter to any of the
+ * methods in a {@code CompressedBitSet} will result in a
+ * {@code NullPointerException}.
+ *
+ * <p>A {@code CompressedBitSet} is not safe for multithreaded use without
+ * external synchronization.
+ *
+ * @see BitSet
+ * @since 1.8
+ */
+public class CompressedBitSet implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = -1284934851278120441L;
+
+    /**
+     * The largest cardinality of an array container; denser chunks are
+     * stored as bitmaps, which take 8 KiB whatever their contents.
+     */
+    static final int MAX_ARRAY_CARDINALITY = 4096;
+
+    /**
+     * The number of words in a bitmap container.
+     */
+    static final int BITMAP_WORDS = 1024;
+
+    /**
+     * Number of bits in a chunk.
+     */
+    static final int CHUNK_BITS = 1 << 16;
+
+    /**
+     * First int of the serialized form.
+     */
+    static final int SERIAL_COOKIE = 0x52424D31;
+
+    /**
+     * The high 16 bits of the indices in each chunk, in ascending order.
+     */
+    transient char[] keys;
+
+    /**
+     * The containers of the chunks, parallel to {@link #keys}; never empty.
+     */
+    transient Container[] containers;
+
+    /**
+     * The number of chunks in use.
+     */
+    transient int count;
+
+    /**
+     * Creates a new, empty bit set.
+     */
+    public CompressedBitSet() {
+        keys = new char[4];
+        containers = new Container[4];
+    }
+
+    /* ---------------- Containers -------------- */
+
+    /**
+     * The set bits of one chunk, as values in [0, 2<sup>16</sup>).  Updates
+     * return the container that holds the result, which may be this one or
+     * a new one of a different kind; callers discard empty containers.
+     */
+    abstract static class Container implements Cloneable {
+        abstract int cardinality();
+
+        abstract boolean contains(int x);
+
+        abstract Container add(int x);
+
+        abstract Container remove(int x);
+
+        /** Returns the least member that is at least x, or -1. */
+        abstract int nextSet(int x);
+
+        /** Returns the greatest member that is at most x, or -1. */
+        abstract int prevSet(int x);
+
+        /** Returns the least non-member that is at least x, or 2^16. */
+        abstract int nextClear(int x);
+
+        /** Returns the greatest non-member that is at most x, or -1. */
+        abstract int prevClear(int x);
+
+        /** Sets the bits of the members in w. */
+        abstract void orInto(long[] w);
+
+        /** Flips the bits of the members in w. */
+        abstract void xorInto(long[] w);
+
+        /** Clears the bits of the members in w. */
+        abstract void andNotFrom(long[] w);
+
+        /** Passes base | v to action for each member v at least from. */
+        abstract void forEach(int from, int base, IntConsumer action);
+
+        abstract int serializedSize();
+
+        abstract void write(ByteBuffer out);
+
+        abstract Container copy();
+
+        /** Returns the members as a fresh bitmap. */
+        long[] toWords() {
+            long[] w = new long[BITMAP_WORDS];
+            orInto(w);
+            return w;
+        }
+
+        Container addRange(int from, int to) {
+            long[] w = toWords();
+            setBits(w, from, to);
+            return fromWords(w);
+        }
+
+        Container removeRange(int from, int to) {
+            long[] w = toWords();
+            clearBits(w, from, to);
+            return fromWords(w);
+        }
+
+        Container flipRange(int from, int to) {
+            long[] w = toWords();
+            flipBits(w, from, to);
+            return fromWords(w);
+        }
+    }
+
+    /**
+     * A sorted array of at most {@link #MAX_ARRAY_CARDINALITY} members.
+     */
+    static final class ArrayContainer extends Container {
+        char[] content;
+        int cardinality;
+
+        ArrayContainer(int capacity) {
+            content = new char[capacity];
+        }
+
+        ArrayContainer(char[] content, int cardinality) {
+            this.content = content;
+            this.cardinality = cardinality;
+        }
+
+        int cardinality() {
+            return cardinality;
+        }
+
+        boolean contains(int x) {
+            return search(content, cardinality, x) >= 0;
+        }
+
+        Container add(int x) {
+            int i = search(content, cardinality, x);
+            if (i >= 0)
+                return this;
+            if (cardinality == MAX_ARRAY_CARDINALITY) {
+                long[] w = toWords();
+                w[x >>> 6] |= 1L << x;
+                return new BitmapContainer(w, cardinality + 1);
+            }
+            i = -i - 1;
+            if (cardinality == content.length) {
+                int newCapacity = Math.min(cardinality + (cardinality >> 1) + 4,
+                        MAX_ARRAY_CARDINALITY);
+                content = Arrays.copyOf(content, newCapacity);
+            }
+            System.arraycopy(content, i, content, i + 1, cardinality - i);
+            content[i] = (char) x;
+            cardinality++;
+            return this;
+        }
+
+        Container remove(int x) {
+            int i = search(content, cardinality, x);
+            if (i >= 0) {
+                System.arraycopy(content, i + 1, content, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        int nextSet(int x) {
+            int i = search(content, cardinality, x);
+            if (i < 0)
+                i = -i - 1;
+            return (i < cardinality) ? content[i] : -1;
+        }
+
+        int prevSet(int x) {
+            int i = search(content, cardinality, x);
+            if (i < 0)
+                i = -i - 2;
+            return (i >= 0) ? content[i] : -1;
+        }
+
+        int nextClear(int x) {
+            int i = search(content, cardinality, x);
+            if (i < 0)
+                return x;
+            while (i + 1 < cardinality && content[i + 1] == content[i] + 1)
+                i++;
+            return content[i] + 1;
+        }
+
+        int prevClear(int x) {
+            int i = search(content, cardinality, x);
+            if (i < 0)
+                return x;
+            while (i > 0 && content[i - 1] == content[i] - 1)
+                i--;
+            return content[i] - 1;
+        }
+
+        void orInto(long[] w) {
+            for (int i = 0; i < cardinality; i++) {
+                int v = content[i];
+                w[v >>> 6] |= 1L << v;
+            }
+        }
+
+        void xorInto(long[] w) {
+            for (int i = 0; i < cardinality; i++) {
+                int v = content[i];
+                w[v >>> 6] ^= 1L << v;
+            }
+        }
+
+        void andNotFrom(long[] w) {
+            for (int i = 0; i < cardinality; i++) {
+                int v = content[i];
+                w[v >>> 6] &= ~(1L << v);
+            }
+        }
+
+        void forEach(int from, int base, IntConsumer action) {
+            int i = search(content, cardinality, from);
+            for (i = (i < 0) ? -i - 1 : i; i < cardinality; i++)
+                action.accept(base | content[i]);
+        }
+
+        Container removeRange(int from, int to) {
+            int lo = search(content, cardinality, from);
+            int hi = search(content, cardinality, to);
+            lo = (lo < 0) ? -lo - 1 : lo;
+            hi = (hi < 0) ? -hi - 1 : hi;
+            System.arraycopy(content, hi, content, lo, cardinality - hi);
+            cardinality -= hi - lo;
+            return this;
+        }
+
+        /**
+         * Returns the members of this container that are also members of
+         * c, which may be of any kind.
+         */
+        ArrayContainer filter(Container c, boolean keep) {
+            char[] a = content;
+            char[] r = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < cardinality; i++)
+                if (c.contains(a[i]) == keep)
+                    r[n++] = a[i];
+            return new ArrayContainer(r, n);
+        }
+
+        int serializedSize() {
+            return 2 * cardinality;
+        }
+
+        void write(ByteBuffer out) {
+            for (int i = 0; i < cardinality; i++)
+                out.putChar(content[i]);
+        }
+
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(content, cardinality), cardinality);
+        }
+    }
+
+    /**
+     * A bitmap of the 2<sup>16</sup> bits of a chunk, for more than
+     * {@link #MAX_ARRAY_CARDINALITY} members.
+     */
+    static final class BitmapContainer extends Container {
+        final long[] words;
+        int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        int cardinality() {
+            return cardinality;
+        }
+
+        boolean contains(int x) {
+            return (words[x >>> 6] & (1L << x)) != 0;
+        }
+
+        Container add(int x) {
+            long w = words[x >>> 6];
+            if ((w & (1L << x)) == 0) {
+                words[x >>> 6] = w | (1L << x);
+                cardinality++;
+            }
+            return this;
+        }
+
+        Container remove(int x) {
+            long w = words[x >>> 6];
+            if ((w & (1L << x)) != 0) {
+                words[x >>> 6] = w & ~(1L << x);
+                if (--cardinality <= MAX_ARRAY_CARDINALITY)
+                    return arrayFromWords(words, cardinality);
+            }
+            return this;
+        }
+
+        int nextSet(int x) {
+            int u = x >>> 6;
+            long word = words[u] & (-1L << x);
+            while (true) {
+                if (word != 0)
+                    return (u << 6) + Long.numberOfTrailingZeros(word);
+                if (++u == BITMAP_WORDS)
+                    return -1;
+                word = words[u];
+            }
+        }
+
+        int prevSet(int x) {
+            int u = x >>> 6;
+            long word = words[u] & (-1L >>> -(x + 1));
+            while (true) {
+                if (word != 0)
+                    return ((u + 1) << 6) - 1 - Long.numberOfLeadingZeros(word);
+                if (u-- == 0)
+                    return -1;
+                word = words[u];
+            }
+        }
+
+        int nextClear(int x) {
+            int u = x >>> 6;
+            long word = ~words[u] & (-1L << x);
+            while (true) {
+                if (word != 0)
+                    return (u << 6) + Long.numberOfTrailingZeros(word);
+                if (++u == BITMAP_WORDS)
+                    return CHUNK_BITS;
+                word = ~words[u];
+            }
+        }
+
+        int prevClear(int x) {
+            int u = x >>> 6;
+            long word = ~words[u] & (-1L >>> -(x + 1));
+            while (true) {
+                if (word != 0)
+                    return ((u + 1) << 6) - 1 - Long.numberOfLeadingZeros(word);
+                if (u-- == 0)
+                    return -1;
+                word = ~words[u];
+            }
+        }
+
+        void orInto(long[] w) {
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                w[i] |= words[i];
+        }
+
+        void xorInto(long[] w) {
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                w[i] ^= words[i];
+        }
+
+        void andNotFrom(long[] w) {
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                w[i] &= ~words[i];
+        }
+
+        void forEach(int from, int base, IntConsumer action) {
+            int u = from >>> 6;
+            long word = words[u] & (-1L << from);
+            while (true) {
+                while (word != 0) {
+                    action.accept(base | (u << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+                if (++u == BITMAP_WORDS)
+                    return;
+                word = words[u];
+            }
+        }
+
+        long[] toWords() {
+            return words.clone();
+        }
+
+        int serializedSize() {
+            return 8 * BITMAP_WORDS;
+        }
+
+        void write(ByteBuffer out) {
+            for (long w : words)
+                out.putLong(w);
+        }
+
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+    }
+
+    /**
+     * Runs of consecutive members, each stored as its first member and its
+     * length minus one.  Runs are sorted, and neither overlap nor touch.
+     */
+    static final class RunContainer extends Container {
+        final char[] runs;
+        final int nruns;
+        final int cardinality;
+
+        RunContainer(char[] runs, int nruns) {
+            this.runs = runs;
+            this.nruns = nruns;
+            int c = 0;
+            for (int i = 0; i < nruns; i++)
+                c += runs[2 * i + 1] + 1;
+            this.cardinality = c;
+        }
+
+        /** Returns the members in [from, to), as one run. */
+        static RunContainer range(int from, int to) {
+            return new RunContainer(new char[] {(char) from, (char) (to - from - 1)}, 1);
+        }
+
+        int start(int i) {
+            return runs[2 * i];
+        }
+
+        int end(int i) { // inclusive
+            return runs[2 * i] + runs[2 * i + 1];
+        }
+
+        /** Returns the index of the last run starting at or before x, or -1. */
+        int runBefore(int x) {
+            int lo = 0, hi = nruns - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (runs[2 * mid] <= x)
+                    lo = mid + 1;
+                else
+                    hi = mid - 1;
+            }
+            return hi;
+        }
+
+        int cardinality() {
+            return cardinality;
+        }
+
+        boolean contains(int x) {
+            int i = runBefore(x);
+            return i >= 0 && x <= end(i);
+        }
+
+        /** Point updates give up the runs for an array or a bitmap. */
+        Container add(int x) {
+            return contains(x) ? this : expand().add(x);
+        }
+
+        Container remove(int x) {
+            return contains(x) ? expand().remove(x) : this;
+        }
+
+        private Container expand() {
+            long[] w = toWords();
+            return (cardinality <= MAX_ARRAY_CARDINALITY)
+                    ? arrayFromWords(w, cardinality)
+                    : new BitmapContainer(w, cardinality);
+        }
+
+        int nextSet(int x) {
+            int i = runBefore(x);
+            if (i >= 0 && x <= end(i))
+                return x;
+            return (++i < nruns) ? start(i) : -1;
+        }
+
+        int prevSet(int x) {
+            int i = runBefore(x);
+            return (i >= 0) ? Math.min(x, end(i)) : -1;
+        }
+
+        int nextClear(int x) {
+            int i = runBefore(x);
+            return (i >= 0 && x <= end(i)) ? end(i) + 1 : x;
+        }
+
+        int prevClear(int x) {
+            int i = runBefore(x);
+            return (i >= 0 && x <= end(i)) ? start(i) - 1 : x;
+        }
+
+        void orInto(long[] w) {
+            for (int i = 0; i < nruns; i++)
+                setBits(w, start(i), end(i) + 1);
+        }
+
+        void xorInto(long[] w) {
+            for (int i = 0; i < nruns; i++)
+                flipBits(w, start(i), end(i) + 1);
+        }
+
+        void andNotFrom(long[] w) {
+            for (int i = 0; i < nruns; i++)
+                clearBits(w, start(i), end(i) + 1);
+        }
+
+        void forEach(int from, int base, IntConsumer action) {
+            for (int i = Math.max(runBefore(from), 0); i < nruns; i++) {
+                for (int v = Math.max(start(i), from), e = end(i); v <= e; v++)
+                    action.accept(base | v);
+            }
+        }
+
+        int serializedSize() {
+            return 2 + 4 * nruns;
+        }
+
+        void write(ByteBuffer out) {
+            out.putChar((char) nruns);
+            for (int i = 0; i < 2 * nruns; i++)
+                out.putChar(runs[i]);
+        }
+
+        Container copy() {
+            return this; // immutable
+        }
+    }
+
+    /* ---------------- Container utilities -------------- */
+
+    /**
+     * Binary search for x among the first n values of a, with the result
+     * convention of {@link Arrays#binarySearch(char[], char)}.
+     */
+    static int search(char[] a, int n, int x) {
+        int lo = 0, hi = n - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int v = a[mid];
+            if (v < x)
+                lo = mid + 1;
+            else if (v > x)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
+    /*
+     * Range operations on bitmaps, for bits in [from, to), to > from.
+     */
+
+    static void setBits(long[] w, int from, int to) {
+        int s = from >>> 6, e = (to - 1) >>> 6;
+        long first = -1L << from, last = -1L >>> -to;
+        if (s == e) {
+            w[s] |= first & last;
+        } else {
+            w[s] |= first;
+            for (int i = s + 1; i < e; i++)
+                w[i] = -1L;
+            w[e] |= last;
+        }
+    }
+
+    static void clearBits(long[] w, int from, int to) {
+        int s = from >>> 6, e = (to - 1) >>> 6;
+        long first = -1L << from, last = -1L >>> -to;
+        if (s == e) {
+            w[s] &= ~(first & last);
+        } else {
+            w[s] &= ~first;
+            for (int i = s + 1; i < e; i++)
+                w[i] = 0;
+            w[e] &= ~last;
+        }
+    }
+
+    static void flipBits(long[] w, int from, int to) {
+        int s = from >>> 6, e = (to - 1) >>> 6;
+        long first = -1L << from, last = -1L >>> -to;
+        if (s == e) {
+            w[s] ^= first & last;
+        } else {
+            w[s] ^= first;
+            for (int i = s + 1; i < e; i++)
+                w[i] = ~w[i];
+            w[e] ^= last;
+        }
+    }
+
+    static ArrayContainer arrayFromWords(long[] w, int cardinality) {
+        char[] a = new char[cardinality];
+        int n = 0;
+        for (int u = 0; u < BITMAP_WORDS; u++) {
+            for (long word = w[u]; word != 0; word &= word - 1)
+                a[n++] = (char) ((u << 6) + Long.numberOfTrailingZeros(word));
+        }
+        return new ArrayContainer(a, n);
+    }
+
+    static RunContainer runsFromWords(long[] w, int nruns) {
+        char[] runs = new char[2 * nruns];
+        int r = 0, u = 0;
+        long word = w[0];
+        while (true) {
+            while (word == 0) {
+                if (++u == BITMAP_WORDS)
+                    return new RunContainer(runs, r >>> 1);
+                word = w[u];
+            }
+            int start = (u << 6) + Long.numberOfTrailingZeros(word);
+            word |= word - 1; // fill in below the run, to find its end
+            while (word == -1L) {
+                if (++u == BITMAP_WORDS)
+                    break;
+                word = w[u];
+            }
+            int end = (u == BITMAP_WORDS) ? CHUNK_BITS :
+                    (u << 6) + Long.numberOfTrailingZeros(~word);
+            runs[r++] = (char) start;
+            runs[r++] = (char) (end - start - 1);
+            if (u == BITMAP_WORDS)
+                return new RunContainer(runs, r >>> 1);
+            word &= word + 1; // clear the run
+        }
+    }
+
+    /**
+     * Returns the smallest container holding the members of bitmap w, which
+     * it may keep, or null if w is empty.
+     */
+    static Container fromWords(long[] w) {
+        int cardinality = 0, nruns = 0;
+        long carry = 0;
+        for (int u = 0; u < BITMAP_WORDS; u++) {
+            long word = w[u];
+            cardinality += Long.bitCount(word);
+            nruns += Long.bitCount(word & ~((word << 1) | carry)); // run starts
+            carry = word >>> 63;
+        }
+        if (cardinality == 0)
+            return null;
+        int runBytes = 2 + 4 * nruns;
+        if (runBytes < Math.min(2 * cardinality, 8 * BITMAP_WORDS))
+            return runsFromWords(w, nruns);
+        if (cardinality <= MAX_ARRAY_CARDINALITY)
+            return arrayFromWords(w, cardinality);
+        return new BitmapContainer(w, cardinality);
+    }
+
+    static long[] wordsOf(Container c) {
+        return (c instanceof BitmapContainer) ? ((BitmapContainer) c).words : c.toWords();
+    }
+
+    static Container and(Container a, Container b) {
+        Container r;
+        if (a instanceof ArrayContainer)
+            r = ((ArrayContainer) a).filter(b, true);
+        else if (b instanceof ArrayContainer)
+            r = ((ArrayContainer) b).filter(a, true);
+        else {
+            long[] w = a.toWords(), v = wordsOf(b);
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                w[i] &= v[i];
+            return fromWords(w);
+        }
+        return (r.cardinality() == 0) ? null : r;
+    }
+
+    static Container or(Container a, Container b) {
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer &&
+                a.cardinality() + b.cardinality() <= MAX_ARRAY_CARDINALITY) {
+            ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+            char[] r = new char[x.cardinality + y.cardinality];
+            int i = 0, j = 0, n = 0;
+            while (i < x.cardinality && j < y.cardinality) {
+                char u = x.content[i], v = y.content[j];
+                if (u <= v) {
+                    r[n++] = u;
+                    i++;
+                    if (u == v)
+                        j++;
+                } else {
+                    r[n++] = v;
+                    j++;
+                }
+            }
+            while (i < x.cardinality)
+                r[n++] = x.content[i++];
+            while (j < y.cardinality)
+                r[n++] = y.content[j++];
+            return new ArrayContainer(r, n);
+        }
+        long[] w = a.toWords();
+        b.orInto(w);
+        return fromWords(w);
+    }
+
+    static Container xor(Container a, Container b) {
+        long[] w = a.toWords();
+        b.xorInto(w);
+        return fromWords(w);
+    }
+
+    static Container andNot(Container a, Container b) {
+        if (a instanceof ArrayContainer) {
+            ArrayContainer r = ((ArrayContainer) a).filter(b, false);
+            return (r.cardinality == 0) ? null : r;
+        }
+        long[] w = a.toWords();
+        b.andNotFrom(w);
+        return fromWords(w);
+    }
+
+    static boolean intersects(Container a, Container b) {
+        if (b instanceof ArrayContainer) {
+            Container t = a;
+            a = b;
+            b = t;
+        }
+        if (a instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a;
+            for (int i = 0; i < x.cardinality; i++)
+                if (b.contains(x.content[i]))
+                    return true;
+            return false;
+        }
+        long[] w = wordsOf(a), v = wordsOf(b);
+        for (int i = 0; i < BITMAP_WORDS; i++)
+            if ((w[i] & v[i]) != 0)
+                return true;
+        return false;
+    }
+
+    static boolean sameBits(Container a, Container b) {
+        if (a.cardinality() != b.cardinality())
+            return false;
+        if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+            ArrayContainer x = (ArrayContainer) a, y = (ArrayContainer) b;
+            for (int i = 0; i < x.cardinality; i++)
+                if (x.content[i] != y.content[i])
+                    return false;
+            return true;
+        }
+        return Arrays.equals(wordsOf(a), wordsOf(b));
+    }
+
+    /* ---------------- Chunk management -------------- */
+
+    /**
+     * Returns the index of the chunk with the given key, or
+     * -(insertion point) - 1.  Appending in ascending order is the common
+     * case, so the last chunk is checked first.
+     */
+    private int indexOf(int key) {
+        int n = count;
+        if (n == 0 || keys[n - 1] < key)
+            return -(n + 1);
+        if (keys[n - 1] == key)
+            return n - 1;
+        return search(keys, n - 1, key);
+    }
+
+    private void insertChunk(int i, int key, Container c) {
+        if (count == keys.length) {
+            int newCapacity = count + (count >> 1) + 1;
+            keys = Arrays.copyOf(keys, newCapacity);
+            containers = Arrays.copyOf(containers, newCapacity);
+        }
+        System.arraycopy(keys, i, keys, i + 1, count - i);
+        System.arraycopy(containers, i, containers, i + 1, count - i);
+        keys[i] = (char) key;
+        containers[i] = c;
+        count++;
+    }
+
+    private void removeChunk(int i) {
+        System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, count - i - 1);
+        containers[--count] = null;
+    }
+
+    /**
+     * Stores c as the container of chunk i, or removes the chunk if c is
+     * empty.  Returns true if the chunk was removed.
+     */
+    private boolean setChunk(int i, Container c) {
+        if (c == null || c.cardinality() == 0) {
+            removeChunk(i);
+            return true;
+        }
+        containers[i] = c;
+        return false;
+    }
+
+    /**
+     * Appends a chunk with a key greater than all others, for the
+     * operations that build a new set in key order.
+     */
+    private void appendChunk(int key, Container c) {
+        if (count == keys.length) {
+            int newCapacity = count + (count >> 1) + 1;
+            keys = Arrays.copyOf(keys, newCapacity);
+            containers = Arrays.copyOf(containers, newCapacity);
+        }
+        keys[count] = (char) key;
+        containers[count++] = c;
+    }
+
+    /**
+     * Checks that fromIndex ... toIndex is a valid range of bit indices.
+     */
+    private static void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        if (toIndex < 0)
+            throw new IndexOutOfBoundsException("toIndex < 0: " + toIndex);
+        if (fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex +
+                    " > toIndex: " + toIndex);
+    }
+
+    /* ---------------- Single bits -------------- */
+
+    /**
+     * Sets the bit at the specified index to {@code true}.
+     *
+     * @param bitIndex a bit index
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public void set(int bitIndex) {
+        if (bitIndex < 0)
+            throw new IndexOutOfBoundsException("bitIndex < 0: " + bitIndex);
+        int key = bitIndex >>> 16;
+        int i = indexOf(key);
+        if (i >= 0) {
+            containers[i] = containers[i].add(bitIndex & 0xFFFF);
+        } else {
+            ArrayContainer c = new ArrayContainer(4);
+            c.add(bitIndex & 0xFFFF);
+            insertChunk(-i - 1, key, c);
+        }
+    }
+
+    /**
+     * Sets the bit at the specified index to the specified value.
+     *
+     * @param bitIndex a bit index
+     * @param value    a boolean value to set
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public void set(int bitIndex, boolean value) {
+        if (value)
+            set(bitIndex);
+        else
+            clear(bitIndex);
+    }
+
+    /**
+     * Sets the bit specified by the index to {@code false}.
+     *
+     * @param bitIndex the index of the bit to be cleared
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public void clear(int bitIndex) {
+        if (bitIndex < 0)
+            throw new IndexOutOfBoundsException("bitIndex < 0: " + bitIndex);
+        int i = indexOf(bitIndex >>> 16);
+        if (i >= 0)
+            setChunk(i, containers[i].remove(bitIndex & 0xFFFF));
+    }
+
+    /**
+     * Sets the bit at the specified index to the complement of its
+     * current value.
+     *
+     * @param bitIndex the index of the bit to flip
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public void flip(int bitIndex) {
+        if (get(bitIndex))
+            clear(bitIndex);
+        else
+            set(bitIndex);
+    }
+
+    /**
+     * Returns the value of the bit with the specified index.
+     *
+     * @param bitIndex the bit index
+     * @return the value of the bit with the specified index
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public boolean get(int bitIndex) {
+        if (bitIndex < 0)
+            throw new IndexOutOfBoundsException("bitIndex < 0: " + bitIndex);
+        int i = indexOf(bitIndex >>> 16);
+        return i >= 0 && containers[i].contains(bitIndex & 0xFFFF);
+    }
+
+    /* ---------------- Ranges -------------- */
+
+    /**
+     * Sets the bits from the specified {@code fromIndex} (inclusive) to the
+     * specified {@code toIndex} (exclusive) to {@code true}.  Chunks that
+     * the range covers entirely take a few bytes each.
+     *
+     * @param fromIndex index of the first bit to be set
+     * @param toIndex   index after the last bit to be set
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public void set(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex)
+            return;
+        int first = fromIndex >>> 16, last = (toIndex - 1) >>> 16;
+        for (int key = first; key <= last; key++) {
+            int from = (key == first) ? fromIndex & 0xFFFF : 0;
+            int to = (key == last) ? ((toIndex - 1) & 0xFFFF) + 1 : CHUNK_BITS;
+            int i = indexOf(key);
+            if (i < 0)
+                insertChunk(-i - 1, key, RunContainer.range(from, to));
+            else if (from == 0 && to == CHUNK_BITS)
+                containers[i] = RunContainer.range(from, to);
+            else
+                containers[i] = containers[i].addRange(from, to);
+        }
+    }
+
+    /**
+     * Sets the bits from the specified {@code fromIndex} (inclusive) to the
+     * specified {@code toIndex} (exclusive) to the specified value.
+     *
+     * @param fromIndex index of the first bit to be set
+     * @param toIndex   index after the last bit to be set
+     * @param value     value to set the selected bits to
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public void set(int fromIndex, int toIndex, boolean value) {
+        if (value)
+            set(fromIndex, toIndex);
+        else
+            clear(fromIndex, toIndex);
+    }
+
+    /**
+     * Sets the bits from the specified {@code fromIndex} (inclusive) to the
+     * specified {@code toIndex} (exclusive) to {@code false}.
+     *
+     * @param fromIndex index of the first bit to be cleared
+     * @param toIndex   index after the last bit to be cleared
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public void clear(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex)
+            return;
+        int first = fromIndex >>> 16, last = (toIndex - 1) >>> 16;
+        int i = indexOf(first);
+        if (i < 0)
+            i = -i - 1;
+        while (i < count && keys[i] <= last) {
+            int key = keys[i];
+            int from = (key == first) ? fromIndex & 0xFFFF : 0;
+            int to = (key == last) ? ((toIndex - 1) & 0xFFFF) + 1 : CHUNK_BITS;
+            if (from == 0 && to == CHUNK_BITS)
+                removeChunk(i);
+            else if (!setChunk(i, containers[i].removeRange(from, to)))
+                i++;
+        }
+    }
+
+    /**
+     * Sets each bit from the specified {@code fromIndex} (inclusive) to the
+     * specified {@code toIndex} (exclusive) to the complement of its current
+     * value.
+     *
+     * @param fromIndex index of the first bit to flip
+     * @param toIndex   index after the last bit to flip
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public void flip(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex)
+            return;
+        int first = fromIndex >>> 16, last = (toIndex - 1) >>> 16;
+        for (int key = first; key <= last; key++) {
+            int from = (key == first) ? fromIndex & 0xFFFF : 0;
+            int to = (key == last) ? ((toIndex - 1) & 0xFFFF) + 1 : CHUNK_BITS;
+            int i = indexOf(key);
+            if (i < 0)
+                insertChunk(-i - 1, key, RunContainer.range(from, to));
+            else
+                setChunk(i, containers[i].flipRange(from, to));
+        }
+    }
+
+    /**
+     * Sets all of the bits in this set to {@code false}.
+     */
+    public void clear() {
+        Arrays.fill(containers, 0, count, null);
+        count = 0;
+    }
+
+    /**
+     * Returns a new {@code CompressedBitSet} composed of bits from this set
+     * from {@code fromIndex} (inclusive) to {@code toIndex} (exclusive), as
+     * {@link BitSet#get(int, int)} does.
+     *
+     * @param fromIndex index of the first bit to include
+     * @param toIndex   index after the last bit to include
+     * @return a new {@code CompressedBitSet} from a range of this set
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public CompressedBitSet get(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        CompressedBitSet result = new CompressedBitSet();
+        for (int i = nextSetBit(fromIndex); i >= 0 && i < toIndex; ) {
+            int end = Math.min(nextClearBit(i), toIndex);
+            result.set(i - fromIndex, end - fromIndex);
+            if (end == toIndex)
+                break;
+            i = nextSetBit(end);
+        }
+        return result;
+    }
+
+    /* ---------------- Searching -------------- */
+
+    /**
+     * Returns the index of the first bit that is set to {@code true}
+     * that occurs on or after the specified starting index. If no such
+     * bit exists then {@code -1} is returned.
+     *
+     * @param fromIndex the index to start checking from (inclusive)
+     * @return the index of the next set bit, or {@code -1} if there
+     *         is no such bit
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public int nextSetBit(int fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        int key = fromIndex >>> 16;
+        int i = indexOf(key);
+        if (i >= 0) {
+            int v = containers[i].nextSet(fromIndex & 0xFFFF);
+            if (v >= 0)
+                return (key << 16) | v;
+            i++;
+        } else {
+            i = -i - 1;
+        }
+        return (i < count) ? (keys[i] << 16) | containers[i].nextSet(0) : -1;
+    }
+
+    /**
+     * Returns the index of the first bit that is set to {@code false}
+     * that occurs on or after the specified starting index.
+     *
+     * @param fromIndex the index to start checking from (inclusive)
+     * @return the index of the next clear bit, or {@code -1} if every bit
+     *         from {@code fromIndex} to {@code Integer.MAX_VALUE} is set
+     * @throws IndexOutOfBoundsException if the specified index is negative
+     */
+    public int nextClearBit(int fromIndex) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+        int key = fromIndex >>> 16;
+        int i = indexOf(key);
+        if (i < 0)
+            return fromIndex;
+        int v = containers[i].nextClear(fromIndex & 0xFFFF);
+        while (v == CHUNK_BITS) { // the rest of the chunk is set
+            if (++key > 0x7FFF)
+                return -1;
+            if (++i == count || keys[i] != key)
+                return key << 16;
+            v = containers[i].nextClear(0);
+        }
+        return (key << 16) | v;
+    }
+
+    /**
+     * Returns the index of the nearest bit that is set to {@code true}
+     * that occurs on or before the specified starting index.
+     * If no such bit exists, or if {@code -1} is given as the
+     * starting index, then {@code -1} is returned.
+     *
+     * @param fromIndex the index to start checking from (inclusive)
+     * @return the index of the previous set bit, or {@code -1} if there
+     *         is no such bit
+     * @throws IndexOutOfBoundsException if the specified index is less
+     *         than {@code -1}
+     */
+    public int previousSetBit(int fromIndex) {
+        if (fromIndex < 0) {
+            if (fromIndex == -1)
+                return -1;
+            throw new IndexOutOfBoundsException("fromIndex < -1: " + fromIndex);
+        }
+        int key = fromIndex >>> 16;
+        int i = indexOf(key);
+        if (i >= 0) {
+            int v = containers[i].prevSet(fromIndex & 0xFFFF);
+            if (v >= 0)
+                return (key << 16) | v;
+            i--;
+        } else {
+            i = -i - 2;
+        }
+        return (i >= 0) ? (keys[i] << 16) | containers[i].prevSet(0xFFFF) : -1;
+    }
+
+    /**
+     * Returns the index of the nearest bit that is set to {@code false}
+     * that occurs on or before the specified starting index.
+     * If no such bit exists, or if {@code -1} is given as the
+     * starting index, then {@code -1} is returned.
+     *
+     * @param fromIndex the index to start checking from (inclusive)
+     * @return the index of the previous clear bit, or {@code -1} if there
+     *         is no such bit
+     * @throws IndexOutOfBoundsException if the specified index is less
+     *         than {@code -1}
+     */
+    public int previousClearBit(int fromIndex) {
+        if (fromIndex < 0) {
+            if (fromIndex == -1)
+                return -1;
+            throw new IndexOutOfBoundsException("fromIndex < -1: " + fromIndex);
+        }
+        int key = fromIndex >>> 16;
+        int i = indexOf(key);
+        if (i < 0)
+            return fromIndex;
+        int v = containers[i].prevClear(fromIndex & 0xFFFF);
+        while (v < 0) { // the chunk is set down to its start
+            if (--key < 0)
+                return -1;
+            if (--i < 0 || keys[i] != key)
+                return (key << 16) | 0xFFFF;
+            v = containers[i].prevClear(0xFFFF);
+        }
+        return (key << 16) | v;
+    }
+
+    /**
+     * Returns the "logical size" of this set: the index of the highest set
+     * bit plus one.  Returns zero if the set contains no set bits.
+     *
+     * @return the logical size of this set
+     */
+    public int length() {
+        if (count == 0)
+            return 0;
+        return ((keys[count - 1] << 16) | containers[count - 1].prevSet(0xFFFF)) + 1;
+    }
+
+    /**
+     * Returns true if this set contains no bits that are set
+     * to {@code true}.
+     *
+     * @return boolean indicating whether this set is empty
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the number of bits set to {@code true} in this set.
+     *
+     * @return the number of bits set to {@code true} in this set
+     */
+    public int cardinality() {
+        int sum = 0;
+        for (int i = 0; i < count; i++)
+            sum += containers[i].cardinality();
+        return sum;
+    }
+
+    /* ---------------- Logical operations -------------- */
+
+    /**
+     * Returns true if the specified set has any bits set to {@code true}
+     * that are also set to {@code true} in this set.
+     *
+     * @param set set to intersect with
+     * @return boolean indicating whether this set intersects the specified set
+     */
+    public boolean intersects(CompressedBitSet set) {
+        int i = 0, j = 0;
+        while (i < count && j < set.count) {
+            int a = keys[i], b = set.keys[j];
+            if (a < b)
+                i++;
+            else if (a > b)
+                j++;
+            else if (intersects(containers[i++], set.containers[j++]))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Performs a logical <b>AND</b> of this target set with the argument
+     * set.  This set is modified so that each bit in it has the value
+     * {@code true} if and only if it both initially had the value
+     * {@code true} and the corresponding bit in the set argument also had
+     * the value {@code true}.
+     *
+     * @param set a bit set
+     */
+    public void and(CompressedBitSet set) {
+        if (set == this)
+            return;
+        int i = 0, j = 0, n = 0;
+        while (i < count && j < set.count) {
+            int a = keys[i], b = set.keys[j];
+            if (a < b) {
+                i++;
+            } else if (a > b) {
+                j++;
+            } else {
+                Container c = and(containers[i++], set.containers[j++]);
+                if (c != null) {
+                    keys[n] = (char) a;
+                    containers[n++] = c;
+                }
+            }
+        }
+        Arrays.fill(containers, n, count, null);
+        count = n;
+    }
+
+    /**
+     * Performs a logical <b>OR</b> of this set with the set argument.  This
+     * set is modified so that a bit in it has the value {@code true} if and
+     * only if it either already had the value {@code true} or the
+     * corresponding bit in the set argument has the value {@code true}.
+     *
+     * @param set a bit set
+     */
+    public void or(CompressedBitSet set) {
+        if (set == this)
+            return;
+        char[] ks = new char[count + set.count];
+        Container[] cs = new Container[count + set.count];
+        int i = 0, j = 0, n = 0;
+        while (i < count || j < set.count) {
+            int a = (i < count) ? keys[i] : Integer.MAX_VALUE;
+            int b = (j < set.count) ? set.keys[j] : Integer.MAX_VALUE;
+            if (a < b) {
+                ks[n] = (char) a;
+                cs[n++] = containers[i++];
+            } else if (a > b) {
+                ks[n] = (char) b;
+                cs[n++] = set.containers[j++].copy();
+            } else {
+                ks[n] = (char) a;
+                cs[n++] = or(containers[i++], set.containers[j++]);
+            }
+        }
+        keys = ks;
+        containers = cs;
+        count = n;
+    }
+
+    /**
+     * Performs a logical <b>XOR</b> of this set with the set argument.
+     * This set is modified so that a bit in it has the value {@code true}
+     * if and only if exactly one of the bit in this set and the
+     * corresponding bit in the argument has the value {@code true}.
+     *
+     * @param set a bit set
+     */
+    public void xor(CompressedBitSet set) {
+        if (set == this) {
+            clear();
+            return;
+        }
+        char[] ks = new char[count + set.count];
+        Container[] cs = new Container[count + set.count];
+        int i = 0, j = 0, n = 0;
+        while (i < count || j < set.count) {
+            int a = (i < count) ? keys[i] : Integer.MAX_VALUE;
+            int b = (j < set.count) ? set.keys[j] : Integer.MAX_VALUE;
+            if (a < b) {
+                ks[n] = (char) a;
+                cs[n++] = containers[i++];
+            } else if (a > b) {
+                ks[n] = (char) b;
+                cs[n++] = set.containers[j++].copy();
+            } else {
+                Container c = xor(containers[i++], set.containers[j++]);
+                if (c != null) {
+                    ks[n] = (char) a;
+                    cs[n++] = c;
+                }
+            }
+        }
+        keys = ks;
+        containers = cs;
+        count = n;
+    }
+
+    /**
+     * Clears all of the bits in this set whose corresponding bit is set in
+     * the specified set.
+     *
+     * @param set the set with which to mask this set
+     */
+    public void andNot(CompressedBitSet set) {
+        if (set == this) {
+            clear();
+            return;
+        }
+        int i = 0, j = 0, n = 0;
+        while (i < count) {
+            int a = keys[i];
+            while (j < set.count && set.keys[j] < a)
+                j++;
+            Container c = containers[i++];
+            if (j < set.count && set.keys[j] == a)
+                c = andNot(c, set.containers[j++]);
+            if (c != null) {
+                keys[n] = (char) a;
+                containers[n++] = c;
+            }
+        }
+        Arrays.fill(containers, n, count, null);
+        count = n;
+    }
+
+    /**
+     * Returns a new set holding the intersection of all of the given sets,
+     * none of which is modified.  The chunks of the set with the fewest
+     * chunks are looked up in the others, and the containers of each chunk
+     * present in all sets are intersected smallest first, so the cost
+     * depends on the smallest operands rather than on the largest.
+     *
+     * @param sets the sets to intersect
+     * @return the intersection of the sets, or an empty set if none is given
+     */
+    public static CompressedBitSet and(CompressedBitSet... sets) {
+        CompressedBitSet result = new CompressedBitSet();
+        int k = sets.length;
+        if (k == 0)
+            return result;
+        CompressedBitSet[] s = sets.clone();
+        Arrays.sort(s, (a, b) -> Integer.compare(a.count, b.count));
+        int[] pos = new int[k];
+        Container[] cs = new Container[k];
+        CompressedBitSet first = s[0];
+        outer:
+        for (int i = 0; i < first.count; i++) {
+            int key = first.keys[i];
+            cs[0] = first.containers[i];
+            for (int j = 1; j < k; j++) {
+                CompressedBitSet o = s[j];
+                int p = pos[j];
+                if (p < o.count && o.keys[p] < key) {
+                    p = search(o.keys, o.count, key);
+                    if (p < 0)
+                        p = -p - 1;
+                }
+                pos[j] = p;
+                if (p == o.count)
+                    break outer;
+                if (o.keys[p] != key)
+                    continue outer;
+                cs[j] = o.containers[p];
+            }
+            Container c = intersectAll(cs);
+            if (c != null)
+                result.appendChunk(key, c);
+        }
+        return result;
+    }
+
+    /**
+     * Intersects the containers of one chunk, smallest first.
+     */
+    private static Container intersectAll(Container[] cs) {
+        Arrays.sort(cs, (a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+        Container smallest = cs[0];
+        if (smallest instanceof ArrayContainer) {
+            ArrayContainer a = (ArrayContainer) smallest;
+            char[] r = new char[a.cardinality];
+            int n = 0;
+            scan:
+            for (int i = 0; i < a.cardinality; i++) {
+                char v = a.content[i];
+                for (int j = 1; j < cs.length; j++)
+                    if (!cs[j].contains(v))
+                        continue scan;
+                r[n++] = v;
+            }
+            return (n == 0) ? null : new ArrayContainer(r, n);
+        }
+        long[] w = smallest.toWords();
+        for (int j = 1; j < cs.length; j++) {
+            long[] v = wordsOf(cs[j]);
+            long any = 0;
+            for (int u = 0; u < BITMAP_WORDS; u++)
+                any |= (w[u] &= v[u]);
+            if (any == 0)
+                return null;
+        }
+        return fromWords(w);
+    }
+
+    /**
+     * Converts every container to its smallest representation, replacing
+     * arrays and bitmaps by runs wherever runs are smaller, and trims the
+     * spare capacity of arrays.
+     */
+    public void compact() {
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            Container c = fromWords(containers[i].toWords());
+            keys[n] = keys[i];
+            containers[n++] = c;
+        }
+        count = n;
+        if (count < keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(count, 1));
+            containers = Arrays.copyOf(containers, Math.max(count, 1));
+        }
+    }
+
+    /* ---------------- Streams -------------- */
+
+    /**
+     * Returns a stream of indices for which this set contains a bit in the
+     * set state, in order from lowest to highest.  The stream's spliterator
+     * splits on chunk boundaries, so parallel pipelines divide the work by
+     * chunks.
+     *
+     * <p>The bit set must remain constant during the execution of the
+     * terminal stream operation.  Otherwise, the result of the terminal
+     * stream operation is undefined.
+     *
+     * @return a stream of integers representing set indices
+     */
+    public IntStream stream() {
+        return StreamSupport.intStream(new BitSpliterator(0, count, 0), false);
+    }
+
+    /**
+     * Spliterator over the set bits of a range of chunks.
+     */
+    final class BitSpliterator implements Spliterator.OfInt {
+        private int index; // current chunk
+        private final int fence; // one past last chunk
+        private int low; // next low 16 bits to look at in the current chunk
+
+        BitSpliterator(int origin, int fence, int low) {
+            this.index = origin;
+            this.fence = fence;
+            this.low = low;
+        }
+
+        public BitSpliterator trySplit() {
+            int lo = index, mid = (lo + fence) >>> 1;
+            if (mid <= lo)
+                return null;
+            BitSpliterator prefix = new BitSpliterator(lo, mid, low);
+            index = mid;
+            low = 0;
+            return prefix;
+        }
+
+        public boolean tryAdvance(IntConsumer action) {
+            if (action == null)
+                throw new NullPointerException();
+            for (; index < fence; index++, low = 0) {
+                int v = (low < CHUNK_BITS) ? containers[index].nextSet(low) : -1;
+                if (v >= 0) {
+                    low = v + 1;
+                    action.accept((keys[index] << 16) | v);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            if (action == null)
+                throw new NullPointerException();
+            for (; index < fence; index++, low = 0) {
+                if (low < CHUNK_BITS)
+                    containers[index].forEach(low, keys[index] << 16, action);
+            }
+        }
+
+        public long estimateSize() {
+            long n = 0;
+            for (int i = index; i < fence; i++)
+                n += containers[i].cardinality();
+            return n;
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.DISTINCT |
+                    Spliterator.SORTED | Spliterator.NONNULL;
+        }
+
+        public Comparator<? super Integer> getComparator() {
+            return null;
+        }
+    }
+
+    /* ---------------- Serialized form -------------- */
+
+    /**
+     * Returns the number of bytes written by {@link #writeTo}.
+     *
+     * @return the size of the serialized form of this set
+     */
+    public int serializedSize() {
+        int size = 8 + 4 * count + (count + 7) / 8 + 4 * count;
+        for (int i = 0; i < count; i++)
+            size += containers[i].serializedSize();
+        return size;
+    }
+
+    /**
+     * Writes this set to the given buffer, starting at its position, which
+     * is advanced by {@link #serializedSize} bytes.  The form is
+     * little-endian whatever the order of the buffer:
+     * <pre>
+     *   int                 cookie
+     *   int                 n, the number of chunks
+     *   n * (char, char)    key and cardinality - 1 of each chunk
+     *   (n + 7) / 8 bytes   bit i set if chunk i is stored as runs
+     *   n * int             offset of each container from the cookie
+     *   containers:         runs:   char count, then (start, length - 1) pairs
+     *                       others: cardinality &le; 4096 ? chars : 1024 longs
+     * </pre>
+     * The offsets let a reader of a memory-mapped file locate any
+     * container without scanning the preceding ones.
+     *
+     * @param buffer the buffer to write to
+     * @throws java.nio.BufferOverflowException if the buffer has less than
+     *         {@code serializedSize()} bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        int n = count;
+        ByteBuffer out = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(SERIAL_COOKIE).putInt(n);
+        for (int i = 0; i < n; i++)
+            out.putChar(keys[i]).putChar((char) (containers[i].cardinality() - 1));
+        for (int i = 0; i < n; i += 8) {
+            int flags = 0;
+            for (int j = i; j < Math.min(i + 8, n); j++)
+                if (containers[j] instanceof RunContainer)
+                    flags |= 1 << (j - i);
+            out.put((byte) flags);
+        }
+        int offset = out.position() + 4 * n;
+        for (int i = 0; i < n; i++) {
+            out.putInt(offset);
+            offset += containers[i].serializedSize();
+        }
+        for (int i = 0; i < n; i++)
+            containers[i].write(out);
+        buffer.position(buffer.position() + out.position());
+    }
+
+    /**
+     * Returns a new byte array containing the serialized form of this set,
+     * as written by {@link #writeTo}.
+     *
+     * @return a byte array holding the serialized form of this set
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[serializedSize()];
+        writeTo(ByteBuffer.wrap(bytes));
+        return bytes;
+    }
+
+    /**
+     * Returns a new set read from the serialized form written by
+     * {@link #writeTo}, starting at the position of the given buffer, which
+     * may be a memory-mapped file.  The buffer is not modified.
+     *
+     * @param buffer a buffer holding the serialized form of a set at its
+     *               position
+     * @return a {@code CompressedBitSet} holding the bits of the serialized
+     *         set
+     * @throws IllegalArgumentException if the buffer does not hold a
+     *         serialized set
+     */
+    public static CompressedBitSet valueOf(ByteBuffer buffer) {
+        ByteBuffer in = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (in.getInt(0) != SERIAL_COOKIE)
+                throw new IllegalArgumentException("not a serialized CompressedBitSet");
+            int n = in.getInt(4);
+            if (n < 0 || n > 0x8000)
+                throw new IllegalArgumentException("illegal chunk count: " + n);
+            CompressedBitSet set = new CompressedBitSet();
+            set.keys = new char[Math.max(n, 1)];
+            set.containers = new Container[Math.max(n, 1)];
+            int flags = 8 + 4 * n, offsets = flags + (n + 7) / 8;
+            int prev = -1;
+            for (int i = 0; i < n; i++) {
+                int key = in.getChar(8 + 4 * i);
+                int cardinality = in.getChar(10 + 4 * i) + 1;
+                if (key <= prev || key > 0x7FFF)
+                    throw new IllegalArgumentException("illegal chunk key: " + key);
+                prev = key;
+                int p = in.getInt(offsets + 4 * i);
+                Container c;
+                if ((in.get(flags + (i >>> 3)) & (1 << (i & 7))) != 0) {
+                    int nruns = in.getChar(p);
+                    char[] runs = new char[2 * nruns];
+                    for (int r = 0; r < 2 * nruns; r++)
+                        runs[r] = in.getChar(p + 2 + 2 * r);
+                    c = new RunContainer(runs, nruns);
+                } else if (cardinality <= MAX_ARRAY_CARDINALITY) {
+                    char[] content = new char[cardinality];
+                    for (int v = 0; v < cardinality; v++)
+                        content[v] = in.getChar(p + 2 * v);
+                    c = new ArrayContainer(content, cardinality);
+                } else {
+                    long[] words = new long[BITMAP_WORDS];
+                    for (int u = 0; u < BITMAP_WORDS; u++)
+                        words[u] = in.getLong(p + 8 * u);
+                    c = new BitmapContainer(words, cardinality);
+                }
+                if (c.cardinality() != cardinality)
+                    throw new IllegalArgumentException("corrupt container: " + key);
+                set.appendChunk(key, c);
+            }
+            return set;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated CompressedBitSet", e);
+        }
+    }
+
+    /**
+     * Returns a new set read from the serialized form written by
+     * {@link #writeTo} or {@link #toByteArray}.
+     *
+     * @param bytes a byte array holding a serialized set
+     * @return a {@code CompressedBitSet} holding the bits of the serialized
+     *         set
+     * @throws IllegalArgumentException if the array does not hold a
+     *         serialized set
+     */
+    public static CompressedBitSet valueOf(byte[] bytes) {
+        return valueOf(ByteBuffer.wrap(bytes));
+    }
+
+    /* ---------------- Object methods -------------- */
+
+    /**
+     * Returns the hash code value for this set, which is the value that
+     * {@link BitSet#hashCode} returns for a {@code BitSet} with the same
+     * set bits.
+     *
+     * @return the hash code value for this set
+     */
+    public int hashCode() {
+        long h = 1234;
+        for (int i = 0; i < count; i++) {
+            long[] w = wordsOf(containers[i]);
+            long base = (long) keys[i] * BITMAP_WORDS + 1;
+            for (int u = 0; u < BITMAP_WORDS; u++)
+                h ^= w[u] * (base + u);
+        }
+        return (int) ((h >> 32) ^ h);
+    }
+
+    /**
+     * Compares this object against the specified object.  The result is
+     * {@code true} if and only if the argument is a
+     * {@code CompressedBitSet} with exactly the same bits set to
+     * {@code true}, whatever their representation.
+     *
+     * @param obj the object to compare with
+     * @return {@code true} if the objects are the same;
+     *         {@code false} otherwise
+     */
+    public boolean equals(Object obj) {
+        if (!(obj instanceof CompressedBitSet))
+            return false;
+        if (this == obj)
+            return true;
+        CompressedBitSet set = (CompressedBitSet) obj;
+        if (count != set.count)
+            return false;
+        for (int i = 0; i < count; i++)
+            if (keys[i] != set.keys[i] || !sameBits(containers[i], set.containers[i]))
+                return false;
+        return true;
+    }
+
+    /**
+     * Cloning this {@code CompressedBitSet} produces a new
+     * {@code CompressedBitSet} that is equal to it.
+     *
+     * @return a clone of this bit set
+     */
+    public Object clone() {
+        try {
+            CompressedBitSet result = (CompressedBitSet) super.clone();
+            result.keys = keys.clone();
+            result.containers = containers.clone();
+            for (int i = 0; i < count; i++)
+                result.containers[i] = containers[i].copy();
+            return result;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    /**
+     * Returns a string representation of this bit set in the format of
+     * {@link BitSet#toString}.
+     *
+     * @return a string representation of this bit set
+     */
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append('{');
+        stream().forEach(i -> {
+            if (b.length() > 1)
+                b.append(", ");
+            b.append(i);
+        });
+        return b.append('}').toString();
+    }
+
+    /**
+     * Save the state of the {@code CompressedBitSet} instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData the length of the compact form of the set (int), followed
+     * by its bytes, as written by {@link #writeTo}.
+     */
+    private void writeObject(ObjectOutputStream s) throws IOException {
+        s.defaultWriteObject();
+        byte[] bytes = toByteArray();
+        s.writeInt(bytes.length);
+        s.write(bytes);
+    }
+
+    /**
+     * Reconstitute the {@code CompressedBitSet} instance from a stream
+     * (i.e., deserialize it).
+     */
+    private void readObject(ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        int length = s.readInt();
+        if (length < 8)
+            throw new InvalidObjectException("Illegal length: " + length);
+        byte[] bytes = new byte[length];
+        s.readFully(bytes);
+        CompressedBitSet set;
+        try {
+            set = valueOf(bytes);
+        } catch (IllegalArgumentException e) {
+            throw (InvalidObjectException) new InvalidObjectException(e.getMessage()).initCause(e);
+        }
+        keys = set.keys;
+        containers = set.containers;
+        count = set.count;
+    }
+}
@@ -0,0 +1,1070 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A hash table mapping primitive {@code int} keys to primitive {@code int}
+ * values.  Unlike {@code HashMap<Integer,Integer>}, this map never boxes a
+ * key or a value: keys and values are kept in two parallel {@code int[]}
+ * arrays and collisions are resolved by linear probing (open addressing),
+ * so a lookup touches one or two adjacent cache lines instead of chasing a
+ * pointer to a {@code HashMap.Node} and then to a boxed {@code Integer}.
+ * At the default load factor the table needs about 11 bytes per mapping,
+ * against roughly 48-64 bytes per mapping for
+ * {@code HashMap<Integer,Integer>}.
+ *
+ * <p>Every {@code int} value is a legal key, including {@code 0}, which is
+ * stored outside of the table because it doubles as the free-slot marker.
+ * Methods that return a value ({@link #get}, {@link #put}, {@link #remove})
+ * return {@code 0} when no mapping exists; use {@link #containsKey} or
+ * {@link #getOrDefault} to distinguish an absent key from a key that is
+ * mapped to zero.
+ *
+ * <p>Removal uses backward-shift deletion rather than tombstones, so the
+ * probe sequences stay short no matter how many keys are removed.
+ *
+ * <p>The keys and the values may be traversed as {@link IntStream}s, whose
+ * {@link Spliterator.OfInt spliterators} split on ranges of the table in
+ * the same way as the spliterators of {@link HashMap}.  Streams, spliterators
+ * and {@link Cursor cursors} are <i>fail-fast</i>: if the map is structurally
+ * modified after they are bound, they throw
+ * {@link ConcurrentModificationException} on a best-effort basis.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access this map concurrently, and at least one of the
+ * threads modifies the map structurally, it must be synchronized externally.
+ *
+ * @see HashMap
+ * @see LongHashMap
+ * @see IntObjectMap
+ * @since 1.8
+ */
+public class IntHashMap implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = -6370209437587383642L;
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified
+     * by either of the constructors with arguments.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The key slots, or null before the first insertion.  A slot holding
+     * {@code 0} is free.  Length MUST always be a power of two.
+     */
+    transient int[] keys;
+
+    /**
+     * The values, parallel to {@link #keys}.
+     */
+    transient int[] vals;
+
+    /**
+     * Whether the key {@code 0}, which cannot live in the table, is mapped.
+     */
+    transient boolean hasZeroKey;
+
+    /**
+     * The value mapped to the key {@code 0}, if {@link #hasZeroKey}.
+     */
+    transient int zeroValue;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The number of times this map has been structurally modified.
+     * Used to make the cursors and spliterators fail-fast.
+     */
+    transient int modCount;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     * Before the table is allocated this holds the initial capacity.
+     */
+    int threshold;
+
+    /**
+     * The load factor for the hash table.
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /**
+     * Spreads the bits of a key so that sequential or strided keys do not
+     * form long runs of occupied slots.  Multiplying by the 32-bit golden
+     * ratio moves entropy into the high bits, and folding the high half
+     * back in makes it visible to the table mask.
+     */
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Constructs an empty map with the specified initial capacity and
+     * load factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor, in the range (0, 1)
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is not in (0, 1)
+     */
+    public IntHashMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0.0f && loadFactor < 1.0f))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = HashMap.tableSizeFor(
+                (int) Math.min((long) (initialCapacity / loadFactor) + 1L,
+                        MAXIMUM_CAPACITY));
+    }
+
+    /**
+     * Constructs an empty map able to hold the specified number of
+     * mappings without resizing, with the default load factor (0.75).
+     *
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public IntHashMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty map with the default initial capacity (16) and
+     * the default load factor (0.75).
+     */
+    public IntHashMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.threshold = DEFAULT_INITIAL_CAPACITY;
+    }
+
+    /**
+     * Constructs a new map with the same mappings as the specified map.
+     *
+     * @param m the map whose mappings are to be placed in this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public IntHashMap(IntHashMap m) {
+        this(m.size, m.loadFactor);
+        putAll(m);
+    }
+
+    /* ---------------- Table management -------------- */
+
+    /**
+     * Returns the slot holding the given nonzero key, or -1.
+     */
+    final int slotOf(int key) {
+        int[] ks = keys;
+        if (ks != null) {
+            int m = ks.length - 1;
+            for (int i = mix(key) & m, k; (k = ks[i]) != 0; i = (i + 1) & m) {
+                if (k == key)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Initializes or doubles the table, reinserting every key into the
+     * new arrays.
+     */
+    final void resize() {
+        int[] oldKeys = keys, oldVals = vals;
+        int newCap;
+        if (oldKeys == null)
+            newCap = Math.max(threshold, 2);
+        else if ((newCap = oldKeys.length << 1) > MAXIMUM_CAPACITY ||
+                 newCap < 0)
+            throw new IllegalStateException("IntHashMap too large");
+        int[] ks = new int[newCap], vs = new int[newCap];
+        int m = newCap - 1;
+        if (oldKeys != null) {
+            for (int j = 0; j < oldKeys.length; ++j) {
+                int k = oldKeys[j];
+                if (k != 0) {
+                    int i = mix(k) & m;
+                    while (ks[i] != 0)
+                        i = (i + 1) & m;
+                    ks[i] = k;
+                    vs[i] = oldVals[j];
+                }
+            }
+        }
+        keys = ks;
+        vals = vs;
+        threshold = (newCap == MAXIMUM_CAPACITY) ? newCap - 1 :
+                (int) (newCap * loadFactor);
+    }
+
+    /**
+     * Removes the key in slot {@code i} and shifts back the following
+     * entries of its cluster so that no probe sequence is broken.
+     */
+    final void removeSlot(int i) {
+        int[] ks = keys, vs = vals;
+        int m = ks.length - 1;
+        for (int j = i; ; ) {
+            j = (j + 1) & m;
+            int k = ks[j];
+            if (k == 0)
+                break;
+            int h = mix(k) & m;
+            // move k back into the hole unless its home slot lies
+            // cyclically in (i, j]
+            if (i <= j ? (i >= h || h > j) : (i >= h && h > j)) {
+                ks[i] = k;
+                vs[i] = vs[j];
+                i = j;
+            }
+        }
+        ks[i] = 0;
+        vs[i] = 0;
+        --size;
+        ++modCount;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if this map contains no key-value mappings.
+     *
+     * @return {@code true} if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code 0} if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value mapped to the key, or {@code 0}
+     */
+    public int get(int key) {
+        return getOrDefault(key, 0);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code defaultValue} if this map contains no mapping for the key.
+     *
+     * @param key          the key whose associated value is to be returned
+     * @param defaultValue the default mapping of the key
+     * @return the value mapped to the key, or {@code defaultValue}
+     */
+    public int getOrDefault(int key, int defaultValue) {
+        if (key == 0)
+            return hasZeroKey ? zeroValue : defaultValue;
+        int[] ks = keys;
+        if (ks != null) {
+            int m = ks.length - 1;
+            for (int i = mix(key) & m, k; (k = ks[i]) != 0; i = (i + 1) & m) {
+                if (k == key)
+                    return vals[i];
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the
+     * specified key.
+     *
+     * @param key the key whose presence in this map is to be tested
+     * @return {@code true} if this map contains a mapping for the key
+     */
+    public boolean containsKey(int key) {
+        return key == 0 ? hasZeroKey : slotOf(key) >= 0;
+    }
+
+    /**
+     * Returns {@code true} if this map maps one or more keys to the
+     * specified value.  This operation requires a scan of the table.
+     *
+     * @param value the value whose presence in this map is to be tested
+     * @return {@code true} if some key is mapped to the value
+     */
+    public boolean containsValue(int value) {
+        if (hasZeroKey && zeroValue == value)
+            return true;
+        int[] ks = keys, vs = vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0 && vs[i] == value)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the key, or {@code 0}
+     *         if there was no mapping for the key
+     */
+    public int put(int key, int value) {
+        return putVal(key, value, false);
+    }
+
+    /**
+     * If the specified key is not already mapped, associates it with the
+     * given value.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the current value associated with the key, or {@code 0}
+     *         if there was no mapping for the key
+     */
+    public int putIfAbsent(int key, int value) {
+        return putVal(key, value, true);
+    }
+
+    final int putVal(int key, int value, boolean onlyIfAbsent) {
+        if (key == 0) {
+            if (hasZeroKey) {
+                int old = zeroValue;
+                if (!onlyIfAbsent)
+                    zeroValue = value;
+                return old;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            ++size;
+            ++modCount;
+            return 0;
+        }
+        if (keys == null)
+            resize();
+        int[] ks = keys;
+        int m = ks.length - 1, i = mix(key) & m;
+        for (int k; (k = ks[i]) != 0; i = (i + 1) & m) {
+            if (k == key) {
+                int old = vals[i];
+                if (!onlyIfAbsent)
+                    vals[i] = value;
+                return old;
+            }
+        }
+        ks[i] = key;
+        vals[i] = value;
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return 0;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map,
+     * replacing the values of keys that are already present.
+     *
+     * @param m mappings to be stored in this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public void putAll(IntHashMap m) {
+        int s = m.size;
+        if (s == 0)
+            return;
+        if (keys == null) {
+            int t = HashMap.tableSizeFor(
+                    (int) Math.min((long) (s / loadFactor) + 1L,
+                            MAXIMUM_CAPACITY));
+            if (t > threshold)
+                threshold = t;
+        }
+        if (m.hasZeroKey)
+            put(0, m.zeroValue);
+        int[] ks = m.keys, vs = m.vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0)
+                    put(ks[i], vs[i]);
+            }
+        }
+    }
+
+    /**
+     * Adds {@code delta} to the value mapped to {@code key}, treating an
+     * absent key as mapped to {@code 0}.  This is the common counting
+     * idiom, done in a single probe.
+     *
+     * @param key   the key whose value is to be incremented
+     * @param delta the value to add
+     * @return the new value associated with the key
+     */
+    public int addTo(int key, int delta) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                ++size;
+                ++modCount;
+            }
+            return zeroValue += delta;
+        }
+        if (keys == null)
+            resize();
+        int[] ks = keys;
+        int m = ks.length - 1, i = mix(key) & m;
+        for (int k; (k = ks[i]) != 0; i = (i + 1) & m) {
+            if (k == key)
+                return vals[i] += delta;
+        }
+        ks[i] = key;
+        vals[i] = delta;
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return delta;
+    }
+
+    /**
+     * If the specified key is not already mapped, computes its value
+     * using the given mapping function and enters it into this map.
+     *
+     * @param key             key with which the value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value of the key
+     * @throws NullPointerException if the mapping function is null
+     */
+    public int computeIfAbsent(int key, IntUnaryOperator mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        if (key == 0) {
+            if (!hasZeroKey)
+                putVal(0, mappingFunction.applyAsInt(0), false);
+            return zeroValue;
+        }
+        int i = slotOf(key);
+        if (i >= 0)
+            return vals[i];
+        int mc = modCount;
+        int v = mappingFunction.applyAsInt(key);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        putVal(key, v, false);
+        return v;
+    }
+
+    /**
+     * If the specified key is not already mapped, associates it with the
+     * given value; otherwise replaces the value with the result of the
+     * given remapping function applied to the old and the given value.
+     *
+     * @param key               key with which the value is to be associated
+     * @param value             the value to merge with the existing value
+     * @param remappingFunction the function to recompute a present value
+     * @return the new value associated with the key
+     * @throws NullPointerException if the remapping function is null
+     */
+    public int merge(int key, int value, IntBinaryOperator remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        if (key == 0) {
+            if (!hasZeroKey)
+                putVal(0, value, false);
+            else
+                zeroValue = remappingFunction.applyAsInt(zeroValue, value);
+            return zeroValue;
+        }
+        int i = slotOf(key);
+        if (i < 0) {
+            putVal(key, value, false);
+            return value;
+        }
+        int mc = modCount;
+        int v = remappingFunction.applyAsInt(vals[i], value);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        return vals[i] = v;
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with the key, or {@code 0}
+     *         if there was no mapping for the key
+     */
+    public int remove(int key) {
+        if (key == 0) {
+            if (!hasZeroKey)
+                return 0;
+            int old = zeroValue;
+            hasZeroKey = false;
+            zeroValue = 0;
+            --size;
+            ++modCount;
+            return old;
+        }
+        int i = slotOf(key);
+        if (i < 0)
+            return 0;
+        int old = vals[i];
+        removeSlot(i);
+        return old;
+    }
+
+    /**
+     * Removes the entry for the specified key only if it is currently
+     * mapped to the specified value.
+     *
+     * @param key   key with which the specified value is associated
+     * @param value value expected to be associated with the specified key
+     * @return {@code true} if the value was removed
+     */
+    public boolean remove(int key, int value) {
+        if (key == 0) {
+            if (!hasZeroKey || zeroValue != value)
+                return false;
+            remove(0);
+            return true;
+        }
+        int i = slotOf(key);
+        if (i < 0 || vals[i] != value)
+            return false;
+        removeSlot(i);
+        return true;
+    }
+
+    /**
+     * Removes all of the mappings from this map.  The table keeps its
+     * capacity.
+     */
+    public void clear() {
+        ++modCount;
+        if (keys != null && size > 0) {
+            Arrays.fill(keys, 0);
+            Arrays.fill(vals, 0);
+        }
+        hasZeroKey = false;
+        zeroValue = 0;
+        size = 0;
+    }
+
+    /**
+     * Performs the given action for each key in this map.
+     *
+     * @param action the action to be performed for each key
+     * @throws NullPointerException            if the action is null
+     * @throws ConcurrentModificationException if the map is structurally
+     *                                         modified by the action
+     */
+    public void forEachKey(IntConsumer action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (hasZeroKey)
+            action.accept(0);
+        int[] ks = keys;
+        if (ks != null) {
+            for (int i = 0; i < ks.length && modCount == mc; ++i) {
+                if (ks[i] != 0)
+                    action.accept(ks[i]);
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Replaces each value with the result of applying the given function
+     * to it.
+     *
+     * @param function the function to apply to each value
+     * @throws NullPointerException if the function is null
+     */
+    public void replaceAll(IntUnaryOperator function) {
+        if (function == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (hasZeroKey)
+            zeroValue = function.applyAsInt(zeroValue);
+        int[] ks = keys, vs = vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0)
+                    vs[i] = function.applyAsInt(vs[i]);
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Returns a sequential {@code IntStream} over the keys of this map.
+     * Call {@code parallel()} on the result for a parallel stream.
+     *
+     * @return a stream of the keys of this map
+     */
+    public IntStream keys() {
+        return StreamSupport.intStream(keySpliterator(), false);
+    }
+
+    /**
+     * Returns a sequential {@code IntStream} over the values of this map,
+     * in the same order as {@link #keys()}.
+     *
+     * @return a stream of the values of this map
+     */
+    public IntStream values() {
+        return StreamSupport.intStream(valueSpliterator(), false);
+    }
+
+    /**
+     * Returns a late-binding, fail-fast spliterator over the keys of this
+     * map, reporting {@link Spliterator#SIZED} and
+     * {@link Spliterator#DISTINCT}.
+     *
+     * @return a spliterator over the keys of this map
+     */
+    public Spliterator.OfInt keySpliterator() {
+        return new IntHashMapSpliterator(this, 0, -1, 0, 0, true);
+    }
+
+    /**
+     * Returns a late-binding, fail-fast spliterator over the values of
+     * this map, reporting {@link Spliterator#SIZED}.
+     *
+     * @return a spliterator over the values of this map
+     */
+    public Spliterator.OfInt valueSpliterator() {
+        return new IntHashMapSpliterator(this, 0, -1, 0, 0, false);
+    }
+
+    /**
+     * Returns a cursor over the mappings of this map.  A cursor reads
+     * the key and the value of the current mapping without boxing them.
+     *
+     * @return a cursor positioned before the first mapping
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A fail-fast, allocation-free iterator over the mappings of an
+     * {@code IntHashMap}.  Typical usage:
+     * <pre> {@code
+     * for (IntHashMap.Cursor c = map.cursor(); c.advance(); )
+     *     total += c.key() * c.value();
+     * }</pre>
+     */
+    public final class Cursor {
+        // slot index of the current mapping; keys.length denotes key 0
+        private int index = -1;
+        private int expectedModCount = modCount;
+        private boolean removable;
+        // already visited keys that removal shifted across the end of
+        // the table into slots ahead of the cursor
+        private int[] skip;
+        private int skipCount;
+
+        Cursor() {
+        }
+
+        /**
+         * Moves to the next mapping.
+         *
+         * @return {@code false} if there are no more mappings
+         * @throws ConcurrentModificationException if the map was
+         *                                         structurally modified
+         */
+        public boolean advance() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            int[] ks = keys;
+            int n = (ks == null) ? 0 : ks.length;
+            removable = false;
+            while (++index < n) {
+                int k = ks[index];
+                if (k != 0 && (skip == null || !skipped(k)))
+                    return removable = true;
+            }
+            if (index == n && hasZeroKey)
+                return removable = true;
+            index = n + 1;
+            return false;
+        }
+
+        /**
+         * Returns the key of the current mapping.
+         *
+         * @return the key of the current mapping
+         */
+        public int key() {
+            checkCurrent();
+            return index == keysLength() ? 0 : keys[index];
+        }
+
+        /**
+         * Returns the value of the current mapping.
+         *
+         * @return the value of the current mapping
+         */
+        public int value() {
+            checkCurrent();
+            return index == keysLength() ? zeroValue : vals[index];
+        }
+
+        /**
+         * Replaces the value of the current mapping.
+         *
+         * @param value the new value
+         * @return the previous value
+         */
+        public int setValue(int value) {
+            checkCurrent();
+            int old;
+            if (index == keysLength()) {
+                old = zeroValue;
+                zeroValue = value;
+            } else {
+                old = vals[index];
+                vals[index] = value;
+            }
+            return old;
+        }
+
+        /**
+         * Removes the current mapping.
+         *
+         * @throws IllegalStateException if there is no current mapping
+         */
+        public void remove() {
+            checkCurrent();
+            removable = false;
+            int[] ks = keys;
+            int n = keysLength();
+            if (index == n)
+                IntHashMap.this.remove(0);
+            else {
+                // Backward shifting may move keys of the cluster that
+                // wraps around the end of the table from its first,
+                // already visited, slots into slots ahead of the cursor.
+                int i = index + 1;
+                while (i < n && ks[i] != 0)
+                    ++i;
+                if (i == n) {
+                    for (int j = 0; ks[j] != 0; ++j) {
+                        if (skip == null)
+                            skip = new int[4];
+                        else if (skipCount == skip.length)
+                            skip = Arrays.copyOf(skip, skipCount << 1);
+                        skip[skipCount++] = ks[j];
+                    }
+                }
+                removeSlot(index);
+                // a later key may have been shifted into this slot
+                --index;
+            }
+            expectedModCount = modCount;
+        }
+
+        private boolean skipped(int k) {
+            for (int i = 0; i < skipCount; ++i) {
+                if (skip[i] == k)
+                    return true;
+            }
+            return false;
+        }
+
+        private int keysLength() {
+            return keys == null ? 0 : keys.length;
+        }
+
+        private void checkCurrent() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!removable)
+                throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Spliterator over the slots {@code [index, fence)} of the table,
+     * where the virtual slot {@code keys.length} stands for the key
+     * {@code 0}.  Splitting halves the slot range, as in
+     * {@code HashMap.HashMapSpliterator}.
+     */
+    static final class IntHashMapSpliterator implements Spliterator.OfInt {
+        final IntHashMap map;
+        final boolean keys;     // report keys or values
+        int index;              // current index, modified on advance/split
+        int fence;              // one past last index; -1 until first use
+        int est;                // size estimate
+        int expectedModCount;   // for comodification checks
+
+        IntHashMapSpliterator(IntHashMap m, int origin, int fence, int est,
+                              int expectedModCount, boolean keys) {
+            this.map = m;
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+            this.keys = keys;
+        }
+
+        final int getFence() { // initialize fence and size on first use
+            int hi;
+            if ((hi = fence) < 0) {
+                IntHashMap m = map;
+                est = m.size;
+                expectedModCount = m.modCount;
+                hi = fence = (m.keys == null) ? 0 : m.keys.length + 1;
+            }
+            return hi;
+        }
+
+        public long estimateSize() {
+            getFence(); // force init
+            return (long) est;
+        }
+
+        public IntHashMapSpliterator trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid) ? null :
+                    new IntHashMapSpliterator(map, lo, index = mid, est >>>= 1,
+                            expectedModCount, keys);
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence(), i = index;
+            IntHashMap m = map;
+            int[] ks = m.keys, vs = m.vals;
+            int n = (ks == null) ? 0 : ks.length;
+            if (n + 1 >= hi && i >= 0 && i < (index = hi)) {
+                for (; i < hi; ++i) {
+                    if (i == n) {
+                        if (m.hasZeroKey)
+                            action.accept(keys ? 0 : m.zeroValue);
+                    } else if (ks[i] != 0)
+                        action.accept(keys ? ks[i] : vs[i]);
+                }
+            }
+            if (m.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        public boolean tryAdvance(IntConsumer action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence();
+            IntHashMap m = map;
+            int[] ks = m.keys;
+            int n = (ks == null) ? 0 : ks.length;
+            if (n + 1 >= hi && index >= 0) {
+                while (index < hi) {
+                    int i = index++;
+                    boolean hit;
+                    int x;
+                    if (i == n) {
+                        hit = m.hasZeroKey;
+                        x = keys ? 0 : m.zeroValue;
+                    } else {
+                        hit = ks[i] != 0;
+                        x = keys ? ks[i] : m.vals[i];
+                    }
+                    if (hit) {
+                        action.accept(x);
+                        if (m.modCount != expectedModCount)
+                            throw new ConcurrentModificationException();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
+                    (keys ? Spliterator.DISTINCT : 0);
+        }
+    }
+
+    /* ---------------- Object methods -------------- */
+
+    /**
+     * Returns a shallow copy of this map: the arrays are copied, so the
+     * clone is fully independent of this map.
+     *
+     * @return a copy of this map
+     */
+    @Override
+    public IntHashMap clone() {
+        IntHashMap result;
+        try {
+            result = (IntHashMap) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        if (keys != null) {
+            result.keys = keys.clone();
+            result.vals = vals.clone();
+        }
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * Compares the specified object with this map for equality.  Two
+     * {@code IntHashMap}s are equal if they contain the same mappings.
+     *
+     * @param o object to be compared for equality with this map
+     * @return {@code true} if the specified object is equal to this map
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof IntHashMap))
+            return false;
+        IntHashMap m = (IntHashMap) o;
+        if (m.size != size || m.hasZeroKey != hasZeroKey ||
+                (hasZeroKey && m.zeroValue != zeroValue))
+            return false;
+        int[] ks = keys, vs = vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                int k = ks[i], j;
+                if (k != 0 && ((j = m.slotOf(k)) < 0 || m.vals[j] != vs[i]))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code value for this map, computed as the sum of
+     * {@code key ^ value} over all mappings, in the manner of
+     * {@link Map#hashCode} for boxed keys and values.
+     *
+     * @return the hash code value for this map
+     */
+    @Override
+    public int hashCode() {
+        int h = hasZeroKey ? zeroValue : 0;
+        int[] ks = keys, vs = vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0)
+                    h += ks[i] ^ vs[i];
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Returns a string representation of this map, in the same format
+     * as {@link AbstractMap#toString}.
+     *
+     * @return a string representation of this map
+     */
+    @Override
+    public String toString() {
+        if (size == 0)
+            return "{}";
+        StringBuilder sb = new StringBuilder().append('{');
+        String sep = "";
+        for (Cursor c = cursor(); c.advance(); sep = ", ")
+            sb.append(sep).append(c.key()).append('=').append(c.value());
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Saves this map to a stream.
+     *
+     * @serialData The number of mappings is emitted (int), followed by
+     * the key (int) and value (int) of each mapping, in no particular
+     * order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        int mc = modCount;
+        s.defaultWriteObject();
+        s.writeInt(size);
+        if (hasZeroKey) {
+            s.writeInt(0);
+            s.writeInt(zeroValue);
+        }
+        int[] ks = keys, vs = vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0) {
+                    s.writeInt(ks[i]);
+                    s.writeInt(vs[i]);
+                }
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Reconstitutes this map from a stream (that is, deserializes it).
+     */
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (!(loadFactor > 0.0f && loadFactor < 1.0f))
+            throw new InvalidObjectException("Illegal load factor: " +
+                    loadFactor);
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                    mappings);
+        threshold = HashMap.tableSizeFor(
+                (int) Math.min((long) (mappings / loadFactor) + 1L,
+                        MAXIMUM_CAPACITY));
+        for (int i = 0; i < mappings; i++) {
+            int key = s.readInt();
+            putVal(key, s.readInt(), false);
+        }
+    }
+}
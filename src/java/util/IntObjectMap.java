@@ -0,0 +1,1117 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A hash table mapping primitive {@code int} keys to object values.  Unlike
+ * {@code HashMap<Integer,V>}, this map never boxes a key: keys are kept in
+ * an {@code int[]} array, values in a parallel {@code Object[]} array, and
+ * collisions are resolved by linear probing (open addressing).  A lookup
+ * compares keys within one or two adjacent cache lines and dereferences a
+ * single value, instead of chasing a {@code HashMap.Node} and a boxed
+ * {@code Integer}.  At the default load factor the table needs about 11
+ * bytes per mapping (with compressed references), against roughly 48
+ * bytes per mapping for {@code HashMap<Integer,V>}.
+ *
+ * <p>Every {@code int} value is a legal key, including {@code 0}, which is
+ * stored outside of the table because it doubles as the free-slot marker.
+ * Values may be {@code null}; as with {@link HashMap}, a return value of
+ * {@code null} from {@link #get} does not necessarily indicate that the
+ * map contains no mapping for the key, and {@link #containsKey} may be used
+ * to distinguish these two cases.
+ *
+ * <p>Removal uses backward-shift deletion rather than tombstones, so the
+ * probe sequences stay short no matter how many keys are removed.
+ *
+ * <p>The keys may be traversed as an {@link IntStream} and the values as
+ * a {@link Stream}; their spliterators split on ranges of the table in the
+ * same way as the spliterators of {@link HashMap}.  Streams, spliterators
+ * and {@link Cursor cursors} are <i>fail-fast</i>: if the map is structurally
+ * modified after they are bound, they throw
+ * {@link ConcurrentModificationException} on a best-effort basis.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access this map concurrently, and at least one of the
+ * threads modifies the map structurally, it must be synchronized externally.
+ *
+ * @param <V> the type of mapped values
+ * @see HashMap
+ * @see IntHashMap
+ * @since 1.8
+ */
+public class IntObjectMap<V> implements Cloneable, Serializable {
+
+    private static final long serialVersionUID = 1753470215823160781L;
+
+    /**
+     * The default initial capacity - MUST be a power of two.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 1 << 4;
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified
+     * by either of the constructors with arguments.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The load factor used when none specified in constructor.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The key slots, or null before the first insertion.  A slot holding
+     * {@code 0} is free.  Length MUST always be a power of two.
+     */
+    transient int[] keys;
+
+    /**
+     * The values, parallel to {@link #keys}.
+     */
+    transient Object[] vals;
+
+    /**
+     * Whether the key {@code 0}, which cannot live in the table, is mapped.
+     */
+    transient boolean hasZeroKey;
+
+    /**
+     * The value mapped to the key {@code 0}, if {@link #hasZeroKey}.
+     */
+    transient V zeroValue;
+
+    /**
+     * The number of key-value mappings contained in this map.
+     */
+    transient int size;
+
+    /**
+     * The number of times this map has been structurally modified.
+     * Used to make the cursors and spliterators fail-fast.
+     */
+    transient int modCount;
+
+    /**
+     * The next size value at which to resize (capacity * load factor).
+     * Before the table is allocated this holds the initial capacity.
+     */
+    int threshold;
+
+    /**
+     * The load factor for the hash table.
+     *
+     * @serial
+     */
+    final float loadFactor;
+
+    /**
+     * Constructs an empty map with the specified initial capacity and
+     * load factor.
+     *
+     * @param initialCapacity the initial capacity
+     * @param loadFactor      the load factor, in the range (0, 1)
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *                                  or the load factor is not in (0, 1)
+     */
+    public IntObjectMap(int initialCapacity, float loadFactor) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("Illegal initial capacity: " +
+                    initialCapacity);
+        if (initialCapacity > MAXIMUM_CAPACITY)
+            initialCapacity = MAXIMUM_CAPACITY;
+        if (!(loadFactor > 0.0f && loadFactor < 1.0f))
+            throw new IllegalArgumentException("Illegal load factor: " +
+                    loadFactor);
+        this.loadFactor = loadFactor;
+        this.threshold = HashMap.tableSizeFor(
+                (int) Math.min((long) (initialCapacity / loadFactor) + 1L,
+                        MAXIMUM_CAPACITY));
+    }
+
+    /**
+     * Constructs an empty map able to hold the specified number of
+     * mappings without resizing, with the default load factor (0.75).
+     *
+     * @param initialCapacity the initial capacity
+     * @throws IllegalArgumentException if the initial capacity is negative
+     */
+    public IntObjectMap(int initialCapacity) {
+        this(initialCapacity, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * Constructs an empty map with the default initial capacity (16) and
+     * the default load factor (0.75).
+     */
+    public IntObjectMap() {
+        this.loadFactor = DEFAULT_LOAD_FACTOR;
+        this.threshold = DEFAULT_INITIAL_CAPACITY;
+    }
+
+    /**
+     * Constructs a new map with the same mappings as the specified map.
+     *
+     * @param m the map whose mappings are to be placed in this map
+     * @throws NullPointerException if the specified map is null
+     */
+    public IntObjectMap(IntObjectMap<? extends V> m) {
+        this(m.size, m.loadFactor);
+        putAll(m);
+    }
+
+    /* ---------------- Table management -------------- */
+
+    /**
+     * Returns the slot holding the given nonzero key, or -1.
+     */
+    final int slotOf(int key) {
+        int[] ks = keys;
+        if (ks != null) {
+            int m = ks.length - 1;
+            for (int i = IntHashMap.mix(key) & m, k; (k = ks[i]) != 0;
+                 i = (i + 1) & m) {
+                if (k == key)
+                    return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Initializes or doubles the table, reinserting every key into the
+     * new arrays.
+     */
+    final void resize() {
+        int[] oldKeys = keys;
+        Object[] oldVals = vals;
+        int newCap;
+        if (oldKeys == null)
+            newCap = Math.max(threshold, 2);
+        else if ((newCap = oldKeys.length << 1) > MAXIMUM_CAPACITY ||
+                 newCap < 0)
+            throw new IllegalStateException("IntObjectMap too large");
+        int[] ks = new int[newCap];
+        Object[] vs = new Object[newCap];
+        int m = newCap - 1;
+        if (oldKeys != null) {
+            for (int j = 0; j < oldKeys.length; ++j) {
+                int k = oldKeys[j];
+                if (k != 0) {
+                    int i = IntHashMap.mix(k) & m;
+                    while (ks[i] != 0)
+                        i = (i + 1) & m;
+                    ks[i] = k;
+                    vs[i] = oldVals[j];
+                }
+            }
+        }
+        keys = ks;
+        vals = vs;
+        threshold = (newCap == MAXIMUM_CAPACITY) ? newCap - 1 :
+                (int) (newCap * loadFactor);
+    }
+
+    /**
+     * Removes the key in slot {@code i} and shifts back the following
+     * entries of its cluster so that no probe sequence is broken.
+     */
+    final void removeSlot(int i) {
+        int[] ks = keys;
+        Object[] vs = vals;
+        int m = ks.length - 1;
+        for (int j = i; ; ) {
+            j = (j + 1) & m;
+            int k = ks[j];
+            if (k == 0)
+                break;
+            int h = IntHashMap.mix(k) & m;
+            // move k back into the hole unless its home slot lies
+            // cyclically in (i, j]
+            if (i <= j ? (i >= h || h > j) : (i >= h && h > j)) {
+                ks[i] = k;
+                vs[i] = vs[j];
+                i = j;
+            }
+        }
+        ks[i] = 0;
+        vs[i] = null;
+        --size;
+        ++modCount;
+    }
+
+    /* ---------------- Public operations -------------- */
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if this map contains no key-value mappings.
+     *
+     * @return {@code true} if this map contains no key-value mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code null} if this map contains no mapping for the key.
+     *
+     * @param key the key whose associated value is to be returned
+     * @return the value mapped to the key, or {@code null}
+     */
+    public V get(int key) {
+        return getOrDefault(key, null);
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code defaultValue} if this map contains no mapping for the key.
+     *
+     * @param key          the key whose associated value is to be returned
+     * @param defaultValue the default mapping of the key
+     * @return the value mapped to the key, or {@code defaultValue}
+     */
+    @SuppressWarnings("unchecked")
+    public V getOrDefault(int key, V defaultValue) {
+        if (key == 0)
+            return hasZeroKey ? zeroValue : defaultValue;
+        int[] ks = keys;
+        if (ks != null) {
+            int m = ks.length - 1;
+            for (int i = IntHashMap.mix(key) & m, k; (k = ks[i]) != 0;
+                 i = (i + 1) & m) {
+                if (k == key)
+                    return (V) vals[i];
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Returns {@code true} if this map contains a mapping for the
+     * specified key.
+     *
+     * @param key the key whose presence in this map is to be tested
+     * @return {@code true} if this map contains a mapping for the key
+     */
+    public boolean containsKey(int key) {
+        return key == 0 ? hasZeroKey : slotOf(key) >= 0;
+    }
+
+    /**
+     * Returns {@code true} if this map maps one or more keys to the
+     * specified value.  This operation requires a scan of the table.
+     *
+     * @param value the value whose presence in this map is to be tested
+     * @return {@code true} if some key is mapped to the value
+     */
+    public boolean containsValue(Object value) {
+        if (hasZeroKey && Objects.equals(zeroValue, value))
+            return true;
+        int[] ks = keys;
+        Object[] vs = vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0 && Objects.equals(vs[i], value))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for the key, the old
+     * value is replaced.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the key, or {@code null}
+     *         if there was no mapping for the key
+     */
+    public V put(int key, V value) {
+        return putVal(key, value, false);
+    }
+
+    /**
+     * If the specified key is not already associated with a value (or is
+     * mapped to {@code null}), associates it with the given value.
+     *
+     * @param key   key with which the specified value is to be associated
+     * @param value value to be associated with the specified key
+     * @return the previous value associated with the key, or {@code null}
+     *         if there was no mapping for the key
+     */
+    public V putIfAbsent(int key, V value) {
+        return putVal(key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    final V putVal(int key, V value, boolean onlyIfAbsent) {
+        if (key == 0) {
+            if (hasZeroKey) {
+                V old = zeroValue;
+                if (!onlyIfAbsent || old == null)
+                    zeroValue = value;
+                return old;
+            }
+            hasZeroKey = true;
+            zeroValue = value;
+            ++size;
+            ++modCount;
+            return null;
+        }
+        if (keys == null)
+            resize();
+        int[] ks = keys;
+        int m = ks.length - 1, i = IntHashMap.mix(key) & m;
+        for (int k; (k = ks[i]) != 0; i = (i + 1) & m) {
+            if (k == key) {
+                V old = (V) vals[i];
+                if (!onlyIfAbsent || old == null)
+                    vals[i] = value;
+                return old;
+            }
+        }
+        ks[i] = key;
+        vals[i] = value;
+        ++modCount;
+        if (++size > threshold)
+            resize();
+        return null;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map,
+     * replacing the values of keys that are already present.
+     *
+     * @param m mappings to be stored in this map
+     * @throws NullPointerException if the specified map is null
+     */
+    @SuppressWarnings("unchecked")
+    public void putAll(IntObjectMap<? extends V> m) {
+        int s = m.size;
+        if (s == 0)
+            return;
+        if (keys == null) {
+            int t = HashMap.tableSizeFor(
+                    (int) Math.min((long) (s / loadFactor) + 1L,
+                            MAXIMUM_CAPACITY));
+            if (t > threshold)
+                threshold = t;
+        }
+        if (m.hasZeroKey)
+            putVal(0, m.zeroValue, false);
+        int[] ks = m.keys;
+        Object[] vs = m.vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0)
+                    putVal(ks[i], (V) vs[i], false);
+            }
+        }
+    }
+
+    /**
+     * If the specified key is not already associated with a value (or is
+     * mapped to {@code null}), attempts to compute its value using the
+     * given mapping function and enters it into this map unless
+     * {@code null}.
+     *
+     * @param key             key with which the value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with
+     *         the key, or null if the computed value is null
+     * @throws NullPointerException if the mapping function is null
+     */
+    public V computeIfAbsent(int key,
+                             IntFunction<? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        V old = get(key);
+        if (old != null)
+            return old;
+        int mc = modCount;
+        V v = mappingFunction.apply(key);
+        if (mc != modCount)
+            throw new ConcurrentModificationException();
+        if (v != null)
+            putVal(key, v, false);
+        return v;
+    }
+
+    /**
+     * If the specified key is not already associated with a value or is
+     * associated with null, associates it with the given non-null value.
+     * Otherwise, replaces the associated value with the results of the
+     * given remapping function, or removes if the result is {@code null}.
+     *
+     * @param key               key with which the value is to be associated
+     * @param value             the non-null value to be merged
+     * @param remappingFunction the function to recompute a present value
+     * @return the new value associated with the key, or null if no value
+     *         is associated with the key
+     * @throws NullPointerException if the value or the remapping function
+     *                              is null
+     */
+    public V merge(int key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null || remappingFunction == null)
+            throw new NullPointerException();
+        V old = get(key);
+        V v;
+        if (old == null)
+            v = value;
+        else {
+            int mc = modCount;
+            v = remappingFunction.apply(old, value);
+            if (mc != modCount)
+                throw new ConcurrentModificationException();
+        }
+        if (v == null)
+            remove(key);
+        else
+            putVal(key, v, false);
+        return v;
+    }
+
+    /**
+     * Removes the mapping for the specified key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map
+     * @return the previous value associated with the key, or {@code null}
+     *         if there was no mapping for the key
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == 0) {
+            if (!hasZeroKey)
+                return null;
+            V old = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            --size;
+            ++modCount;
+            return old;
+        }
+        int i = slotOf(key);
+        if (i < 0)
+            return null;
+        V old = (V) vals[i];
+        removeSlot(i);
+        return old;
+    }
+
+    /**
+     * Removes the entry for the specified key only if it is currently
+     * mapped to the specified value.
+     *
+     * @param key   key with which the specified value is associated
+     * @param value value expected to be associated with the specified key
+     * @return {@code true} if the value was removed
+     */
+    public boolean remove(int key, Object value) {
+        if (key == 0) {
+            if (!hasZeroKey || !Objects.equals(zeroValue, value))
+                return false;
+            remove(0);
+            return true;
+        }
+        int i = slotOf(key);
+        if (i < 0 || !Objects.equals(vals[i], value))
+            return false;
+        removeSlot(i);
+        return true;
+    }
+
+    /**
+     * Removes all of the mappings from this map.  The table keeps its
+     * capacity.
+     */
+    public void clear() {
+        ++modCount;
+        if (keys != null && size > 0) {
+            Arrays.fill(keys, 0);
+            Arrays.fill(vals, null);
+        }
+        hasZeroKey = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Performs the given action for each key in this map.
+     *
+     * @param action the action to be performed for each key
+     * @throws NullPointerException            if the action is null
+     * @throws ConcurrentModificationException if the map is structurally
+     *                                         modified by the action
+     */
+    public void forEachKey(IntConsumer action) {
+        if (action == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (hasZeroKey)
+            action.accept(0);
+        int[] ks = keys;
+        if (ks != null) {
+            for (int i = 0; i < ks.length && modCount == mc; ++i) {
+                if (ks[i] != 0)
+                    action.accept(ks[i]);
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Replaces each value with the result of applying the given function
+     * to it.
+     *
+     * @param function the function to apply to each value
+     * @throws NullPointerException if the function is null
+     */
+    @SuppressWarnings("unchecked")
+    public void replaceAll(Function<? super V, ? extends V> function) {
+        if (function == null)
+            throw new NullPointerException();
+        int mc = modCount;
+        if (hasZeroKey)
+            zeroValue = function.apply(zeroValue);
+        int[] ks = keys;
+        Object[] vs = vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0)
+                    vs[i] = function.apply((V) vs[i]);
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Returns a sequential {@code IntStream} over the keys of this map.
+     * Call {@code parallel()} on the result for a parallel stream.
+     *
+     * @return a stream of the keys of this map
+     */
+    public IntStream keys() {
+        return StreamSupport.intStream(keySpliterator(), false);
+    }
+
+    /**
+     * Returns a sequential {@code Stream} over the values of this map,
+     * in the same order as {@link #keys()}.
+     *
+     * @return a stream of the values of this map
+     */
+    public Stream<V> values() {
+        return StreamSupport.stream(valueSpliterator(), false);
+    }
+
+    /**
+     * Returns a late-binding, fail-fast spliterator over the keys of this
+     * map, reporting {@link Spliterator#SIZED} and
+     * {@link Spliterator#DISTINCT}.
+     *
+     * @return a spliterator over the keys of this map
+     */
+    public Spliterator.OfInt keySpliterator() {
+        return new KeySpliterator<>(this, 0, -1, 0, 0);
+    }
+
+    /**
+     * Returns a late-binding, fail-fast spliterator over the values of
+     * this map, reporting {@link Spliterator#SIZED}.
+     *
+     * @return a spliterator over the values of this map
+     */
+    public Spliterator<V> valueSpliterator() {
+        return new ValueSpliterator<>(this, 0, -1, 0, 0);
+    }
+
+    /**
+     * Returns a cursor over the mappings of this map.  A cursor reads
+     * the key of the current mapping without boxing it.
+     *
+     * @return a cursor positioned before the first mapping
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A fail-fast iterator over the mappings of an {@code IntObjectMap}
+     * that neither boxes keys nor allocates entries.  Typical usage:
+     * <pre> {@code
+     * for (IntObjectMap<String>.Cursor c = map.cursor(); c.advance(); )
+     *     System.out.println(c.key() + " -> " + c.value());
+     * }</pre>
+     */
+    public final class Cursor {
+        // slot index of the current mapping; keys.length denotes key 0
+        private int index = -1;
+        private int expectedModCount = modCount;
+        private boolean removable;
+        // already visited keys that removal shifted across the end of
+        // the table into slots ahead of the cursor
+        private int[] skip;
+        private int skipCount;
+
+        Cursor() {
+        }
+
+        /**
+         * Moves to the next mapping.
+         *
+         * @return {@code false} if there are no more mappings
+         * @throws ConcurrentModificationException if the map was
+         *                                         structurally modified
+         */
+        public boolean advance() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            int[] ks = keys;
+            int n = (ks == null) ? 0 : ks.length;
+            removable = false;
+            while (++index < n) {
+                int k = ks[index];
+                if (k != 0 && (skip == null || !skipped(k)))
+                    return removable = true;
+            }
+            if (index == n && hasZeroKey)
+                return removable = true;
+            index = n + 1;
+            return false;
+        }
+
+        /**
+         * Returns the key of the current mapping.
+         *
+         * @return the key of the current mapping
+         */
+        public int key() {
+            checkCurrent();
+            return index == keysLength() ? 0 : keys[index];
+        }
+
+        /**
+         * Returns the value of the current mapping.
+         *
+         * @return the value of the current mapping
+         */
+        @SuppressWarnings("unchecked")
+        public V value() {
+            checkCurrent();
+            return index == keysLength() ? zeroValue : (V) vals[index];
+        }
+
+        /**
+         * Replaces the value of the current mapping.
+         *
+         * @param value the new value
+         * @return the previous value
+         */
+        @SuppressWarnings("unchecked")
+        public V setValue(V value) {
+            checkCurrent();
+            V old;
+            if (index == keysLength()) {
+                old = zeroValue;
+                zeroValue = value;
+            } else {
+                old = (V) vals[index];
+                vals[index] = value;
+            }
+            return old;
+        }
+
+        /**
+         * Removes the current mapping.
+         *
+         * @throws IllegalStateException if there is no current mapping
+         */
+        public void remove() {
+            checkCurrent();
+            removable = false;
+            int[] ks = keys;
+            int n = keysLength();
+            if (index == n)
+                IntObjectMap.this.remove(0);
+            else {
+                // Backward shifting may move keys of the cluster that
+                // wraps around the end of the table from its first,
+                // already visited, slots into slots ahead of the cursor.
+                int i = index + 1;
+                while (i < n && ks[i] != 0)
+                    ++i;
+                if (i == n) {
+                    for (int j = 0; ks[j] != 0; ++j) {
+                        if (skip == null)
+                            skip = new int[4];
+                        else if (skipCount == skip.length)
+                            skip = Arrays.copyOf(skip, skipCount << 1);
+                        skip[skipCount++] = ks[j];
+                    }
+                }
+                removeSlot(index);
+                // a later key may have been shifted into this slot
+                --index;
+            }
+            expectedModCount = modCount;
+        }
+
+        private boolean skipped(int k) {
+            for (int i = 0; i < skipCount; ++i) {
+                if (skip[i] == k)
+                    return true;
+            }
+            return false;
+        }
+
+        private int keysLength() {
+            return keys == null ? 0 : keys.length;
+        }
+
+        private void checkCurrent() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (!removable)
+                throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Base of the spliterators over the slots {@code [index, fence)} of
+     * the table, where the virtual slot {@code keys.length} stands for the
+     * key {@code 0}.  Splitting halves the slot range, as in
+     * {@code HashMap.HashMapSpliterator}.
+     */
+    static class IntObjectMapSpliterator<V> {
+        final IntObjectMap<V> map;
+        int index;              // current index, modified on advance/split
+        int fence;              // one past last index; -1 until first use
+        int est;                // size estimate
+        int expectedModCount;   // for comodification checks
+
+        IntObjectMapSpliterator(IntObjectMap<V> m, int origin, int fence,
+                                int est, int expectedModCount) {
+            this.map = m;
+            this.index = origin;
+            this.fence = fence;
+            this.est = est;
+            this.expectedModCount = expectedModCount;
+        }
+
+        final int getFence() { // initialize fence and size on first use
+            int hi;
+            if ((hi = fence) < 0) {
+                IntObjectMap<V> m = map;
+                est = m.size;
+                expectedModCount = m.modCount;
+                hi = fence = (m.keys == null) ? 0 : m.keys.length + 1;
+            }
+            return hi;
+        }
+
+        public final long estimateSize() {
+            getFence(); // force init
+            return (long) est;
+        }
+    }
+
+    static final class KeySpliterator<V>
+            extends IntObjectMapSpliterator<V>
+            implements Spliterator.OfInt {
+        KeySpliterator(IntObjectMap<V> m, int origin, int fence, int est,
+                       int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public KeySpliterator<V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid) ? null :
+                    new KeySpliterator<>(map, lo, index = mid, est >>>= 1,
+                            expectedModCount);
+        }
+
+        public void forEachRemaining(IntConsumer action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence(), i = index;
+            IntObjectMap<V> m = map;
+            int[] ks = m.keys;
+            int n = (ks == null) ? 0 : ks.length;
+            if (n + 1 >= hi && i >= 0 && i < (index = hi)) {
+                for (; i < hi; ++i) {
+                    if (i == n) {
+                        if (m.hasZeroKey)
+                            action.accept(0);
+                    } else if (ks[i] != 0)
+                        action.accept(ks[i]);
+                }
+            }
+            if (m.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        public boolean tryAdvance(IntConsumer action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence();
+            IntObjectMap<V> m = map;
+            int[] ks = m.keys;
+            int n = (ks == null) ? 0 : ks.length;
+            if (n + 1 >= hi && index >= 0) {
+                while (index < hi) {
+                    int i = index++;
+                    if (i == n ? m.hasZeroKey : ks[i] != 0) {
+                        action.accept(i == n ? 0 : ks[i]);
+                        if (m.modCount != expectedModCount)
+                            throw new ConcurrentModificationException();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0) |
+                    Spliterator.DISTINCT;
+        }
+    }
+
+    static final class ValueSpliterator<V>
+            extends IntObjectMapSpliterator<V>
+            implements Spliterator<V> {
+        ValueSpliterator(IntObjectMap<V> m, int origin, int fence, int est,
+                         int expectedModCount) {
+            super(m, origin, fence, est, expectedModCount);
+        }
+
+        public ValueSpliterator<V> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid) ? null :
+                    new ValueSpliterator<>(map, lo, index = mid, est >>>= 1,
+                            expectedModCount);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void forEachRemaining(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence(), i = index;
+            IntObjectMap<V> m = map;
+            int[] ks = m.keys;
+            Object[] vs = m.vals;
+            int n = (ks == null) ? 0 : ks.length;
+            if (n + 1 >= hi && i >= 0 && i < (index = hi)) {
+                for (; i < hi; ++i) {
+                    if (i == n) {
+                        if (m.hasZeroKey)
+                            action.accept(m.zeroValue);
+                    } else if (ks[i] != 0)
+                        action.accept((V) vs[i]);
+                }
+            }
+            if (m.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean tryAdvance(Consumer<? super V> action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence();
+            IntObjectMap<V> m = map;
+            int[] ks = m.keys;
+            int n = (ks == null) ? 0 : ks.length;
+            if (n + 1 >= hi && index >= 0) {
+                while (index < hi) {
+                    int i = index++;
+                    if (i == n ? m.hasZeroKey : ks[i] != 0) {
+                        action.accept(i == n ? m.zeroValue : (V) m.vals[i]);
+                        if (m.modCount != expectedModCount)
+                            throw new ConcurrentModificationException();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        public int characteristics() {
+            return (fence < 0 || est == map.size ? Spliterator.SIZED : 0);
+        }
+    }
+
+    /* ---------------- Object methods -------------- */
+
+    /**
+     * Returns a shallow copy of this map: the arrays are copied, but the
+     * values themselves are not cloned.
+     *
+     * @return a shallow copy of this map
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public IntObjectMap<V> clone() {
+        IntObjectMap<V> result;
+        try {
+            result = (IntObjectMap<V>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+        if (keys != null) {
+            result.keys = keys.clone();
+            result.vals = vals.clone();
+        }
+        result.modCount = 0;
+        return result;
+    }
+
+    /**
+     * Compares the specified object with this map for equality.  Two
+     * {@code IntObjectMap}s are equal if they contain the same keys, each
+     * mapped to equal values.
+     *
+     * @param o object to be compared for equality with this map
+     * @return {@code true} if the specified object is equal to this map
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof IntObjectMap))
+            return false;
+        IntObjectMap<?> m = (IntObjectMap<?>) o;
+        if (m.size != size || m.hasZeroKey != hasZeroKey ||
+                (hasZeroKey && !Objects.equals(m.zeroValue, zeroValue)))
+            return false;
+        int[] ks = keys;
+        Object[] vs = vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                int k = ks[i], j;
+                if (k != 0 && ((j = m.slotOf(k)) < 0 ||
+                               !Objects.equals(m.vals[j], vs[i])))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code value for this map, computed as the sum of
+     * {@code key ^ Objects.hashCode(value)} over all mappings, in the
+     * manner of {@link Map#hashCode} for boxed keys.
+     *
+     * @return the hash code value for this map
+     */
+    @Override
+    public int hashCode() {
+        int h = hasZeroKey ? Objects.hashCode(zeroValue) : 0;
+        int[] ks = keys;
+        Object[] vs = vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0)
+                    h += ks[i] ^ Objects.hashCode(vs[i]);
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Returns a string representation of this map, in the same format
+     * as {@link AbstractMap#toString}.
+     *
+     * @return a string representation of this map
+     */
+    @Override
+    public String toString() {
+        if (size == 0)
+            return "{}";
+        StringBuilder sb = new StringBuilder().append('{');
+        String sep = "";
+        for (Cursor c = cursor(); c.advance(); sep = ", ") {
+            V v = c.value();
+            sb.append(sep).append(c.key()).append('=')
+                    .append(v == this ? "(this Map)" : v);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Saves this map to a stream.
+     *
+     * @serialData The number of mappings is emitted (int), followed by
+     * the key (int) and value (Object) of each mapping, in no particular
+     * order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        int mc = modCount;
+        s.defaultWriteObject();
+        s.writeInt(size);
+        if (hasZeroKey) {
+            s.writeInt(0);
+            s.writeObject(zeroValue);
+        }
+        int[] ks = keys;
+        Object[] vs = vals;
+        if (ks != null) {
+            for (int i = 0; i < ks.length; ++i) {
+                if (ks[i] != 0) {
+                    s.writeInt(ks[i]);
+                    s.writeObject(vs[i]);
+                }
+            }
+        }
+        if (modCount != mc)
+            throw new ConcurrentModificationException();
+    }
+
+    /**
+     * Reconstitutes this map from a stream (that is, deserializes it).
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (!(loadFactor > 0.0f && loadFactor < 1.0f))
+            throw new InvalidObjectException("Illegal load factor: " +
+                    loadFactor);
+        int mappings = s.readInt();
+        if (mappings < 0)
+            throw new InvalidObjectException("Illegal mappings count: " +
+                    mappings);
+        threshold = HashMap.tableSizeFor(
+                (int) Math.min((long) (mappings / loadFactor) + 1L,
+                        MAXIMUM_CAPACITY));
+        for (int i = 0; i < mappings; i++) {
+            int key = s.readInt();
+            putVal(key, (V) s.readObject(), false);
+        }
+    }
+}
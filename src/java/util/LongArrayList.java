@@ -0,0 +1,1203 @@
+package java.util;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.Serializable;
+import java.nio.LongBuffer;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import sun.misc.SharedSecrets;
+
+/**
+ * Resizable-array list of primitive {@code long} values.  Unlike
+ * {@code ArrayList<Long>}, this list never boxes an element: the
+ * elements are stored directly in a {@code long[]}, so appending a value
+ * allocates nothing except when the array has to grow, and traversal reads
+ * the values sequentially instead of dereferencing one {@code Long} per
+ * element.
+ *
+ * <p>The growth policy, the fail-fast behaviour and the semantics of
+ * {@link #subList sub-lists} are those of {@link ArrayList}: the capacity
+ * grows by half when it is exhausted, structural modifications are counted
+ * in {@code modCount}, and iteration over a list or a sub-list that has been
+ * structurally modified by other means throws
+ * {@link ConcurrentModificationException} on a best-effort basis.
+ *
+ * <p>Elements may be appended in bulk from a {@code long[]} or a
+ * {@link LongStream}, and read back as a {@code LongStream} whose
+ * {@link #spliterator spliterator} splits the index range in halves, like
+ * {@link Arrays#spliterator(long[], int, int)}, so that parallel pipelines
+ * over a list scale as well as parallel pipelines over an array.
+ * {@link #asLongBuffer} exposes the elements without copying them.
+ *
+ * <p><strong>Note that this implementation is not synchronized.</strong>
+ * If multiple threads access a {@code LongArrayList} instance concurrently,
+ * and at least one of the threads modifies the list structurally, it must be
+ * synchronized externally.
+ *
+ * @see ArrayList
+ * @see LongArrayList
+ * @see DoubleArrayList
+ * @since 1.8
+ */
+public class LongArrayList implements RandomAccess, Cloneable, Serializable {
+
+    private static final long serialVersionUID = -2480139176316384302L;
+
+    /**
+     * Default initial capacity.
+     */
+    private static final int DEFAULT_CAPACITY = 10;
+
+    /**
+     * Shared empty array instance used for empty instances.
+     */
+    private static final long[] EMPTY_ELEMENTDATA = {};
+
+    /**
+     * Shared empty array instance used for default sized empty instances.
+     * We distinguish this from EMPTY_ELEMENTDATA to know how much to inflate
+     * when first element is added.
+     */
+    private static final long[] DEFAULTCAPACITY_EMPTY_ELEMENTDATA = {};
+
+    /**
+     * The array buffer into which the elements of the list are stored.
+     * The capacity of the list is the length of this array buffer.
+     */
+    transient long[] elementData; // non-private to simplify nested class access
+
+    /**
+     * The size of the list (the number of elements it contains).
+     */
+    private int size;
+
+    /**
+     * The number of times this list has been <i>structurally modified</i>,
+     * as in {@link AbstractList#modCount}.
+     */
+    protected transient int modCount = 0;
+
+    /**
+     * Constructs an empty list with the specified initial capacity.
+     *
+     * @param initialCapacity the initial capacity of the list
+     * @throws IllegalArgumentException if the specified initial capacity
+     *                                  is negative
+     */
+    public LongArrayList(int initialCapacity) {
+        if (initialCapacity > 0) {
+            this.elementData = new long[initialCapacity];
+        } else if (initialCapacity == 0) {
+            this.elementData = EMPTY_ELEMENTDATA;
+        } else {
+            throw new IllegalArgumentException("Illegal Capacity: " +
+                    initialCapacity);
+        }
+    }
+
+    /**
+     * Constructs an empty list with an initial capacity of ten.
+     */
+    public LongArrayList() {
+        this.elementData = DEFAULTCAPACITY_EMPTY_ELEMENTDATA;
+    }
+
+    /**
+     * Constructs a list containing the elements of the specified array, in
+     * the order they appear in the array.
+     *
+     * @param a the array whose elements are to be placed into this list
+     * @throws NullPointerException if the specified array is null
+     */
+    public LongArrayList(long[] a) {
+        if ((size = a.length) != 0) {
+            elementData = a.clone();
+        } else {
+            this.elementData = EMPTY_ELEMENTDATA;
+        }
+    }
+
+    /**
+     * Trims the capacity of this list to be the list's current size.
+     */
+    public void trimToSize() {
+        modCount++;
+        if (size < elementData.length) {
+            elementData = (size == 0)
+                    ? EMPTY_ELEMENTDATA
+                    : Arrays.copyOf(elementData, size);
+        }
+    }
+
+    /**
+     * Increases the capacity of this list, if necessary, to ensure that it
+     * can hold at least the number of elements specified by the minimum
+     * capacity argument.
+     *
+     * @param minCapacity the desired minimum capacity
+     */
+    public void ensureCapacity(int minCapacity) {
+        int minExpand = (elementData != DEFAULTCAPACITY_EMPTY_ELEMENTDATA)
+                // any size if not default element table
+                ? 0
+                // larger than default for default empty table. It's already
+                // supposed to be at default size.
+                : DEFAULT_CAPACITY;
+
+        if (minCapacity > minExpand) {
+            ensureExplicitCapacity(minCapacity);
+        }
+    }
+
+    private static int calculateCapacity(long[] elementData, int minCapacity) {
+        if (elementData == DEFAULTCAPACITY_EMPTY_ELEMENTDATA) {
+            return Math.max(DEFAULT_CAPACITY, minCapacity);
+        }
+        return minCapacity;
+    }
+
+    private void ensureCapacityInternal(int minCapacity) {
+        ensureExplicitCapacity(calculateCapacity(elementData, minCapacity));
+    }
+
+    private void ensureExplicitCapacity(int minCapacity) {
+        modCount++;
+
+        // overflow-conscious code
+        if (minCapacity - elementData.length > 0)
+            grow(minCapacity);
+    }
+
+    /**
+     * The maximum size of array to allocate.
+     * Some VMs reserve some header words in an array.
+     * Attempts to allocate larger arrays may result in
+     * OutOfMemoryError: Requested array size exceeds VM limit
+     */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Increases the capacity to ensure that it can hold at least the
+     * number of elements specified by the minimum capacity argument.
+     *
+     * @param minCapacity the desired minimum capacity
+     */
+    private void grow(int minCapacity) {
+        // overflow-conscious code
+        int oldCapacity = elementData.length;
+        int newCapacity = oldCapacity + (oldCapacity >> 1);
+        if (newCapacity - minCapacity < 0)
+            newCapacity = minCapacity;
+        if (newCapacity - MAX_ARRAY_SIZE > 0)
+            newCapacity = hugeCapacity(minCapacity);
+        elementData = Arrays.copyOf(elementData, newCapacity);
+    }
+
+    private static int hugeCapacity(int minCapacity) {
+        if (minCapacity < 0) // overflow
+            throw new OutOfMemoryError();
+        return (minCapacity > MAX_ARRAY_SIZE) ?
+                Integer.MAX_VALUE :
+                MAX_ARRAY_SIZE;
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if this list contains no elements.
+     *
+     * @return {@code true} if this list contains no elements
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns {@code true} if this list contains the specified element.
+     *
+     * @param o element whose presence in this list is to be tested
+     * @return {@code true} if this list contains the specified element
+     */
+    public boolean contains(long o) {
+        return indexOf(o) >= 0;
+    }
+
+    /**
+     * Returns the index of the first occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the first occurrence of the element, or -1
+     */
+    public int indexOf(long o) {
+        return indexOfRange(elementData, o, 0, size);
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified element
+     * in this list, or -1 if this list does not contain the element.
+     *
+     * @param o element to search for
+     * @return the index of the last occurrence of the element, or -1
+     */
+    public int lastIndexOf(long o) {
+        return lastIndexOfRange(elementData, o, 0, size);
+    }
+
+    static int indexOfRange(long[] a, long o, int from, int to) {
+        for (int i = from; i < to; i++)
+            if (a[i] == o)
+                return i;
+        return -1;
+    }
+
+    static int lastIndexOfRange(long[] a, long o, int from, int to) {
+        for (int i = to - 1; i >= from; i--)
+            if (a[i] == o)
+                return i;
+        return -1;
+    }
+
+    /**
+     * Returns a shallow copy of this {@code LongArrayList} instance.
+     *
+     * @return a clone of this {@code LongArrayList} instance
+     */
+    public LongArrayList clone() {
+        try {
+            LongArrayList v = (LongArrayList) super.clone();
+            v.elementData = Arrays.copyOf(elementData, size);
+            v.modCount = 0;
+            return v;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError(e);
+        }
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list in
+     * proper sequence (from first to last element).
+     *
+     * <p>The returned array is a copy, so the caller is free to modify it.
+     * Use {@link #asLongBuffer} to read the elements without copying them.
+     *
+     * @return an array containing all of the elements in this list
+     */
+    public long[] toArray() {
+        return Arrays.copyOf(elementData, size);
+    }
+
+    /**
+     * Returns a {@link LongBuffer} view of the elements of this list,
+     * backed by the list's internal array: no element is copied.  The
+     * buffer's position is zero, and its limit and capacity are the size
+     * of this list.
+     *
+     * <p>Changes to the elements through the buffer are visible in the list
+     * and vice versa, so the buffer may be used to hand the contents of the
+     * list to bulk {@code LongBuffer} operations, or to fill the list in
+     * place.  The view is valid only until the next structural modification
+     * of the list: once the list adds, removes or reallocates elements, the
+     * buffer may no longer be connected to the list and its contents are
+     * unspecified.
+     *
+     * @return a buffer view of the elements of this list
+     */
+    public LongBuffer asLongBuffer() {
+        return LongBuffer.wrap(elementData, 0, size).slice();
+    }
+
+    // Positional Access Operations
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param index index of the element to return
+     * @return the element at the specified position in this list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public long get(int index) {
+        rangeCheck(index);
+
+        return elementData[index];
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with
+     * the specified element.
+     *
+     * @param index   index of the element to replace
+     * @param element element to be stored at the specified position
+     * @return the element previously at the specified position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public long set(int index, long element) {
+        rangeCheck(index);
+
+        long oldValue = elementData[index];
+        elementData[index] = element;
+        return oldValue;
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param e element to be appended to this list
+     * @return {@code true}
+     */
+    public boolean add(long e) {
+        ensureCapacityInternal(size + 1);  // Increments modCount!!
+        elementData[size++] = e;
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this
+     * list. Shifts the element currently at that position (if any) and
+     * any subsequent elements to the right (adds one to their indices).
+     *
+     * @param index   index at which the specified element is to be inserted
+     * @param element element to be inserted
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index > size()})
+     */
+    public void add(int index, long element) {
+        rangeCheckForAdd(index);
+
+        ensureCapacityInternal(size + 1);  // Increments modCount!!
+        System.arraycopy(elementData, index, elementData, index + 1,
+                size - index);
+        elementData[index] = element;
+        size++;
+    }
+
+    /**
+     * Removes the element at the specified position in this list.
+     * Shifts any subsequent elements to the left (subtracts one from their
+     * indices).
+     *
+     * <p>This method is not named {@code remove} so that a call with an
+     * {@code int} argument cannot be mistaken for {@link #removeElement}.
+     *
+     * @param index the index of the element to be removed
+     * @return the element that was removed from the list
+     * @throws IndexOutOfBoundsException if the index is out of range
+     *         ({@code index < 0 || index >= size()})
+     */
+    public long removeAt(int index) {
+        rangeCheck(index);
+
+        modCount++;
+        long oldValue = elementData[index];
+
+        int numMoved = size - index - 1;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index + 1, elementData, index,
+                    numMoved);
+        size--;
+        return oldValue;
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this list,
+     * if it is present.  If the list does not contain the element, it is
+     * unchanged.
+     *
+     * @param o element to be removed from this list, if present
+     * @return {@code true} if this list contained the specified element
+     */
+    public boolean removeElement(long o) {
+        int index = indexOf(o);
+        if (index < 0)
+            return false;
+        fastRemove(index);
+        return true;
+    }
+
+    /*
+     * Private remove method that skips bounds checking and does not
+     * return the value removed.
+     */
+    private void fastRemove(int index) {
+        modCount++;
+        int numMoved = size - index - 1;
+        if (numMoved > 0)
+            System.arraycopy(elementData, index + 1, elementData, index,
+                    numMoved);
+        size--;
+    }
+
+    /**
+     * Removes all of the elements from this list.  The list will
+     * be empty after this call returns.
+     */
+    public void clear() {
+        modCount++;
+        size = 0;
+    }
+
+    /**
+     * Appends all of the elements in the specified array to the end of
+     * this list, in the order they appear in the array.
+     *
+     * @param a array containing elements to be added to this list
+     * @return {@code true} if this list changed as a result of the call
+     * @throws NullPointerException if the specified array is null
+     */
+    public boolean addAll(long[] a) {
+        return addAll(a, 0, a.length);
+    }
+
+    /**
+     * Appends the elements {@code a[off]} to {@code a[off + len - 1]} to the
+     * end of this list.
+     *
+     * @param a   array containing elements to be added to this list
+     * @param off index of the first element of {@code a} to add
+     * @param len number of elements to add
+     * @return {@code true} if this list changed as a result of the call
+     * @throws NullPointerException      if the specified array is null
+     * @throws IndexOutOfBoundsException if {@code off} or {@code len} is
+     *         negative, or {@code off + len > a.length}
+     */
+    public boolean addAll(long[] a, int off, int len) {
+        if ((off | len | (a.length - (off + len)) | (off + len)) < 0)
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len
+                    + ", length: " + a.length);
+        ensureCapacityInternal(size + len);  // Increments modCount
+        System.arraycopy(a, off, elementData, size, len);
+        size += len;
+        return len != 0;
+    }
+
+    /**
+     * Appends all of the elements in the specified list to the end of this
+     * list.  The behavior of this operation is undefined if the specified
+     * list is this list, and this list is nonempty.
+     *
+     * @param c list containing elements to be added to this list
+     * @return {@code true} if this list changed as a result of the call
+     * @throws NullPointerException if the specified list is null
+     */
+    public boolean addAll(LongArrayList c) {
+        return addAll(c.elementData, 0, c.size);
+    }
+
+    /**
+     * Appends all of the elements of the specified stream to the end of this
+     * list, in encounter order.  This is a terminal operation on the stream.
+     *
+     * <p>A parallel stream is first evaluated into an array, so that the
+     * pipeline runs in parallel; the elements of a sequential stream are
+     * appended one by one, after reserving capacity for them if the stream
+     * knows its size.
+     *
+     * @param s stream whose elements are to be added to this list
+     * @return {@code true} if this list changed as a result of the call
+     * @throws NullPointerException if the specified stream is null
+     */
+    public boolean addAll(LongStream s) {
+        if (s.isParallel())
+            return addAll(s.toArray());
+        int oldSize = size;
+        Spliterator.OfLong spliterator = s.spliterator();
+        long est = spliterator.getExactSizeIfKnown();
+        if (est > 0 && est <= MAX_ARRAY_SIZE - size)
+            ensureCapacityInternal(size + (int) est);
+        spliterator.forEachRemaining((LongConsumer) this::add);
+        return size != oldSize;
+    }
+
+    /**
+     * Removes from this list all of the elements whose index is between
+     * {@code fromIndex}, inclusive, and {@code toIndex}, exclusive.
+     * Shifts any succeeding elements to the left (reduces their index).
+     *
+     * @param fromIndex index of first element to be removed
+     * @param toIndex   index after last element to be removed
+     * @throws IndexOutOfBoundsException if {@code fromIndex} or
+     *         {@code toIndex} is out of range
+     *         ({@code fromIndex < 0 ||
+     *          toIndex > size() ||
+     *          toIndex < fromIndex})
+     */
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > size || toIndex < fromIndex)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(fromIndex, toIndex));
+        modCount++;
+        int numMoved = size - toIndex;
+        System.arraycopy(elementData, toIndex, elementData, fromIndex,
+                numMoved);
+        size -= toIndex - fromIndex;
+    }
+
+    /**
+     * Checks if the given index is in range.
+     */
+    private void rangeCheck(int index) {
+        if (index >= size || index < 0)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    /**
+     * A version of rangeCheck used by add.
+     */
+    private void rangeCheckForAdd(int index) {
+        if (index > size || index < 0)
+            throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+    }
+
+    private String outOfBoundsMsg(int index) {
+        return "Index: " + index + ", Size: " + size;
+    }
+
+    private static String outOfBoundsMsg(int fromIndex, int toIndex) {
+        return "From Index: " + fromIndex + " > To Index: " + toIndex;
+    }
+
+    /**
+     * Performs the given action for each element of this list, in order,
+     * until all elements have been processed or the action throws an
+     * exception.
+     *
+     * @param action the action to be performed for each element
+     * @throws NullPointerException if the specified action is null
+     */
+    public void forEach(LongConsumer action) {
+        Objects.requireNonNull(action);
+        final int expectedModCount = modCount;
+        final long[] elementData = this.elementData;
+        final int size = this.size;
+        for (int i = 0; modCount == expectedModCount && i < size; i++) {
+            action.accept(elementData[i]);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Removes all of the elements of this list that satisfy the given
+     * predicate.  If the predicate throws an exception, the list is left
+     * unmodified.
+     *
+     * @param filter a predicate which returns {@code true} for elements to be
+     *               removed
+     * @return {@code true} if any elements were removed
+     * @throws NullPointerException if the specified filter is null
+     */
+    public boolean removeIf(LongPredicate filter) {
+        Objects.requireNonNull(filter);
+        // figure out which elements are to be removed
+        // any exception thrown from the filter predicate at this stage
+        // will leave the collection unmodified
+        int removeCount = 0;
+        final BitSet removeSet = new BitSet(size);
+        final int expectedModCount = modCount;
+        final int size = this.size;
+        for (int i = 0; modCount == expectedModCount && i < size; i++) {
+            if (filter.test(elementData[i])) {
+                removeSet.set(i);
+                removeCount++;
+            }
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+
+        // shift surviving elements left over the spaces left by removed elements
+        final boolean anyToRemove = removeCount > 0;
+        if (anyToRemove) {
+            final int newSize = size - removeCount;
+            for (int i = 0, j = 0; (i < size) && (j < newSize); i++, j++) {
+                i = removeSet.nextClearBit(i);
+                elementData[j] = elementData[i];
+            }
+            this.size = newSize;
+            modCount++;
+        }
+
+        return anyToRemove;
+    }
+
+    /**
+     * Replaces each element of this list with the result of applying the
+     * operator to that element.
+     *
+     * @param operator the operator to apply to each element
+     * @throws NullPointerException if the specified operator is null
+     */
+    public void replaceAll(LongUnaryOperator operator) {
+        Objects.requireNonNull(operator);
+        final int expectedModCount = modCount;
+        final int size = this.size;
+        for (int i = 0; modCount == expectedModCount && i < size; i++) {
+            elementData[i] = operator.applyAsLong(elementData[i]);
+        }
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+        modCount++;
+    }
+
+    /**
+     * Sorts this list into ascending numerical order, using the same
+     * Dual-Pivot Quicksort as {@link Arrays#sort(long[])}.
+     */
+    public void sort() {
+        DualPivotQuicksort.sort(elementData, 0, size - 1, null, 0, 0);
+        modCount++;
+    }
+
+    /**
+     * Creates a <em><a href="Spliterator.html#binding">late-binding</a></em>
+     * and <em>fail-fast</em> {@link Spliterator.OfLong} over the elements in
+     * this list.
+     *
+     * <p>The spliterator reports {@link Spliterator#SIZED},
+     * {@link Spliterator#SUBSIZED}, and {@link Spliterator#ORDERED}, and
+     * splits its index range in halves, like the spliterator of an array.
+     *
+     * @return a {@code Spliterator.OfLong} over the elements in this list
+     */
+    public Spliterator.OfLong spliterator() {
+        return new LongArrayListSpliterator(this, 0, -1, 0);
+    }
+
+    /**
+     * Returns a sequential {@code LongStream} with this list as its source.
+     *
+     * @return a sequential {@code LongStream} over the elements in this list
+     */
+    public LongStream stream() {
+        return StreamSupport.longStream(spliterator(), false);
+    }
+
+    /**
+     * Returns a possibly parallel {@code LongStream} with this list as its
+     * source.
+     *
+     * @return a possibly parallel {@code LongStream} over the elements in this
+     *         list
+     */
+    public LongStream parallelStream() {
+        return StreamSupport.longStream(spliterator(), true);
+    }
+
+    /**
+     * Returns a view of the portion of this list between the specified
+     * {@code fromIndex}, inclusive, and {@code toIndex}, exclusive, with
+     * the semantics of {@link ArrayList#subList}: non-structural changes in
+     * the returned list are reflected in this list, and vice-versa, and the
+     * sub-list becomes invalid, failing fast, if this list is structurally
+     * modified other than through it.
+     *
+     * @param fromIndex low endpoint (inclusive) of the subList
+     * @param toIndex   high endpoint (exclusive) of the subList
+     * @return a view of the specified range within this list
+     * @throws IndexOutOfBoundsException if an endpoint index value is out of
+     *         range {@code (fromIndex < 0 || toIndex > size)}
+     * @throws IllegalArgumentException  if the endpoint indices are out of
+     *         order {@code (fromIndex > toIndex)}
+     */
+    public SubList subList(int fromIndex, int toIndex) {
+        subListRangeCheck(fromIndex, toIndex, size);
+        return new SubList(null, 0, fromIndex, toIndex);
+    }
+
+    static void subListRangeCheck(int fromIndex, int toIndex, int size) {
+        if (fromIndex < 0)
+            throw new IndexOutOfBoundsException("fromIndex = " + fromIndex);
+        if (toIndex > size)
+            throw new IndexOutOfBoundsException("toIndex = " + toIndex);
+        if (fromIndex > toIndex)
+            throw new IllegalArgumentException("fromIndex(" + fromIndex +
+                    ") > toIndex(" + toIndex + ")");
+    }
+
+    /**
+     * A view of a range of a {@link LongArrayList}, returned by
+     * {@link LongArrayList#subList}.
+     */
+    public final class SubList implements RandomAccess {
+        private final SubList parent;
+        private final int offset;
+        int size;
+        int modCount;
+
+        SubList(SubList parent, int parentOffset, int fromIndex, int toIndex) {
+            this.parent = parent;
+            this.offset = parentOffset + fromIndex;
+            this.size = toIndex - fromIndex;
+            this.modCount = LongArrayList.this.modCount;
+        }
+
+        /**
+         * Returns the number of elements in this sub-list.
+         *
+         * @return the number of elements in this sub-list
+         */
+        public int size() {
+            checkForComodification();
+            return this.size;
+        }
+
+        /**
+         * Returns {@code true} if this sub-list contains no elements.
+         *
+         * @return {@code true} if this sub-list contains no elements
+         */
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        /**
+         * Returns the element at the specified position in this sub-list.
+         *
+         * @param index index of the element to return
+         * @return the element at the specified position
+         * @throws IndexOutOfBoundsException if the index is out of range
+         */
+        public long get(int index) {
+            rangeCheck(index);
+            checkForComodification();
+            return LongArrayList.this.elementData[offset + index];
+        }
+
+        /**
+         * Replaces the element at the specified position in this sub-list.
+         *
+         * @param index index of the element to replace
+         * @param e     element to be stored at the specified position
+         * @return the element previously at the specified position
+         * @throws IndexOutOfBoundsException if the index is out of range
+         */
+        public long set(int index, long e) {
+            rangeCheck(index);
+            checkForComodification();
+            long oldValue = LongArrayList.this.elementData[offset + index];
+            LongArrayList.this.elementData[offset + index] = e;
+            return oldValue;
+        }
+
+        /**
+         * Appends the specified element to the end of this sub-list.
+         *
+         * @param e element to be appended
+         * @return {@code true}
+         */
+        public boolean add(long e) {
+            add(size, e);
+            return true;
+        }
+
+        /**
+         * Inserts the specified element at the specified position in this
+         * sub-list.
+         *
+         * @param index   index at which the element is to be inserted
+         * @param e       element to be inserted
+         * @throws IndexOutOfBoundsException if the index is out of range
+         */
+        public void add(int index, long e) {
+            rangeCheckForAdd(index);
+            checkForComodification();
+            LongArrayList.this.add(offset + index, e);
+            updateSizeAndModCount(1);
+        }
+
+        /**
+         * Removes the element at the specified position in this sub-list.
+         *
+         * @param index the index of the element to be removed
+         * @return the element that was removed
+         * @throws IndexOutOfBoundsException if the index is out of range
+         */
+        public long removeAt(int index) {
+            rangeCheck(index);
+            checkForComodification();
+            long result = LongArrayList.this.removeAt(offset + index);
+            updateSizeAndModCount(-1);
+            return result;
+        }
+
+        /**
+         * Removes all of the elements of this sub-list from the backing list.
+         */
+        public void clear() {
+            removeRange(0, size);
+        }
+
+        void removeRange(int fromIndex, int toIndex) {
+            checkForComodification();
+            LongArrayList.this.removeRange(offset + fromIndex, offset + toIndex);
+            updateSizeAndModCount(fromIndex - toIndex);
+        }
+
+        /**
+         * Returns {@code true} if this sub-list contains the specified
+         * element.
+         *
+         * @param o element whose presence is to be tested
+         * @return {@code true} if this sub-list contains the element
+         */
+        public boolean contains(long o) {
+            return indexOf(o) >= 0;
+        }
+
+        /**
+         * Returns the index in this sub-list of the first occurrence of the
+         * specified element, or -1 if there is none.
+         *
+         * @param o element to search for
+         * @return the index of the first occurrence of the element, or -1
+         */
+        public int indexOf(long o) {
+            checkForComodification();
+            int index = indexOfRange(LongArrayList.this.elementData, o, offset, offset + size);
+            return index >= 0 ? index - offset : -1;
+        }
+
+        /**
+         * Returns the index in this sub-list of the last occurrence of the
+         * specified element, or -1 if there is none.
+         *
+         * @param o element to search for
+         * @return the index of the last occurrence of the element, or -1
+         */
+        public int lastIndexOf(long o) {
+            checkForComodification();
+            int index = lastIndexOfRange(LongArrayList.this.elementData, o, offset, offset + size);
+            return index >= 0 ? index - offset : -1;
+        }
+
+        /**
+         * Returns a copy of the elements of this sub-list.
+         *
+         * @return an array containing the elements of this sub-list
+         */
+        public long[] toArray() {
+            checkForComodification();
+            return Arrays.copyOfRange(LongArrayList.this.elementData, offset, offset + size);
+        }
+
+        /**
+         * Performs the given action for each element of this sub-list.
+         *
+         * @param action the action to be performed for each element
+         * @throws NullPointerException if the specified action is null
+         */
+        public void forEach(LongConsumer action) {
+            spliterator().forEachRemaining(action);
+        }
+
+        /**
+         * Sorts this sub-list into ascending numerical order.
+         */
+        public void sort() {
+            checkForComodification();
+            DualPivotQuicksort.sort(LongArrayList.this.elementData, offset, offset + size - 1, null, 0, 0);
+        }
+
+        /**
+         * Returns a view of the portion of this sub-list between the
+         * specified indices.
+         *
+         * @param fromIndex low endpoint (inclusive) of the subList
+         * @param toIndex   high endpoint (exclusive) of the subList
+         * @return a view of the specified range within this sub-list
+         */
+        public SubList subList(int fromIndex, int toIndex) {
+            subListRangeCheck(fromIndex, toIndex, size);
+            return new SubList(this, offset, fromIndex, toIndex);
+        }
+
+        /**
+         * Returns a fail-fast {@link Spliterator.OfLong} over the elements of
+         * this sub-list.
+         *
+         * @return a {@code Spliterator.OfLong} over the elements in this
+         *         sub-list
+         */
+        public Spliterator.OfLong spliterator() {
+            checkForComodification();
+            return new LongArrayListSpliterator(LongArrayList.this, offset,
+                    offset + this.size, this.modCount);
+        }
+
+        /**
+         * Returns a sequential {@code LongStream} with this sub-list as its
+         * source.
+         *
+         * @return a sequential {@code LongStream} over this sub-list
+         */
+        public LongStream stream() {
+            return StreamSupport.longStream(spliterator(), false);
+        }
+
+        /**
+         * Returns a possibly parallel {@code LongStream} with this sub-list
+         * as its source.
+         *
+         * @return a possibly parallel {@code LongStream} over this sub-list
+         */
+        public LongStream parallelStream() {
+            return StreamSupport.longStream(spliterator(), true);
+        }
+
+        public String toString() {
+            checkForComodification();
+            return LongArrayList.toString(LongArrayList.this.elementData, offset, offset + size);
+        }
+
+        private void rangeCheck(int index) {
+            if (index < 0 || index >= this.size)
+                throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+        }
+
+        private void rangeCheckForAdd(int index) {
+            if (index < 0 || index > this.size)
+                throw new IndexOutOfBoundsException(outOfBoundsMsg(index));
+        }
+
+        private String outOfBoundsMsg(int index) {
+            return "Index: " + index + ", Size: " + this.size;
+        }
+
+        private void checkForComodification() {
+            if (LongArrayList.this.modCount != this.modCount)
+                throw new ConcurrentModificationException();
+        }
+
+        private void updateSizeAndModCount(int sizeChange) {
+            SubList slist = this;
+            do {
+                slist.size += sizeChange;
+                slist.modCount = LongArrayList.this.modCount;
+                slist = slist.parent;
+            } while (slist != null);
+        }
+    }
+
+    /**
+     * Index-based split-by-two, lazily initialized Spliterator, as in
+     * {@link ArrayList.ArrayListSpliterator}.
+     */
+    static final class LongArrayListSpliterator implements Spliterator.OfLong {
+
+        private final LongArrayList list;
+        private int index; // current index, modified on advance/split
+        private int fence; // -1 until used; then one past last index
+        private int expectedModCount; // initialized when fence set
+
+        /**
+         * Create new spliterator covering the given  range
+         */
+        LongArrayListSpliterator(LongArrayList list, int origin, int fence,
+                                int expectedModCount) {
+            this.list = list;
+            this.index = origin;
+            this.fence = fence;
+            this.expectedModCount = expectedModCount;
+        }
+
+        private int getFence() { // initialize fence to size on first use
+            int hi;
+            if ((hi = fence) < 0) {
+                expectedModCount = list.modCount;
+                hi = fence = list.size;
+            }
+            return hi;
+        }
+
+        public LongArrayListSpliterator trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            return (lo >= mid) ? null : // divide range in half unless too small
+                    new LongArrayListSpliterator(list, lo, index = mid,
+                            expectedModCount);
+        }
+
+        public boolean tryAdvance(LongConsumer action) {
+            if (action == null)
+                throw new NullPointerException();
+            int hi = getFence(), i = index;
+            if (i < hi) {
+                index = i + 1;
+                action.accept(list.elementData[i]);
+                if (list.modCount != expectedModCount)
+                    throw new ConcurrentModificationException();
+                return true;
+            }
+            return false;
+        }
+
+        public void forEachRemaining(LongConsumer action) {
+            int i, hi, mc; // hoist accesses and checks from loop
+            LongArrayList lst = list;
+            long[] a;
+            if (action == null)
+                throw new NullPointerException();
+            if ((a = lst.elementData) != null) {
+                if ((hi = fence) < 0) {
+                    mc = lst.modCount;
+                    hi = lst.size;
+                } else
+                    mc = expectedModCount;
+                if ((i = index) >= 0 && (index = hi) <= a.length) {
+                    for (; i < hi; ++i) {
+                        action.accept(a[i]);
+                    }
+                    if (lst.modCount == mc)
+                        return;
+                }
+            }
+            throw new ConcurrentModificationException();
+        }
+
+        public long estimateSize() {
+            return (long) (getFence() - index);
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
+    // Comparison and hashing
+
+    /**
+     * Compares the specified object with this list for equality.  Returns
+     * {@code true} if and only if the specified object is also an
+     * {@code LongArrayList}, both lists have the same size, and all
+     * corresponding pairs of elements in the two lists are equal.
+     *
+     * @param o the object to be compared for equality with this list
+     * @return {@code true} if the specified object is equal to this list
+     */
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof LongArrayList))
+            return false;
+        LongArrayList that = (LongArrayList) o;
+        int size = this.size;
+        if (that.size != size)
+            return false;
+        long[] a = elementData, b = that.elementData;
+        for (int i = 0; i < size; i++)
+            if (a[i] != b[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the hash code value for this list, computed as
+     * {@link List#hashCode} would compute it for the boxed elements.
+     *
+     * @return the hash code value for this list
+     */
+    public int hashCode() {
+        int hashCode = 1;
+        long[] a = elementData;
+        for (int i = 0, size = this.size; i < size; i++)
+            hashCode = 31 * hashCode + Long.hashCode(a[i]);
+        return hashCode;
+    }
+
+    /**
+     * Returns a string representation of this list, in the format of
+     * {@link AbstractCollection#toString}.
+     *
+     * @return a string representation of this list
+     */
+    public String toString() {
+        return toString(elementData, 0, size);
+    }
+
+    static String toString(long[] a, int from, int to) {
+        if (from == to)
+            return "[]";
+        StringBuilder sb = new StringBuilder();
+        sb.append('[');
+        for (int i = from; ; ) {
+            sb.append(a[i]);
+            if (++i == to)
+                return sb.append(']').toString();
+            sb.append(',').append(' ');
+        }
+    }
+
+    // Serialization
+
+    /**
+     * Save the state of the {@code LongArrayList} instance to a stream (that
+     * is, serialize it).
+     *
+     * @serialData The length of the array backing the {@code LongArrayList}
+     * instance is emitted (int), followed by all of its elements
+     * (each a {@code long}) in the proper order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+            throws IOException {
+        // Write out element count, and any hidden stuff
+        int expectedModCount = modCount;
+        s.defaultWriteObject();
+
+        // Write out size as capacity for behavioural compatibility with clone()
+        s.writeInt(size);
+
+        // Write out all elements in the proper order.
+        for (int i = 0; i < size; i++) {
+            s.writeLong(elementData[i]);
+        }
+
+        if (modCount != expectedModCount) {
+            throw new ConcurrentModificationException();
+        }
+    }
+
+    /**
+     * Reconstitute the {@code LongArrayList} instance from a stream (that is,
+     * deserialize it).
+     */
+    private void readObject(java.io.ObjectInputStream s)
+            throws IOException, ClassNotFoundException {
+        elementData = EMPTY_ELEMENTDATA;
+
+        // Read in size, and any hidden stuff
+        s.defaultReadObject();
+
+        // Read in capacity
+        int capacity = s.readInt();
+        if (capacity != size)
+            throw new InvalidObjectException("Illegal capacity: " + capacity);
+
+        if (size > 0) {
+            SharedSecrets.getJavaOISAccess().checkArray(s, long[].class, size);
+            long[] a = new long[size];
+
+            // Read in all elements in the proper order.
+            for (int i = 0; i < size; i++) {
+                a[i] = s.readLong();
+            }
+            elementData = a;
+        } else if (size < 0) {
+            throw new InvalidObjectException("Illegal size: " + size);
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package java.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter: a set of elements that answers whether
+ * it might contain an element, with a bounded probability of false
+ * positives and no false negatives, in a fixed amount of memory
+ * however many elements are added.  Typical uses are to skip lookups
+ * of keys that are certainly absent, and to drop most duplicates from
+ * a stream of events too large to remember exactly.
+ *
+ * <p>The filter is a bit array of {@link #bitSize} bits, of which
+ * {@link #getHashCount} are set for each element added.  The bits are
+ * held in an {@link AtomicLongArray}, so {@link #add} and {@link
+ * #mightContain} never lock, and may be invoked concurrently by any
+ * number of threads; an element is reported as possibly present by
+ * {@code mightContain} once {@code add} of it has returned.  Filters
+ * of the same size may be combined with {@link #merge}, for example
+ * to combine filters built in parallel, or deserialized from other
+ * processes; see {@link java.util.stream.Collectors#toBloomFilter}.
+ *
+ * <p>Elements are hashed by their {@link Object#hashCode hashCode},
+ * spread to 64 bits, so distinct elements with equal hash codes are
+ * indistinguishable, and elements must have hash codes that are
+ * consistent across processes for filters to be merged across them.
+ * Null elements are not permitted.
+ *
+ * @param <E> the type of elements added to this filter
+ * @see CountMinSketch
+ * @see HyperLogLog
+ * @since 1.8
+ */
+public class BloomFilter<E> implements java.io.Serializable {
+    private static final long serialVersionUID = 5294620155734187342L;
+
+    /*
+     * Bit indices are derived from a single 64-bit hash by double
+     * hashing (Kirsch and Mitzenmacher, "Less Hashing, Same
+     * Performance"): index i is (h1 + i * h2) mod bitSize, where h1 is
+     * the spread hash code and h2 is h1 spread again, made odd.
+     * Setting a bit reads its word first, and CASes it only if the
+     * bit is clear, so adding elements that are already present
+     * writes nothing, and words are shared between cores rather than
+     * bouncing between them.
+     */
+
+    /** The maximum number of bits: that of the largest long array. */
+    private static final long MAX_BITS = (long)Integer.MAX_VALUE << 6;
+
+    /** The number of bits, a multiple of 64. */
+    private final long bitSize;
+
+    /** The number of bits set per element. */
+    private final int hashCount;
+
+    /** The bits. */
+    private final AtomicLongArray bits;
+
+    /**
+     * Creates a filter sized for the given number of elements, so
+     * that, when that many distinct elements have been added, the
+     * probability that {@link #mightContain} returns {@code true} for
+     * an element not added is about the given probability.
+     *
+     * @param expectedInsertions the expected number of distinct elements
+     * @param fpp the desired false positive probability, between 0
+     *        and 1, exclusive
+     * @throws IllegalArgumentException if {@code expectedInsertions} is
+     *         not positive, or {@code fpp} is not between 0 and 1, or
+     *         the filter would need more than
+     *         {@code 64 * Integer.MAX_VALUE} bits
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0L || !(fpp > 0.0 && fpp < 1.0))
+            throw new IllegalArgumentException();
+        double ln2 = Math.log(2.0);
+        double m = Math.ceil(-expectedInsertions * Math.log(fpp) / (ln2 * ln2));
+        if (m > MAX_BITS)
+            throw new IllegalArgumentException("Filter too large");
+        long nbits = ((long)m + 63L) & ~63L;
+        this.bitSize = nbits;
+        this.hashCount = Math.max
+            (1, (int)Math.round((double)nbits / expectedInsertions * ln2));
+        this.bits = new AtomicLongArray((int)(nbits >>> 6));
+    }
+
+    /**
+     * Spreads the given hash code to 64 bits (the finalizer of
+     * SplittableRandom's mix64).
+     */
+    static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Adds the given element.
+     *
+     * @param e the element
+     * @return {@code true} if any bit changed, so that the element
+     *         was definitely not in the filter before; {@code false}
+     *         if it might have been
+     * @throws NullPointerException if the element is null
+     */
+    public boolean add(E e) {
+        long h1 = mix64(e.hashCode() * 0x9e3779b97f4a7c15L);
+        long h2 = mix64(h1) | 1L;
+        AtomicLongArray a = bits;
+        long m = bitSize;
+        boolean changed = false;
+        for (int i = 0; i < hashCount; ++i) {
+            long b = ((h1 + i * h2) & Long.MAX_VALUE) % m;
+            int w = (int)(b >>> 6);
+            long mask = 1L << b;
+            for (long v; ((v = a.get(w)) & mask) == 0L;) {
+                if (a.compareAndSet(w, v, v | mask)) {
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns {@code true} if the given element might have been added
+     * to this filter, {@code false} if it definitely has not.
+     *
+     * @param o the element
+     * @return {@code true} if the element might have been added
+     * @throws NullPointerException if the element is null
+     */
+    public boolean mightContain(Object o) {
+        long h1 = mix64(o.hashCode() * 0x9e3779b97f4a7c15L);
+        long h2 = mix64(h1) | 1L;
+        AtomicLongArray a = bits;
+        long m = bitSize;
+        for (int i = 0; i < hashCount; ++i) {
+            long b = ((h1 + i * h2) & Long.MAX_VALUE) % m;
+            if ((a.get((int)(b >>> 6)) & (1L << b)) == 0L)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds all elements of the given filter to this filter, so that
+     * this filter might contain every element that either might have.
+     * Elements added to the given filter concurrently with this method
+     * may or may not be included.
+     *
+     * @param other the other filter
+     * @throws NullPointerException if the other filter is null
+     * @throws IllegalArgumentException if the other filter has a
+     *         different bit size or hash count
+     */
+    public void merge(BloomFilter<? extends E> other) {
+        if (other.bitSize != bitSize || other.hashCount != hashCount)
+            throw new IllegalArgumentException("Incompatible filters");
+        AtomicLongArray a = bits, b = other.bits;
+        for (int i = 0, n = a.length(); i < n; ++i) {
+            long x = b.get(i);
+            for (long v; (x & ~(v = a.get(i))) != 0L;) {
+                if (a.compareAndSet(i, v, v | x))
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bits set in this filter.
+     */
+    private long bitCount() {
+        AtomicLongArray a = bits;
+        long c = 0L;
+        for (int i = 0, n = a.length(); i < n; ++i)
+            c += Long.bitCount(a.get(i));
+        return c;
+    }
+
+    /**
+     * Returns an estimate of the number of distinct elements added to
+     * this filter, from the fraction of its bits that are set.  This
+     * method traverses all of the bits of the filter.
+     *
+     * @return the estimated number of distinct elements
+     */
+    public long approximateElementCount() {
+        double m = bitSize;
+        double x = bitCount();
+        if (x >= m)
+            return Long.MAX_VALUE;
+        return Math.round(-m / hashCount * Math.log1p(-x / m));
+    }
+
+    /**
+     * Returns the current probability that {@link #mightContain}
+     * returns {@code true} for an element that has not been added,
+     * from the fraction of its bits that are set.  This method
+     * traverses all of the bits of the filter.
+     *
+     * @return the false positive probability
+     */
+    public double expectedFpp() {
+        return Math.pow((double)bitCount() / bitSize, hashCount);
+    }
+
+    /**
+     * Returns the number of bits of this filter.
+     *
+     * @return the number of bits
+     */
+    public long bitSize() {
+        return bitSize;
+    }
+
+    /**
+     * Returns the number of bits set for each element.
+     *
+     * @return the number of hash functions
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Removes all elements from this filter.  Elements added
+     * concurrently with this method may or may not be retained.
+     */
+    public void clear() {
+        AtomicLongArray a = bits;
+        for (int i = 0, n = a.length(); i < n; ++i)
+            a.set(i, 0L);
+    }
+
+    /**
+     * Reconstitutes this filter from a stream (that is, deserializes
+     * it), checking that its bits match its size.
+     * @param s the stream
+     * @throws ClassNotFoundException if the class of a serialized object
+     *         could not be found
+     * @throws java.io.IOException if an I/O error occurs
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (bitSize <= 0L || (bitSize & 63L) != 0L || hashCount <= 0 ||
+            bits == null || bits.length() != (bitSize >>> 6))
+            throw new java.io.InvalidObjectException("Invalid filter");
+    }
+
+    /**
+     * Returns a string identifying this filter, as well as its size,
+     * hash count, and estimated element count.
+     *
+     * @return a string identifying this filter
+     */
+    public String toString() {
+        return super.toString() +
+            "[bits = " + bitSize +
+            ", hashes = " + hashCount +
+            ", approximate elements = " + approximateElementCount() + "]";
+    }
+}
@@ -34,6 +34,10 @@
  */
 
 package java.util.concurrent;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Supplier;
 import java.util.function.Consumer;
 import java.util.function.BiConsumer;
@@ -50,6 +54,8 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.LockSupport;
 
 /**
@@ -181,8 +187,9 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
      *   deal with races across both while pushing actions.  The
      *   second completion is a CoCompletion pointing to the first,
      *   shared so that at most one performs the action.  The
-     *   multiple-arity methods allOf and anyOf do this pairwise to
-     *   form trees of completions.
+     *   multiple-arity methods allOf and anyOf instead push one
+     *   Completion per source, sharing a counter in the case of
+     *   allOf, rather than forming trees of pairwise completions.
      *
      * Note that the generic type parameters of methods vary according
      * to whether "this" is a source, dependent, or completion.
@@ -535,7 +542,7 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     }
 
     /** Pushes the given completion (if it exists) unless done. */
-    final void push(UniCompletion<?,?> c) {
+    final void push(Completion c) {
         if (c != null) {
             while (result == null && !tryPushStack(c))
                 lazySetNext(c, null); // clear on failure
@@ -1256,57 +1263,94 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
         return d;
     }
 
+    /**
+     * The state shared by the Completions of an allOf: the number of
+     * sources not yet complete, and the sources, to find the
+     * exception to relay, if any, when all are.
+     */
     @SuppressWarnings("serial")
-    static final class BiRelay<T,U> extends BiCompletion<T,U,Void> { // for And
-        BiRelay(CompletableFuture<Void> dep,
-                CompletableFuture<T> src,
-                CompletableFuture<U> snd) {
-            super(null, dep, src, snd);
+    static final class AllOfCounter extends AtomicInteger {
+        final CompletableFuture<Void> dep;
+        final CompletableFuture<?>[] srcs;
+        AllOfCounter(CompletableFuture<Void> dep, CompletableFuture<?>[] srcs) {
+            super(srcs.length);
+            this.dep = dep; this.srcs = srcs;
         }
-        final CompletableFuture<Void> tryFire(int mode) {
-            CompletableFuture<Void> d;
-            CompletableFuture<T> a;
-            CompletableFuture<U> b;
-            if ((d = dep) == null || !d.biRelay(a = src, b = snd))
-                return null;
-            src = null; snd = null; dep = null;
-            return d.postFire(a, b, mode);
+
+        /**
+         * Counts down one completed source, completing the dependent
+         * if it was the last, with the exception of the first
+         * exceptionally completed source, if any, as would a tree of
+         * pairwise relays.  Returns true if it was the last.
+         */
+        final boolean countDown() {
+            if (decrementAndGet() != 0)
+                return false;
+            CompletableFuture<Void> d = dep;
+            if (d.result == null) {
+                Object r; Throwable x;
+                for (CompletableFuture<?> a : srcs) {
+                    if ((r = a.result) instanceof AltResult &&
+                        (x = ((AltResult)r).ex) != null) {
+                        d.completeThrowable(x, r);
+                        break;
+                    }
+                }
+                d.completeNull();
+            }
+            return true;
         }
     }
 
-    boolean biRelay(CompletableFuture<?> a, CompletableFuture<?> b) {
-        Object r, s; Throwable x;
-        if (a == null || (r = a.result) == null ||
-            b == null || (s = b.result) == null)
-            return false;
-        if (result == null) {
-            if (r instanceof AltResult && (x = ((AltResult)r).ex) != null)
-                completeThrowable(x, r);
-            else if (s instanceof AltResult && (x = ((AltResult)s).ex) != null)
-                completeThrowable(x, s);
-            else
-                completeNull();
+    @SuppressWarnings("serial")
+    static final class AllOfRelay extends Completion { // for allOf
+        CompletableFuture<?> src;
+        AllOfCounter counter;
+        AllOfRelay(CompletableFuture<?> src, AllOfCounter counter) {
+            this.src = src; this.counter = counter;
+        }
+        final CompletableFuture<Void> tryFire(int mode) {
+            CompletableFuture<?> a; AllOfCounter k;
+            if ((a = src) == null || a.result == null ||
+                (k = counter) == null ||
+                !compareAndSetForkJoinTaskTag((short)0, (short)1))
+                return null;
+            src = null; counter = null;
+            if (!k.countDown())
+                return null;
+            return k.dep.postFire(a, mode);
+        }
+        final boolean isLive() {
+            AllOfCounter k = counter;
+            return k != null && k.dep.result == null;
         }
-        return true;
     }
 
-    /** Recursively constructs a tree of completions. */
-    static CompletableFuture<Void> andTree(CompletableFuture<?>[] cfs,
-                                           int lo, int hi) {
+    /**
+     * Constructs the dependent of allOf, with one Completion per
+     * incomplete source, each counting down a shared counter, rather
+     * than a tree of pairwise relays, which would take about four
+     * times as many objects.
+     */
+    static CompletableFuture<Void> allOfCounter(CompletableFuture<?>[] cfs) {
+        int n = cfs.length;
+        CompletableFuture<?>[] srcs = new CompletableFuture<?>[n];
+        for (int i = 0; i < n; ++i) {
+            if ((srcs[i] = cfs[i]) == null)
+                throw new NullPointerException();
+        }
         CompletableFuture<Void> d = new CompletableFuture<Void>();
-        if (lo > hi) // empty
+        if (n == 0) {
             d.result = NIL;
-        else {
-            CompletableFuture<?> a, b;
-            int mid = (lo + hi) >>> 1;
-            if ((a = (lo == mid ? cfs[lo] :
-                      andTree(cfs, lo, mid))) == null ||
-                (b = (lo == hi ? a : (hi == mid+1) ? cfs[hi] :
-                      andTree(cfs, mid+1, hi)))  == null)
-                throw new NullPointerException();
-            if (!d.biRelay(a, b)) {
-                BiRelay<?,?> c = new BiRelay<>(d, a, b);
-                a.bipush(b, c);
+            return d;
+        }
+        AllOfCounter k = new AllOfCounter(d, srcs);
+        for (CompletableFuture<?> a : srcs) {
+            if (a.result != null)
+                k.countDown();
+            else {
+                AllOfRelay c = new AllOfRelay(a, k);
+                a.push(c);
                 c.tryFire(SYNC);
             }
         }
@@ -1520,51 +1564,195 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
     }
 
     @SuppressWarnings("serial")
-    static final class OrRelay<T,U> extends BiCompletion<T,U,Object> { // for Or
-        OrRelay(CompletableFuture<Object> dep, CompletableFuture<T> src,
-                CompletableFuture<U> snd) {
-            super(null, dep, src, snd);
+    static final class AnyOfRelay extends Completion { // for anyOf
+        CompletableFuture<Object> dep;
+        CompletableFuture<?> src;
+        AnyOfRelay(CompletableFuture<Object> dep, CompletableFuture<?> src) {
+            this.dep = dep; this.src = src;
         }
         final CompletableFuture<Object> tryFire(int mode) {
-            CompletableFuture<Object> d;
-            CompletableFuture<T> a;
-            CompletableFuture<U> b;
-            if ((d = dep) == null || !d.orRelay(a = src, b = snd))
+            CompletableFuture<Object> d; CompletableFuture<?> a; Object r;
+            if ((d = dep) == null || (a = src) == null ||
+                (r = a.result) == null)
                 return null;
-            src = null; snd = null; dep = null;
-            return d.postFire(a, b, mode);
+            dep = null; src = null;
+            if (!d.completeRelay(r))
+                return null;
+            return d.postFire(a, mode);
+        }
+        final boolean isLive() {
+            CompletableFuture<Object> d = dep;
+            return d != null && d.result == null;
         }
     }
 
-    final boolean orRelay(CompletableFuture<?> a, CompletableFuture<?> b) {
-        Object r;
-        if (a == null || b == null ||
-            ((r = a.result) == null && (r = b.result) == null))
-            return false;
-        if (result == null)
-            completeRelay(r);
-        return true;
+    /**
+     * Constructs the dependent of anyOf, with one Completion per
+     * source, the first of which to fire relays its result.
+     */
+    static CompletableFuture<Object> anyOfRelay(CompletableFuture<?>[] cfs) {
+        int n = cfs.length;
+        CompletableFuture<?>[] srcs = new CompletableFuture<?>[n];
+        for (int i = 0; i < n; ++i) {
+            CompletableFuture<?> a; Object r;
+            if ((a = srcs[i] = cfs[i]) == null)
+                throw new NullPointerException();
+            if ((r = a.result) != null)
+                return new CompletableFuture<Object>(encodeRelay(r));
+        }
+        CompletableFuture<Object> d = new CompletableFuture<Object>();
+        for (CompletableFuture<?> a : srcs) {
+            if (d.result != null)
+                break;
+            AnyOfRelay c = new AnyOfRelay(d, a);
+            a.push(c);
+            c.tryFire(SYNC);
+        }
+        return d;
     }
 
-    /** Recursively constructs a tree of completions. */
-    static CompletableFuture<Object> orTree(CompletableFuture<?>[] cfs,
-                                            int lo, int hi) {
-        CompletableFuture<Object> d = new CompletableFuture<Object>();
-        if (lo <= hi) {
-            CompletableFuture<?> a, b;
-            int mid = (lo + hi) >>> 1;
-            if ((a = (lo == mid ? cfs[lo] :
-                      orTree(cfs, lo, mid))) == null ||
-                (b = (lo == hi ? a : (hi == mid+1) ? cfs[hi] :
-                      orTree(cfs, mid+1, hi)))  == null)
-                throw new NullPointerException();
-            if (!d.orRelay(a, b)) {
-                OrRelay<?,?> c = new OrRelay<>(d, a, b);
-                a.orpush(b, c);
-                c.tryFire(SYNC);
+    /**
+     * The state of a mapAsync: a source iterator that is pulled from
+     * by only one thread at a time, guarded by the wip count inherited
+     * from AtomicInteger (as in a trampoline, any thread finding it
+     * nonzero just increments it so the owner loops again), the
+     * number of stages in flight, the results so far, and the set of
+     * stages in flight, to cancel if the dependent completes
+     * exceptionally or is cancelled before they do.
+     */
+    @SuppressWarnings("serial")
+    static final class MapAsync<T,R> extends AtomicInteger
+        implements BiConsumer<Object,Throwable> {
+        final CompletableFuture<List<R>> dep;
+        final Iterator<? extends T> it;
+        final Function<? super T, ? extends CompletionStage<? extends R>> fn;
+        final int maxInFlight;
+        final boolean ordered;
+        final ArrayList<R> results;                  // guarded by itself
+        final Set<CompletableFuture<?>> stages;      // for cancellation
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile boolean exhausted;
+        int count;                                   // owner only
+
+        MapAsync(Iterator<? extends T> it,
+                 Function<? super T, ? extends CompletionStage<? extends R>> fn,
+                 int maxInFlight, boolean ordered) {
+            this.dep = new CompletableFuture<List<R>>();
+            this.it = it; this.fn = fn;
+            this.maxInFlight = maxInFlight; this.ordered = ordered;
+            this.results = new ArrayList<R>();
+            this.stages = ConcurrentHashMap.newKeySet();
+        }
+
+        /** Invoked upon completion of dep; cancels stages in flight. */
+        public void accept(Object r, Throwable ex) {
+            if (ex != null) {
+                for (CompletableFuture<?> f : stages)
+                    f.cancel(true);
             }
         }
-        return d;
+
+        /**
+         * Starts as many stages as allowed, unless another thread
+         * is doing so, and completes dep when none remain.
+         */
+        final void drain() {
+            if (getAndIncrement() != 0)
+                return;
+            CompletableFuture<List<R>> d = dep;
+            for (int missed = 1;;) {
+                while (d.result == null && !exhausted &&
+                       inFlight.get() < maxInFlight) {
+                    CompletionStage<? extends R> st;
+                    try {
+                        if (!it.hasNext()) {
+                            exhausted = true;
+                            break;
+                        }
+                        if ((st = fn.apply(it.next())) == null)
+                            throw new NullPointerException();
+                    } catch (Throwable ex) {
+                        exhausted = true;
+                        fail(ex);
+                        break;
+                    }
+                    int i = count++;
+                    if (ordered) {
+                        synchronized (results) { results.add(null); }
+                    }
+                    inFlight.getAndIncrement();
+                    CompletableFuture<?> f;
+                    try {
+                        f = st.toCompletableFuture();
+                    } catch (UnsupportedOperationException ex) {
+                        f = null; // cannot be cancelled
+                    }
+                    if (f != null) {
+                        stages.add(f);
+                        if (d.result != null)
+                            f.cancel(true);
+                    }
+                    st.whenComplete(new MapAsyncStage<T,R>(this, i, f));
+                }
+                if (exhausted && inFlight.get() == 0 && d.result == null) {
+                    List<R> rs;
+                    synchronized (results) { rs = results; }
+                    d.complete(rs);
+                }
+                if ((missed = addAndGet(-missed)) == 0)
+                    break;
+            }
+        }
+
+        /** Completes dep exceptionally, triggering the cancellations. */
+        final void fail(Throwable ex) {
+            if (dep.completeThrowable(ex))
+                dep.postComplete();
+        }
+
+        /** Records the outcome of the index'th stage. */
+        final void stageDone(int index, CompletableFuture<?> f,
+                             R r, Throwable ex) {
+            if (f != null)
+                stages.remove(f);
+            if (ex != null)
+                fail(ex);
+            else if (dep.result == null) {
+                synchronized (results) {
+                    if (ordered)
+                        results.set(index, r);
+                    else
+                        results.add(r);
+                }
+            }
+            inFlight.getAndDecrement();
+            drain();
+        }
+    }
+
+    static final class MapAsyncStage<T,R> implements BiConsumer<R,Throwable> {
+        final MapAsync<T,R> m;
+        final int index;
+        final CompletableFuture<?> stage;
+        MapAsyncStage(MapAsync<T,R> m, int index, CompletableFuture<?> stage) {
+            this.m = m; this.index = index; this.stage = stage;
+        }
+        public void accept(R r, Throwable ex) {
+            m.stageDone(index, stage, r, ex);
+        }
+    }
+
+    static <T,R> CompletableFuture<List<R>> mapAsyncStage(
+        Iterable<? extends T> source, int maxInFlight,
+        Function<? super T, ? extends CompletionStage<? extends R>> fn,
+        boolean ordered) {
+        if (source == null || fn == null) throw new NullPointerException();
+        if (maxInFlight <= 0) throw new IllegalArgumentException();
+        MapAsync<T,R> m = new MapAsync<T,R>(source.iterator(), fn,
+                                            maxInFlight, ordered);
+        m.dep.whenComplete(m);
+        m.drain();
+        return m.dep;
     }
 
     /* ------------- Zero-input Async forms -------------- */
@@ -2222,7 +2410,7 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
      * {@code null}
      */
     public static CompletableFuture<Void> allOf(CompletableFuture<?>... cfs) {
-        return andTree(cfs, 0, cfs.length - 1);
+        return allOfCounter(cfs);
     }
 
     /**
@@ -2241,7 +2429,69 @@ public class CompletableFuture<T> implements Future<T>, CompletionStage<T> {
      * {@code null}
      */
     public static CompletableFuture<Object> anyOf(CompletableFuture<?>... cfs) {
-        return orTree(cfs, 0, cfs.length - 1);
+        return anyOfRelay(cfs);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed with a list
+     * of the results, in the order of the given source, of the stages
+     * returned by applying the given function to each of its
+     * elements, with at most {@code maxInFlight} of these stages
+     * incomplete at any time.  The function is applied to the next
+     * element only when an earlier stage completes, so a large or
+     * unbounded source need not have all of its stages outstanding at
+     * once.  The function may be invoked by the thread calling this
+     * method, or by the thread completing a previous stage, but by
+     * only one thread at a time.
+     *
+     * <p>If any stage completes exceptionally, or if the iterator or
+     * the function throws an exception, then the returned
+     * CompletableFuture also does so, with a CompletionException
+     * holding this exception as its cause, and no further elements
+     * are processed.  If the returned CompletableFuture completes
+     * exceptionally or is cancelled before all stages complete, no
+     * further elements are processed, and the stages in flight are
+     * cancelled.  If the source is empty, returns a CompletableFuture
+     * completed with an empty list.
+     *
+     * @param source the elements to process
+     * @param maxInFlight the maximum number of incomplete stages
+     * @param fn the function returning the stage for an element
+     * @param <T> the element type
+     * @param <R> the result type
+     * @return the new CompletableFuture
+     * @throws NullPointerException if the source or function is null
+     * @throws IllegalArgumentException if {@code maxInFlight} is not
+     * positive
+     */
+    public static <T,R> CompletableFuture<List<R>> mapAsync(
+        Iterable<? extends T> source, int maxInFlight,
+        Function<? super T, ? extends CompletionStage<? extends R>> fn) {
+        return mapAsyncStage(source, maxInFlight, fn, true);
+    }
+
+    /**
+     * Returns a new CompletableFuture that is completed with a list
+     * of the results, in the order in which they complete, of the
+     * stages returned by applying the given function to each of the
+     * elements of the given source, with at most {@code maxInFlight}
+     * of these stages incomplete at any time.  Otherwise, behaves as
+     * {@link #mapAsync}.
+     *
+     * @param source the elements to process
+     * @param maxInFlight the maximum number of incomplete stages
+     * @param fn the function returning the stage for an element
+     * @param <T> the element type
+     * @param <R> the result type
+     * @return the new CompletableFuture
+     * @throws NullPointerException if the source or function is null
+     * @throws IllegalArgumentException if {@code maxInFlight} is not
+     * positive
+     */
+    public static <T,R> CompletableFuture<List<R>> mapAsyncUnordered(
+        Iterable<? extends T> source, int maxInFlight,
+        Function<? super T, ? extends CompletionStage<? extends R>> fn) {
+        return mapAsyncStage(source, maxInFlight, fn, false);
     }
 
     /* ------------- Control and status methods -------------- */
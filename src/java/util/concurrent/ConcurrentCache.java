@@ -0,0 +1,1314 @@
+package java.util.concurrent;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntBiFunction;
+
+/**
+ * A bounded {@link ConcurrentMap} that discards entries to stay within a
+ * maximum size or total weight, choosing them with the W-TinyLFU policy,
+ * and that can also discard entries a fixed time after they were written
+ * or last read.  Instances are created with a {@link Builder}:
+ *
+ * <pre> {@code
+ * ConcurrentCache<Key, Graph> graphs = ConcurrentCache.<Key, Graph>builder()
+ *     .maximumSize(10_000)
+ *     .expireAfterWrite(10, TimeUnit.MINUTES)
+ *     .recordStats()
+ *     .build();
+ * Graph g = graphs.computeIfAbsent(key, k -> createExpensiveGraph(k));}</pre>
+ *
+ * <p>Entries are stored in a {@link ConcurrentHashMap}, so retrievals and
+ * updates have its concurrency and, like it, never lock the whole map.
+ * The eviction policy, by contrast, keeps its entries in access-ordered
+ * lists that are not thread-safe.  Rather than lock them on every access,
+ * as a {@link java.util.LinkedHashMap} wrapped by {@link
+ * java.util.Collections#synchronizedMap} would, a retrieval only records
+ * the entry it read in one of several lock-free buffers, picked by
+ * thread, and an update queues a task.  Whichever thread next acquires
+ * the policy lock without waiting replays the buffered reads and the
+ * queued updates, expires entries, and evicts entries as needed.  Reads
+ * are recorded on a best-effort basis: when a buffer is full or
+ * contended, the read is dropped, which only makes the access order
+ * slightly less exact.  So, between maintenance runs, the cache may hold
+ * slightly more than its maximum, and expired entries may remain in the
+ * map, though they are never returned.
+ *
+ * <p>The policy admits new entries into a small LRU window, about one
+ * percent of the maximum.  Entries leaving the window compete for a place
+ * in the main space, a segmented LRU, with the entries least recently
+ * used there: a 4-bit count-min sketch estimates how often each key has
+ * been used recently, and the less frequently used entry is evicted.
+ * This keeps popular entries through bursts of one-time accesses, which
+ * flush a plain LRU cache.  The sketch is periodically halved, so that
+ * it reflects recent use.
+ *
+ * <p>{@link #computeIfAbsent computeIfAbsent} computes each missing value
+ * once, however many threads ask for it at the same time: the others
+ * wait for the result, as with {@code ConcurrentHashMap}.  The same
+ * caution applies: the computation should be short and must not update
+ * the cache.
+ *
+ * <p>If statistics are recorded, {@link #stats} returns the numbers of
+ * hits, misses, loads and evictions.  Operations other than {@code get},
+ * {@code getOrDefault} and {@code computeIfAbsent} are not counted.
+ *
+ * <p>Like {@link Hashtable} but unlike {@link java.util.HashMap}, this
+ * class does <em>not</em> allow {@code null} to be used as a key or value.
+ * {@link #size} counts entries that have expired but have not yet been
+ * removed, and should be treated as an estimate.
+ *
+ * @param <K> the type of keys maintained by this cache
+ * @param <V> the type of mapped values
+ * @since 1.8
+ */
+public class ConcurrentCache<K,V> extends AbstractMap<K,V>
+    implements ConcurrentMap<K,V> {
+
+    /*
+     * Overview:
+     *
+     * Each mapping is a Node in the backing ConcurrentHashMap.  An update
+     * of an existing mapping writes the new value into the same Node, so
+     * the policy, which links Nodes, sees each mapping as one Node from
+     * its insertion to its removal.  The policy fields of Nodes, the
+     * lists, the weights and the sketch are guarded by evictionLock.
+     *
+     * The map is updated first, then a task describing the update is
+     * queued.  Tasks for the same Node may be queued in a different order
+     * than their map updates (a removal's task may precede the task of
+     * the insertion it removes), so each Node has a policy state: NEW
+     * until its AddTask links it, then the queue it is in, then DEAD,
+     * after which all tasks for it are ignored.  A RemovalTask that finds
+     * a NEW Node makes it DEAD, so that the AddTask does nothing.  Tasks
+     * read the current weight of the Node, so an UpdateTask running
+     * before the AddTask may be ignored.
+     *
+     * Evictions and expirations remove the Node from the map only if it
+     * is still mapped (remove(key, node) compares Nodes by identity), and
+     * then unlink it directly.
+     *
+     * Maintenance runs whenever a write queues a task, or a read buffer
+     * fills, and the lock is free.  A thread that finds the lock held
+     * leaves its task to the holder, which checks the task count after
+     * unlocking and runs again if tasks remain.  If tasks pile up faster
+     * than one thread can apply them, writers wait for the lock.
+     */
+
+    /** Policy states of Nodes. */
+    static final int NEW = 0, WINDOW = 1, PROBATION = 2, PROTECTED = 3, DEAD = 4;
+
+    /** The number of reads each read buffer can hold. */
+    static final int READ_BUFFER_SIZE = 16;
+
+    /** The number of queued tasks above which writers wait for the lock. */
+    static final int MAX_PENDING_WRITES = 1024;
+
+    /** The number of CPUs, to size the read buffers. */
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /** The largest maximum that still bounds the cache. */
+    static final long UNBOUNDED = Long.MAX_VALUE;
+
+    /**
+     * A mapping.  The value, weight and times are written under the bin
+     * lock of the map and read without locking; the policy fields are
+     * guarded by the eviction lock.
+     */
+    static final class Node<K,V> {
+        final K key;
+        volatile V value;
+        volatile int weight;
+        volatile long writeTime;
+        volatile long accessTime;
+
+        int state;          // NEW, a queue, or DEAD
+        int policyWeight;   // the weight the policy has accounted for
+        Node<K,V> prev, next;           // access order
+        Node<K,V> writePrev, writeNext; // write order, if expiring after write
+
+        Node(K key, V value, int weight, long now) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+    }
+
+    /**
+     * A doubly-linked list of Nodes, through either their access-order or
+     * their write-order links.
+     */
+    static final class NodeList<K,V> {
+        final boolean writeOrder;
+        Node<K,V> head, tail;
+
+        NodeList(boolean writeOrder) {
+            this.writeOrder = writeOrder;
+        }
+
+        Node<K,V> prev(Node<K,V> n) { return writeOrder ? n.writePrev : n.prev; }
+        Node<K,V> next(Node<K,V> n) { return writeOrder ? n.writeNext : n.next; }
+
+        void setPrev(Node<K,V> n, Node<K,V> p) {
+            if (writeOrder) n.writePrev = p; else n.prev = p;
+        }
+
+        void setNext(Node<K,V> n, Node<K,V> s) {
+            if (writeOrder) n.writeNext = s; else n.next = s;
+        }
+
+        void linkLast(Node<K,V> n) {
+            Node<K,V> t = tail;
+            setPrev(n, t);
+            setNext(n, null);
+            if (t == null)
+                head = n;
+            else
+                setNext(t, n);
+            tail = n;
+        }
+
+        void unlink(Node<K,V> n) {
+            Node<K,V> p = prev(n), s = next(n);
+            if (p == null)
+                head = s;
+            else
+                setNext(p, s);
+            if (s == null)
+                tail = p;
+            else
+                setPrev(s, p);
+            setPrev(n, null);
+            setNext(n, null);
+        }
+
+        void moveToBack(Node<K,V> n) {
+            if (n != tail) {
+                unlink(n);
+                linkLast(n);
+            }
+        }
+
+        void clear() {
+            head = tail = null;
+        }
+    }
+
+    /**
+     * A lossy ring of recently read Nodes.  Any thread may add a Node,
+     * by claiming a slot with a CAS on the write count; only the holder
+     * of the eviction lock removes them.
+     */
+    static final class ReadBuffer<K,V> {
+        final AtomicReferenceArray<Node<K,V>> slots =
+            new AtomicReferenceArray<Node<K,V>>(READ_BUFFER_SIZE);
+        final AtomicLong writes = new AtomicLong();
+        volatile long reads;
+
+        /**
+         * Records a read, unless the buffer is full or another thread
+         * claimed the slot first.  Returns true if the buffer should be
+         * drained.
+         */
+        boolean offer(Node<K,V> n) {
+            long h = reads, t = writes.get(), size = t - h;
+            if (size >= READ_BUFFER_SIZE)
+                return true;
+            if (writes.compareAndSet(t, t + 1)) {
+                slots.lazySet((int) t & (READ_BUFFER_SIZE - 1), n);
+                return size + 1 == READ_BUFFER_SIZE;
+            }
+            return false;
+        }
+
+        void drainTo(ConcurrentCache<K,V> cache) {
+            long h = reads, t = writes.get();
+            for (; h < t; h++) {
+                int i = (int) h & (READ_BUFFER_SIZE - 1);
+                Node<K,V> n = slots.get(i);
+                if (n == null)
+                    break; // claimed but not yet published
+                slots.lazySet(i, null);
+                cache.onAccess(n);
+            }
+            reads = h;
+        }
+    }
+
+    /**
+     * A count-min sketch of the recent frequency of keys, with four 4-bit
+     * counters per key, one in each of four rows that share a table.  All
+     * counters are halved after as many increments as ten times the size
+     * of the table, so that old accesses are forgotten.  Not thread-safe.
+     */
+    static final class FrequencySketch {
+        static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+        static final long RESET_MASK = 0x7777777777777777L;
+        static final long ONE_MASK = 0x1111111111111111L;
+
+        long[] table = new long[16];
+        int sampleSize = 160;
+        int size;
+
+        /**
+         * Grows the table to about one counter group per entry, for n
+         * entries; growing forgets all counts.
+         */
+        void ensureCapacity(long n) {
+            int cap = (int) Math.min(n, 1 << 26);
+            if (cap > table.length) {
+                cap = Integer.highestOneBit(cap - 1) << 1;
+                table = new long[cap];
+                sampleSize = 10 * cap;
+                size = 0;
+            }
+        }
+
+        static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+
+        int indexOf(int hash, int row) {
+            long h = (hash + SEEDS[row]) * SEEDS[row];
+            h += h >>> 32;
+            return (int) h & (table.length - 1);
+        }
+
+        /** Returns the estimated number of recent uses of a key, at most 15. */
+        int frequency(Object key) {
+            int hash = spread(key.hashCode()), start = (hash & 3) << 2;
+            int f = 15;
+            for (int i = 0; i < 4; i++) {
+                int c = (int) (table[indexOf(hash, i)] >>> ((start + i) << 2)) & 0xF;
+                f = Math.min(f, c);
+            }
+            return f;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode()), start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i), offset = (start + i) << 2;
+                long mask = 0xFL << offset;
+                if ((table[index] & mask) != mask) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++size == sampleSize)
+                reset();
+        }
+
+        void reset() {
+            int odd = 0;
+            for (int i = 0; i < table.length; i++) {
+                odd += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size >>> 1) - (odd >>> 2);
+        }
+    }
+
+    /** Links a new Node into the window. */
+    final class AddTask implements Runnable {
+        final Node<K,V> node;
+        AddTask(Node<K,V> node) { this.node = node; }
+        public void run() {
+            Node<K,V> n = node;
+            if (n.state != NEW)
+                return;
+            int w = n.weight;
+            n.state = WINDOW;
+            n.policyWeight = w;
+            window.linkLast(n);
+            windowWeight += w;
+            weightedSize += w;
+            if (expiresAfterWrite())
+                writeOrder.linkLast(n);
+            if (sketch != null)
+                sketch.increment(n.key);
+        }
+    }
+
+    /** Accounts for the new weight of an updated Node, and reorders it. */
+    final class UpdateTask implements Runnable {
+        final Node<K,V> node;
+        UpdateTask(Node<K,V> node) { this.node = node; }
+        public void run() {
+            Node<K,V> n = node;
+            int s = n.state;
+            if (s == NEW || s == DEAD)
+                return;
+            int delta = n.weight - n.policyWeight;
+            n.policyWeight += delta;
+            weightedSize += delta;
+            if (s == WINDOW)
+                windowWeight += delta;
+            else if (s == PROTECTED)
+                protectedWeight += delta;
+            if (expiresAfterWrite())
+                writeOrder.moveToBack(n);
+            onAccess(n);
+        }
+    }
+
+    /** Unlinks a Node removed from the map. */
+    final class RemovalTask implements Runnable {
+        final Node<K,V> node;
+        RemovalTask(Node<K,V> node) { this.node = node; }
+        public void run() {
+            unlinkNode(node);
+        }
+    }
+
+    /* ---------------- Fields -------------- */
+
+    final ConcurrentHashMap<K,Node<K,V>> data;
+    final ReentrantLock evictionLock = new ReentrantLock();
+    final ReadBuffer<K,V>[] readBuffers;
+    final ConcurrentLinkedQueue<Runnable> writeBuffer = new ConcurrentLinkedQueue<Runnable>();
+    final AtomicInteger pendingWrites = new AtomicInteger();
+
+    final long maximum;                 // maximum total weight
+    final ToIntBiFunction<? super K, ? super V> weigher; // null if unweighted
+    final long expireAfterWriteNanos;   // 0 if none
+    final long expireAfterAccessNanos;  // 0 if none
+    final boolean recordStats;
+
+    // Policy state, guarded by evictionLock
+    final NodeList<K,V> window = new NodeList<K,V>(false);
+    final NodeList<K,V> probation = new NodeList<K,V>(false);
+    final NodeList<K,V> protectedList = new NodeList<K,V>(false);
+    final NodeList<K,V> writeOrder = new NodeList<K,V>(true);
+    final long windowMaximum, protectedMaximum;
+    final FrequencySketch sketch;       // null if unbounded
+    long weightedSize, windowWeight, protectedWeight;
+
+    // Statistics
+    final LongAdder hitCount = new LongAdder();
+    final LongAdder missCount = new LongAdder();
+    final LongAdder loadSuccessCount = new LongAdder();
+    final LongAdder loadFailureCount = new LongAdder();
+    final LongAdder totalLoadTime = new LongAdder();
+    final LongAdder evictionCount = new LongAdder();
+    final LongAdder evictionWeight = new LongAdder();
+
+    // views
+    transient EntrySetView<K,V> entrySet;
+
+    @SuppressWarnings("unchecked")
+    ConcurrentCache(Builder<K,V> builder) {
+        this.data = new ConcurrentHashMap<K,Node<K,V>>(builder.initialCapacity);
+        this.maximum = builder.maximum;
+        this.weigher = builder.weigher;
+        this.expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        this.expireAfterAccessNanos = builder.expireAfterAccessNanos;
+        this.recordStats = builder.recordStats;
+        long mainMaximum = maximum - Math.max(maximum / 100, (maximum > 0) ? 1 : 0);
+        this.windowMaximum = maximum - mainMaximum;
+        this.protectedMaximum = mainMaximum - mainMaximum / 5;
+        this.sketch = evicts() ? new FrequencySketch() : null;
+        int n = 1;
+        while (n < NCPU * 4 && n < 64)
+            n <<= 1;
+        this.readBuffers = (ReadBuffer<K,V>[]) new ReadBuffer<?,?>[n];
+        for (int i = 0; i < n; i++)
+            readBuffers[i] = new ReadBuffer<K,V>();
+    }
+
+    /**
+     * Returns a new builder of caches with no bounds, no expiration and no
+     * statistics.
+     *
+     * @param <K> the type of keys of the cache
+     * @param <V> the type of values of the cache
+     * @return a new builder
+     */
+    public static <K,V> Builder<K,V> builder() {
+        return new Builder<K,V>();
+    }
+
+    final boolean evicts() {
+        return maximum != UNBOUNDED;
+    }
+
+    final boolean expiresAfterWrite() {
+        return expireAfterWriteNanos != 0;
+    }
+
+    final boolean expiresAfterAccess() {
+        return expireAfterAccessNanos != 0;
+    }
+
+    /** Returns true if the policy needs reads and updates. */
+    final boolean hasPolicy() {
+        return evicts() || expireAfterWriteNanos != 0 || expireAfterAccessNanos != 0;
+    }
+
+    final boolean hasExpired(Node<K,V> n, long now) {
+        return (expireAfterWriteNanos != 0 &&
+                now - n.writeTime >= expireAfterWriteNanos) ||
+            (expireAfterAccessNanos != 0 &&
+             now - n.accessTime >= expireAfterAccessNanos);
+    }
+
+    final int weigh(K key, V value) {
+        if (weigher == null)
+            return 1;
+        int w = weigher.applyAsInt(key, value);
+        if (w < 0)
+            throw new IllegalArgumentException("negative weight: " + w);
+        return w;
+    }
+
+    /* ---------------- Recording reads and writes -------------- */
+
+    final void afterRead(Node<K,V> n, long now) {
+        if (expiresAfterAccess())
+            n.accessTime = now;
+        if (!hasPolicy())
+            return;
+        int h;
+        if ((h = ThreadLocalRandom.getProbe()) == 0) {
+            ThreadLocalRandom.localInit();
+            h = ThreadLocalRandom.getProbe();
+        }
+        if (readBuffers[h & (readBuffers.length - 1)].offer(n))
+            scheduleDrain(false);
+    }
+
+    final void afterWrite(Runnable task) {
+        if (!hasPolicy())
+            return;
+        writeBuffer.add(task);
+        scheduleDrain(pendingWrites.incrementAndGet() > MAX_PENDING_WRITES);
+    }
+
+    /**
+     * Runs maintenance if the lock is free, or, if force is true, waits
+     * for it; then runs again if writes were queued meanwhile.
+     */
+    final void scheduleDrain(boolean force) {
+        final ReentrantLock lock = evictionLock;
+        do {
+            if (force)
+                lock.lock();
+            else if (!lock.tryLock())
+                return;
+            try {
+                maintenance();
+            } finally {
+                lock.unlock();
+            }
+            force = false;
+        } while (pendingWrites.get() > 0);
+    }
+
+    /**
+     * Replays buffered reads and queued writes, then expires and evicts
+     * entries.  Called with the lock held.
+     */
+    final void maintenance() {
+        for (ReadBuffer<K,V> b : readBuffers)
+            b.drainTo(this);
+        for (Runnable task; (task = writeBuffer.poll()) != null; ) {
+            task.run();
+            pendingWrites.decrementAndGet();
+        }
+        if (expiresAfterWrite() || expiresAfterAccess())
+            expireEntries();
+        if (evicts()) {
+            long n = data.mappingCount();
+            sketch.ensureCapacity((weigher == null) ? Math.min(n, maximum) : n);
+            evictEntries();
+        }
+    }
+
+    /* ---------------- Policy, called with the lock held -------------- */
+
+    final void onAccess(Node<K,V> n) {
+        int s = n.state;
+        if (s == NEW || s == DEAD)
+            return;
+        if (sketch != null)
+            sketch.increment(n.key);
+        if (s == WINDOW) {
+            window.moveToBack(n);
+        } else if (s == PROBATION) {
+            probation.unlink(n);
+            protectedList.linkLast(n);
+            n.state = PROTECTED;
+            protectedWeight += n.policyWeight;
+            while (protectedWeight > protectedMaximum) { // demote
+                Node<K,V> d = protectedList.head;
+                protectedList.unlink(d);
+                probation.linkLast(d);
+                d.state = PROBATION;
+                protectedWeight -= d.policyWeight;
+            }
+        } else {
+            protectedList.moveToBack(n);
+        }
+    }
+
+    final void unlinkNode(Node<K,V> n) {
+        int w = n.policyWeight;
+        switch (n.state) {
+        case WINDOW:
+            window.unlink(n);
+            windowWeight -= w;
+            break;
+        case PROBATION:
+            probation.unlink(n);
+            break;
+        case PROTECTED:
+            protectedList.unlink(n);
+            protectedWeight -= w;
+            break;
+        default: // NEW or DEAD
+            n.state = DEAD;
+            return;
+        }
+        weightedSize -= w;
+        if (expiresAfterWrite())
+            writeOrder.unlink(n);
+        n.state = DEAD;
+    }
+
+    final void expireEntries() {
+        long now = System.nanoTime();
+        if (expiresAfterWrite())
+            expire(writeOrder, now);
+        if (expiresAfterAccess()) {
+            expire(window, now);
+            expire(probation, now);
+            expire(protectedList, now);
+        }
+    }
+
+    /**
+     * Removes the expired entries at the head of a list, stopping at the
+     * first that has not expired, or that was refreshed by a concurrent
+     * update whose task is still queued.
+     */
+    final void expire(NodeList<K,V> list, long now) {
+        for (Node<K,V> n; (n = list.head) != null && hasExpired(n, now); ) {
+            final Node<K,V> e = n;
+            boolean[] removed = new boolean[1];
+            data.computeIfPresent(n.key, (k, m) -> {
+                if (m == e && hasExpired(m, now)) {
+                    removed[0] = true;
+                    return null;
+                }
+                return m;
+            });
+            if (!removed[0] && data.get(n.key) == n)
+                return;
+            unlinkNode(n);
+        }
+    }
+
+    final void evictEntries() {
+        Node<K,V> candidate = null;
+        while (windowWeight > windowMaximum) { // move the overflow to probation
+            Node<K,V> n = window.head;
+            window.unlink(n);
+            probation.linkLast(n);
+            n.state = PROBATION;
+            windowWeight -= n.policyWeight;
+            if (candidate == null)
+                candidate = n;
+        }
+        while (weightedSize > maximum) {
+            Node<K,V> victim = probation.head;
+            if (victim == null && (victim = protectedList.head) == null &&
+                (victim = window.head) == null)
+                break;
+            if (candidate != null && candidate.state != PROBATION)
+                candidate = null;
+            if (candidate == null || candidate == victim) {
+                if (candidate != null)
+                    candidate = candidate.next;
+                evict(victim);
+            } else if (admit(candidate, victim)) {
+                evict(victim);
+            } else {
+                Node<K,V> next = candidate.next;
+                evict(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the candidate should replace the victim: if its key
+     * was used more often, or, rarely, if it was used a few times, so that
+     * an attacker cannot keep a hot victim in the cache.
+     */
+    final boolean admit(Node<K,V> candidate, Node<K,V> victim) {
+        int c = sketch.frequency(candidate.key), v = sketch.frequency(victim.key);
+        if (c > v)
+            return true;
+        if (c <= 5)
+            return false;
+        return (ThreadLocalRandom.current().nextInt() & 127) == 0;
+    }
+
+    final void evict(Node<K,V> n) {
+        if (data.remove(n.key, n) && recordStats) {
+            evictionCount.increment();
+            evictionWeight.add(n.policyWeight);
+        }
+        unlinkNode(n);
+    }
+
+    /* ---------------- Map operations -------------- */
+
+    /** The result of remap. */
+    static final class Outcome<K,V> {
+        static final int NONE = 0, ADDED = 1, UPDATED = 2, REMOVED = 3;
+        V oldValue, newValue;
+        Node<K,V> node;
+        int kind;
+    }
+
+    /**
+     * Replaces the mapping for key by the result of fn applied to its
+     * current value, or null if absent or expired; a null result removes
+     * it, and the current value itself leaves it unchanged.  Queues the
+     * policy task, and returns the old and new values, null if absent.
+     */
+    final Outcome<K,V> remap(K key, BiFunction<? super K, ? super V, ? extends V> fn) {
+        if (key == null)
+            throw new NullPointerException();
+        long now = System.nanoTime();
+        Outcome<K,V> r = new Outcome<K,V>();
+        data.compute(key, (k, prior) -> {
+            V old = (prior == null || hasExpired(prior, now)) ? null : prior.value;
+            r.oldValue = old;
+            V v = r.newValue = fn.apply(k, old);
+            if (v == null) {
+                if (prior != null) {
+                    r.node = prior;
+                    r.kind = Outcome.REMOVED;
+                }
+                return null;
+            }
+            if (v == old) {
+                r.node = prior;
+                return prior;
+            }
+            int w = weigh(k, v);
+            if (prior == null) {
+                r.node = new Node<K,V>(k, v, w, now);
+                r.kind = Outcome.ADDED;
+                return r.node;
+            }
+            prior.value = v;
+            prior.weight = w;
+            prior.writeTime = now;
+            prior.accessTime = now;
+            r.node = prior;
+            r.kind = Outcome.UPDATED;
+            return prior;
+        });
+        switch (r.kind) {
+        case Outcome.ADDED:   afterWrite(new AddTask(r.node)); break;
+        case Outcome.UPDATED: afterWrite(new UpdateTask(r.node)); break;
+        case Outcome.REMOVED: afterWrite(new RemovalTask(r.node)); break;
+        default:              if (r.node != null) afterRead(r.node, now); break;
+        }
+        return r;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped, or
+     * {@code null} if this cache contains no unexpired mapping for the
+     * key.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public V get(Object key) {
+        long now = System.nanoTime();
+        Node<K,V> n = data.get(key);
+        if (n == null || hasExpired(n, now)) {
+            if (recordStats)
+                missCount.increment();
+            if (n != null)
+                scheduleDrain(false);
+            return null;
+        }
+        V v = n.value;
+        if (recordStats)
+            hitCount.increment();
+        afterRead(n, now);
+        return v;
+    }
+
+    /**
+     * Returns {@code true} if this cache contains an unexpired mapping for
+     * the specified key.  This does not count as a use of the entry.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(Object key) {
+        Node<K,V> n = data.get(key);
+        return n != null && !hasExpired(n, System.nanoTime());
+    }
+
+    /**
+     * Returns {@code true} if this cache maps one or more keys to the
+     * specified value.  This method traverses the whole map.
+     *
+     * @throws NullPointerException if the specified value is null
+     */
+    public boolean containsValue(Object value) {
+        if (value == null)
+            throw new NullPointerException();
+        long now = System.nanoTime();
+        for (Node<K,V> n : data.values()) {
+            if (!hasExpired(n, now) && value.equals(n.value))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Maps the specified key to the specified value in this cache, which
+     * may cause other entries to be evicted.
+     *
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no unexpired mapping for {@code key}
+     * @throws NullPointerException if the specified key or value is null
+     * @throws IllegalArgumentException if the weigher returns a negative
+     *         weight
+     */
+    public V put(K key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        return remap(key, (k, old) -> value).oldValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or {@code null} if there was no unexpired mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        return remap(key, (k, old) -> (old != null) ? old : value).oldValue;
+    }
+
+    /**
+     * Removes the mapping for a key from this cache if it is present.
+     *
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no unexpired mapping for {@code key}
+     * @throws NullPointerException if the specified key is null
+     */
+    public V remove(Object key) {
+        @SuppressWarnings("unchecked") K k = (K) key;
+        return remap(k, (x, old) -> null).oldValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean remove(Object key, Object value) {
+        if (value == null)
+            return false;
+        @SuppressWarnings("unchecked") K k = (K) key;
+        V old = remap(k, (x, v) -> (v != null && v.equals(value)) ? null : v).oldValue;
+        return old != null && old.equals(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if any of the arguments are null
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null)
+            throw new NullPointerException();
+        V old = remap(key, (k, v) -> (v != null && v.equals(oldValue)) ? newValue : v).oldValue;
+        return old != null && old.equals(oldValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or {@code null} if there was no unexpired mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V replace(K key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        return remap(key, (k, v) -> (v != null) ? value : null).oldValue;
+    }
+
+    /**
+     * If the specified key has no unexpired mapping, attempts to compute
+     * its value using the given mapping function and enters it into this
+     * cache unless {@code null}.  The function is invoked at most once per
+     * missing key: other threads asking for the same key wait for its
+     * result rather than computing it again.  Some attempted update
+     * operations on other keys may also be blocked while the computation
+     * is in progress, so the computation should be short and simple, and
+     * must not attempt to update any other mappings of this cache.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with
+     *         the specified key, or null if the computed value is null
+     * @throws NullPointerException if the specified key or mappingFunction
+     *         is null
+     * @throws RuntimeException or Error if the mappingFunction does so,
+     *         in which case the mapping is left unestablished
+     */
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        if (key == null || mappingFunction == null)
+            throw new NullPointerException();
+        long now = System.nanoTime();
+        Node<K,V> n = data.get(key);
+        if (n != null && !hasExpired(n, now)) { // avoid locking the bin
+            V v = n.value;
+            if (recordStats)
+                hitCount.increment();
+            afterRead(n, now);
+            return v;
+        }
+        boolean[] loaded = new boolean[1];
+        V value = remap(key, (k, v) -> {
+            if (v != null)
+                return v;
+            loaded[0] = true;
+            if (recordStats)
+                missCount.increment();
+            long start = System.nanoTime();
+            V loadedValue = null;
+            try {
+                loadedValue = mappingFunction.apply(k);
+            } finally {
+                if (recordStats) {
+                    totalLoadTime.add(System.nanoTime() - start);
+                    (loadedValue != null ? loadSuccessCount : loadFailureCount).increment();
+                }
+            }
+            return loadedValue;
+        }).newValue;
+        if (recordStats && !loaded[0])
+            hitCount.increment();
+        return value;
+    }
+
+    /** Returns the current value without recording a read. */
+    final V getIfPresent(Object key) {
+        Node<K,V> n = data.get(key);
+        return (n == null || hasExpired(n, System.nanoTime())) ? null : n.value;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key or
+     *         remappingFunction is null
+     */
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        return remap(key, (k, v) -> (v == null) ? null : remappingFunction.apply(k, v)).newValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key or
+     *         remappingFunction is null
+     */
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        return remap(key, remappingFunction).newValue;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key, value or
+     *         remappingFunction is null
+     */
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        if (value == null || remappingFunction == null)
+            throw new NullPointerException();
+        return remap(key, (k, v) -> (v == null) ? value : remappingFunction.apply(v, value)).newValue;
+    }
+
+    /**
+     * Returns the number of mappings in this cache, including expired
+     * mappings that have not yet been removed.
+     */
+    public int size() {
+        return data.size();
+    }
+
+    public boolean isEmpty() {
+        return data.isEmpty();
+    }
+
+    /**
+     * Removes all of the mappings from this cache.
+     */
+    public void clear() {
+        for (K key : data.keySet())
+            remove(key);
+    }
+
+    /**
+     * Performs any pending maintenance: replays recorded reads and
+     * updates, removes expired entries and evicts entries beyond the
+     * maximum.  Maintenance otherwise runs as a side effect of other
+     * operations, and this method is only needed to make the effects of
+     * expiration visible through {@link #size} without further activity.
+     */
+    public void cleanUp() {
+        scheduleDrain(true);
+    }
+
+    /**
+     * Returns a snapshot of the statistics of this cache, all zero unless
+     * the cache was built with {@link Builder#recordStats}.
+     *
+     * @return the statistics of this cache
+     */
+    public Stats stats() {
+        return new Stats(hitCount.sum(), missCount.sum(),
+                         loadSuccessCount.sum(), loadFailureCount.sum(),
+                         totalLoadTime.sum(), evictionCount.sum(),
+                         evictionWeight.sum());
+    }
+
+    /**
+     * Returns a {@link Set} view of the unexpired mappings in this cache.
+     * The set is backed by the cache, so changes to the cache are
+     * reflected in the set, and vice-versa.  The set supports element
+     * removal, but not addition, and its iterators are weakly consistent
+     * and do not count as uses of the entries.
+     *
+     * @return the set view
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        EntrySetView<K,V> es;
+        return (es = entrySet) != null ? es : (entrySet = new EntrySetView<K,V>(this));
+    }
+
+    static final class EntrySetView<K,V> extends AbstractSet<Map.Entry<K,V>> {
+        final ConcurrentCache<K,V> cache;
+        EntrySetView(ConcurrentCache<K,V> cache) { this.cache = cache; }
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator<K,V>(cache);
+        }
+        public boolean contains(Object o) {
+            Object k, v, r; Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>)o).getKey()) != null &&
+                    (r = cache.getIfPresent(k)) != null &&
+                    (v = e.getValue()) != null &&
+                    (v == r || v.equals(r)));
+        }
+        public boolean remove(Object o) {
+            Object k, v; Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>)o).getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    cache.remove(k, v));
+        }
+        public int size() { return cache.size(); }
+        public boolean isEmpty() { return cache.isEmpty(); }
+        public void clear() { cache.clear(); }
+    }
+
+    /** Weakly consistent iterator over the unexpired entries. */
+    static final class EntryIterator<K,V> implements Iterator<Map.Entry<K,V>> {
+        final ConcurrentCache<K,V> cache;
+        final Iterator<Node<K,V>> it;
+        Map.Entry<K,V> next, lastReturned;
+
+        EntryIterator(ConcurrentCache<K,V> cache) {
+            this.cache = cache;
+            this.it = cache.data.values().iterator();
+            advance();
+        }
+
+        void advance() {
+            next = null;
+            long now = System.nanoTime();
+            while (it.hasNext()) {
+                Node<K,V> n = it.next();
+                V v = n.value;
+                if (!cache.hasExpired(n, now)) {
+                    next = new WriteThroughEntry<K,V>(cache, n.key, v);
+                    return;
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        public Map.Entry<K,V> next() {
+            Map.Entry<K,V> e = next;
+            if (e == null)
+                throw new NoSuchElementException();
+            lastReturned = e;
+            advance();
+            return e;
+        }
+
+        public void remove() {
+            Map.Entry<K,V> e = lastReturned;
+            if (e == null)
+                throw new IllegalStateException();
+            lastReturned = null;
+            cache.remove(e.getKey());
+        }
+    }
+
+    /** An entry whose setValue writes through to the cache. */
+    static final class WriteThroughEntry<K,V> extends AbstractMap.SimpleEntry<K,V> {
+        private static final long serialVersionUID = 4245367139358521743L;
+        transient final ConcurrentCache<K,V> cache;
+        WriteThroughEntry(ConcurrentCache<K,V> cache, K key, V value) {
+            super(key, value);
+            this.cache = cache;
+        }
+        public V setValue(V value) {
+            if (value == null)
+                throw new NullPointerException();
+            V v = super.setValue(value);
+            cache.put(getKey(), value);
+            return v;
+        }
+    }
+
+    /**
+     * Statistics of a {@link ConcurrentCache}, as returned by
+     * {@link ConcurrentCache#stats}.  A hit is a retrieval that found an
+     * unexpired entry; a miss is one that did not, and, for {@code
+     * computeIfAbsent}, led to a load.
+     *
+     * @since 1.8
+     */
+    public static final class Stats {
+        private final long hitCount, missCount, loadSuccessCount,
+            loadFailureCount, totalLoadTime, evictionCount, evictionWeight;
+
+        Stats(long hitCount, long missCount, long loadSuccessCount,
+              long loadFailureCount, long totalLoadTime,
+              long evictionCount, long evictionWeight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.loadSuccessCount = loadSuccessCount;
+            this.loadFailureCount = loadFailureCount;
+            this.totalLoadTime = totalLoadTime;
+            this.evictionCount = evictionCount;
+            this.evictionWeight = evictionWeight;
+        }
+
+        /** Returns the number of retrievals that found an entry. */
+        public long hitCount() { return hitCount; }
+
+        /** Returns the number of retrievals that found no entry. */
+        public long missCount() { return missCount; }
+
+        /**
+         * Returns the ratio of hits to retrievals, or 1.0 if there were
+         * no retrievals.
+         */
+        public double hitRate() {
+            long requests = hitCount + missCount;
+            return (requests == 0) ? 1.0 : (double) hitCount / requests;
+        }
+
+        /** Returns the number of loads that computed a value. */
+        public long loadSuccessCount() { return loadSuccessCount; }
+
+        /** Returns the number of loads that returned null or threw. */
+        public long loadFailureCount() { return loadFailureCount; }
+
+        /** Returns the total time spent loading, in nanoseconds. */
+        public long totalLoadTime() { return totalLoadTime; }
+
+        /** Returns the number of entries evicted for size or weight. */
+        public long evictionCount() { return evictionCount; }
+
+        /** Returns the total weight of the entries evicted. */
+        public long evictionWeight() { return evictionWeight; }
+
+        public String toString() {
+            return "Stats[hits=" + hitCount + ", misses=" + missCount +
+                ", loadSuccesses=" + loadSuccessCount +
+                ", loadFailures=" + loadFailureCount +
+                ", totalLoadTime=" + totalLoadTime +
+                ", evictions=" + evictionCount +
+                ", evictionWeight=" + evictionWeight + "]";
+        }
+    }
+
+    /**
+     * A builder of {@link ConcurrentCache} instances.  By default, caches
+     * are unbounded, entries never expire, and statistics are not
+     * recorded.
+     *
+     * @param <K> the type of keys of the cache
+     * @param <V> the type of values of the cache
+     * @since 1.8
+     */
+    public static final class Builder<K,V> {
+        int initialCapacity = 16;
+        long maximum = UNBOUNDED;
+        ToIntBiFunction<? super K, ? super V> weigher;
+        long expireAfterWriteNanos, expireAfterAccessNanos;
+        boolean recordStats;
+
+        Builder() { }
+
+        /**
+         * Sets the number of entries the cache can initially hold without
+         * resizing its table.
+         *
+         * @param initialCapacity the initial capacity
+         * @return this builder
+         * @throws IllegalArgumentException if initialCapacity is negative
+         */
+        public Builder<K,V> initialCapacity(int initialCapacity) {
+            if (initialCapacity < 0)
+                throw new IllegalArgumentException();
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * Bounds the number of entries of the cache.
+         *
+         * @param maximumSize the maximum number of entries
+         * @return this builder
+         * @throws IllegalArgumentException if maximumSize is negative
+         * @throws IllegalStateException if a maximum was already set
+         */
+        public Builder<K,V> maximumSize(long maximumSize) {
+            if (maximumSize < 0)
+                throw new IllegalArgumentException();
+            if (maximum != UNBOUNDED)
+                throw new IllegalStateException("maximum already set");
+            this.maximum = maximumSize;
+            return this;
+        }
+
+        /**
+         * Bounds the total weight of the entries of the cache, as computed
+         * by the given weigher when an entry is inserted or updated.  The
+         * weights of entries must not be negative.
+         *
+         * @param maximumWeight the maximum total weight
+         * @param weigher the function computing the weight of an entry
+         * @return this builder
+         * @throws IllegalArgumentException if maximumWeight is negative
+         * @throws IllegalStateException if a maximum was already set
+         * @throws NullPointerException if weigher is null
+         */
+        public Builder<K,V> maximumWeight(long maximumWeight,
+                                          ToIntBiFunction<? super K, ? super V> weigher) {
+            if (weigher == null)
+                throw new NullPointerException();
+            maximumSize(maximumWeight);
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Makes entries expire the given time after they were inserted or
+         * last updated.
+         *
+         * @param duration the time after which entries expire
+         * @param unit the unit of duration
+         * @return this builder
+         * @throws IllegalArgumentException if duration is not positive
+         */
+        public Builder<K,V> expireAfterWrite(long duration, TimeUnit unit) {
+            this.expireAfterWriteNanos = toNanos(duration, unit);
+            return this;
+        }
+
+        /**
+         * Makes entries expire the given time after they were inserted,
+         * last updated or last read.
+         *
+         * @param duration the time after which entries expire
+         * @param unit the unit of duration
+         * @return this builder
+         * @throws IllegalArgumentException if duration is not positive
+         */
+        public Builder<K,V> expireAfterAccess(long duration, TimeUnit unit) {
+            this.expireAfterAccessNanos = toNanos(duration, unit);
+            return this;
+        }
+
+        private static long toNanos(long duration, TimeUnit unit) {
+            if (duration <= 0)
+                throw new IllegalArgumentException();
+            return unit.toNanos(duration);
+        }
+
+        /**
+         * Makes the cache record the statistics returned by
+         * {@link ConcurrentCache#stats}.
+         *
+         * @return this builder
+         */
+        public Builder<K,V> recordStats() {
+            this.recordStats = true;
+            return this;
+        }
+
+        /**
+         * Returns a new cache with the settings of this builder.
+         *
+         * @param <K1> the type of keys of the cache
+         * @param <V1> the type of values of the cache
+         * @return a new cache
+         */
+        @SuppressWarnings("unchecked")
+        public <K1 extends K, V1 extends V> ConcurrentCache<K1,V1> build() {
+            return new ConcurrentCache<K1,V1>((Builder<K1,V1>) this);
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package java.util.concurrent;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * An unbounded thread-safe LIFO (last-in-first-out) stack based on
+ * linked nodes, with an <em>elimination array</em> for backoff.  A
+ * {@link #push} and a {@link #pop} cancel out: when they contend for
+ * the top of the stack at about the same time, they can instead meet
+ * at a random slot of the elimination array, where the popping thread
+ * takes the pushing thread's element without either touching the top
+ * of the stack.  So under high contention, as when a stack is used as
+ * a pool of objects by many threads, pushes and pops scale with the
+ * number of threads, rather than serializing on the top node as they
+ * do in {@link ConcurrentLinkedDeque} used as a stack.
+ *
+ * <p>This implementation is lock-free and does not permit the use of
+ * {@code null} elements.  Iterators and spliterators are
+ * <a href="package-summary.html#Weakly"><i>weakly consistent</i></a>,
+ * traversing elements from the top of the stack to the bottom.  They
+ * do not support removal.
+ *
+ * <p>Beware that, unlike in most collections, the {@code size} method
+ * is <em>NOT</em> a constant-time operation.  Because of the
+ * asynchronous nature of these stacks, determining the current number
+ * of elements requires a traversal of the elements, and so may report
+ * inaccurate results if this collection is modified during traversal.
+ *
+ * <p>Memory consistency effects: As with other concurrent
+ * collections, actions in a thread prior to pushing an object onto a
+ * {@code ConcurrentEliminationStack}
+ * <a href="package-summary.html#MemoryVisibility"><i>happen-before</i></a>
+ * actions subsequent to the access or removal of that element from
+ * the {@code ConcurrentEliminationStack} in another thread.
+ *
+ * @param <E> the type of elements held in this collection
+ * @see Exchanger
+ * @since 1.8
+ */
+public class ConcurrentEliminationStack<E> extends AbstractCollection<E>
+    implements java.io.Serializable {
+    private static final long serialVersionUID = 2796462624613817426L;
+
+    /*
+     * This is the elimination-backoff stack of Hendler, Shavit and
+     * Yerushalmi ("A Scalable Lock-free Stack Algorithm", SPAA 2004):
+     * a Treiber stack, whose head is CASed to push and pop, plus an
+     * elimination array that operations visit after failing a CAS,
+     * instead of backing off idly.
+     *
+     * The elimination array is the arena of Exchanger, with the same
+     * layout and sizing: slots spaced (1 << ASHIFT) bytes apart so
+     * that each occupies its own cache line, at most FULL of them in
+     * use, where FULL is half the number of CPUs (the number of
+     * slots that can in principle hold all threads without
+     * contention), and a "bound" on the index of the slots in use,
+     * grown on collisions and shrunk on timeouts, with a sequence
+     * number in its high bits so that each thread's adjustment
+     * applies only to the bound it saw.  See Exchanger for the
+     * rationale.
+     *
+     * Unlike an exchange, an elimination succeeds only between a
+     * push and a pop, and never blocks: an operation that finds an
+     * empty slot CASes in an Offer holding its element (or null, for
+     * a pop), and spins for a while waiting for a complementary
+     * operation to CAS the slot back to null and set the Offer's
+     * match field; one that finds a complementary Offer does that
+     * itself.  An operation that times out withdraws its Offer by
+     * CASing the slot to null; if that fails, its partner has taken
+     * it and is about to set its match.  Either way, an operation
+     * that fails to eliminate retries its CAS on the head, so the
+     * arena only ever adds chances to complete.
+     *
+     * On uniprocessors no partner can arrive while an operation
+     * spins, so the arena is never used.
+     *
+     * Nodes are never reused, and popped nodes keep their next
+     * fields, so a traversal from a stale node still reaches the
+     * bottom of the stack, as in ConcurrentLinkedQueue.
+     */
+
+    static final class Node<E> {
+        final E item;
+        Node<E> next;           // written before the CAS publishing this
+        Node(E item) { this.item = item; }
+    }
+
+    /**
+     * An operation waiting in the arena: a push, with its element, or
+     * a pop, with a null item.
+     */
+    static final class Offer {
+        final Object item;
+        volatile Object match;  // set by the partner that takes the slot
+        Offer(Object item) { this.item = item; }
+    }
+
+    /**
+     * The byte distance (as a shift value) between any two used slots
+     * in the arena.  1 << ASHIFT should be at least cacheline size.
+     */
+    private static final int ASHIFT = 7;
+
+    /**
+     * The maximum supported arena index.  Must be a power of two minus
+     * one, less than (1<<(31-ASHIFT)).
+     */
+    private static final int MMASK = 0xff;
+
+    /**
+     * Unit for sequence/version bits of bound field. Each successful
+     * change to the bound also adds SEQ.
+     */
+    private static final int SEQ = MMASK + 1;
+
+    /** The number of CPUs, for sizing and spin control */
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The maximum slot index of the arena: The number of slots that
+     * can in principle hold all threads without contention, or at
+     * most the maximum indexable value.
+     */
+    static final int FULL = (NCPU >= (MMASK << 1)) ? MMASK : NCPU >>> 1;
+
+    /**
+     * The number of times an operation spins waiting for a partner
+     * before withdrawing from the arena.  Much less than Exchanger's,
+     * because a withdrawn operation just retries on the head of the
+     * stack, which it would otherwise have been backing off from.
+     */
+    private static final int SPINS = 1 << 7;
+
+    /** The match set by a pop that takes the Offer of a push. */
+    private static final Object TAKEN = new Object();
+
+    /** The top of the stack. */
+    private transient volatile Node<E> head;
+
+    /** Elimination array; null until contention detected. */
+    private transient volatile Offer[] arena;
+
+    /**
+     * The index of the largest valid arena position, OR'ed with SEQ
+     * number in high bits, incremented on each update.
+     */
+    private transient volatile int bound;
+
+    /**
+     * Creates a {@code ConcurrentEliminationStack} that is initially
+     * empty.
+     */
+    public ConcurrentEliminationStack() {
+    }
+
+    /**
+     * Creates a {@code ConcurrentEliminationStack} initially containing
+     * the elements of the given collection, pushed in traversal order
+     * of the collection's iterator, so that its last element is at the
+     * top of the stack.
+     *
+     * @param c the collection of elements to initially contain
+     * @throws NullPointerException if the specified collection or any
+     *         of its elements are null
+     */
+    public ConcurrentEliminationStack(Collection<? extends E> c) {
+        Node<E> h = null;
+        for (E e : c) {
+            if (e == null)
+                throw new NullPointerException();
+            Node<E> n = new Node<E>(e);
+            n.next = h;
+            h = n;
+        }
+        head = h;
+    }
+
+    /**
+     * Pushes the specified element onto the top of this stack.
+     *
+     * @param e the element to push
+     * @throws NullPointerException if the specified element is null
+     */
+    public void push(E e) {
+        if (e == null)
+            throw new NullPointerException();
+        Node<E> n = new Node<E>(e);
+        for (Node<E> h;;) {
+            n.next = h = head;
+            if (U.compareAndSwapObject(this, HEAD, h, n) ||
+                (NCPU > 1 && eliminate(e) != null))
+                return;
+        }
+    }
+
+    /**
+     * Removes and returns the element at the top of this stack, or
+     * returns {@code null} if this stack is empty.
+     *
+     * @return the element at the top of this stack, or {@code null} if
+     *         this stack is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E pop() {
+        for (Node<E> h; (h = head) != null;) {
+            Object x;
+            if (U.compareAndSwapObject(this, HEAD, h, h.next))
+                return h.item;
+            if (NCPU > 1 && (x = eliminate(null)) != null)
+                return (E)x;
+        }
+        return null;
+    }
+
+    /**
+     * Returns, but does not remove, the element at the top of this
+     * stack, or returns {@code null} if this stack is empty.
+     *
+     * @return the element at the top of this stack, or {@code null} if
+     *         this stack is empty
+     */
+    public E peek() {
+        Node<E> h = head;
+        return (h == null) ? null : h.item;
+    }
+
+    /**
+     * Tries to eliminate a push of the given item, or, if null, a pop,
+     * against a complementary operation in the arena.
+     *
+     * @param item the item pushed, or null for a pop
+     * @return for a push, the item if taken by a pop; for a pop, the
+     * item of the push taken; else null
+     */
+    private Object eliminate(Object item) {
+        Offer[] a;
+        if ((a = arena) == null) {
+            U.compareAndSwapObject(this, ARENA, null,
+                                   new Offer[(FULL + 2) << ASHIFT]);
+            a = arena;
+        }
+        int b = bound, m = b & MMASK;
+        int i = (m == 0) ? 0 : ThreadLocalRandom.current().nextInt(m + 1);
+        long j = ((long)i << ASHIFT) + ABASE;
+        Offer q = (Offer)U.getObjectVolatile(a, j);
+        if (q != null) {
+            if ((q.item == null) != (item == null) &&
+                U.compareAndSwapObject(a, j, q, null)) {
+                if (item == null) {
+                    q.match = TAKEN;
+                    return q.item;
+                }
+                q.match = item;
+                return item;
+            }
+            if (m < FULL)                        // collision: grow
+                U.compareAndSwapInt(this, BOUND, b, b + SEQ + 1);
+            return null;
+        }
+        Offer p = new Offer(item);
+        if (!U.compareAndSwapObject(a, j, null, p)) {
+            if (m < FULL)
+                U.compareAndSwapInt(this, BOUND, b, b + SEQ + 1);
+            return null;
+        }
+        Object v;
+        for (int spins = SPINS; (v = p.match) == null;) {
+            if (--spins <= 0) {
+                if (U.compareAndSwapObject(a, j, p, null)) {
+                    if (m != 0)                  // timeout: shrink
+                        U.compareAndSwapInt(this, BOUND, b, b + SEQ - 1);
+                    return null;
+                }
+                while ((v = p.match) == null)    // partner is setting match
+                    Thread.yield();
+                break;
+            }
+        }
+        return (item == null) ? v : item;
+    }
+
+    /**
+     * Pushes the specified element onto the top of this stack.
+     *
+     * @param e the element to push
+     * @return {@code true} (as specified by {@link Collection#add})
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean add(E e) {
+        push(e);
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if this stack contains no elements.
+     *
+     * @return {@code true} if this stack contains no elements
+     */
+    public boolean isEmpty() {
+        return head == null;
+    }
+
+    /**
+     * Returns the number of elements in this stack.  If this stack
+     * contains more than {@code Integer.MAX_VALUE} elements, returns
+     * {@code Integer.MAX_VALUE}.
+     *
+     * <p>Beware that, unlike in most collections, this method is
+     * <em>NOT</em> a constant-time operation. Because of the
+     * asynchronous nature of these stacks, determining the current
+     * number of elements requires an O(n) traversal.
+     *
+     * @return the number of elements in this stack
+     */
+    public int size() {
+        int count = 0;
+        for (Node<E> p = head; p != null; p = p.next)
+            if (++count == Integer.MAX_VALUE)
+                break;
+        return count;
+    }
+
+    /**
+     * Atomically removes all of the elements from this stack.
+     */
+    public void clear() {
+        head = null;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this stack,
+     * from top to bottom.
+     *
+     * @return an array containing all of the elements in this stack
+     */
+    public Object[] toArray() {
+        ArrayList<E> al = new ArrayList<E>();
+        for (Node<E> p = head; p != null; p = p.next)
+            al.add(p.item);
+        return al.toArray();
+    }
+
+    /**
+     * Returns an array containing all of the elements in this stack,
+     * from top to bottom; the runtime type of the returned array is
+     * that of the specified array.
+     *
+     * @param a the array into which the elements of the stack are to
+     *          be stored, if it is big enough; otherwise, a new array of the
+     *          same runtime type is allocated for this purpose
+     * @return an array containing all of the elements in this stack
+     * @throws ArrayStoreException if the runtime type of the specified array
+     *         is not a supertype of the runtime type of every element in
+     *         this stack
+     * @throws NullPointerException if the specified array is null
+     */
+    public <T> T[] toArray(T[] a) {
+        ArrayList<E> al = new ArrayList<E>();
+        for (Node<E> p = head; p != null; p = p.next)
+            al.add(p.item);
+        return al.toArray(a);
+    }
+
+    /**
+     * Returns an iterator over the elements in this stack, from top
+     * to bottom.  The iterator does not support removal.
+     *
+     * <p>The returned iterator is
+     * <a href="package-summary.html#Weakly"><i>weakly consistent</i></a>.
+     *
+     * @return an iterator over the elements in this stack
+     */
+    public Iterator<E> iterator() {
+        return new Itr<E>(head);
+    }
+
+    static final class Itr<E> implements Iterator<E> {
+        private Node<E> next;
+        Itr(Node<E> head) { next = head; }
+        public boolean hasNext() { return next != null; }
+        public E next() {
+            Node<E> p = next;
+            if (p == null)
+                throw new NoSuchElementException();
+            next = p.next;
+            return p.item;
+        }
+    }
+
+    /**
+     * Returns a {@link Spliterator} over the elements in this stack,
+     * from top to bottom.
+     *
+     * <p>The returned spliterator is
+     * <a href="package-summary.html#Weakly"><i>weakly consistent</i></a>.
+     *
+     * <p>The {@code Spliterator} reports {@link Spliterator#CONCURRENT},
+     * {@link Spliterator#ORDERED}, and {@link Spliterator#NONNULL}.
+     *
+     * @implNote
+     * The {@code Spliterator} implements {@code trySplit} to permit limited
+     * parallelism.
+     *
+     * @return a {@code Spliterator} over the elements in this stack
+     */
+    public Spliterator<E> spliterator() {
+        return Spliterators.spliteratorUnknownSize
+            (iterator(), Spliterator.ORDERED | Spliterator.NONNULL |
+             Spliterator.CONCURRENT);
+    }
+
+    /**
+     * Saves this stack to a stream (that is, serializes it).
+     *
+     * @param s the stream
+     * @throws java.io.IOException if an I/O error occurs
+     * @serialData All of the elements (each an {@code E}) in
+     * the proper order, from top to bottom, followed by a null
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws java.io.IOException {
+
+        // Write out any hidden stuff
+        s.defaultWriteObject();
+
+        // Write out all elements in the proper order.
+        for (Node<E> p = head; p != null; p = p.next)
+            s.writeObject(p.item);
+
+        // Use trailing null as sentinel
+        s.writeObject(null);
+    }
+
+    /**
+     * Reconstitutes this stack from a stream (that is, deserializes it).
+     * @param s the stream
+     * @throws ClassNotFoundException if the class of a serialized object
+     *         could not be found
+     * @throws java.io.IOException if an I/O error occurs
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+        s.defaultReadObject();
+
+        // Read in elements until trailing null sentinel found
+        Node<E> h = null, t = null;
+        Object item;
+        while ((item = s.readObject()) != null) {
+            @SuppressWarnings("unchecked")
+            Node<E> n = new Node<E>((E) item);
+            if (h == null)
+                h = t = n;
+            else {
+                t.next = n;
+                t = n;
+            }
+        }
+        head = h;
+    }
+
+    // Unsafe mechanics
+
+    private static final sun.misc.Unsafe U;
+    private static final long HEAD;
+    private static final long ARENA;
+    private static final long BOUND;
+    private static final int ABASE;
+    static {
+        int s;
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            Class<?> k = ConcurrentEliminationStack.class;
+            Class<?> ak = Offer[].class;
+            HEAD = U.objectFieldOffset
+                (k.getDeclaredField("head"));
+            ARENA = U.objectFieldOffset
+                (k.getDeclaredField("arena"));
+            BOUND = U.objectFieldOffset
+                (k.getDeclaredField("bound"));
+            s = U.arrayIndexScale(ak);
+            // ABASE absorbs padding in front of element 0
+            ABASE = U.arrayBaseOffset(ak) + (1 << ASHIFT);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+        if ((s & (s-1)) != 0 || s > (1 << ASHIFT))
+            throw new Error("Unsupported array scale");
+    }
+}
@@ -0,0 +1,683 @@
+package java.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * An unbounded thread-safe {@linkplain Queue queue} that stores its
+ * elements in linked array segments.  This queue orders elements FIFO
+ * (first-in-first-out), like {@link ConcurrentLinkedQueue}, which it
+ * can replace where many threads insert and remove elements at high
+ * rates: instead of allocating a node per element, and making every
+ * insertion and removal compete by CAS for the same tail or head node,
+ * it allocates a segment per many elements, and insertions and
+ * removals claim their slots in the current segment by
+ * <em>fetch-and-add</em> on its indices, which always succeeds.
+ *
+ * <p>Like {@code ConcurrentLinkedQueue}, this implementation is
+ * lock-free and does not permit the use of {@code null} elements.
+ * Iterators and spliterators are
+ * <a href="package-summary.html#Weakly"><i>weakly consistent</i></a>.
+ *
+ * <p>Unlike in {@code ConcurrentLinkedQueue}, the {@code size} method
+ * is a <em>constant-time</em> operation, but it is approximate: it is
+ * computed from the indices of the segments at the head and tail of
+ * the queue, less the number of elements removed from the interior of
+ * the queue by {@link #remove(Object)} or by iterators, and so counts
+ * elements that are being inserted.  Additionally, if elements are
+ * added or removed during execution of this method, the returned
+ * result may be inaccurate.  Thus, this method is typically not very
+ * useful in concurrent applications.
+ *
+ * <p>Interior removals, by {@code remove(Object)}, {@code removeAll},
+ * {@code retainAll} or iterators, leave their slots empty rather than
+ * compacting the segment, so the memory they take is reclaimed only
+ * when the rest of the segment has been polled.
+ *
+ * <p>This class and its iterator implement all of the <em>optional</em>
+ * methods of the {@link Queue} and {@link Iterator} interfaces.
+ *
+ * <p>Memory consistency effects: As with other concurrent
+ * collections, actions in a thread prior to placing an object into a
+ * {@code ConcurrentSegmentedQueue}
+ * <a href="package-summary.html#MemoryVisibility"><i>happen-before</i></a>
+ * actions subsequent to the access or removal of that element from
+ * the {@code ConcurrentSegmentedQueue} in another thread.
+ *
+ * @param <E> the type of elements held in this collection
+ * @see ConcurrentLinkedQueue
+ * @since 1.8
+ */
+public class ConcurrentSegmentedQueue<E> extends AbstractQueue<E>
+    implements Queue<E>, java.io.Serializable {
+    private static final long serialVersionUID = -4457145429468317541L;
+
+    /*
+     * This is a variant of the "FAA array queue" of Ramalhete and
+     * Correia, itself a simplification of LCRQ (Morrison and Afek):
+     * a linked list of segments, each an array of SEGMENT_SIZE slots
+     * with an enqueue index and a dequeue index, advanced by
+     * getAndAdd.
+     *
+     * An offer takes the next enqueue index of the tail segment and
+     * CASes its element into that slot, from null.  A poll takes the
+     * next dequeue index of the head segment and swaps TAKEN into
+     * that slot.  If the poll finds the slot still null, because the
+     * offer that took the same index has not stored its element yet,
+     * the poll's TAKEN makes that offer's CAS fail, and the offer
+     * retries at a later index; the poll retries too.  So slots are
+     * never reused, and a slot, once TAKEN, stays TAKEN.  To keep
+     * polls on an empty queue from running the dequeue index ahead
+     * of offers (which would make all of them retry), polls return
+     * null without taking an index when the dequeue index has reached
+     * the enqueue index and there is no next segment.
+     *
+     * An offer that takes an index past the end of the tail segment
+     * links a new segment, holding its element in slot 0, after it,
+     * or helps advance the tail to the segment another offer linked.
+     * Likewise, a poll past the end of the head segment advances the
+     * head to the next segment, or returns null if there is none.
+     * Segments are numbered in order, so the size is approximated in
+     * constant time from the numbers and indices of the head and tail
+     * segments.
+     *
+     * Interior removals CAS the element out of its slot to TAKEN,
+     * which polls skip.  As the dequeue index counts such slots only
+     * once a poll skips them, interior removals add to a LongAdder,
+     * subtracted by size, and the polls that skip their slots take
+     * them back out of it.  (A slot is TAKEN when a poll takes it only
+     * if an interior removal made it so, as each index is taken by
+     * exactly one poll.)  Traversals visit the slots of each segment
+     * from the dequeue index of the head segment (or from the start
+     * of later segments) up to the enqueue index, skipping null and
+     * TAKEN slots, and follow next links; segments that the head has
+     * moved past are still linked to their successors, so traversals
+     * holding them just see TAKEN slots.
+     *
+     * The two indices of a segment are updated by different threads
+     * at high rates, so each is padded with @Contended.
+     */
+
+    /** The number of slots of a segment */
+    static final int SEGMENT_SIZE = 1 << 10;
+
+    /** The marker of slots whose element has been removed */
+    static final Object TAKEN = new Object();
+
+    /**
+     * A segment of the queue.
+     */
+    static final class Segment {
+        final Object[] items = new Object[SEGMENT_SIZE];
+        final long number;              // position in the queue
+        @sun.misc.Contended("enq") volatile int enqIdx;
+        @sun.misc.Contended("deq") volatile int deqIdx;
+        volatile Segment next;
+
+        Segment(long number) {
+            this.number = number;
+        }
+
+        /**
+         * Creates a segment holding the given element in its first
+         * slot, to be published by linking it.
+         */
+        Segment(long number, Object x) {
+            this.number = number;
+            items[0] = x;
+            enqIdx = 1;
+        }
+
+        final Object itemAt(int i) {
+            return U.getObjectVolatile(items, ((long)i << ASHIFT) + ABASE);
+        }
+
+        final boolean casItem(int i, Object cmp, Object val) {
+            return U.compareAndSwapObject(items, ((long)i << ASHIFT) + ABASE,
+                                          cmp, val);
+        }
+
+        final Object takeItem(int i) {
+            return U.getAndSetObject(items, ((long)i << ASHIFT) + ABASE,
+                                     TAKEN);
+        }
+
+        final int nextEnqIdx() {
+            return U.getAndAddInt(this, ENQIDX, 1);
+        }
+
+        final int nextDeqIdx() {
+            return U.getAndAddInt(this, DEQIDX, 1);
+        }
+
+        final boolean casNext(Segment cmp, Segment val) {
+            return U.compareAndSwapObject(this, NEXT, cmp, val);
+        }
+    }
+
+    /** The first segment holding elements, not yet polled entirely */
+    private transient volatile Segment head;
+
+    /** The last segment, or one before it while it is being linked */
+    private transient volatile Segment tail;
+
+    /** The number of interior removals whose slots polls have not skipped */
+    private transient LongAdder removals;
+
+    /**
+     * Creates a {@code ConcurrentSegmentedQueue} that is initially empty.
+     */
+    public ConcurrentSegmentedQueue() {
+        removals = new LongAdder();
+        head = tail = new Segment(0L);
+    }
+
+    /**
+     * Creates a {@code ConcurrentSegmentedQueue}
+     * initially containing the elements of the given collection,
+     * added in traversal order of the collection's iterator.
+     *
+     * @param c the collection of elements to initially contain
+     * @throws NullPointerException if the specified collection or any
+     *         of its elements are null
+     */
+    public ConcurrentSegmentedQueue(Collection<? extends E> c) {
+        this();
+        for (E e : c)
+            offer(e);
+    }
+
+    // Have to override just to update the javadoc
+
+    /**
+     * Inserts the specified element at the tail of this queue.
+     * As the queue is unbounded, this method will never throw
+     * {@link IllegalStateException} or return {@code false}.
+     *
+     * @return {@code true} (as specified by {@link Collection#add})
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean add(E e) {
+        return offer(e);
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue.
+     * As the queue is unbounded, this method will never return {@code false}.
+     *
+     * @return {@code true} (as specified by {@link Queue#offer})
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+        for (;;) {
+            Segment t = tail, n;
+            int i = t.nextEnqIdx();
+            if (i < SEGMENT_SIZE) {
+                if (t.casItem(i, null, e))
+                    return true;
+                // else a poll took the slot first; retry
+            }
+            else if (t == tail) {
+                if ((n = t.next) != null)
+                    casTail(t, n);
+                else {
+                    Segment s = new Segment(t.number + 1L, e);
+                    if (t.casNext(null, s)) {
+                        casTail(t, s);
+                        return true;
+                    }
+                }
+            }
+        }
+    }
+
+    public E poll() {
+        for (;;) {
+            Segment h = head, n;
+            if (h.deqIdx >= h.enqIdx && h.next == null)
+                return null;
+            int i = h.nextDeqIdx();
+            if (i < SEGMENT_SIZE) {
+                Object x = h.takeItem(i);
+                if (x == TAKEN)
+                    removals.decrement();
+                else if (x != null) {
+                    @SuppressWarnings("unchecked") E e = (E)x;
+                    return e;
+                }
+            }
+            else if ((n = h.next) == null)
+                return null;
+            else
+                casHead(h, n);
+        }
+    }
+
+    public E peek() {
+        Traverser t = new Traverser(head);
+        @SuppressWarnings("unchecked") E e = (E)t.advance();
+        return e;
+    }
+
+    /**
+     * Returns {@code true} if this queue contains no elements.
+     *
+     * @return {@code true} if this queue contains no elements
+     */
+    public boolean isEmpty() {
+        return peek() == null;
+    }
+
+    /**
+     * Returns the approximate number of elements in this queue.  If
+     * this queue contains more than {@code Integer.MAX_VALUE} elements,
+     * returns {@code Integer.MAX_VALUE}.
+     *
+     * <p>This method takes constant time, but is approximate: it counts
+     * the elements being inserted, as explained in the class
+     * documentation.
+     *
+     * @return the approximate number of elements in this queue
+     */
+    public int size() {
+        for (;;) {
+            Segment h = head, t = tail;
+            long polled = h.number * SEGMENT_SIZE +
+                Math.min(h.deqIdx, SEGMENT_SIZE);
+            long offered = t.number * SEGMENT_SIZE +
+                Math.min(t.enqIdx, SEGMENT_SIZE);
+            if (h == head) {
+                long n = offered - polled - removals.sum();
+                return (n <= 0L) ? 0 :
+                    (n >= Integer.MAX_VALUE) ? Integer.MAX_VALUE : (int)n;
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if this queue contains the specified element.
+     * More formally, returns {@code true} if and only if this queue contains
+     * at least one element {@code e} such that {@code o.equals(e)}.
+     *
+     * @param o object to be checked for containment in this queue
+     * @return {@code true} if this queue contains the specified element
+     */
+    public boolean contains(Object o) {
+        if (o != null) {
+            Traverser t = new Traverser(head);
+            for (Object x; (x = t.advance()) != null; ) {
+                if (o.equals(x))
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes a single instance of the specified element from this queue,
+     * if it is present.  More formally, removes an element {@code e} such
+     * that {@code o.equals(e)}, if this queue contains one or more such
+     * elements.
+     * Returns {@code true} if this queue contained the specified element
+     * (or equivalently, if this queue changed as a result of the call).
+     *
+     * @param o element to be removed from this queue, if present
+     * @return {@code true} if this queue changed as a result of the call
+     */
+    public boolean remove(Object o) {
+        if (o != null) {
+            Traverser t = new Traverser(head);
+            for (Object x; (x = t.advance()) != null; ) {
+                if (o.equals(x) && t.removeLast(x)) {
+                    removals.increment();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this queue, in
+     * proper sequence.
+     *
+     * <p>The returned array will be "safe" in that no references to it are
+     * maintained by this queue.  (In other words, this method must allocate
+     * a new array).  The caller is thus free to modify the returned array.
+     *
+     * <p>This method acts as bridge between array-based and collection-based
+     * APIs.
+     *
+     * @return an array containing all of the elements in this queue
+     */
+    public Object[] toArray() {
+        return toList().toArray();
+    }
+
+    /**
+     * Returns an array containing all of the elements in this queue, in
+     * proper sequence; the runtime type of the returned array is that of
+     * the specified array.  If the queue fits in the specified array, it
+     * is returned therein.  Otherwise, a new array is allocated with the
+     * runtime type of the specified array and the size of this queue.
+     *
+     * <p>If this queue fits in the specified array with room to spare
+     * (i.e., the array has more elements than this queue), the element in
+     * the array immediately following the end of the queue is set to
+     * {@code null}.
+     *
+     * @param a the array into which the elements of the queue are to
+     *          be stored, if it is big enough; otherwise, a new array of the
+     *          same runtime type is allocated for this purpose
+     * @return an array containing all of the elements in this queue
+     * @throws ArrayStoreException if the runtime type of the specified array
+     *         is not a supertype of the runtime type of every element in
+     *         this queue
+     * @throws NullPointerException if the specified array is null
+     */
+    public <T> T[] toArray(T[] a) {
+        return toList().toArray(a);
+    }
+
+    private ArrayList<E> toList() {
+        ArrayList<E> al = new ArrayList<E>();
+        Traverser t = new Traverser(head);
+        for (Object x; (x = t.advance()) != null; ) {
+            @SuppressWarnings("unchecked") E e = (E)x;
+            al.add(e);
+        }
+        return al;
+    }
+
+    /**
+     * A position in the slots of the queue, for traversals.
+     */
+    static final class Traverser {
+        Segment seg;        // the current segment, or null when done
+        int idx;            // the next slot to visit in seg
+        Segment lastSeg;    // the segment of the last element returned
+        int lastIdx;        // the slot of the last element returned
+
+        /**
+         * Creates a traverser starting at the given head segment.
+         */
+        Traverser(Segment h) {
+            seg = h;
+            idx = Math.min(h.deqIdx, SEGMENT_SIZE);
+        }
+
+        /**
+         * Returns the next element, or null if there are no more.
+         */
+        Object advance() {
+            for (Segment s; (s = seg) != null; ) {
+                int end = Math.min(s.enqIdx, SEGMENT_SIZE);
+                while (idx < end) {
+                    int i = idx++;
+                    Object x = s.itemAt(i);
+                    if (x != null && x != TAKEN) {
+                        lastSeg = s;
+                        lastIdx = i;
+                        return x;
+                    }
+                }
+                if (end < SEGMENT_SIZE)
+                    break;              // at the tail
+                seg = s.next;
+                idx = 0;
+            }
+            seg = null;
+            return null;
+        }
+
+        /**
+         * Removes the last element returned, if it is still there.
+         */
+        boolean removeLast(Object x) {
+            return lastSeg.casItem(lastIdx, x, TAKEN);
+        }
+    }
+
+    /**
+     * Returns an iterator over the elements in this queue in proper sequence.
+     * The elements will be returned in order from first (head) to last (tail).
+     *
+     * <p>The returned iterator is
+     * <a href="package-summary.html#Weakly"><i>weakly consistent</i></a>.
+     *
+     * @return an iterator over the elements in this queue in proper sequence
+     */
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    private class Itr implements Iterator<E> {
+        private final Traverser traverser = new Traverser(head);
+
+        /** The next element to return, or null if none */
+        private Object nextItem;
+
+        /** The last element returned, or null if removed or none */
+        private Object lastItem;
+        private Segment lastSeg;
+        private int lastIdx;
+
+        Itr() {
+            nextItem = traverser.advance();
+        }
+
+        public boolean hasNext() {
+            return nextItem != null;
+        }
+
+        public E next() {
+            Object x = nextItem;
+            if (x == null) throw new NoSuchElementException();
+            lastItem = x;
+            lastSeg = traverser.lastSeg;
+            lastIdx = traverser.lastIdx;
+            nextItem = traverser.advance();
+            @SuppressWarnings("unchecked") E e = (E)x;
+            return e;
+        }
+
+        public void remove() {
+            Object x = lastItem;
+            if (x == null) throw new IllegalStateException();
+            if (lastSeg.casItem(lastIdx, x, TAKEN))
+                removals.increment();
+            lastItem = null;
+        }
+    }
+
+    /**
+     * Saves this queue to a stream (that is, serializes it).
+     *
+     * @param s the stream
+     * @throws java.io.IOException if an I/O error occurs
+     * @serialData All of the elements (each an {@code E}) in
+     * the proper order, followed by a null
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws java.io.IOException {
+
+        // Write out any hidden stuff
+        s.defaultWriteObject();
+
+        // Write out all elements in the proper order.
+        Traverser t = new Traverser(head);
+        for (Object x; (x = t.advance()) != null; )
+            s.writeObject(x);
+
+        // Use trailing null as sentinel
+        s.writeObject(null);
+    }
+
+    /**
+     * Reconstitutes this queue from a stream (that is, deserializes it).
+     * @param s the stream
+     * @throws ClassNotFoundException if the class of a serialized object
+     *         could not be found
+     * @throws java.io.IOException if an I/O error occurs
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        removals = new LongAdder();
+        head = tail = new Segment(0L);
+
+        // Read in elements until trailing null sentinel found
+        Object item;
+        while ((item = s.readObject()) != null) {
+            @SuppressWarnings("unchecked") E e = (E)item;
+            offer(e);
+        }
+    }
+
+    /** A customized variant of Spliterators.IteratorSpliterator */
+    static final class CSQSpliterator<E> implements Spliterator<E> {
+        static final int MAX_BATCH = 1 << 25;  // max batch array size;
+        final ConcurrentSegmentedQueue<E> queue;
+        Traverser traverser; // null until initialized
+        int batch;           // batch size for splits
+        boolean exhausted;   // true when no more elements
+        CSQSpliterator(ConcurrentSegmentedQueue<E> queue) {
+            this.queue = queue;
+        }
+
+        public Spliterator<E> trySplit() {
+            Traverser t;
+            int b = batch;
+            int n = (b <= 0) ? 1 : (b >= MAX_BATCH) ? MAX_BATCH : b + 1;
+            if (!exhausted) {
+                if ((t = traverser) == null)
+                    t = traverser = new Traverser(queue.head);
+                Object[] a = new Object[n];
+                int i = 0;
+                Object x;
+                while (i < n && (x = t.advance()) != null)
+                    a[i++] = x;
+                if (i < n)
+                    exhausted = true;
+                if (i > 0) {
+                    batch = i;
+                    return Spliterators.spliterator
+                        (a, 0, i, Spliterator.ORDERED | Spliterator.NONNULL |
+                         Spliterator.CONCURRENT);
+                }
+            }
+            return null;
+        }
+
+        public void forEachRemaining(Consumer<? super E> action) {
+            Traverser t;
+            if (action == null) throw new NullPointerException();
+            if (!exhausted) {
+                exhausted = true;
+                if ((t = traverser) == null)
+                    t = traverser = new Traverser(queue.head);
+                for (Object x; (x = t.advance()) != null; ) {
+                    @SuppressWarnings("unchecked") E e = (E)x;
+                    action.accept(e);
+                }
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super E> action) {
+            Traverser t;
+            if (action == null) throw new NullPointerException();
+            if (!exhausted) {
+                if ((t = traverser) == null)
+                    t = traverser = new Traverser(queue.head);
+                Object x = t.advance();
+                if (x != null) {
+                    @SuppressWarnings("unchecked") E e = (E)x;
+                    action.accept(e);
+                    return true;
+                }
+                exhausted = true;
+            }
+            return false;
+        }
+
+        public long estimateSize() { return Long.MAX_VALUE; }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.NONNULL |
+                Spliterator.CONCURRENT;
+        }
+    }
+
+    /**
+     * Returns a {@link Spliterator} over the elements in this queue.
+     *
+     * <p>The returned spliterator is
+     * <a href="package-summary.html#Weakly"><i>weakly consistent</i></a>.
+     *
+     * <p>The {@code Spliterator} reports {@link Spliterator#CONCURRENT},
+     * {@link Spliterator#ORDERED}, and {@link Spliterator#NONNULL}.
+     *
+     * @implNote
+     * The {@code Spliterator} implements {@code trySplit} to permit limited
+     * parallelism.
+     *
+     * @return a {@code Spliterator} over the elements in this queue
+     * @since 1.8
+     */
+    @Override
+    public Spliterator<E> spliterator() {
+        return new CSQSpliterator<E>(this);
+    }
+
+    private boolean casTail(Segment cmp, Segment val) {
+        return U.compareAndSwapObject(this, TAIL, cmp, val);
+    }
+
+    private boolean casHead(Segment cmp, Segment val) {
+        return U.compareAndSwapObject(this, HEAD, cmp, val);
+    }
+
+    // Unsafe mechanics
+
+    private static final sun.misc.Unsafe U;
+    private static final long HEAD;
+    private static final long TAIL;
+    private static final long ENQIDX;
+    private static final long DEQIDX;
+    private static final long NEXT;
+    private static final long ABASE;
+    private static final int ASHIFT;
+    static {
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            Class<?> k = ConcurrentSegmentedQueue.class;
+            HEAD = U.objectFieldOffset
+                (k.getDeclaredField("head"));
+            TAIL = U.objectFieldOffset
+                (k.getDeclaredField("tail"));
+            Class<?> sk = Segment.class;
+            ENQIDX = U.objectFieldOffset
+                (sk.getDeclaredField("enqIdx"));
+            DEQIDX = U.objectFieldOffset
+                (sk.getDeclaredField("deqIdx"));
+            NEXT = U.objectFieldOffset
+                (sk.getDeclaredField("next"));
+            ABASE = U.arrayBaseOffset(Object[].class);
+            int scale = U.arrayIndexScale(Object[].class);
+            if ((scale & (scale - 1)) != 0)
+                throw new Error("data type scale not a power of two");
+            ASHIFT = 31 - Integer.numberOfLeadingZeros(scale);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
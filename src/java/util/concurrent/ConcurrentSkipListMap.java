@@ -1330,6 +1330,34 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
         buildFromSorted(m);
     }
 
+    /**
+     * Constructs a new map containing the mappings of the given
+     * iterator, which must return them in strictly ascending order of
+     * their keys according to the given comparator.  The map is built
+     * directly, node by node, with its index levels, without searching
+     * for the position of each key: this is much faster than putting
+     * the mappings one at a time, for example to load a large map from
+     * a sorted file or stream.
+     *
+     * @param comparator the comparator that will be used to order this map.
+     *        If {@code null}, the {@linkplain Comparable natural
+     *        ordering} of the keys will be used.
+     * @param sortedEntries an iterator over the mappings to be placed in
+     *        this map, in ascending order of keys
+     * @throws IllegalArgumentException if the mappings are not in
+     *         strictly ascending order of keys
+     * @throws ClassCastException if the keys are not mutually comparable
+     *         using the given comparator
+     * @throws NullPointerException if the specified iterator or any of
+     *         the keys or values it returns are null
+     */
+    public ConcurrentSkipListMap(Comparator<? super K> comparator,
+                                 Iterator<? extends Map.Entry<? extends K, ? extends V>> sortedEntries) {
+        this.comparator = comparator;
+        initialize();
+        buildFromSorted(sortedEntries, true);
+    }
+
     /**
      * Returns a shallow copy of this {@code ConcurrentSkipListMap}
      * instance. (The keys and values themselves are not cloned.)
@@ -1357,6 +1385,23 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
     private void buildFromSorted(SortedMap<K, ? extends V> map) {
         if (map == null)
             throw new NullPointerException();
+        buildFromSorted(map.entrySet().iterator(), false);
+    }
+
+    /**
+     * Streamlined bulk insertion to initialize from the mappings
+     * returned by the given iterator, checking, if so requested, that
+     * they are in strictly ascending order.  Each node is linked after
+     * the previous one, and its index nodes, if any, after the
+     * rightmost index nodes of their levels, with the same
+     * distribution of levels as insertions.  Call only from
+     * constructor or clone method.
+     */
+    private void buildFromSorted(Iterator<? extends Map.Entry<? extends K, ? extends V>> it,
+                                 boolean checkOrder) {
+        if (it == null)
+            throw new NullPointerException();
+        Comparator<? super K> cmp = comparator;
 
         HeadIndex<K,V> h = head;
         Node<K,V> basepred = h.node;
@@ -1374,8 +1419,6 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             q = q.down;
         }
 
-        Iterator<? extends Map.Entry<? extends K, ? extends V>> it =
-            map.entrySet().iterator();
         while (it.hasNext()) {
             Map.Entry<? extends K, ? extends V> e = it.next();
             int rnd = ThreadLocalRandom.current().nextInt();
@@ -1390,6 +1433,9 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             V v = e.getValue();
             if (k == null || v == null)
                 throw new NullPointerException();
+            if (checkOrder && basepred != h.node &&
+                cpr(cmp, k, basepred.key) <= 0)
+                throw new IllegalArgumentException("keys out of order");
             Node<K,V> z = new Node<K,V>(k, v, null);
             basepred.next = z;
             basepred = z;
@@ -2472,7 +2518,7 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             if (m instanceof ConcurrentSkipListMap)
                 return ((ConcurrentSkipListMap<E,?>)m).keySpliterator();
             else
-                return (Spliterator<E>)((SubMap<E,?>)m).keyIterator();
+                return ((SubMap<E,?>)m).keySpliterator();
         }
     }
 
@@ -2507,7 +2553,7 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             if (m instanceof ConcurrentSkipListMap)
                 return ((ConcurrentSkipListMap<?,E>)m).valueSpliterator();
             else
-                return (Spliterator<E>)((SubMap<?,E>)m).valueIterator();
+                return ((SubMap<?,E>)m).valueSpliterator();
         }
     }
 
@@ -2568,8 +2614,7 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             if (m instanceof ConcurrentSkipListMap)
                 return ((ConcurrentSkipListMap<K1,V1>)m).entrySpliterator();
             else
-                return (Spliterator<Map.Entry<K1,V1>>)
-                    ((SubMap<K1,V1>)m).entryIterator();
+                return ((SubMap<K1,V1>)m).entrySpliterator();
         }
     }
 
@@ -3106,9 +3151,63 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             return new SubMapEntryIterator();
         }
 
+        /**
+         * Returns the lowest node in range, or null if none, for
+         * spliterators, which split ascending ranges only.
+         */
+        private Node<K,V> spliteratorOrigin(Comparator<? super K> cmp) {
+            for (;;) {
+                Node<K,V> n = loNode(cmp);
+                if (n == null || tooHigh(n.key, cmp))
+                    return null;
+                Object x = n.value;
+                if (x != null && x != n)
+                    return n;
+            }
+        }
+
+        Spliterator<K> keySpliterator() {
+            if (isDescending)
+                return new SubMapKeyIterator();
+            Comparator<? super K> cmp = m.comparator;
+            Node<K,V> n = spliteratorOrigin(cmp);
+            KeySpliterator<K,V> s = (n == null) ?
+                new KeySpliterator<K,V>(cmp, null, null, null, 0) :
+                new KeySpliterator<K,V>(cmp, m.findSplitRow(n.key, cmp), n,
+                                        hi, Integer.MAX_VALUE);
+            s.fenceInclusive = hiInclusive;
+            return s;
+        }
+
+        Spliterator<V> valueSpliterator() {
+            if (isDescending)
+                return new SubMapValueIterator();
+            Comparator<? super K> cmp = m.comparator;
+            Node<K,V> n = spliteratorOrigin(cmp);
+            ValueSpliterator<K,V> s = (n == null) ?
+                new ValueSpliterator<K,V>(cmp, null, null, null, 0) :
+                new ValueSpliterator<K,V>(cmp, m.findSplitRow(n.key, cmp), n,
+                                          hi, Integer.MAX_VALUE);
+            s.fenceInclusive = hiInclusive;
+            return s;
+        }
+
+        Spliterator<Map.Entry<K,V>> entrySpliterator() {
+            if (isDescending)
+                return new SubMapEntryIterator();
+            Comparator<? super K> cmp = m.comparator;
+            Node<K,V> n = spliteratorOrigin(cmp);
+            EntrySpliterator<K,V> s = (n == null) ?
+                new EntrySpliterator<K,V>(cmp, null, null, null, 0) :
+                new EntrySpliterator<K,V>(cmp, m.findSplitRow(n.key, cmp), n,
+                                          hi, Integer.MAX_VALUE);
+            s.fenceInclusive = hiInclusive;
+            return s;
+        }
+
         /**
          * Variant of main Iter class to traverse through submaps.
-         * Also serves as back-up Spliterator for views
+         * Also serves as back-up Spliterator for descending views
          */
         abstract class SubMapIter<T> implements Iterator<T>, Spliterator<T> {
             /** the last node returned by next() */
@@ -3299,13 +3398,22 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
      * observation useful, we need to know initial size, which we
      * don't. But we can just use Integer.MAX_VALUE so that we
      * don't prematurely zero out while splitting.
+     *
+     * Within a row, index nodes whose keys are behind the current
+     * node are skipped, as those of lower rows usually are after a
+     * split, so that each split is taken at the first index node
+     * ahead.  Spliterators of ascending submaps start at the lowest
+     * node in range, from the rightmost top-level index node before
+     * it (see findSplitRow), with the upper bound of the range as
+     * fence, so that range scans split as evenly as whole maps.
      */
     abstract static class CSLMSpliterator<K,V> {
         final Comparator<? super K> comparator;
-        final K fence;     // exclusive upper bound for keys, or null if to end
+        final K fence;     // upper bound for keys, or null if to end
         Index<K,V> row;    // the level to split out
         Node<K,V> current; // current traversal node; initialize at origin
         int est;           // pseudo-size estimate
+        boolean fenceInclusive; // true if fence is an inclusive bound
         CSLMSpliterator(Comparator<? super K> comparator, Index<K,V> row,
                         Node<K,V> origin, K fence, int est) {
             this.comparator = comparator; this.row = row;
@@ -3313,6 +3421,15 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
         }
 
         public final long estimateSize() { return (long)est; }
+
+        /**
+         * Returns true if the given key is past the given fence: at or
+         * above it, or if the fence is inclusive, above it.
+         */
+        final boolean pastFence(Comparator<? super K> cmp, K f, K k) {
+            int c = cpr(cmp, f, k);
+            return c < 0 || (c == 0 && !fenceInclusive);
+        }
     }
 
     static final class KeySpliterator<K,V> extends CSLMSpliterator<K,V>
@@ -3329,6 +3446,9 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             if ((e = current) != null && (ek = e.key) != null) {
                 for (Index<K,V> q = row; q != null; q = row = q.down) {
                     Index<K,V> s; Node<K,V> b, n; K sk;
+                    while ((s = q.right) != null && (b = s.node) != null &&
+                           (sk = b.key) != null && cpr(cmp, sk, ek) < 0)
+                        q = s;          // skip index nodes behind current
                     if ((s = q.right) != null && (b = s.node) != null &&
                         (n = b.next) != null && n.value != null &&
                         (sk = n.key) != null && cpr(cmp, sk, ek) > 0 &&
@@ -3352,7 +3472,7 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             current = null;
             for (; e != null; e = e.next) {
                 K k; Object v;
-                if ((k = e.key) != null && f != null && cpr(cmp, f, k) <= 0)
+                if ((k = e.key) != null && f != null && pastFence(cmp, f, k))
                     break;
                 if ((v = e.value) != null && v != e)
                     action.accept(k);
@@ -3366,7 +3486,7 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             Node<K,V> e = current;
             for (; e != null; e = e.next) {
                 K k; Object v;
-                if ((k = e.key) != null && f != null && cpr(cmp, f, k) <= 0) {
+                if ((k = e.key) != null && f != null && pastFence(cmp, f, k)) {
                     e = null;
                     break;
                 }
@@ -3390,6 +3510,19 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             return comparator;
         }
     }
+    /**
+     * Returns the rightmost index node of the top row whose key is less
+     * than the given key, or the head if there is none: the row from
+     * which spliterators of a range starting at the key split.
+     */
+    final Index<K,V> findSplitRow(K key, Comparator<? super K> cmp) {
+        Index<K,V> q = head, r; Node<K,V> n; K k;
+        while ((r = q.right) != null && (n = r.node) != null &&
+               (k = n.key) != null && cpr(cmp, k, key) < 0)
+            q = r;
+        return q;
+    }
+
     // factory method for KeySpliterator
     final KeySpliterator<K,V> keySpliterator() {
         Comparator<? super K> cmp = comparator;
@@ -3417,6 +3550,9 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             if ((e = current) != null && (ek = e.key) != null) {
                 for (Index<K,V> q = row; q != null; q = row = q.down) {
                     Index<K,V> s; Node<K,V> b, n; K sk;
+                    while ((s = q.right) != null && (b = s.node) != null &&
+                           (sk = b.key) != null && cpr(cmp, sk, ek) < 0)
+                        q = s;          // skip index nodes behind current
                     if ((s = q.right) != null && (b = s.node) != null &&
                         (n = b.next) != null && n.value != null &&
                         (sk = n.key) != null && cpr(cmp, sk, ek) > 0 &&
@@ -3440,7 +3576,7 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             current = null;
             for (; e != null; e = e.next) {
                 K k; Object v;
-                if ((k = e.key) != null && f != null && cpr(cmp, f, k) <= 0)
+                if ((k = e.key) != null && f != null && pastFence(cmp, f, k))
                     break;
                 if ((v = e.value) != null && v != e) {
                     @SuppressWarnings("unchecked") V vv = (V)v;
@@ -3456,7 +3592,7 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             Node<K,V> e = current;
             for (; e != null; e = e.next) {
                 K k; Object v;
-                if ((k = e.key) != null && f != null && cpr(cmp, f, k) <= 0) {
+                if ((k = e.key) != null && f != null && pastFence(cmp, f, k)) {
                     e = null;
                     break;
                 }
@@ -3504,6 +3640,9 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             if ((e = current) != null && (ek = e.key) != null) {
                 for (Index<K,V> q = row; q != null; q = row = q.down) {
                     Index<K,V> s; Node<K,V> b, n; K sk;
+                    while ((s = q.right) != null && (b = s.node) != null &&
+                           (sk = b.key) != null && cpr(cmp, sk, ek) < 0)
+                        q = s;          // skip index nodes behind current
                     if ((s = q.right) != null && (b = s.node) != null &&
                         (n = b.next) != null && n.value != null &&
                         (sk = n.key) != null && cpr(cmp, sk, ek) > 0 &&
@@ -3527,7 +3666,7 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             current = null;
             for (; e != null; e = e.next) {
                 K k; Object v;
-                if ((k = e.key) != null && f != null && cpr(cmp, f, k) <= 0)
+                if ((k = e.key) != null && f != null && pastFence(cmp, f, k))
                     break;
                 if ((v = e.value) != null && v != e) {
                     @SuppressWarnings("unchecked") V vv = (V)v;
@@ -3544,7 +3683,7 @@ public class ConcurrentSkipListMap<K,V> extends AbstractMap<K,V>
             Node<K,V> e = current;
             for (; e != null; e = e.next) {
                 K k; Object v;
-                if ((k = e.key) != null && f != null && cpr(cmp, f, k) <= 0) {
+                if ((k = e.key) != null && f != null && pastFence(cmp, f, k)) {
                     e = null;
                     break;
                 }
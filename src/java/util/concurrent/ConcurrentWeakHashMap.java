@@ -0,0 +1,613 @@
+package java.util.concurrent;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A {@link ConcurrentMap} with <em>weak keys</em>: the presence of a
+ * mapping for a key does not prevent the key from being discarded by the
+ * garbage collector, after which the mapping is removed.  This is the
+ * concurrent counterpart of {@link java.util.WeakHashMap}, for caches of
+ * metadata about classes, class loaders, threads and other objects whose
+ * lifetime the cache must not extend, and which are read far more often
+ * than they are updated.
+ *
+ * <p>Keys are compared with {@code equals} and {@code hashCode}, or, in a
+ * map created by {@link #newIdentityMap}, with {@code ==} and {@link
+ * System#identityHashCode}, as in {@link java.util.IdentityHashMap}.
+ * Identity comparison is the natural choice for weak keys: a key that is
+ * equal to, but not the same as, a discarded key can still be created,
+ * and would then be surprised not to find the discarded key's mapping.
+ *
+ * <p>The mappings are kept in a {@link ConcurrentHashMap} whose keys are
+ * weak references to the keys of this map, so retrievals never block and
+ * updates lock only the bin they change.  The references are registered
+ * with a {@link ReferenceQueue}, and each update, and every few
+ * retrievals, removes a bounded number of the mappings whose keys were
+ * discarded, each with its own bin lock, so stale entries are expunged
+ * incrementally without ever locking the whole map.
+ *
+ * <p>As with {@code WeakHashMap}, the garbage collector may discard keys
+ * at any time, so this map may behave as though an unknown thread is
+ * silently removing entries: its size may decrease, and iterations may
+ * yield fewer elements, without any call to a mutator method.  Iterators
+ * are weakly consistent, as those of {@code ConcurrentHashMap}, and hold
+ * strong references to the keys of the entries they return.
+ *
+ * <p>Like {@link Hashtable} but unlike {@link java.util.HashMap}, this
+ * class does <em>not</em> allow {@code null} to be used as a key or value.
+ *
+ * @param <K> the type of keys maintained by this map
+ * @param <V> the type of mapped values
+ * @see java.util.WeakHashMap
+ * @since 1.8
+ */
+public class ConcurrentWeakHashMap<K,V> extends AbstractMap<K,V>
+    implements ConcurrentMap<K,V> {
+
+    /*
+     * Overview:
+     *
+     * The backing map is keyed by WeakKeys, which keep the hash of their
+     * referent and are equal to each other if they are the same reference
+     * or have the same (or, for identity maps, identical) referent, so a
+     * cleared WeakKey is only equal to itself.  Lookups use a LookupKey,
+     * an ordinary strong wrapper with the same hash and equality; since
+     * ConcurrentHashMap calls equals on the key it is given, a LookupKey
+     * finds the WeakKey of an equal referent.  Insertions must pass a new
+     * WeakKey; if the key is already present, ConcurrentHashMap keeps the
+     * existing one, and the new one is never referenced by the map.  When
+     * its referent is discarded it is still enqueued, and removing it
+     * then finds nothing, as it is equal to no other WeakKey.
+     *
+     * A cleared WeakKey that is in the map is removed by remove(key),
+     * with the WeakKey itself as the lookup key, which matches it by
+     * reference.
+     */
+
+    /** The maximum number of stale entries expunged per operation. */
+    static final int EXPUNGE_BATCH = 64;
+
+    /** Retrievals expunge stale entries once in this many calls. */
+    static final int READ_EXPUNGE_PERIOD = 64;
+
+    /**
+     * The weak reference to a key held by the backing map.
+     */
+    static final class WeakKey<K> extends WeakReference<K> {
+        final int hash;
+        final boolean identity;
+
+        WeakKey(K key, int hash, boolean identity, ReferenceQueue<? super K> queue) {
+            super(key, queue);
+            this.hash = hash;
+            this.identity = identity;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            if (o == this)
+                return true;
+            Object k, ok;
+            if (o instanceof WeakKey)
+                ok = ((WeakKey<?>) o).get();
+            else if (o instanceof LookupKey)
+                ok = ((LookupKey) o).key;
+            else
+                return false;
+            return (k = get()) != null &&
+                (k == ok || (!identity && k.equals(ok)));
+        }
+    }
+
+    /**
+     * A strong key used to look up the WeakKey of an equal key.
+     */
+    static final class LookupKey {
+        final Object key;
+        final int hash;
+        final boolean identity;
+
+        LookupKey(Object key, int hash, boolean identity) {
+            this.key = key;
+            this.hash = hash;
+            this.identity = identity;
+        }
+
+        public int hashCode() {
+            return hash;
+        }
+
+        public boolean equals(Object o) {
+            Object ok;
+            if (o instanceof WeakKey)
+                ok = ((WeakKey<?>) o).get();
+            else if (o instanceof LookupKey)
+                ok = ((LookupKey) o).key;
+            else
+                return false;
+            return ok != null && (key == ok || (!identity && key.equals(ok)));
+        }
+    }
+
+    final ConcurrentHashMap<Object,V> map;
+    final ReferenceQueue<K> queue = new ReferenceQueue<K>();
+    final boolean identity;
+
+    /** Counts retrievals, racily, to expunge once in a while. */
+    int reads;
+
+    // views
+    transient KeySetView<K,V> keySet;
+    transient EntrySetView<K,V> entrySet;
+
+    /**
+     * Creates a new, empty map with the default initial table size (16),
+     * that compares keys with {@code equals}.
+     */
+    public ConcurrentWeakHashMap() {
+        this(16, false);
+    }
+
+    /**
+     * Creates a new, empty map with an initial table size accommodating
+     * the specified number of elements without the need to dynamically
+     * resize, that compares keys with {@code equals}.
+     *
+     * @param initialCapacity the implementation performs internal
+     * sizing to accommodate this many elements.
+     * @throws IllegalArgumentException if the initial capacity of
+     * elements is negative
+     */
+    public ConcurrentWeakHashMap(int initialCapacity) {
+        this(initialCapacity, false);
+    }
+
+    private ConcurrentWeakHashMap(int initialCapacity, boolean identity) {
+        this.map = new ConcurrentHashMap<Object,V>(initialCapacity);
+        this.identity = identity;
+    }
+
+    /**
+     * Creates a new, empty map that compares keys with {@code ==} rather
+     * than with {@code equals}, and hashes them with {@link
+     * System#identityHashCode}.
+     *
+     * @param <K> the type of keys maintained by the map
+     * @param <V> the type of mapped values
+     * @return a new, empty weak identity map
+     */
+    public static <K,V> ConcurrentWeakHashMap<K,V> newIdentityMap() {
+        return new ConcurrentWeakHashMap<K,V>(16, true);
+    }
+
+    final int hash(Object key) {
+        return identity ? System.identityHashCode(key) : key.hashCode();
+    }
+
+    final LookupKey lookupKey(Object key) {
+        if (key == null)
+            throw new NullPointerException();
+        return new LookupKey(key, hash(key), identity);
+    }
+
+    final WeakKey<K> weakKey(K key) {
+        if (key == null)
+            throw new NullPointerException();
+        return new WeakKey<K>(key, hash(key), identity, queue);
+    }
+
+    /**
+     * Removes up to EXPUNGE_BATCH mappings whose keys were discarded.
+     */
+    final void expungeStaleEntries() {
+        Reference<? extends K> ref;
+        for (int i = 0; i < EXPUNGE_BATCH && (ref = queue.poll()) != null; i++)
+            map.remove(ref);
+    }
+
+    /**
+     * Removes all mappings whose keys were discarded.
+     */
+    final void expungeAllStaleEntries() {
+        Reference<? extends K> ref;
+        while ((ref = queue.poll()) != null)
+            map.remove(ref);
+    }
+
+    final void afterRead() {
+        if ((++reads & (READ_EXPUNGE_PERIOD - 1)) == 0)
+            expungeStaleEntries();
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped,
+     * or {@code null} if this map contains no mapping for the key.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public V get(Object key) {
+        V v = map.get(lookupKey(key));
+        afterRead();
+        return v;
+    }
+
+    /**
+     * Tests if the specified object is a key in this map.
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns {@code true} if this map maps one or more keys to the
+     * specified value.  This method traverses the whole map.
+     *
+     * @throws NullPointerException if the specified value is null
+     */
+    public boolean containsValue(Object value) {
+        return map.containsValue(value);
+    }
+
+    /**
+     * Maps the specified key to the specified value in this map.
+     *
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V put(K key, V value) {
+        expungeStaleEntries();
+        return map.put(weakKey(key), value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or {@code null} if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V putIfAbsent(K key, V value) {
+        expungeStaleEntries();
+        V v = map.get(lookupKey(key));
+        return (v != null) ? v : map.putIfAbsent(weakKey(key), value);
+    }
+
+    /**
+     * Removes the key (and its corresponding value) from this map.
+     * This method does nothing if the key is not in the map.
+     *
+     * @return the previous value associated with {@code key}, or
+     *         {@code null} if there was no mapping for {@code key}
+     * @throws NullPointerException if the specified key is null
+     */
+    public V remove(Object key) {
+        expungeStaleEntries();
+        return map.remove(lookupKey(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key is null
+     */
+    public boolean remove(Object key, Object value) {
+        expungeStaleEntries();
+        return value != null && map.remove(lookupKey(key), value);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if any of the arguments are null
+     */
+    public boolean replace(K key, V oldValue, V newValue) {
+        expungeStaleEntries();
+        return map.replace(lookupKey(key), oldValue, newValue);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @return the previous value associated with the specified key,
+     *         or {@code null} if there was no mapping for the key
+     * @throws NullPointerException if the specified key or value is null
+     */
+    public V replace(K key, V value) {
+        expungeStaleEntries();
+        return map.replace(lookupKey(key), value);
+    }
+
+    /**
+     * If the specified key is not already associated with a value,
+     * attempts to compute its value using the given mapping function
+     * and enters it into this map unless {@code null}.  The entire
+     * method invocation is performed atomically, so the function is
+     * applied at most once per key, as by {@link
+     * ConcurrentHashMap#computeIfAbsent}, and the same restrictions
+     * apply to it.  A key already present is looked up without locking.
+     *
+     * @param key key with which the specified value is to be associated
+     * @param mappingFunction the function to compute a value
+     * @return the current (existing or computed) value associated with
+     *         the specified key, or null if the computed value is null
+     * @throws NullPointerException if the specified key or mappingFunction
+     *         is null
+     * @throws RuntimeException or Error if the mappingFunction does so,
+     *         in which case the mapping is left unestablished
+     */
+    public V computeIfAbsent(K key,
+                             Function<? super K, ? extends V> mappingFunction) {
+        if (mappingFunction == null)
+            throw new NullPointerException();
+        V v = map.get(lookupKey(key));
+        if (v != null) {
+            afterRead();
+            return v;
+        }
+        expungeStaleEntries();
+        return map.computeIfAbsent(weakKey(key), k -> mappingFunction.apply(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key or
+     *         remappingFunction is null
+     */
+    public V computeIfPresent(K key,
+                              BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        expungeStaleEntries();
+        return map.computeIfPresent(lookupKey(key),
+                                    (k, v) -> remappingFunction.apply(key, v));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key or
+     *         remappingFunction is null
+     */
+    public V compute(K key,
+                     BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+        if (remappingFunction == null)
+            throw new NullPointerException();
+        expungeStaleEntries();
+        return map.compute(weakKey(key), (k, v) -> remappingFunction.apply(key, v));
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws NullPointerException if the specified key, value or
+     *         remappingFunction is null
+     */
+    public V merge(K key, V value,
+                   BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+        expungeStaleEntries();
+        return map.merge(weakKey(key), value, remappingFunction);
+    }
+
+    /**
+     * Returns the number of mappings in this map, after removing all
+     * mappings whose keys were discarded.  The result may still include
+     * mappings whose keys were discarded but not yet enqueued.
+     */
+    public int size() {
+        expungeAllStaleEntries();
+        return map.size();
+    }
+
+    public boolean isEmpty() {
+        expungeAllStaleEntries();
+        return map.isEmpty();
+    }
+
+    /**
+     * Removes all of the mappings from this map.
+     */
+    public void clear() {
+        map.clear();
+        expungeAllStaleEntries();
+    }
+
+    /**
+     * Returns a {@link Set} view of the keys contained in this map.  The
+     * set is backed by the map, so changes to the map are reflected in
+     * the set, and vice-versa.  The set supports element removal, but not
+     * addition.
+     *
+     * @return the set view
+     */
+    public Set<K> keySet() {
+        KeySetView<K,V> ks;
+        return (ks = keySet) != null ? ks : (keySet = new KeySetView<K,V>(this));
+    }
+
+    /**
+     * Returns a {@link Set} view of the mappings contained in this map.
+     * The set is backed by the map, so changes to the map are reflected
+     * in the set, and vice-versa.  The set supports element removal, but
+     * not addition, and the {@code setValue} operation of its entries
+     * writes through to the map.
+     *
+     * @return the set view
+     */
+    public Set<Map.Entry<K,V>> entrySet() {
+        EntrySetView<K,V> es;
+        return (es = entrySet) != null ? es : (entrySet = new EntrySetView<K,V>(this));
+    }
+
+    static final class KeySetView<K,V> extends AbstractSet<K> {
+        final ConcurrentWeakHashMap<K,V> m;
+        KeySetView(ConcurrentWeakHashMap<K,V> m) { this.m = m; }
+        public Iterator<K> iterator() {
+            return new KeyIterator<K,V>(m);
+        }
+        public boolean contains(Object o) { return m.containsKey(o); }
+        public boolean remove(Object o) { return m.remove(o) != null; }
+        public int size() { return m.size(); }
+        public boolean isEmpty() { return m.isEmpty(); }
+        public void clear() { m.clear(); }
+    }
+
+    static final class EntrySetView<K,V> extends AbstractSet<Map.Entry<K,V>> {
+        final ConcurrentWeakHashMap<K,V> m;
+        EntrySetView(ConcurrentWeakHashMap<K,V> m) { this.m = m; }
+        public Iterator<Map.Entry<K,V>> iterator() {
+            return new EntryIterator<K,V>(m);
+        }
+        public boolean contains(Object o) {
+            Object k, v, r; Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>)o).getKey()) != null &&
+                    (r = m.get(k)) != null &&
+                    (v = e.getValue()) != null &&
+                    (v == r || v.equals(r)));
+        }
+        public boolean remove(Object o) {
+            Object k, v; Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>)o).getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    m.remove(k, v));
+        }
+        public int size() { return m.size(); }
+        public boolean isEmpty() { return m.isEmpty(); }
+        public void clear() { m.clear(); }
+    }
+
+    /**
+     * Base of the weakly consistent iterators, which skip the entries
+     * whose keys were discarded and hold the key of the next entry
+     * strongly, so that hasNext and next agree.
+     */
+    abstract static class BaseIterator<K,V> {
+        final ConcurrentWeakHashMap<K,V> m;
+        final Iterator<Map.Entry<Object,V>> it;
+        K nextKey, lastKey;
+        V nextValue;
+
+        BaseIterator(ConcurrentWeakHashMap<K,V> m) {
+            this.m = m;
+            this.it = m.map.entrySet().iterator();
+            advance();
+        }
+
+        @SuppressWarnings("unchecked")
+        final void advance() {
+            nextKey = null;
+            nextValue = null;
+            while (it.hasNext()) {
+                Map.Entry<Object,V> e = it.next();
+                K k = ((WeakKey<K>) e.getKey()).get();
+                if (k != null) {
+                    nextKey = k;
+                    nextValue = e.getValue();
+                    return;
+                }
+            }
+        }
+
+        public final boolean hasNext() {
+            return nextKey != null;
+        }
+
+        final K nextKey() {
+            K k = nextKey;
+            if (k == null)
+                throw new NoSuchElementException();
+            lastKey = k;
+            return k;
+        }
+
+        public final void remove() {
+            K k = lastKey;
+            if (k == null)
+                throw new IllegalStateException();
+            lastKey = null;
+            m.remove(k);
+        }
+    }
+
+    static final class KeyIterator<K,V> extends BaseIterator<K,V>
+        implements Iterator<K> {
+        KeyIterator(ConcurrentWeakHashMap<K,V> m) { super(m); }
+        public K next() {
+            K k = nextKey();
+            advance();
+            return k;
+        }
+    }
+
+    static final class EntryIterator<K,V> extends BaseIterator<K,V>
+        implements Iterator<Map.Entry<K,V>> {
+        EntryIterator(ConcurrentWeakHashMap<K,V> m) { super(m); }
+        public Map.Entry<K,V> next() {
+            K k = nextKey();
+            V v = nextValue;
+            advance();
+            return new MapEntry<K,V>(k, v, m);
+        }
+    }
+
+    /**
+     * Exported Entry for EntryIterator.
+     */
+    static final class MapEntry<K,V> implements Map.Entry<K,V> {
+        final K key; // non-null
+        V val;       // non-null
+        final ConcurrentWeakHashMap<K,V> map;
+        MapEntry(K key, V val, ConcurrentWeakHashMap<K,V> map) {
+            this.key = key;
+            this.val = val;
+            this.map = map;
+        }
+        public K getKey()        { return key; }
+        public V getValue()      { return val; }
+        public int hashCode()    { return key.hashCode() ^ val.hashCode(); }
+        public String toString() { return key + "=" + val; }
+
+        public boolean equals(Object o) {
+            Object k, v; Map.Entry<?,?> e;
+            return ((o instanceof Map.Entry) &&
+                    (k = (e = (Map.Entry<?,?>)o).getKey()) != null &&
+                    (v = e.getValue()) != null &&
+                    (k == key || k.equals(key)) &&
+                    (v == val || v.equals(val)));
+        }
+
+        /**
+         * Sets our entry's value and writes through to the map. The
+         * value to return is somewhat arbitrary here. Since we do not
+         * necessarily track asynchronous changes, the most recent
+         * "previous" value could be different from what we return (or
+         * could even have been removed, in which case the put will
+         * re-establish).
+         */
+        public V setValue(V value) {
+            if (value == null) throw new NullPointerException();
+            V v = val;
+            val = value;
+            map.put(key, value);
+            return v;
+        }
+    }
+}
@@ -0,0 +1,1348 @@
+package java.util.concurrent;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * A thread-safe variant of {@link java.util.ArrayList} in which each
+ * mutative operation publishes a new immutable snapshot of the list, as
+ * in {@link CopyOnWriteArrayList}, but in which a snapshot is a
+ * persistent 32-way trie rather than an array.  An update copies only
+ * the path from the root of the trie to the changed element, and shares
+ * the rest with the previous snapshot, so {@code set}, {@code add} at
+ * the end and {@code remove} of the last element take time and space
+ * proportional to log<sub>32</sub> of the size, instead of to the size.
+ * This makes the class suitable for large lists that are updated
+ * steadily, for which copying the whole array on every update would
+ * cost time quadratic in the number of updates.
+ *
+ * <p>As with {@code CopyOnWriteArrayList}, reads take no lock, and
+ * iterators and spliterators operate on the snapshot that was current
+ * when they were created: they never throw {@link
+ * ConcurrentModificationException}, do not reflect later updates, and
+ * do not support element-changing operations.  Indexed reads take time
+ * proportional to log<sub>32</sub> of the size, which, for lists of
+ * fewer than a billion elements, means at most six array accesses;
+ * iteration visits each array of 32 elements once.
+ *
+ * <p>Insertions and removals other than at the end of the list,
+ * including {@code remove(Object)}, rebuild the trie, and take time
+ * proportional to the size, as they do in {@code CopyOnWriteArrayList}.
+ * Updates are serialized by a lock, as in {@code CopyOnWriteArrayList}.
+ *
+ * <p>All elements are permitted, including {@code null}.
+ *
+ * <p>Memory consistency effects: As with other concurrent
+ * collections, actions in a thread prior to placing an object into a
+ * {@code CopyOnWriteTrieList}
+ * <a href="package-summary.html#MemoryVisibility"><i>happen-before</i></a>
+ * actions subsequent to the access or removal of that element from
+ * the {@code CopyOnWriteTrieList} in another thread.
+ *
+ * @param <E> the type of elements held in this collection
+ * @see CopyOnWriteArrayList
+ * @since 1.8
+ */
+public class CopyOnWriteTrieList<E> extends AbstractList<E>
+    implements List<E>, RandomAccess, Cloneable, java.io.Serializable {
+    private static final long serialVersionUID = -3526532416386279415L;
+
+    /*
+     * A snapshot is a persistent vector in the style of Clojure's: the
+     * elements, except the last 1 to 32, are in the leaves of a trie of
+     * 32-element arrays, all full; each interior node is a 32-slot
+     * array of its children, filled from the left.  Element i is found
+     * by taking digit (i >>> shift) & 31 at the root, and so on down
+     * to digit i & 31 in the leaf.  The last elements are kept in a
+     * separate "tail" array of exactly their number, so that adding an
+     * element usually copies only the tail, and a full tail is pushed
+     * into the trie as a new leaf, copying one path.
+     *
+     * Snapshots are never modified once published (except by the
+     * builder, before publication), so readers need nothing beyond
+     * the volatile read of the current snapshot.
+     */
+
+    /** The log of the branching factor. */
+    static final int BITS = 5;
+
+    /** The branching factor. */
+    static final int WIDTH = 1 << BITS;
+
+    static final int MASK = WIDTH - 1;
+
+    static final Object[] EMPTY_NODE = new Object[WIDTH];
+    static final Object[] EMPTY_TAIL = new Object[0];
+
+    /**
+     * An immutable persistent vector.
+     */
+    static final class Snapshot {
+        final int size;
+        final int shift;      // of the root; at least BITS
+        final Object[] root;
+        final Object[] tail;
+
+        static final Snapshot EMPTY = new Snapshot(0, BITS, EMPTY_NODE, EMPTY_TAIL);
+
+        Snapshot(int size, int shift, Object[] root, Object[] tail) {
+            this.size = size;
+            this.shift = shift;
+            this.root = root;
+            this.tail = tail;
+        }
+
+        /** Returns the index of the first element of the tail. */
+        int tailOffset() {
+            return (size < WIDTH) ? 0 : ((size - 1) >>> BITS) << BITS;
+        }
+
+        /** Returns the array holding element i, which must be in range. */
+        Object[] arrayFor(int i) {
+            if (i >= tailOffset())
+                return tail;
+            Object[] node = root;
+            for (int level = shift; level > 0; level -= BITS)
+                node = (Object[]) node[(i >>> level) & MASK];
+            return node;
+        }
+
+        Object get(int i) {
+            return arrayFor(i)[i & MASK];
+        }
+
+        /** Returns a snapshot with element i, which must be in range, set. */
+        Snapshot set(int i, Object e) {
+            if (i >= tailOffset()) {
+                Object[] t = tail.clone();
+                t[i & MASK] = e;
+                return new Snapshot(size, shift, root, t);
+            }
+            return new Snapshot(size, shift, set(shift, root, i, e), tail);
+        }
+
+        static Object[] set(int level, Object[] node, int i, Object e) {
+            Object[] n = node.clone();
+            if (level == 0)
+                n[i & MASK] = e;
+            else {
+                int j = (i >>> level) & MASK;
+                n[j] = set(level - BITS, (Object[]) node[j], i, e);
+            }
+            return n;
+        }
+
+        /** Returns a snapshot with e appended. */
+        Snapshot add(Object e) {
+            int ts = size - tailOffset();
+            if (ts < WIDTH) {
+                Object[] t = Arrays.copyOf(tail, ts + 1);
+                t[ts] = e;
+                return new Snapshot(size + 1, shift, root, t);
+            }
+            // the tail is full: push it into the trie
+            Object[] r;
+            int s = shift;
+            if ((size >>> BITS) > (1 << shift)) {
+                r = new Object[WIDTH];
+                r[0] = root;
+                r[1] = newPath(shift, tail);
+                s += BITS;
+            } else
+                r = pushTail(shift, root, tail);
+            return new Snapshot(size + 1, s, r, new Object[] { e });
+        }
+
+        Object[] pushTail(int level, Object[] parent, Object[] leaf) {
+            int j = ((size - 1) >>> level) & MASK;
+            Object[] n = parent.clone();
+            if (level == BITS)
+                n[j] = leaf;
+            else {
+                Object[] child = (Object[]) parent[j];
+                n[j] = (child != null) ?
+                    pushTail(level - BITS, child, leaf) :
+                    newPath(level - BITS, leaf);
+            }
+            return n;
+        }
+
+        static Object[] newPath(int level, Object[] leaf) {
+            Object[] n = leaf;
+            for (; level > 0; level -= BITS) {
+                Object[] p = new Object[WIDTH];
+                p[0] = n;
+                n = p;
+            }
+            return n;
+        }
+
+        /** Returns a snapshot without its last element; size must be positive. */
+        Snapshot removeLast() {
+            if (size == 1)
+                return EMPTY;
+            int to = tailOffset();
+            if (size - to > 1)
+                return new Snapshot(size - 1, shift, root,
+                                    Arrays.copyOf(tail, size - to - 1));
+            // the tail becomes empty: pull the last leaf out of the trie
+            Object[] t = arrayFor(size - 2);
+            Object[] r = popTail(shift, root);
+            int s = shift;
+            if (r == null)
+                r = EMPTY_NODE;
+            if (s > BITS && r[1] == null) {
+                r = (Object[]) r[0];
+                s -= BITS;
+            }
+            return new Snapshot(size - 1, s, r, t);
+        }
+
+        Object[] popTail(int level, Object[] node) {
+            int j = ((size - 2) >>> level) & MASK;
+            if (level > BITS) {
+                Object[] child = popTail(level - BITS, (Object[]) node[j]);
+                if (child == null && j == 0)
+                    return null;
+                Object[] n = node.clone();
+                n[j] = child;
+                return n;
+            } else if (j == 0)
+                return null;
+            else {
+                Object[] n = node.clone();
+                n[j] = null;
+                return n;
+            }
+        }
+
+        /** Copies elements [from, to) into a, starting at index at. */
+        void copyTo(int from, int to, Object[] a, int at) {
+            while (from < to) {
+                Object[] leaf = arrayFor(from);
+                int n = Math.min(WIDTH - (from & MASK), to - from);
+                System.arraycopy(leaf, from & MASK, a, at, n);
+                from += n;
+                at += n;
+            }
+        }
+
+        Object[] toArray() {
+            Object[] a = new Object[size];
+            copyTo(0, size, a, 0);
+            return a;
+        }
+
+        /**
+         * Returns a snapshot of elements [0, n) of the given array,
+         * built bottom-up, one level at a time.
+         */
+        static Snapshot of(Object[] a, int n) {
+            if (n == 0)
+                return EMPTY;
+            int to = ((n - 1) >>> BITS) << BITS;
+            Object[] t = Arrays.copyOfRange(a, to, n);
+            int count = to >>> BITS;
+            if (count == 0)
+                return new Snapshot(n, BITS, EMPTY_NODE, t);
+            Object[] nodes = new Object[count];
+            for (int i = 0; i < count; ++i)
+                nodes[i] = Arrays.copyOfRange(a, i << BITS, (i + 1) << BITS);
+            int shift = BITS;
+            while (count > WIDTH) {
+                int pc = (count + MASK) >>> BITS;
+                Object[] parents = new Object[pc];
+                for (int i = 0; i < pc; ++i)
+                    parents[i] = Arrays.copyOfRange(nodes, i << BITS, (i + 1) << BITS);
+                nodes = parents;
+                count = pc;
+                shift += BITS;
+            }
+            return new Snapshot(n, shift, Arrays.copyOf(nodes, WIDTH), t);
+        }
+    }
+
+    /** The lock protecting all mutators */
+    final transient ReentrantLock lock = new ReentrantLock();
+
+    /** The current snapshot, accessed only via getSnapshot/setSnapshot. */
+    private transient volatile Snapshot snapshot;
+
+    final Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    final void setSnapshot(Snapshot s) {
+        snapshot = s;
+    }
+
+    /**
+     * Creates an empty list.
+     */
+    public CopyOnWriteTrieList() {
+        setSnapshot(Snapshot.EMPTY);
+    }
+
+    /**
+     * Creates a list containing the elements of the specified
+     * collection, in the order they are returned by the collection's
+     * iterator.
+     *
+     * @param c the collection of initially held elements
+     * @throws NullPointerException if the specified collection is null
+     */
+    public CopyOnWriteTrieList(Collection<? extends E> c) {
+        Object[] a = c.toArray();
+        setSnapshot(Snapshot.of(a, a.length));
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list
+     */
+    public int size() {
+        return getSnapshot().size;
+    }
+
+    /**
+     * Returns {@code true} if this list contains no elements.
+     *
+     * @return {@code true} if this list contains no elements
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    private static String outOfBounds(int index, int size) {
+        return "Index: " + index + ", Size: " + size;
+    }
+
+    /**
+     * Returns the index of the first occurrence of o in [from, to) of
+     * the snapshot, or -1.
+     */
+    static int indexOf(Object o, Snapshot s, int from, int to) {
+        while (from < to) {
+            Object[] leaf = s.arrayFor(from);
+            int base = from & ~MASK;
+            int end = Math.min(WIDTH, to - base);
+            for (int i = from & MASK; i < end; ++i) {
+                if (o == null ? leaf[i] == null : o.equals(leaf[i]))
+                    return base + i;
+            }
+            from = base + end;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of o in [0, to) of the
+     * snapshot, or -1.
+     */
+    static int lastIndexOf(Object o, Snapshot s, int to) {
+        for (int i = to - 1; i >= 0; ) {
+            Object[] leaf = s.arrayFor(i);
+            int base = i & ~MASK;
+            for (int j = i & MASK; j >= 0; --j) {
+                if (o == null ? leaf[j] == null : o.equals(leaf[j]))
+                    return base + j;
+            }
+            i = base - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns {@code true} if this list contains the specified element.
+     *
+     * @param o element whose presence in this list is to be tested
+     * @return {@code true} if this list contains the specified element
+     */
+    public boolean contains(Object o) {
+        Snapshot s = getSnapshot();
+        return indexOf(o, s, 0, s.size) >= 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int indexOf(Object o) {
+        Snapshot s = getSnapshot();
+        return indexOf(o, s, 0, s.size);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public int lastIndexOf(Object o) {
+        Snapshot s = getSnapshot();
+        return lastIndexOf(o, s, s.size);
+    }
+
+    /**
+     * Returns a shallow copy of this list.  (The elements themselves
+     * are not copied.)  The copy shares the current snapshot, so this
+     * takes constant time.
+     *
+     * @return a clone of this list
+     */
+    public Object clone() {
+        try {
+            @SuppressWarnings("unchecked")
+            CopyOnWriteTrieList<E> clone =
+                (CopyOnWriteTrieList<E>) super.clone();
+            clone.resetLock();
+            return clone;
+        } catch (CloneNotSupportedException e) {
+            // this shouldn't happen, since we are Cloneable
+            throw new InternalError();
+        }
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list
+     * in proper sequence (from first to last element).
+     *
+     * @return an array containing all the elements in this list
+     */
+    public Object[] toArray() {
+        return getSnapshot().toArray();
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list in
+     * proper sequence (from first to last element); the runtime type of
+     * the returned array is that of the specified array, as specified by
+     * {@link List#toArray(Object[])}.
+     *
+     * @param a the array into which the elements of the list are to
+     *          be stored, if it is big enough; otherwise, a new array of the
+     *          same runtime type is allocated for this purpose.
+     * @return an array containing all the elements in this list
+     * @throws ArrayStoreException if the runtime type of the specified array
+     *         is not a supertype of the runtime type of every element in
+     *         this list
+     * @throws NullPointerException if the specified array is null
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T a[]) {
+        Snapshot s = getSnapshot();
+        int len = s.size;
+        if (a.length < len)
+            a = (T[]) java.lang.reflect.Array.newInstance(
+                a.getClass().getComponentType(), len);
+        s.copyTo(0, len, a, 0);
+        if (a.length > len)
+            a[len] = null;
+        return a;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        Snapshot s = getSnapshot();
+        if (index < 0 || index >= s.size)
+            throw new IndexOutOfBoundsException(outOfBounds(index, s.size));
+        return (E) s.get(index);
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with the
+     * specified element.
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    public E set(int index, E element) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = getSnapshot();
+            if (index < 0 || index >= s.size)
+                throw new IndexOutOfBoundsException(outOfBounds(index, s.size));
+            E oldValue = (E) s.get(index);
+            if (oldValue != element)
+                setSnapshot(s.set(index, element));
+            return oldValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param e element to be appended to this list
+     * @return {@code true} (as specified by {@link Collection#add})
+     */
+    public boolean add(E e) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            setSnapshot(getSnapshot().add(e));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this
+     * list. Shifts the element currently at that position (if any) and
+     * any subsequent elements to the right (adds one to their indices).
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public void add(int index, E element) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = getSnapshot();
+            int len = s.size;
+            if (index < 0 || index > len)
+                throw new IndexOutOfBoundsException(outOfBounds(index, len));
+            if (index == len)
+                setSnapshot(s.add(element));
+            else {
+                Object[] a = new Object[len + 1];
+                s.copyTo(0, index, a, 0);
+                a[index] = element;
+                s.copyTo(index, len, a, index + 1);
+                setSnapshot(Snapshot.of(a, len + 1));
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the element at the specified position in this list.
+     * Shifts any subsequent elements to the left (subtracts one from their
+     * indices).  Returns the element that was removed from the list.
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    @SuppressWarnings("unchecked")
+    public E remove(int index) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = getSnapshot();
+            int len = s.size;
+            if (index < 0 || index >= len)
+                throw new IndexOutOfBoundsException(outOfBounds(index, len));
+            E oldValue = (E) s.get(index);
+            setSnapshot(removeAt(s, index));
+            return oldValue;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static Snapshot removeAt(Snapshot s, int index) {
+        int len = s.size;
+        if (index == len - 1)
+            return s.removeLast();
+        Object[] a = new Object[len - 1];
+        s.copyTo(0, index, a, 0);
+        s.copyTo(index + 1, len, a, index);
+        return Snapshot.of(a, len - 1);
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this list,
+     * if it is present.  If this list does not contain the element, it is
+     * unchanged.
+     *
+     * @param o element to be removed from this list, if present
+     * @return {@code true} if this list contained the specified element
+     */
+    public boolean remove(Object o) {
+        Snapshot snap = getSnapshot();
+        int index = indexOf(o, snap, 0, snap.size);
+        if (index < 0)
+            return false;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot current = getSnapshot();
+            if (current != snap) {
+                // the list changed since the search: search again
+                index = indexOf(o, current, 0, current.size);
+                if (index < 0)
+                    return false;
+            }
+            setSnapshot(removeAt(current, index));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes from this list all of the elements whose index is between
+     * {@code fromIndex}, inclusive, and {@code toIndex}, exclusive.
+     *
+     * @param fromIndex index of first element to be removed
+     * @param toIndex index after last element to be removed
+     * @throws IndexOutOfBoundsException if fromIndex or toIndex out of range
+     *         ({@code fromIndex < 0 || toIndex > size() || toIndex < fromIndex})
+     */
+    protected void removeRange(int fromIndex, int toIndex) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = getSnapshot();
+            int len = s.size;
+            if (fromIndex < 0 || toIndex > len || toIndex < fromIndex)
+                throw new IndexOutOfBoundsException();
+            if (fromIndex == toIndex)
+                return;
+            Object[] a = new Object[len - (toIndex - fromIndex)];
+            s.copyTo(0, fromIndex, a, 0);
+            s.copyTo(toIndex, len, a, fromIndex);
+            setSnapshot(Snapshot.of(a, a.length));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the element, if not present.
+     *
+     * @param e element to be added to this list, if absent
+     * @return {@code true} if the element was added
+     */
+    public boolean addIfAbsent(E e) {
+        Snapshot snap = getSnapshot();
+        if (indexOf(e, snap, 0, snap.size) >= 0)
+            return false;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot current = getSnapshot();
+            // the list changed since the search: search again
+            if (current != snap &&
+                indexOf(e, current, 0, current.size) >= 0)
+                return false;
+            setSnapshot(current.add(e));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends all of the elements in the specified collection to the end
+     * of this list, in the order that they are returned by the specified
+     * collection's iterator.
+     *
+     * @param c collection containing elements to be added to this list
+     * @return {@code true} if this list changed as a result of the call
+     * @throws NullPointerException if the specified collection is null
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        Object[] cs = c.toArray();
+        if (cs.length == 0)
+            return false;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = getSnapshot();
+            if (cs.length <= WIDTH) {
+                for (Object e : cs)
+                    s = s.add(e);
+            } else {
+                Object[] a = new Object[s.size + cs.length];
+                s.copyTo(0, s.size, a, 0);
+                System.arraycopy(cs, 0, a, s.size, cs.length);
+                s = Snapshot.of(a, a.length);
+            }
+            setSnapshot(s);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Inserts all of the elements in the specified collection into this
+     * list, starting at the specified position.
+     *
+     * @param index index at which to insert the first element
+     *        from the specified collection
+     * @param c collection containing elements to be added to this list
+     * @return {@code true} if this list changed as a result of the call
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     * @throws NullPointerException if the specified collection is null
+     */
+    public boolean addAll(int index, Collection<? extends E> c) {
+        Object[] cs = c.toArray();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = getSnapshot();
+            int len = s.size;
+            if (index < 0 || index > len)
+                throw new IndexOutOfBoundsException(outOfBounds(index, len));
+            if (cs.length == 0)
+                return false;
+            Object[] a = new Object[len + cs.length];
+            s.copyTo(0, index, a, 0);
+            System.arraycopy(cs, 0, a, index, cs.length);
+            s.copyTo(index, len, a, index + cs.length);
+            setSnapshot(Snapshot.of(a, a.length));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes all of the elements of this list that satisfy the given
+     * predicate, rebuilding the list once.
+     *
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean removeIf(Predicate<? super E> filter) {
+        if (filter == null) throw new NullPointerException();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = getSnapshot();
+            int len = s.size, n = 0;
+            Object[] a = s.toArray();
+            for (int i = 0; i < len; ++i) {
+                @SuppressWarnings("unchecked") E e = (E) a[i];
+                if (!filter.test(e))
+                    a[n++] = e;
+            }
+            if (n == len)
+                return false;
+            setSnapshot(Snapshot.of(a, n));
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes from this list all of its elements that are contained in
+     * the specified collection.
+     *
+     * @throws NullPointerException if the specified collection is null
+     */
+    public boolean removeAll(Collection<?> c) {
+        if (c == null) throw new NullPointerException();
+        return removeIf(c::contains);
+    }
+
+    /**
+     * Retains only the elements in this list that are contained in the
+     * specified collection.
+     *
+     * @throws NullPointerException if the specified collection is null
+     */
+    public boolean retainAll(Collection<?> c) {
+        if (c == null) throw new NullPointerException();
+        return removeIf(e -> !c.contains(e));
+    }
+
+    /**
+     * Removes all of the elements from this list.
+     * The list will be empty after this call returns.
+     */
+    public void clear() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            setSnapshot(Snapshot.EMPTY);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void replaceAll(UnaryOperator<E> operator) {
+        if (operator == null) throw new NullPointerException();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = getSnapshot();
+            Object[] a = s.toArray();
+            for (int i = 0; i < a.length; ++i) {
+                @SuppressWarnings("unchecked") E e = (E) a[i];
+                a[i] = operator.apply(e);
+            }
+            setSnapshot(Snapshot.of(a, a.length));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void sort(Comparator<? super E> c) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            Snapshot s = getSnapshot();
+            Object[] a = s.toArray();
+            @SuppressWarnings("unchecked") E[] es = (E[]) a;
+            Arrays.sort(es, c);
+            setSnapshot(Snapshot.of(a, a.length));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void forEach(Consumer<? super E> action) {
+        if (action == null) throw new NullPointerException();
+        Snapshot s = getSnapshot();
+        for (int i = 0, len = s.size; i < len; i += WIDTH) {
+            Object[] leaf = s.arrayFor(i);
+            for (int j = 0, n = Math.min(WIDTH, len - i); j < n; ++j) {
+                @SuppressWarnings("unchecked") E e = (E) leaf[j];
+                action.accept(e);
+            }
+        }
+    }
+
+    /**
+     * Saves this list to a stream (that is, serializes it).
+     *
+     * @param s the stream
+     * @throws java.io.IOException if an I/O error occurs
+     * @serialData The length of the list is emitted (int), followed
+     *             by all of its elements (each an Object) in the proper
+     *             order.
+     */
+    private void writeObject(java.io.ObjectOutputStream s)
+        throws java.io.IOException {
+
+        s.defaultWriteObject();
+
+        Snapshot snap = getSnapshot();
+        // Write out array length
+        s.writeInt(snap.size);
+
+        // Write out all elements in the proper order.
+        for (int i = 0; i < snap.size; ++i)
+            s.writeObject(snap.get(i));
+    }
+
+    /**
+     * Reconstitutes this list from a stream (that is, deserializes it).
+     * @param s the stream
+     * @throws ClassNotFoundException if the class of a serialized object
+     *         could not be found
+     * @throws java.io.IOException if an I/O error occurs
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+
+        s.defaultReadObject();
+
+        // bind to new lock
+        resetLock();
+
+        // Read in array length and allocate array
+        int len = s.readInt();
+        if (len < 0)
+            throw new java.io.StreamCorruptedException("Invalid length " + len);
+        Object[] elements = new Object[len];
+
+        // Read in all elements in the proper order.
+        for (int i = 0; i < len; i++)
+            elements[i] = s.readObject();
+        setSnapshot(Snapshot.of(elements, len));
+    }
+
+    /**
+     * Returns an iterator over the elements in this list in proper sequence.
+     *
+     * <p>The returned iterator provides a snapshot of the state of the list
+     * when the iterator was constructed. No synchronization is needed while
+     * traversing the iterator. The iterator does <em>NOT</em> support the
+     * {@code remove} method.
+     *
+     * @return an iterator over the elements in this list in proper sequence
+     */
+    public Iterator<E> iterator() {
+        return new COWIterator<E>(getSnapshot(), 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The returned iterator provides a snapshot of the state of the list
+     * when the iterator was constructed. No synchronization is needed while
+     * traversing the iterator. The iterator does <em>NOT</em> support the
+     * {@code remove}, {@code set} or {@code add} methods.
+     */
+    public ListIterator<E> listIterator() {
+        return new COWIterator<E>(getSnapshot(), 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>The returned iterator provides a snapshot of the state of the list
+     * when the iterator was constructed. No synchronization is needed while
+     * traversing the iterator. The iterator does <em>NOT</em> support the
+     * {@code remove}, {@code set} or {@code add} methods.
+     *
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public ListIterator<E> listIterator(int index) {
+        Snapshot s = getSnapshot();
+        if (index < 0 || index > s.size)
+            throw new IndexOutOfBoundsException("Index: " + index);
+        return new COWIterator<E>(s, index);
+    }
+
+    /**
+     * Returns a {@link Spliterator} over the elements in this list.
+     *
+     * <p>The {@code Spliterator} reports {@link Spliterator#IMMUTABLE},
+     * {@link Spliterator#ORDERED}, {@link Spliterator#SIZED}, and
+     * {@link Spliterator#SUBSIZED}.
+     *
+     * <p>The spliterator provides a snapshot of the state of the list
+     * when the spliterator was constructed. No synchronization is needed while
+     * operating on the spliterator.
+     *
+     * @return a {@code Spliterator} over the elements in this list
+     */
+    public Spliterator<E> spliterator() {
+        Snapshot s = getSnapshot();
+        return new COWSpliterator<E>(s, 0, s.size);
+    }
+
+    static final class COWIterator<E> implements ListIterator<E> {
+        /** Snapshot of the list */
+        private final Snapshot snapshot;
+        /** Index of element to be returned by subsequent call to next.  */
+        private int cursor;
+        /** The array holding element cursor, or null if not yet found */
+        private Object[] leaf;
+
+        COWIterator(Snapshot snapshot, int initialCursor) {
+            this.snapshot = snapshot;
+            this.cursor = initialCursor;
+        }
+
+        public boolean hasNext() {
+            return cursor < snapshot.size;
+        }
+
+        public boolean hasPrevious() {
+            return cursor > 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            int i = cursor;
+            if (i >= snapshot.size)
+                throw new NoSuchElementException();
+            Object[] a = leaf;
+            if (a == null || (i & MASK) == 0)
+                a = snapshot.arrayFor(i);
+            cursor = i + 1;
+            leaf = ((i + 1) & MASK) == 0 ? null : a;
+            return (E) a[i & MASK];
+        }
+
+        @SuppressWarnings("unchecked")
+        public E previous() {
+            if (! hasPrevious())
+                throw new NoSuchElementException();
+            leaf = null;
+            return (E) snapshot.get(--cursor);
+        }
+
+        public int nextIndex() {
+            return cursor;
+        }
+
+        public int previousIndex() {
+            return cursor-1;
+        }
+
+        /**
+         * Not supported. Always throws UnsupportedOperationException.
+         * @throws UnsupportedOperationException always; {@code remove}
+         *         is not supported by this iterator.
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Not supported. Always throws UnsupportedOperationException.
+         * @throws UnsupportedOperationException always; {@code set}
+         *         is not supported by this iterator.
+         */
+        public void set(E e) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Not supported. Always throws UnsupportedOperationException.
+         * @throws UnsupportedOperationException always; {@code add}
+         *         is not supported by this iterator.
+         */
+        public void add(E e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            Snapshot s = snapshot;
+            int i = cursor, size = s.size;
+            while (i < size) {
+                Object[] a = s.arrayFor(i);
+                int end = Math.min(WIDTH, size - (i & ~MASK));
+                for (int j = i & MASK; j < end; ++j) {
+                    @SuppressWarnings("unchecked") E e = (E) a[j];
+                    action.accept(e);
+                }
+                i = (i & ~MASK) + end;
+            }
+            cursor = size;
+            leaf = null;
+        }
+    }
+
+    /**
+     * Spliterator over a range of a snapshot, splitting at leaf
+     * boundaries when the range spans more than one leaf.
+     */
+    static final class COWSpliterator<E> implements Spliterator<E> {
+        private final Snapshot snapshot;
+        private int index;        // current index, modified on advance/split
+        private final int fence;  // one past last index
+
+        COWSpliterator(Snapshot snapshot, int origin, int fence) {
+            this.snapshot = snapshot;
+            this.index = origin;
+            this.fence = fence;
+        }
+
+        public Spliterator<E> trySplit() {
+            int lo = index, mid = (lo + fence) >>> 1;
+            if (mid - lo >= WIDTH)
+                mid &= ~MASK;
+            if (lo >= mid)
+                return null;
+            index = mid;
+            return new COWSpliterator<E>(snapshot, lo, mid);
+        }
+
+        public void forEachRemaining(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            Snapshot s = snapshot;
+            int i = index, hi = fence;
+            index = hi;
+            while (i < hi) {
+                Object[] a = s.arrayFor(i);
+                int end = Math.min(WIDTH, hi - (i & ~MASK));
+                for (int j = i & MASK; j < end; ++j) {
+                    @SuppressWarnings("unchecked") E e = (E) a[j];
+                    action.accept(e);
+                }
+                i = (i & ~MASK) + end;
+            }
+        }
+
+        public boolean tryAdvance(Consumer<? super E> action) {
+            if (action == null)
+                throw new NullPointerException();
+            if (index < fence) {
+                @SuppressWarnings("unchecked") E e = (E) snapshot.get(index++);
+                action.accept(e);
+                return true;
+            }
+            return false;
+        }
+
+        public long estimateSize() { return (long)(fence - index); }
+
+        public int characteristics() {
+            return Spliterator.IMMUTABLE | Spliterator.ORDERED |
+                Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
+    /**
+     * Returns a view of the portion of this list between
+     * {@code fromIndex}, inclusive, and {@code toIndex}, exclusive.
+     * The returned list is backed by this list, so changes in the
+     * returned list are reflected in this list.
+     *
+     * <p>The semantics of the list returned by this method become
+     * undefined if the backing list (i.e., this list) is modified in
+     * any way other than via the returned list.
+     *
+     * @param fromIndex low endpoint (inclusive) of the subList
+     * @param toIndex high endpoint (exclusive) of the subList
+     * @return a view of the specified range within this list
+     * @throws IndexOutOfBoundsException {@inheritDoc}
+     */
+    public List<E> subList(int fromIndex, int toIndex) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            int len = getSnapshot().size;
+            if (fromIndex < 0 || toIndex > len || fromIndex > toIndex)
+                throw new IndexOutOfBoundsException();
+            return new COWSubList<E>(this, fromIndex, toIndex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sublist for CopyOnWriteTrieList, checking for concurrent
+     * modification against the snapshot it expects the backing list
+     * to use, as CopyOnWriteArrayList's sublist does with its array.
+     */
+    private static class COWSubList<E>
+        extends AbstractList<E>
+        implements RandomAccess
+    {
+        private final CopyOnWriteTrieList<E> l;
+        private final int offset;
+        private int size;
+        private Snapshot expectedSnapshot;
+
+        // only call this holding l's lock
+        COWSubList(CopyOnWriteTrieList<E> list,
+                   int fromIndex, int toIndex) {
+            l = list;
+            expectedSnapshot = l.getSnapshot();
+            offset = fromIndex;
+            size = toIndex - fromIndex;
+        }
+
+        // only call this holding l's lock
+        private void checkForComodification() {
+            if (l.getSnapshot() != expectedSnapshot)
+                throw new ConcurrentModificationException();
+        }
+
+        // only call this holding l's lock
+        private void rangeCheck(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException(outOfBounds(index, size));
+        }
+
+        public E set(int index, E element) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                rangeCheck(index);
+                checkForComodification();
+                E x = l.set(index+offset, element);
+                expectedSnapshot = l.getSnapshot();
+                return x;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public E get(int index) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                rangeCheck(index);
+                checkForComodification();
+                return l.get(index+offset);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public int size() {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void add(int index, E element) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                if (index < 0 || index > size)
+                    throw new IndexOutOfBoundsException(outOfBounds(index, size));
+                l.add(index+offset, element);
+                expectedSnapshot = l.getSnapshot();
+                size++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void clear() {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                l.removeRange(offset, offset+size);
+                expectedSnapshot = l.getSnapshot();
+                size = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public E remove(int index) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                rangeCheck(index);
+                checkForComodification();
+                E result = l.remove(index+offset);
+                expectedSnapshot = l.getSnapshot();
+                size--;
+                return result;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public Iterator<E> iterator() {
+            return listIterator(0);
+        }
+
+        public ListIterator<E> listIterator(int index) {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                if (index < 0 || index > size)
+                    throw new IndexOutOfBoundsException(outOfBounds(index, size));
+                return new COWSubListIterator<E>(l, index, offset, size);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public Spliterator<E> spliterator() {
+            final ReentrantLock lock = l.lock;
+            lock.lock();
+            try {
+                checkForComodification();
+                return new COWSpliterator<E>(expectedSnapshot, offset,
+                                             offset + size);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class COWSubListIterator<E> implements ListIterator<E> {
+        private final ListIterator<E> it;
+        private final int offset;
+        private final int size;
+
+        COWSubListIterator(List<E> l, int index, int offset, int size) {
+            this.offset = offset;
+            this.size = size;
+            it = l.listIterator(index+offset);
+        }
+
+        public boolean hasNext() {
+            return nextIndex() < size;
+        }
+
+        public E next() {
+            if (hasNext())
+                return it.next();
+            else
+                throw new NoSuchElementException();
+        }
+
+        public boolean hasPrevious() {
+            return previousIndex() >= 0;
+        }
+
+        public E previous() {
+            if (hasPrevious())
+                return it.previous();
+            else
+                throw new NoSuchElementException();
+        }
+
+        public int nextIndex() {
+            return it.nextIndex() - offset;
+        }
+
+        public int previousIndex() {
+            return it.previousIndex() - offset;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        public void set(E e) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void add(E e) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super E> action) {
+            Objects.requireNonNull(action);
+            int s = size;
+            ListIterator<E> i = it;
+            while (nextIndex() < s) {
+                action.accept(i.next());
+            }
+        }
+    }
+
+    // Support for resetting lock while deserializing
+    private void resetLock() {
+        UNSAFE.putObjectVolatile(this, lockOffset, new ReentrantLock());
+    }
+    private static final sun.misc.Unsafe UNSAFE;
+    private static final long lockOffset;
+    static {
+        try {
+            UNSAFE = sun.misc.Unsafe.getUnsafe();
+            Class<?> k = CopyOnWriteTrieList.class;
+            lockOffset = UNSAFE.objectFieldOffset
+                (k.getDeclaredField("lock"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
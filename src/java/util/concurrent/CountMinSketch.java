@@ -0,0 +1,230 @@
+package java.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe Count-Min sketch: a summary of the number of
+ * occurrences of each element of a stream of elements, in a fixed
+ * amount of memory however many distinct elements there are.  The
+ * {@linkplain #estimateCount estimated count} of an element is never
+ * less than its actual count, and with probability at least {@code
+ * 1 - delta} exceeds it by at most {@code epsilon} times the
+ * {@linkplain #getTotalCount total count} of all elements, where
+ * {@code epsilon} and {@code delta} are the arguments of the
+ * constructor.  Typical uses are finding the most frequent elements
+ * ("heavy hitters") of a stream, and estimating frequencies to admit
+ * entries into a cache.
+ *
+ * <p>The sketch is a table of {@link #getDepth} rows of {@link
+ * #getWidth} counters, held in an {@link AtomicLongArray}, so {@link
+ * #add} and {@link #estimateCount} never lock, and may be invoked
+ * concurrently by any number of threads.  Sketches of the same
+ * dimensions may be combined with {@link #merge}, for example to
+ * combine sketches built in parallel, or deserialized from other
+ * processes; see {@link java.util.stream.Collectors#toCountMinSketch}.
+ *
+ * <p>Elements are hashed by their {@link Object#hashCode hashCode},
+ * spread to 64 bits, so distinct elements with equal hash codes are
+ * counted together, and elements must have hash codes that are
+ * consistent across processes for sketches to be merged across them.
+ * Null elements are not permitted.
+ *
+ * @param <E> the type of elements counted by this sketch
+ * @see BloomFilter
+ * @see HyperLogLog
+ * @since 1.8
+ */
+public class CountMinSketch<E> implements java.io.Serializable {
+    private static final long serialVersionUID = -1389434207342453624L;
+
+    /*
+     * This is the sketch of Cormode and Muthukrishnan ("An Improved
+     * Data Stream Summary: The Count-Min Sketch and its
+     * Applications"), with width ceil(e / epsilon) and depth
+     * ceil(ln(1 / delta)).  The column of an element in row i is
+     * derived by double hashing, as in BloomFilter.  Counters are
+     * incremented with getAndAdd; the "conservative update" variant,
+     * which increments only the minimal counters, would need a
+     * consistent view of all rows, so is not used.
+     */
+
+    /** The number of counters per row. */
+    private final int width;
+
+    /** The number of rows. */
+    private final int depth;
+
+    /** The counters, row by row. */
+    private final AtomicLongArray counts;
+
+    /** The sum of all counts added. */
+    private final LongAdder total;
+
+    /**
+     * Creates a sketch whose estimated counts exceed actual counts by
+     * at most {@code epsilon} times the total count, with probability
+     * at least {@code 1 - delta}.
+     *
+     * @param epsilon the relative error, between 0 and 1, exclusive
+     * @param delta the probability of exceeding the error, between 0
+     *        and 1, exclusive
+     * @throws IllegalArgumentException if {@code epsilon} or {@code
+     *         delta} is not between 0 and 1, or the sketch would need
+     *         more than {@code Integer.MAX_VALUE} counters
+     */
+    public CountMinSketch(double epsilon, double delta) {
+        if (!(epsilon > 0.0 && epsilon < 1.0) ||
+            !(delta > 0.0 && delta < 1.0))
+            throw new IllegalArgumentException();
+        double w = Math.ceil(Math.E / epsilon);
+        double d = Math.ceil(Math.log(1.0 / delta));
+        if (w * d > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Sketch too large");
+        this.width = (int)w;
+        this.depth = Math.max(1, (int)d);
+        this.counts = new AtomicLongArray(width * depth);
+        this.total = new LongAdder();
+    }
+
+    /**
+     * Adds one occurrence of the given element.
+     *
+     * @param e the element
+     * @throws NullPointerException if the element is null
+     */
+    public void add(E e) {
+        add(e, 1L);
+    }
+
+    /**
+     * Adds the given number of occurrences of the given element.
+     *
+     * @param e the element
+     * @param count the number of occurrences
+     * @throws NullPointerException if the element is null
+     * @throws IllegalArgumentException if {@code count} is negative
+     */
+    public void add(E e, long count) {
+        if (count < 0L)
+            throw new IllegalArgumentException();
+        long h1 = BloomFilter.mix64(e.hashCode() * 0x9e3779b97f4a7c15L);
+        long h2 = BloomFilter.mix64(h1) | 1L;
+        AtomicLongArray a = counts;
+        int w = width;
+        for (int i = 0; i < depth; ++i)
+            a.getAndAdd(i * w + (int)(((h1 + i * h2) & Long.MAX_VALUE) % w),
+                        count);
+        total.add(count);
+    }
+
+    /**
+     * Returns the estimated number of occurrences of the given
+     * element: the least of its counters.
+     *
+     * @param o the element
+     * @return the estimated count, which is at least the actual count
+     * @throws NullPointerException if the element is null
+     */
+    public long estimateCount(Object o) {
+        long h1 = BloomFilter.mix64(o.hashCode() * 0x9e3779b97f4a7c15L);
+        long h2 = BloomFilter.mix64(h1) | 1L;
+        AtomicLongArray a = counts;
+        int w = width;
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < depth; ++i)
+            min = Math.min(min, a.get(i * w + (int)(((h1 + i * h2) &
+                                                      Long.MAX_VALUE) % w)));
+        return min;
+    }
+
+    /**
+     * Adds all occurrences counted by the given sketch to this
+     * sketch.  Occurrences added to the given sketch concurrently with
+     * this method may or may not be included.
+     *
+     * @param other the other sketch
+     * @throws NullPointerException if the other sketch is null
+     * @throws IllegalArgumentException if the other sketch has
+     *         different dimensions
+     */
+    public void merge(CountMinSketch<? extends E> other) {
+        if (other.width != width || other.depth != depth)
+            throw new IllegalArgumentException("Incompatible sketches");
+        AtomicLongArray a = counts, b = other.counts;
+        long t = other.total.sum();
+        for (int i = 0, n = a.length(); i < n; ++i) {
+            long x = b.get(i);
+            if (x != 0L)
+                a.getAndAdd(i, x);
+        }
+        total.add(t);
+    }
+
+    /**
+     * Returns the total number of occurrences added to this sketch.
+     *
+     * @return the total count
+     */
+    public long getTotalCount() {
+        return total.sum();
+    }
+
+    /**
+     * Returns the number of counters per row.
+     *
+     * @return the width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Resets all counts to zero.  Occurrences added concurrently with
+     * this method may or may not be retained.
+     */
+    public void clear() {
+        AtomicLongArray a = counts;
+        for (int i = 0, n = a.length(); i < n; ++i)
+            a.set(i, 0L);
+        total.reset();
+    }
+
+    /**
+     * Reconstitutes this sketch from a stream (that is, deserializes
+     * it), checking that its counters match its dimensions.
+     * @param s the stream
+     * @throws ClassNotFoundException if the class of a serialized object
+     *         could not be found
+     * @throws java.io.IOException if an I/O error occurs
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (width <= 0 || depth <= 0 || total == null || counts == null ||
+            counts.length() != (long)width * depth)
+            throw new java.io.InvalidObjectException("Invalid sketch");
+    }
+
+    /**
+     * Returns a string identifying this sketch, as well as its
+     * dimensions and total count.
+     *
+     * @return a string identifying this sketch
+     */
+    public String toString() {
+        return super.toString() +
+            "[width = " + width +
+            ", depth = " + depth +
+            ", total = " + getTotalCount() + "]";
+    }
+}
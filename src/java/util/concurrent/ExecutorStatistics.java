@@ -0,0 +1,366 @@
+package java.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import sun.misc.ExecutorStatisticsHook;
+
+/**
+ * Counters and latency histograms of the tasks run by a {@link
+ * ThreadPoolExecutor} or {@link ForkJoinPool}, kept while the pool's
+ * statistics are enabled with {@link
+ * ThreadPoolExecutor#setStatisticsEnabled} or {@link
+ * ForkJoinPool#setStatisticsEnabled}.  The statistics of all pools for
+ * which they are enabled are published as {@link
+ * java.lang.management.ExecutorMXBean platform MXBeans}.
+ *
+ * <p>The statistics are:
+ *
+ * <ul>
+ * <li>The <em>queue wait time</em> of each task, from its submission
+ * to the start of its execution.  Recorded for tasks submitted to a
+ * {@code ThreadPoolExecutor} through {@code execute} (and so {@code
+ * submit} and {@code invokeAll}), but not for the delayed tasks of a
+ * {@link ScheduledThreadPoolExecutor}, nor for the tasks of a {@code
+ * ForkJoinPool}, which carry no submission time.
+ * <li>The <em>execution time</em> of each task.  For a {@code
+ * ForkJoinPool}, of each top-level task together with the subtasks it
+ * forks that are not stolen.
+ * <li>The numbers of tasks completed, of those that completed by
+ * throwing an exception, and of tasks rejected.
+ * <li>For a {@code ForkJoinPool}, the numbers of tasks stolen, of
+ * times workers parked for lack of tasks, and of compensations: times
+ * an idle worker was released or a spare worker created to replace
+ * one blocked in {@link ForkJoinPool#managedBlock}, including in
+ * blocking reads of files and sockets.
+ * </ul>
+ *
+ * <p>Counts are kept in {@link LongAdder}s, so that recording is cheap
+ * under contention, and times in nanoseconds.  The histograms have one
+ * bucket per power of two: bucket {@code i} counts the times {@code t}
+ * with {@code 2}<sup>{@code i}</sup> {@code <= t < 2}<sup>{@code
+ * i+1}</sup> nanoseconds, except that bucket 0 also counts times of 0.
+ * Values read while tasks are being recorded are estimates, which may
+ * be slightly inconsistent with each other.
+ *
+ * @since 1.8
+ */
+public final class ExecutorStatistics {
+
+    /** The number of histogram buckets, one per bit of a long. */
+    static final int BUCKETS = 64;
+
+    /**
+     * A histogram of times with power-of-two buckets of LongAdders.
+     */
+    static final class Histogram {
+        final LongAdder[] counts = new LongAdder[BUCKETS];
+        final LongAdder total = new LongAdder();
+
+        Histogram() {
+            for (int i = 0; i < BUCKETS; ++i)
+                counts[i] = new LongAdder();
+        }
+
+        void record(long nanos) {
+            if (nanos < 0L)             // nanoTime is not monotonic everywhere
+                nanos = 0L;
+            counts[63 - Long.numberOfLeadingZeros(nanos | 1L)].increment();
+            total.add(nanos);
+        }
+
+        long[] snapshot() {
+            long[] a = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; ++i)
+                a[i] = counts[i].sum();
+            return a;
+        }
+
+        long count() {
+            long n = 0L;
+            for (LongAdder c : counts)
+                n += c.sum();
+            return n;
+        }
+
+        long percentile(double p) {
+            if (!(p >= 0.0 && p <= 100.0))
+                throw new IllegalArgumentException();
+            long[] a = snapshot();
+            long n = 0L;
+            for (long c : a)
+                n += c;
+            if (n == 0L)
+                return 0L;
+            long rank = Math.max(1L, (long)Math.ceil(p / 100.0 * n));
+            long seen = 0L;
+            for (int i = 0; i < BUCKETS; ++i) {
+                if ((seen += a[i]) >= rank)
+                    return (i == 63) ? Long.MAX_VALUE : (1L << (i + 1)) - 1L;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        void reset() {
+            for (LongAdder c : counts)
+                c.reset();
+            total.reset();
+        }
+    }
+
+    /** The pools whose statistics are enabled, held weakly. */
+    private static final ConcurrentWeakHashMap<Executor,ExecutorStatistics>
+        registry = ConcurrentWeakHashMap.newIdentityMap();
+
+    /** Sequence number for naming ThreadPoolExecutors */
+    private static final AtomicInteger threadPoolSequence = new AtomicInteger();
+
+    private final String name;
+    private final String executorClassName;
+    final Histogram queueWait = new Histogram();
+    final Histogram execution = new Histogram();
+    final LongAdder failed = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+    final LongAdder steals = new LongAdder();
+    final LongAdder parks = new LongAdder();
+    final LongAdder compensations = new LongAdder();
+
+    private ExecutorStatistics(String name, String executorClassName) {
+        this.name = name;
+        this.executorClassName = executorClassName;
+    }
+
+    /**
+     * Creates and registers the statistics of the given pool, naming
+     * it with the given name, or if null, a name made unique by a
+     * sequence number.
+     */
+    static ExecutorStatistics register(Executor pool, String name) {
+        if (name == null)
+            name = "ThreadPoolExecutor-" + threadPoolSequence.incrementAndGet();
+        ExecutorStatistics s =
+            new ExecutorStatistics(name, pool.getClass().getName());
+        registry.put(pool, s);
+        return s;
+    }
+
+    /**
+     * Unregisters the statistics of the given pool.
+     */
+    static void unregister(Executor pool) {
+        registry.remove(pool);
+    }
+
+    /**
+     * Reports that the statistics of the pool of the given name were
+     * registered or unregistered, so that its MXBean is updated.  Call
+     * only once no lock of the pool is held.
+     */
+    static void changed(String name) {
+        ExecutorStatisticsHook.statisticsChanged(name);
+    }
+
+    /**
+     * Returns the statistics of all live pools for which statistics are
+     * enabled.
+     *
+     * @return a new list of the statistics of all such pools
+     */
+    public static List<ExecutorStatistics> getAllStatistics() {
+        return new ArrayList<ExecutorStatistics>(registry.values());
+    }
+
+    /**
+     * Records the execution of a task.
+     */
+    void executed(long nanos, Throwable thrown) {
+        execution.record(nanos);
+        if (thrown != null)
+            failed.increment();
+    }
+
+    /**
+     * Returns the name of the pool, which is unique among pools with
+     * statistics enabled: {@code ThreadPoolExecutor-}<i>n</i> for a
+     * {@code ThreadPoolExecutor}, and the prefix of the names of its
+     * worker threads for a {@code ForkJoinPool}, such as {@code
+     * ForkJoinPool-}<i>n</i> or {@code ForkJoinPool.commonPool}.
+     *
+     * @return the name of the pool
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the name of the class of the pool.
+     *
+     * @return the name of the class of the pool
+     */
+    public String getExecutorClassName() {
+        return executorClassName;
+    }
+
+    /**
+     * Returns the number of tasks that have completed execution,
+     * normally or by throwing an exception.
+     *
+     * @return the number of completed tasks
+     */
+    public long getCompletedTaskCount() {
+        return execution.count();
+    }
+
+    /**
+     * Returns the number of tasks that completed by throwing an
+     * exception.  For a {@code ForkJoinPool}, where exceptions are
+     * caught by the tasks themselves, this is always zero.
+     *
+     * @return the number of failed tasks
+     */
+    public long getFailedTaskCount() {
+        return failed.sum();
+    }
+
+    /**
+     * Returns the number of tasks rejected by the pool.
+     *
+     * @return the number of rejected tasks
+     */
+    public long getRejectedTaskCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the number of tasks stolen by the workers of a {@code
+     * ForkJoinPool} from the queues of other workers or from the
+     * submission queues; zero for a {@code ThreadPoolExecutor}.
+     *
+     * @return the number of steals
+     */
+    public long getStealCount() {
+        return steals.sum();
+    }
+
+    /**
+     * Returns the number of times the workers of a {@code ForkJoinPool}
+     * parked for lack of tasks; zero for a {@code ThreadPoolExecutor}.
+     *
+     * @return the number of idle parks
+     */
+    public long getIdleParkCount() {
+        return parks.sum();
+    }
+
+    /**
+     * Returns the number of times a {@code ForkJoinPool} released an
+     * idle worker or created a spare one to keep its parallelism while
+     * a worker blocked in {@link ForkJoinPool#managedBlock}, not
+     * counting those for workers waiting to join tasks; zero for a
+     * {@code ThreadPoolExecutor}.
+     *
+     * @return the number of compensations
+     */
+    public long getCompensationCount() {
+        return compensations.sum();
+    }
+
+    /**
+     * Returns the total time tasks waited in the queue, in nanoseconds.
+     *
+     * @return the total queue wait time
+     */
+    public long getTotalQueueWaitTime() {
+        return queueWait.total.sum();
+    }
+
+    /**
+     * Returns the total time tasks took to execute, in nanoseconds.
+     *
+     * @return the total execution time
+     */
+    public long getTotalExecutionTime() {
+        return execution.total.sum();
+    }
+
+    /**
+     * Returns the histogram of the queue wait times of tasks.
+     *
+     * @return a new array of the counts of each bucket
+     */
+    public long[] getQueueWaitTimeHistogram() {
+        return queueWait.snapshot();
+    }
+
+    /**
+     * Returns the histogram of the execution times of tasks.
+     *
+     * @return a new array of the counts of each bucket
+     */
+    public long[] getExecutionTimeHistogram() {
+        return execution.snapshot();
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the queue wait
+     * times of tasks, in nanoseconds: the upper bound of the bucket in
+     * which it falls, which is less than twice the actual percentile.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the upper bound, or 0 if no times were recorded
+     * @throws IllegalArgumentException if {@code percentile} is not
+     *         between 0 and 100
+     */
+    public long getQueueWaitTimePercentile(double percentile) {
+        return queueWait.percentile(percentile);
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the execution
+     * times of tasks, in nanoseconds, as for {@link
+     * #getQueueWaitTimePercentile}.
+     *
+     * @param percentile the percentile, from 0 to 100
+     * @return the upper bound, or 0 if no times were recorded
+     * @throws IllegalArgumentException if {@code percentile} is not
+     *         between 0 and 100
+     */
+    public long getExecutionTimePercentile(double percentile) {
+        return execution.percentile(percentile);
+    }
+
+    /**
+     * Resets all counters and histograms to zero.  Tasks recorded while
+     * this method runs may or may not be counted.
+     */
+    public void reset() {
+        queueWait.reset();
+        execution.reset();
+        failed.reset();
+        rejected.reset();
+        steals.reset();
+        parks.reset();
+        compensations.reset();
+    }
+
+    /**
+     * Returns a string identifying these statistics, and their main
+     * counts and percentiles.
+     *
+     * @return a string identifying these statistics
+     */
+    public String toString() {
+        return super.toString() +
+            "[" + name +
+            ", completed = " + getCompletedTaskCount() +
+            ", failed = " + getFailedTaskCount() +
+            ", rejected = " + getRejectedTaskCount() +
+            ", steals = " + getStealCount() +
+            ", idle parks = " + getIdleParkCount() +
+            ", compensations = " + getCompensationCount() +
+            ", p99 queue wait = " + getQueueWaitTimePercentile(99.0) +
+            "ns, p99 execution = " + getExecutionTimePercentile(99.0) +
+            "ns]";
+    }
+}
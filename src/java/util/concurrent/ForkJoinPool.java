@@ -1052,13 +1052,20 @@ public class ForkJoinPool extends AbstractExecutorService {
          */
         final void runTask(ForkJoinTask<?> task) {
             if (task != null) {
+                ForkJoinPool p = pool;
+                ExecutorStatistics stats = (p == null) ? null : p.statistics;
+                long start = (stats == null) ? 0L : System.nanoTime();
                 scanState &= ~SCANNING; // mark as busy
                 (currentSteal = task).doExec();
                 U.putOrderedObject(this, QCURRENTSTEAL, null); // release for GC
                 execLocalTasks();
+                if (stats != null) {
+                    stats.execution.record(System.nanoTime() - start);
+                    stats.steals.increment();
+                }
                 ForkJoinWorkerThread thread = owner;
                 if (++nsteals < 0)      // collect on overflow
-                    transferStealCount(pool);
+                    transferStealCount(p);
                 scanState |= SCANNING;
                 if (thread != null)
                     thread.afterTopLevelExec();
@@ -1396,6 +1403,7 @@ public class ForkJoinPool extends AbstractExecutorService {
     final UncaughtExceptionHandler ueh;  // per-worker UEH
     final String workerNamePrefix;       // to create worker name string
     volatile AtomicLong stealCounter;    // also used as sync monitor
+    volatile ExecutorStatistics statistics; // null unless enabled
 
     /**
      * Acquires the runState lock; returns current (locked) runState.
@@ -1820,8 +1828,12 @@ public class ForkJoinPool extends AbstractExecutorService {
                 Thread wt = Thread.currentThread();
                 U.putObject(wt, PARKBLOCKER, this);   // emulate LockSupport
                 w.parker = wt;
-                if (w.scanState < 0 && ctl == c)      // recheck before park
+                if (w.scanState < 0 && ctl == c) {    // recheck before park
+                    ExecutorStatistics stats = statistics;
+                    if (stats != null)
+                        stats.parks.increment();
                     U.park(false, parkTime);
+                }
                 U.putOrderedObject(w, QPARKER, null);
                 U.putObject(wt, PARKBLOCKER, null);
                 if (w.scanState >= 0)
@@ -1977,16 +1989,18 @@ public class ForkJoinPool extends AbstractExecutorService {
      * contention, detected staleness, instability, or termination.
      *
      * @param w caller
+     * @param managed true if called from managedBlock, whose
+     * compensations are counted in the pool's statistics
      */
-    private boolean tryCompensate(WorkQueue w) {
-        boolean canBlock;
+    private boolean tryCompensate(WorkQueue w, boolean managed) {
+        boolean canBlock, replaced = false;
         WorkQueue[] ws; long c; int m, pc, sp;
         if (w == null || w.qlock < 0 ||           // caller terminating
             (ws = workQueues) == null || (m = ws.length - 1) <= 0 ||
             (pc = config & SMASK) == 0)           // parallelism disabled
             canBlock = false;
         else if ((sp = (int)(c = ctl)) != 0)      // release idle worker
-            canBlock = tryRelease(c, ws[sp & m], 0L);
+            canBlock = replaced = tryRelease(c, ws[sp & m], 0L);
         else {
             int ac = (int)(c >> AC_SHIFT) + pc;
             int tc = (short)(c >> TC_SHIFT) + pc;
@@ -2017,9 +2031,12 @@ public class ForkJoinPool extends AbstractExecutorService {
                 if (((rs = lockRunState()) & STOP) == 0)
                     add = U.compareAndSwapLong(this, CTL, c, nc);
                 unlockRunState(rs, rs & ~RSLOCK);
-                canBlock = add && createWorker(); // throws on exception
+                canBlock = replaced = add && createWorker(); // throws
             }
         }
+        ExecutorStatistics stats;
+        if (replaced && managed && (stats = statistics) != null)
+            stats.compensations.increment();
         return canBlock;
     }
 
@@ -2054,7 +2071,7 @@ public class ForkJoinPool extends AbstractExecutorService {
                     break;
                 else if ((ms = TimeUnit.NANOSECONDS.toMillis(ns)) <= 0L)
                     ms = 1L;
-                if (tryCompensate(w)) {
+                if (tryCompensate(w, false)) {
                     task.internalWait(ms);
                     U.getAndAddLong(this, CTL, AC_UNIT);
                 }
@@ -2111,6 +2128,9 @@ public class ForkJoinPool extends AbstractExecutorService {
                 if ((b = q.base) - q.top < 0 && (t = q.pollAt(b)) != null) {
                     U.putOrderedObject(w, QCURRENTSTEAL, t);
                     t.doExec();
+                    ExecutorStatistics stats = statistics;
+                    if (stats != null)
+                        stats.steals.increment();
                     if (++w.nsteals < 0)
                         w.transferStealCount(this);
                 }
@@ -2324,6 +2344,9 @@ public class ForkJoinPool extends AbstractExecutorService {
             WorkQueue[] ws; WorkQueue q; int rs, m, k;
             boolean move = false;
             if ((rs = runState) < 0) {
+                ExecutorStatistics stats = statistics;
+                if (stats != null)
+                    stats.rejected.increment();
                 tryTerminate(false, false);     // help terminate
                 throw new RejectedExecutionException();
             }
@@ -2864,6 +2887,67 @@ public class ForkJoinPool extends AbstractExecutorService {
         return count;
     }
 
+    /**
+     * Enables or disables the collection of {@link ExecutorStatistics}
+     * of the tasks run by this pool: the time each top-level task takes
+     * to run, together with the subtasks it forks that are not stolen,
+     * and the numbers of rejected submissions, of steals, of times
+     * workers park for lack of tasks, and of compensations for workers
+     * blocked in {@link #managedBlock}.  Enabling statistics registers
+     * them as a {@link java.lang.management.ExecutorMXBean}, named
+     * after the worker threads of this pool, and replaces any
+     * previously collected; disabling them unregisters them.
+     *
+     * <p>While statistics are enabled, each top-level task execution
+     * is timed, at the cost of two calls to {@link System#nanoTime} and
+     * a few counter updates per top-level task.  Tasks carry no
+     * submission time, so no queue wait times are recorded.
+     *
+     * @param enabled {@code true} to enable statistics, {@code false} to
+     *        disable them
+     * @throws SecurityException if a security manager exists and
+     *         the caller is not permitted to modify threads
+     *         because it does not hold {@link
+     *         java.lang.RuntimePermission}{@code ("modifyThread")}
+     * @since 1.8
+     */
+    public void setStatisticsEnabled(boolean enabled) {
+        checkPermission();
+        String prefix = workerNamePrefix, name;
+        if (prefix == null)
+            name = null;
+        else if (prefix.endsWith("-worker-"))
+            name = prefix.substring(0, prefix.length() - 8);
+        else
+            name = prefix;
+        ExecutorStatistics s;
+        int rs = lockRunState();
+        try {
+            if (enabled)
+                statistics = s = ExecutorStatistics.register(this, name);
+            else if ((s = statistics) != null) {
+                statistics = null;
+                ExecutorStatistics.unregister(this);
+            }
+        } finally {
+            unlockRunState(rs, rs & ~RSLOCK);
+        }
+        if (s != null)
+            ExecutorStatistics.changed(s.getName());
+    }
+
+    /**
+     * Returns the statistics of the tasks run by this pool, or {@code
+     * null} if they are not enabled.
+     *
+     * @return the statistics, or {@code null} if not enabled
+     * @see #setStatisticsEnabled
+     * @since 1.8
+     */
+    public ExecutorStatistics getStatistics() {
+        return statistics;
+    }
+
     /**
      * Returns an estimate of the total number of tasks currently held
      * in queues by worker threads (but not including tasks submitted
@@ -3307,7 +3391,7 @@ public class ForkJoinPool extends AbstractExecutorService {
             (p = (wt = (ForkJoinWorkerThread)t).pool) != null) {
             WorkQueue w = wt.workQueue;
             while (!blocker.isReleasable()) {
-                if (p.tryCompensate(w)) {
+                if (p.tryCompensate(w, true)) {
                     try {
                         do {} while (!blocker.isReleasable() &&
                                      !blocker.block());
@@ -0,0 +1,249 @@
+package java.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe HyperLogLog sketch: an estimator of the number of
+ * distinct elements of a stream of elements, in a fixed and small
+ * amount of memory however many there are.  A sketch of precision
+ * {@code p} takes {@code 2}<sup>{@code p}</sup> six-bit registers,
+ * and estimates cardinalities with a relative standard error of about
+ * {@code 1.04 / sqrt(2}<sup>{@code p}</sup>{@code )}: for the default
+ * precision of 14, about 0.8% in 12 kilobytes.  Typical uses are
+ * counting distinct users, keys or addresses in streams far too large
+ * to hold in a set; see {@link
+ * java.util.stream.Collectors#countingDistinctApproximately}.
+ *
+ * <p>The registers are packed, ten to a word, in an {@link
+ * AtomicLongArray}, so {@link #add} and {@link #cardinality} never
+ * lock, and may be invoked concurrently by any number of threads.
+ * Sketches of the same precision may be combined with {@link #merge},
+ * for example to combine sketches built in parallel, or deserialized
+ * from other processes, giving the estimate for the union of their
+ * streams.
+ *
+ * <p>Elements added by {@link #add} are hashed by their {@link
+ * Object#hashCode hashCode}, spread to 64 bits, so distinct elements
+ * with equal hash codes are counted once, and cardinalities beyond
+ * about {@code 2}<sup>{@code 32}</sup> are underestimated.  Streams
+ * with more distinct elements, or with elements whose hash codes are
+ * not consistent across the processes whose sketches are merged,
+ * should instead supply 64-bit hashes of their own to {@link
+ * #addHash}.  Null elements are not permitted.
+ *
+ * @see BloomFilter
+ * @see CountMinSketch
+ * @since 1.8
+ */
+public class HyperLogLog implements java.io.Serializable {
+    private static final long serialVersionUID = 7163942280839251683L;
+
+    /*
+     * This is the algorithm of Flajolet, Fusy, Gandouet and Meunier
+     * ("HyperLogLog: the analysis of a near-optimal cardinality
+     * estimation algorithm"), with a 64-bit hash, so the large range
+     * correction is unnecessary, and with linear counting for small
+     * cardinalities, as in Heule, Nunkesser and Hall ("HyperLogLog in
+     * Practice"), though without their empirical bias correction.
+     *
+     * The top p bits of the hash select a register, which is raised
+     * to the position of the first 1 bit among the rest, at most 65 -
+     * p, so at most 61, which fits in six bits.  Raising a register
+     * reads its word first, and CASes it only if the register is
+     * smaller, so that once registers have settled, as they do after
+     * the first few thousand distinct elements, adds write nothing.
+     */
+
+    /** The least and greatest precisions. */
+    static final int MIN_PRECISION = 4, MAX_PRECISION = 18;
+
+    /** The default precision, for a standard error of about 0.8%. */
+    public static final int DEFAULT_PRECISION = 14;
+
+    /** The number of bits per register, and registers per word. */
+    private static final int REG_BITS = 6, REGS_PER_WORD = 10;
+
+    private static final long REG_MASK = (1L << REG_BITS) - 1L;
+
+    /** The number of bits of the hash selecting the register. */
+    private final int precision;
+
+    /** The registers, packed. */
+    private final AtomicLongArray registers;
+
+    /**
+     * Creates a sketch of the {@linkplain #DEFAULT_PRECISION default
+     * precision}.
+     */
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates a sketch of the given precision, with {@code
+     * 2}<sup>{@code precision}</sup> registers.
+     *
+     * @param precision the number of bits of the hash selecting a
+     *        register, from 4 to 18
+     * @throws IllegalArgumentException if {@code precision} is less
+     *         than 4 or greater than 18
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+            throw new IllegalArgumentException();
+        this.precision = precision;
+        this.registers = new AtomicLongArray
+            (((1 << precision) + REGS_PER_WORD - 1) / REGS_PER_WORD);
+    }
+
+    /**
+     * Adds the given element.
+     *
+     * @param o the element
+     * @throws NullPointerException if the element is null
+     */
+    public void add(Object o) {
+        addHash(BloomFilter.mix64(o.hashCode() * 0x9e3779b97f4a7c15L));
+    }
+
+    /**
+     * Adds an element with the given 64-bit hash, whose bits should be
+     * uniformly distributed, as those of a hash function such as
+     * MurmurHash3 are.
+     *
+     * @param hash the hash of the element
+     */
+    public void addHash(long hash) {
+        int p = precision;
+        int j = (int)(hash >>> (64 - p));
+        int r = Math.min(Long.numberOfLeadingZeros(hash << p), 64 - p) + 1;
+        raise(j, r);
+    }
+
+    /**
+     * Raises the j'th register to at least r.
+     */
+    private void raise(int j, long r) {
+        AtomicLongArray a = registers;
+        int w = j / REGS_PER_WORD, shift = (j % REGS_PER_WORD) * REG_BITS;
+        for (long v; ((v = a.get(w)) >>> shift & REG_MASK) < r;) {
+            if (a.compareAndSet(w, v, (v & ~(REG_MASK << shift)) |
+                                (r << shift)))
+                break;
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct elements added to this
+     * sketch.  This method traverses all of the registers of the
+     * sketch.
+     *
+     * @return the estimated number of distinct elements
+     */
+    public long cardinality() {
+        int m = 1 << precision, zeros = 0;
+        AtomicLongArray a = registers;
+        double sum = 0.0;
+        for (int w = 0, j = 0; j < m; ++w) {
+            long v = a.get(w);
+            for (int k = 0; k < REGS_PER_WORD && j < m; ++k, ++j) {
+                int r = (int)(v & REG_MASK);
+                v >>>= REG_BITS;
+                if (r == 0)
+                    ++zeros;
+                sum += Double.longBitsToDouble((1023L - r) << 52); // 2^-r
+            }
+        }
+        double alpha = (m == 16) ? 0.673 : (m == 32) ? 0.697 :
+            (m == 64) ? 0.709 : 0.7213 / (1.0 + 1.079 / m);
+        double e = alpha * m * m / sum;
+        if (e <= 2.5 * m && zeros != 0)         // linear counting
+            e = m * Math.log((double)m / zeros);
+        return Math.round(e);
+    }
+
+    /**
+     * Adds all elements of the given sketch to this sketch, so that
+     * this sketch estimates the cardinality of the union of the
+     * elements of both.  Elements added to the given sketch
+     * concurrently with this method may or may not be included.
+     *
+     * @param other the other sketch
+     * @throws NullPointerException if the other sketch is null
+     * @throws IllegalArgumentException if the other sketch has a
+     *         different precision
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision)
+            throw new IllegalArgumentException("Incompatible sketches");
+        int m = 1 << precision;
+        AtomicLongArray b = other.registers;
+        for (int w = 0, j = 0; j < m; ++w) {
+            long v = b.get(w);
+            for (int k = 0; k < REGS_PER_WORD && j < m; ++k, ++j) {
+                long r = v & REG_MASK;
+                v >>>= REG_BITS;
+                if (r != 0L)
+                    raise(j, r);
+            }
+        }
+    }
+
+    /**
+     * Returns the precision of this sketch.
+     *
+     * @return the number of bits of the hash selecting a register
+     */
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns the relative standard error of the estimates of this
+     * sketch, {@code 1.04 / sqrt(2}<sup>{@code precision}</sup>{@code )}.
+     *
+     * @return the relative standard error
+     */
+    public double getRelativeStandardError() {
+        return 1.04 / Math.sqrt(1 << precision);
+    }
+
+    /**
+     * Removes all elements from this sketch.  Elements added
+     * concurrently with this method may or may not be retained.
+     */
+    public void clear() {
+        AtomicLongArray a = registers;
+        for (int i = 0, n = a.length(); i < n; ++i)
+            a.set(i, 0L);
+    }
+
+    /**
+     * Reconstitutes this sketch from a stream (that is, deserializes
+     * it), checking that its registers match its precision.
+     * @param s the stream
+     * @throws ClassNotFoundException if the class of a serialized object
+     *         could not be found
+     * @throws java.io.IOException if an I/O error occurs
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION ||
+            registers == null || registers.length() !=
+            ((1 << precision) + REGS_PER_WORD - 1) / REGS_PER_WORD)
+            throw new java.io.InvalidObjectException("Invalid sketch");
+    }
+
+    /**
+     * Returns a string identifying this sketch, as well as its
+     * precision and estimated cardinality.
+     *
+     * @return a string identifying this sketch
+     */
+    public String toString() {
+        return super.toString() +
+            "[precision = " + precision +
+            ", cardinality = " + cardinality() + "]";
+    }
+}
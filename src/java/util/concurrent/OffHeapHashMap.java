@@ -0,0 +1,874 @@
+package java.util.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+/**
+ * A hash table of fixed-width binary keys and values that keeps its
+ * entries outside the Java heap, in direct or memory-mapped {@link
+ * ByteBuffer}s.  It is intended for large numbers of fixed-layout
+ * records, or of keys and values serialized to a fixed width, that
+ * would otherwise occupy a large part of the heap and lengthen garbage
+ * collections: the garbage collector sees only a few buffer objects,
+ * whatever the number of entries.
+ *
+ * <p>Every key is {@link #keySize} bytes long and every value {@link
+ * #valueSize} bytes long.  Keys are compared by content.  The store has
+ * a fixed capacity, set when it is created: an insertion that would
+ * exceed it throws {@link IllegalStateException}.  Since each segment
+ * of the table (see below) has a capacity of its own, the capacity
+ * requested when a store is created is approximate: a store for fewer
+ * than {@code 128} entries has a single segment, and so holds at least
+ * the number requested, and larger stores give each segment room for
+ * its expected share of the entries plus five standard deviations, so
+ * that a segment fills up before the store holds the number requested
+ * only with negligible probability, unless the hashes of the keys
+ * collide far more than random ones would.
+ *
+ * <p>A store created by {@link #allocate} lives in direct buffers and
+ * disappears with the object.  A store created by {@link #open} lives in
+ * a file mapped with {@link FileChannel#map}, to which its entries are
+ * written through, so that it can be reopened after a restart without
+ * reading or rebuilding anything: the mapped pages are loaded on demand
+ * as they are accessed.  Updates reach the file when the operating system
+ * writes back the mapped pages, or when {@link #force} is called; a store
+ * file is not guaranteed to be consistent after a crash that interrupts
+ * an update.
+ *
+ * <p>The table is split into segments, each an open-addressing hash
+ * table with linear probing and backward-shift deletion, guarded by its
+ * own {@link StampedLock}.  Retrievals use optimistic reads, which take
+ * no lock and do not write to shared memory, and fall back to a read
+ * lock only when they overlap an update of the same segment.  Updates
+ * take the write lock of a single segment, so updates of different
+ * segments proceed in parallel.
+ *
+ * <p>Keys and values are passed in {@code ByteBuffer}s, from the
+ * position of the buffer, or in byte arrays of exactly the right length.
+ * The byte order of a buffer does not matter, and methods do not change
+ * the position of a buffer from which they read a key or value; the
+ * methods that copy a value into a buffer advance its position as a
+ * relative bulk {@code put} would.
+ *
+ * <p>This class is thread-safe.  It does not implement {@link
+ * java.util.Map}, whose methods are expressed in terms of key and value
+ * objects that would have to be created on the heap.
+ *
+ * @since 1.8
+ */
+public class OffHeapHashMap implements Closeable {
+
+    /*
+     * Layout.  A segment buffer starts with a SEGMENT_HEADER-byte
+     * header holding the number of entries of the segment, followed
+     * by a power-of-two number of slots.  A slot is a four-byte tag
+     * followed by the key and the value.  A tag of zero marks an empty
+     * slot; otherwise the tag is the low 32 bits of the hash of the
+     * key with the lowest bit set, and its remaining bits locate the
+     * home slot of the key, so that deletion can shift entries back
+     * without hashing their keys again.  The segment is chosen by the
+     * high bits of the hash.
+     *
+     * All reads and writes use the absolute get and put methods of
+     * the buffers, which do not change their positions, so buffers
+     * are shared by all threads.  Optimistic readers may see slots
+     * in the middle of an update, but every offset they compute stays
+     * within the (fixed) bounds of the segment buffer, and probing
+     * stops after visiting every slot, so they can neither fail nor
+     * loop; the stamp validation then makes them retry under the
+     * read lock.
+     *
+     * A store file starts with a FILE_HEADER-byte header recording
+     * the layout, followed by the segments, each mapped separately
+     * so that a segment never exceeds the 2GB limit of a buffer.
+     * Every multi-byte field is big-endian.
+     */
+
+    /** Magic number of store files: "OHM1". */
+    static final int MAGIC = 0x4F484D31;
+
+    /** The size of the file header, and the offset of the first segment. */
+    static final int FILE_HEADER = 64;
+
+    /** The size of a segment header, which holds its entry count. */
+    static final int SEGMENT_HEADER = 64;
+
+    /**
+     * The number of segments of all but small stores, which have
+     * fewer, so that each segment is expected to hold at least
+     * SEGMENT_ENTRIES entries.
+     */
+    static final int MIN_SEGMENTS = 16;
+
+    /** The least expected number of entries per segment, if several. */
+    static final int SEGMENT_ENTRIES = 64;
+
+    /** The maximum number of slots of a segment. */
+    static final int MAX_SLOTS = 1 << 30;
+
+    /**
+     * A segment: a hash table in one buffer, guarded by a lock.
+     */
+    static final class Segment extends StampedLock {
+        private static final long serialVersionUID = 2249069246763182397L;
+        final ByteBuffer buf;
+        final int mask;
+        final int maxCount;
+
+        Segment(ByteBuffer buf, int slots) {
+            this.buf = buf;
+            this.mask = slots - 1;
+            // keep at least one slot empty, so probe sequences end
+            this.maxCount = slots - Math.max(1, slots >>> 2);
+        }
+
+        int count() {
+            return buf.getInt(0);
+        }
+    }
+
+    final Segment[] segments;
+    final int keySize;
+    final int valueSize;
+    final int slotSize;
+    final int segmentShift;
+    final FileChannel channel;  // null for direct stores
+    volatile boolean closed;
+
+    private OffHeapHashMap(int keySize, int valueSize, Segment[] segments,
+                           FileChannel channel) {
+        this.keySize = keySize;
+        this.valueSize = valueSize;
+        this.slotSize = 4 + keySize + valueSize;
+        this.segments = segments;
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(segments.length);
+        this.channel = channel;
+    }
+
+    /**
+     * Creates a store in direct buffers, with room for the given
+     * number of entries, as described above.
+     *
+     * @param keySize the size of keys, in bytes
+     * @param valueSize the size of values, in bytes
+     * @param capacity the maximum number of entries
+     * @return a new, empty store
+     * @throws IllegalArgumentException if {@code keySize} is not positive,
+     *         {@code valueSize} is negative, or {@code capacity} is not
+     *         positive or too large
+     * @throws OutOfMemoryError if the direct memory cannot be allocated
+     */
+    public static OffHeapHashMap allocate(int keySize, int valueSize, long capacity) {
+        long[] layout = layout(keySize, valueSize, capacity);
+        int nsegs = (int) layout[0], slots = (int) layout[1];
+        int segBytes = (int) layout[2];
+        Segment[] segs = new Segment[nsegs];
+        for (int i = 0; i < nsegs; ++i)
+            segs[i] = new Segment(ByteBuffer.allocateDirect(segBytes), slots);
+        return new OffHeapHashMap(keySize, valueSize, segs, null);
+    }
+
+    /**
+     * Opens the store kept in the given file, creating it with room for
+     * the given number of entries, as described above, if the file does
+     * not exist or is empty.  An existing store is opened with its own
+     * capacity, and {@code capacity} is then ignored.
+     *
+     * @param file the store file
+     * @param keySize the size of keys, in bytes
+     * @param valueSize the size of values, in bytes
+     * @param capacity the maximum number of entries of a new store
+     * @return the store
+     * @throws IllegalArgumentException if {@code keySize} is not positive,
+     *         {@code valueSize} is negative, or {@code capacity} is not
+     *         positive or too large, or if the file holds a store with
+     *         other key or value sizes
+     * @throws IOException if an I/O error occurs, or if the file is not
+     *         empty and does not hold a store
+     */
+    public static OffHeapHashMap open(Path file, int keySize, int valueSize,
+                                      long capacity) throws IOException {
+        long[] layout = layout(keySize, valueSize, capacity);
+        FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                                          StandardOpenOption.READ,
+                                          StandardOpenOption.WRITE);
+        boolean ok = false;
+        try {
+            int nsegs, slots;
+            MappedByteBuffer hd;
+            if (ch.size() == 0L) {
+                nsegs = (int) layout[0];
+                slots = (int) layout[1];
+                hd = ch.map(FileChannel.MapMode.READ_WRITE, 0L, FILE_HEADER);
+                hd.putInt(4, 1);
+                hd.putInt(8, keySize);
+                hd.putInt(12, valueSize);
+                hd.putInt(16, nsegs);
+                hd.putInt(20, slots);
+            } else {
+                if (ch.size() < FILE_HEADER)
+                    throw new IOException("Not a store file: " + file);
+                hd = ch.map(FileChannel.MapMode.READ_WRITE, 0L, FILE_HEADER);
+                if (hd.getInt(0) != MAGIC || hd.getInt(4) != 1)
+                    throw new IOException("Not a store file: " + file);
+                if (hd.getInt(8) != keySize || hd.getInt(12) != valueSize)
+                    throw new IllegalArgumentException(
+                        "Store has key size " + hd.getInt(8) +
+                        " and value size " + hd.getInt(12));
+                nsegs = hd.getInt(16);
+                slots = hd.getInt(20);
+                if (nsegs <= 0 || (nsegs & (nsegs - 1)) != 0 ||
+                    slots <= 0 || (slots & (slots - 1)) != 0 ||
+                    SEGMENT_HEADER + (long) slots * (4 + keySize + valueSize) >
+                    Integer.MAX_VALUE)
+                    throw new IOException("Corrupt store file: " + file);
+            }
+            long segBytes = SEGMENT_HEADER + (long) slots * (4 + keySize + valueSize);
+            Segment[] segs = new Segment[nsegs];
+            for (int i = 0; i < nsegs; ++i) {
+                MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_WRITE,
+                                            FILE_HEADER + i * segBytes, segBytes);
+                segs[i] = new Segment(b, slots);
+            }
+            // The magic number goes last, to mark a completely created file
+            if (hd.getInt(0) != MAGIC) {
+                hd.putInt(0, MAGIC);
+                hd.force();
+            }
+            OffHeapHashMap m = new OffHeapHashMap(keySize, valueSize, segs, ch);
+            ok = true;
+            return m;
+        } finally {
+            if (!ok)
+                ch.close();
+        }
+    }
+
+    /**
+     * Returns {segments, slots per segment, bytes per segment} for the
+     * given sizes and capacity.
+     */
+    static long[] layout(int keySize, int valueSize, long capacity) {
+        if (keySize <= 0 || valueSize < 0 || capacity <= 0L ||
+            (long) keySize + valueSize > Integer.MAX_VALUE / 2)
+            throw new IllegalArgumentException();
+        long slotSize = 4L + keySize + valueSize;
+        int nsegs = MIN_SEGMENTS;
+        while (nsegs > 1 && capacity / nsegs < SEGMENT_ENTRIES)
+            nsegs >>>= 1;
+        for (;;) {
+            long per = (capacity + nsegs - 1) / nsegs;
+            if (nsegs > 1)      // allow for keys hashing unevenly to segments
+                per += (long) Math.ceil(5.0 * Math.sqrt((double) per));
+            long need = per + (per >>> 1) + 1;  // keeps the load below 3/4
+            if (need <= MAX_SLOTS) {
+                int slots = Integer.highestOneBit((int) need - 1) << 1;
+                long segBytes = SEGMENT_HEADER + slots * slotSize;
+                if (segBytes <= Integer.MAX_VALUE)
+                    return new long[] { nsegs, slots, segBytes };
+            }
+            if (nsegs >= 1 << 20)
+                throw new IllegalArgumentException("Capacity too large: " + capacity);
+            nsegs <<= 1;
+        }
+    }
+
+    /* ---------------- Byte helpers -------------- */
+
+    /**
+     * Returns the eight bytes of {@code b} at index {@code i} as a
+     * big-endian long.
+     */
+    static long bigEndianLong(ByteBuffer b, int i) {
+        long v = b.getLong(i);
+        return (b.order() == ByteOrder.BIG_ENDIAN) ? v : Long.reverseBytes(v);
+    }
+
+    /**
+     * Copies {@code len} bytes from index {@code from} of {@code src}
+     * to index {@code to} of {@code dst}.
+     */
+    static void copy(ByteBuffer src, int from, ByteBuffer dst, int to, int len) {
+        int i = 0;
+        if (src.order() == dst.order()) {
+            for (; i + 8 <= len; i += 8)
+                dst.putLong(to + i, src.getLong(from + i));
+        } else {
+            for (; i + 8 <= len; i += 8)
+                dst.putLong(to + i, Long.reverseBytes(src.getLong(from + i)));
+        }
+        for (; i < len; ++i)
+            dst.put(to + i, src.get(from + i));
+    }
+
+    /**
+     * Returns true if the key at index {@code off} of segment buffer
+     * {@code b} equals the key at index {@code kp} of {@code key}.
+     */
+    final boolean keyEquals(ByteBuffer b, int off, ByteBuffer key, int kp) {
+        int n = keySize, i = 0;
+        for (; i + 8 <= n; i += 8) {
+            if (bigEndianLong(b, off + i) != bigEndianLong(key, kp + i))
+                return false;
+        }
+        for (; i < n; ++i) {
+            if (b.get(off + i) != key.get(kp + i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Hashes the key at index {@code kp} of {@code key}.  The result
+     * depends only on the bytes of the key, so is the same in every run.
+     */
+    final long hash(ByteBuffer key, int kp) {
+        int n = keySize, i = 0;
+        long h = 0x9E3779B97F4A7C15L * n;
+        for (; i + 8 <= n; i += 8)
+            h = Long.rotateLeft(h ^ mix(bigEndianLong(key, kp + i)), 27) * 5L + 0x52DCE729L;
+        if (i < n) {
+            long t = 0L;
+            for (; i < n; ++i)
+                t = (t << 8) | (key.get(kp + i) & 0xFFL);
+            h = Long.rotateLeft(h ^ mix(t), 27) * 5L + 0x52DCE729L;
+        }
+        return mix(h);
+    }
+
+    /** The 64-bit finalizer of MurmurHash3. */
+    static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+
+    final Segment segmentFor(long h) {
+        return segments[(int) ((h >>> 32) >>> segmentShift)]; // 0 if only one
+    }
+
+    /**
+     * Returns the offset of the slot of the key, or -1 if absent.
+     */
+    final int find(Segment s, int tag, ByteBuffer key, int kp) {
+        ByteBuffer b = s.buf;
+        int mask = s.mask, sz = slotSize;
+        for (int i = (tag >>> 1) & mask, n = 0; n <= mask; ++n, i = (i + 1) & mask) {
+            int off = SEGMENT_HEADER + i * sz;
+            int t = b.getInt(off);
+            if (t == 0)
+                break;
+            if (t == tag && keyEquals(b, off + 4, key, kp))
+                return off;
+        }
+        return -1;
+    }
+
+    final int checkKey(ByteBuffer key) {
+        if (key.remaining() < keySize)
+            throw new BufferUnderflowException();
+        return key.position();
+    }
+
+    final void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("Store is closed");
+    }
+
+    /* ---------------- Retrieval -------------- */
+
+    /**
+     * Copies the value mapped to the given key into the destination
+     * buffer, and advances its position by {@link #valueSize}.
+     *
+     * @param key the buffer holding the key at its position
+     * @param dst the buffer to copy the value into
+     * @return {@code true} if the key was found, in which case the value
+     *         was copied, {@code false} if it was not, in which case the
+     *         destination is unchanged
+     * @throws BufferUnderflowException if fewer than {@link #keySize}
+     *         bytes remain in {@code key}
+     * @throws BufferOverflowException if fewer than {@link #valueSize}
+     *         bytes remain in {@code dst}
+     * @throws java.nio.ReadOnlyBufferException if {@code dst} is read-only
+     * @throws IllegalStateException if this store is closed
+     */
+    public boolean get(ByteBuffer key, ByteBuffer dst) {
+        int kp = checkKey(key);
+        if (dst.remaining() < valueSize)
+            throw new BufferOverflowException();
+        checkOpen();
+        long h = hash(key, kp);
+        int tag = (int) h | 1, dp = dst.position();
+        Segment s = segmentFor(h);
+        long stamp = s.tryOptimisticRead();
+        if (stamp != 0L) {
+            int off = find(s, tag, key, kp);
+            if (off < 0) {
+                if (s.validate(stamp))
+                    return false;
+            }
+            else {
+                // copy via a scratch buffer, leaving dst unchanged unless valid
+                ByteBuffer v = ByteBuffer.allocate(valueSize).order(s.buf.order());
+                copy(s.buf, off + 4 + keySize, v, 0, valueSize);
+                if (s.validate(stamp)) {
+                    copy(v, 0, dst, dp, valueSize);
+                    dst.position(dp + valueSize);
+                    return true;
+                }
+            }
+        }
+        stamp = s.readLock();
+        try {
+            int off = find(s, tag, key, kp);
+            if (off < 0)
+                return false;
+            copy(s.buf, off + 4 + keySize, dst, dp, valueSize);
+            dst.position(dp + valueSize);
+            return true;
+        } finally {
+            s.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns a copy of the value mapped to the given key, or {@code null}
+     * if there is none.
+     *
+     * @param key the key
+     * @return the value, or {@code null}
+     * @throws IllegalArgumentException if the key is not {@link #keySize}
+     *         bytes long
+     * @throws IllegalStateException if this store is closed
+     */
+    public byte[] get(byte[] key) {
+        byte[] v = new byte[valueSize];
+        return get(wrapKey(key), ByteBuffer.wrap(v)) ? v : null;
+    }
+
+    /**
+     * Returns {@code true} if this store holds a value for the given key.
+     *
+     * @param key the buffer holding the key at its position
+     * @return {@code true} if the key was found
+     * @throws BufferUnderflowException if fewer than {@link #keySize}
+     *         bytes remain in {@code key}
+     * @throws IllegalStateException if this store is closed
+     */
+    public boolean containsKey(ByteBuffer key) {
+        int kp = checkKey(key);
+        checkOpen();
+        long h = hash(key, kp);
+        int tag = (int) h | 1;
+        Segment s = segmentFor(h);
+        long stamp = s.tryOptimisticRead();
+        if (stamp != 0L) {
+            boolean found = find(s, tag, key, kp) >= 0;
+            if (s.validate(stamp))
+                return found;
+        }
+        stamp = s.readLock();
+        try {
+            return find(s, tag, key, kp) >= 0;
+        } finally {
+            s.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Returns {@code true} if this store holds a value for the given key.
+     *
+     * @param key the key
+     * @return {@code true} if the key was found
+     * @throws IllegalArgumentException if the key is not {@link #keySize}
+     *         bytes long
+     * @throws IllegalStateException if this store is closed
+     */
+    public boolean containsKey(byte[] key) {
+        return containsKey(wrapKey(key));
+    }
+
+    /* ---------------- Updates -------------- */
+
+    /**
+     * Implements the put methods.
+     *
+     * @param prev if non-null, receives the previous value, if any
+     * @return true if the key was absent
+     */
+    final boolean putVal(ByteBuffer key, ByteBuffer value, boolean onlyIfAbsent,
+                         ByteBuffer prev) {
+        int kp = checkKey(key);
+        if (value.remaining() < valueSize)
+            throw new BufferUnderflowException();
+        long h = hash(key, kp);
+        int tag = (int) h | 1, vp = value.position();
+        Segment s = segmentFor(h);
+        long stamp = s.writeLock();
+        try {
+            checkOpen();
+            ByteBuffer b = s.buf;
+            int mask = s.mask, sz = slotSize;
+            for (int i = (tag >>> 1) & mask, n = 0; n <= mask; ++n, i = (i + 1) & mask) {
+                int off = SEGMENT_HEADER + i * sz;
+                int t = b.getInt(off);
+                if (t == 0) {
+                    int c = b.getInt(0);
+                    if (c >= s.maxCount)
+                        throw new IllegalStateException("Store is full");
+                    copy(key, kp, b, off + 4, keySize);
+                    copy(value, vp, b, off + 4 + keySize, valueSize);
+                    b.putInt(off, tag);
+                    b.putInt(0, c + 1);
+                    return true;
+                }
+                if (t == tag && keyEquals(b, off + 4, key, kp)) {
+                    if (prev != null)
+                        copy(b, off + 4 + keySize, prev, 0, valueSize);
+                    if (!onlyIfAbsent)
+                        copy(value, vp, b, off + 4 + keySize, valueSize);
+                    return false;
+                }
+            }
+            throw new IllegalStateException("Store is full");
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Maps the given key to the given value, replacing any previous
+     * value.
+     *
+     * @param key the buffer holding the key at its position
+     * @param value the buffer holding the value at its position
+     * @return {@code true} if the key was not previously mapped
+     * @throws BufferUnderflowException if fewer than {@link #keySize}
+     *         bytes remain in {@code key}, or fewer than {@link
+     *         #valueSize} in {@code value}
+     * @throws IllegalStateException if the key is absent and this store is
+     *         full, or if this store is closed
+     */
+    public boolean put(ByteBuffer key, ByteBuffer value) {
+        return putVal(key, value, false, null);
+    }
+
+    /**
+     * Maps the given key to the given value, replacing any previous
+     * value.
+     *
+     * @param key the key
+     * @param value the value
+     * @return a copy of the previous value, or {@code null} if the key was
+     *         not previously mapped
+     * @throws IllegalArgumentException if the key or value is not of the
+     *         right size
+     * @throws IllegalStateException if the key is absent and this store is
+     *         full, or if this store is closed
+     */
+    public byte[] put(byte[] key, byte[] value) {
+        byte[] prev = new byte[valueSize];
+        return putVal(wrapKey(key), wrapValue(value), false, ByteBuffer.wrap(prev))
+            ? null : prev;
+    }
+
+    /**
+     * Maps the given key to the given value, unless it is already mapped.
+     *
+     * @param key the buffer holding the key at its position
+     * @param value the buffer holding the value at its position
+     * @return {@code true} if the key was not previously mapped, and the
+     *         mapping was added
+     * @throws BufferUnderflowException if fewer than {@link #keySize}
+     *         bytes remain in {@code key}, or fewer than {@link
+     *         #valueSize} in {@code value}
+     * @throws IllegalStateException if the key is absent and this store is
+     *         full, or if this store is closed
+     */
+    public boolean putIfAbsent(ByteBuffer key, ByteBuffer value) {
+        return putVal(key, value, true, null);
+    }
+
+    /**
+     * Maps the given key to the given value, unless it is already mapped.
+     *
+     * @param key the key
+     * @param value the value
+     * @return a copy of the current value, or {@code null} if the key was
+     *         not previously mapped, and the mapping was added
+     * @throws IllegalArgumentException if the key or value is not of the
+     *         right size
+     * @throws IllegalStateException if the key is absent and this store is
+     *         full, or if this store is closed
+     */
+    public byte[] putIfAbsent(byte[] key, byte[] value) {
+        byte[] prev = new byte[valueSize];
+        return putVal(wrapKey(key), wrapValue(value), true, ByteBuffer.wrap(prev))
+            ? null : prev;
+    }
+
+    /**
+     * Implements the remove methods.
+     *
+     * @param prev if non-null, receives the removed value, if any
+     * @return true if the key was present
+     */
+    final boolean removeVal(ByteBuffer key, ByteBuffer prev) {
+        int kp = checkKey(key);
+        long h = hash(key, kp);
+        int tag = (int) h | 1;
+        Segment s = segmentFor(h);
+        long stamp = s.writeLock();
+        try {
+            checkOpen();
+            int off = find(s, tag, key, kp);
+            if (off < 0)
+                return false;
+            ByteBuffer b = s.buf;
+            if (prev != null)
+                copy(b, off + 4 + keySize, prev, 0, valueSize);
+            // Shift back the entries of the probe sequence that follows
+            int mask = s.mask, sz = slotSize;
+            int i = (off - SEGMENT_HEADER) / sz;
+            for (int j = i;;) {
+                j = (j + 1) & mask;
+                int joff = SEGMENT_HEADER + j * sz;
+                int t = b.getInt(joff);
+                if (t == 0)
+                    break;
+                int k = (t >>> 1) & mask;
+                // leave entries whose home slot is cyclically in (i, j]
+                if ((i <= j) ? (i < k && k <= j) : (i < k || k <= j))
+                    continue;
+                copy(b, joff, b, SEGMENT_HEADER + i * sz, sz);
+                i = j;
+            }
+            b.putInt(SEGMENT_HEADER + i * sz, 0);
+            b.putInt(0, b.getInt(0) - 1);
+            return true;
+        } finally {
+            s.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the mapping of the given key, if any.
+     *
+     * @param key the buffer holding the key at its position
+     * @return {@code true} if the key was mapped
+     * @throws BufferUnderflowException if fewer than {@link #keySize}
+     *         bytes remain in {@code key}
+     * @throws IllegalStateException if this store is closed
+     */
+    public boolean remove(ByteBuffer key) {
+        return removeVal(key, null);
+    }
+
+    /**
+     * Removes the mapping of the given key, if any.
+     *
+     * @param key the key
+     * @return a copy of the removed value, or {@code null} if the key was
+     *         not mapped
+     * @throws IllegalArgumentException if the key is not {@link #keySize}
+     *         bytes long
+     * @throws IllegalStateException if this store is closed
+     */
+    public byte[] remove(byte[] key) {
+        byte[] prev = new byte[valueSize];
+        return removeVal(wrapKey(key), ByteBuffer.wrap(prev)) ? prev : null;
+    }
+
+    /**
+     * Removes all of the mappings from this store.
+     *
+     * @throws IllegalStateException if this store is closed
+     */
+    public void clear() {
+        for (Segment s : segments) {
+            long stamp = s.writeLock();
+            try {
+                checkOpen();
+                ByteBuffer b = s.buf;
+                if (b.getInt(0) != 0) {
+                    for (int i = 0, sz = slotSize; i <= s.mask; ++i)
+                        b.putInt(SEGMENT_HEADER + i * sz, 0);
+                    b.putInt(0, 0);
+                }
+            } finally {
+                s.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /* ---------------- Bulk operations -------------- */
+
+    /**
+     * Performs the given action for each entry of this store.  The
+     * action receives read-only buffers whose remaining bytes are the
+     * key and the value of the entry; they are only valid during the
+     * call.  Each segment is read-locked while its entries are
+     * processed, so the action must not update this store.
+     *
+     * @param action the action
+     * @throws NullPointerException if the action is null
+     * @throws IllegalStateException if this store is closed
+     */
+    public void forEach(BiConsumer<? super ByteBuffer, ? super ByteBuffer> action) {
+        if (action == null)
+            throw new NullPointerException();
+        for (Segment s : segments) {
+            long stamp = s.readLock();
+            try {
+                checkOpen();
+                if (s.count() == 0)
+                    continue;
+                ByteBuffer k = s.buf.asReadOnlyBuffer(), v = s.buf.asReadOnlyBuffer();
+                for (int i = 0, sz = slotSize; i <= s.mask; ++i) {
+                    int off = SEGMENT_HEADER + i * sz;
+                    if (s.buf.getInt(off) != 0) {
+                        k.limit(off + 4 + keySize).position(off + 4);
+                        v.limit(off + 4 + keySize + valueSize).position(off + 4 + keySize);
+                        action.accept(k, v);
+                    }
+                }
+            } finally {
+                s.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries in this store.  If there are updates
+     * in progress, the result reflects each segment at a possibly
+     * different time.
+     *
+     * @return the number of entries
+     */
+    public long size() {
+        long n = 0L;
+        for (Segment s : segments) {
+            long stamp = s.tryOptimisticRead();
+            int c = s.count();
+            if (!s.validate(stamp)) {
+                stamp = s.readLock();
+                try {
+                    c = s.count();
+                } finally {
+                    s.unlockRead(stamp);
+                }
+            }
+            n += c;
+        }
+        return n;
+    }
+
+    /**
+     * Returns {@code true} if this store holds no entries.
+     *
+     * @return {@code true} if this store holds no entries
+     */
+    public boolean isEmpty() {
+        return size() == 0L;
+    }
+
+    /**
+     * Returns the maximum number of entries of this store.
+     *
+     * @return the capacity
+     */
+    public long capacity() {
+        return (long) segments.length * segments[0].maxCount;
+    }
+
+    /**
+     * Returns the size of keys, in bytes.
+     *
+     * @return the key size
+     */
+    public int keySize() {
+        return keySize;
+    }
+
+    /**
+     * Returns the size of values, in bytes.
+     *
+     * @return the value size
+     */
+    public int valueSize() {
+        return valueSize;
+    }
+
+    /**
+     * Writes the updates of a store kept in a file to the file, as by
+     * {@link MappedByteBuffer#force}.  Does nothing for a store kept in
+     * direct buffers.
+     *
+     * @throws IllegalStateException if this store is closed
+     */
+    public void force() {
+        if (channel == null)
+            return;
+        for (Segment s : segments) {
+            long stamp = s.readLock();
+            try {
+                checkOpen();
+                ((MappedByteBuffer) s.buf).force();
+            } finally {
+                s.unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Closes this store.  The updates of a store kept in a file are
+     * written to it first, as by {@link #force}.  The memory of the
+     * store is released when this object becomes unreachable; once
+     * closed, any operation on the store other than {@code close}
+     * throws {@link IllegalStateException}.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    public void close() throws IOException {
+        // Hold every lock while closing, so that no update is lost
+        long[] stamps = new long[segments.length];
+        for (int i = 0; i < segments.length; ++i)
+            stamps[i] = segments[i].writeLock();
+        try {
+            if (!closed) {
+                closed = true;
+                if (channel != null) {
+                    for (Segment s : segments)
+                        ((MappedByteBuffer) s.buf).force();
+                    channel.close();
+                }
+            }
+        } finally {
+            for (int i = 0; i < segments.length; ++i)
+                segments[i].unlockWrite(stamps[i]);
+        }
+    }
+
+    final ByteBuffer wrapKey(byte[] key) {
+        if (key.length != keySize)
+            throw new IllegalArgumentException("Key size " + key.length);
+        return ByteBuffer.wrap(key);
+    }
+
+    final ByteBuffer wrapValue(byte[] value) {
+        if (value.length != valueSize)
+            throw new IllegalArgumentException("Value size " + value.length);
+        return ByteBuffer.wrap(value);
+    }
+}
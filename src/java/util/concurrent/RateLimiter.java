@@ -0,0 +1,569 @@
+package java.util.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A synchronizer that hands out permits at a configurable rate, for
+ * example to throttle the calls made to a remote service.  Where a
+ * {@link Semaphore} bounds the number of concurrent accesses, a rate
+ * limiter bounds the number of accesses per second, as a token bucket
+ * that is refilled continuously: each {@link #acquire} blocks, if
+ * necessary, until the permits it asks for are available, and then
+ * takes them.  Permits are not released.
+ *
+ * <p>Permits are handed out in the order they are asked for, each at
+ * a time computed when it is asked for: an acquiring thread
+ * <em>reserves</em> its permits, which fixes the time at which it may
+ * proceed, and parks until exactly that time.  There is no refill
+ * thread, and no polling; threads waiting for permits wake in the
+ * order in which they reserved them.  Methods {@link #reserve} and
+ * {@link #tryReserve} reserve permits without waiting, returning the
+ * time until the caller may proceed, for use by callers that wait by
+ * other means, such as by scheduling a task.
+ *
+ * <p>The permits of an acquisition are paid for by the waits of the
+ * <em>following</em> acquisitions, so that an acquisition of many
+ * permits after a quiet period proceeds at once, and the next one
+ * waits for them.  A rate limiter also stores the permits that were
+ * not used while it was idle, up to a limit, and hands them out before
+ * making callers wait.  How it does so depends on its mode:
+ *
+ * <ul>
+ * <li>A <em>bursty</em> rate limiter, created with {@link
+ * #RateLimiter(double)} or {@link #RateLimiter(double, double)}, stores
+ * up to a given number of seconds' worth of permits, and hands them
+ * out at once: after an idle period, a burst of calls proceeds without
+ * waiting, before the rate is enforced.
+ * <li>A <em>warming-up</em> rate limiter, created with {@link
+ * #RateLimiter(double, long, TimeUnit)}, treats stored permits as a
+ * sign that the resource behind it is cold, and hands them out
+ * <em>slower</em> than the stable rate: after an idle period, the rate
+ * increases gradually to the stable rate over the warm-up period, as
+ * it does after construction.  This suits resources such as caches or
+ * connection pools that need time to warm up.
+ * </ul>
+ *
+ * <p>The rate may be changed at any time with {@link #setRate}; the
+ * waits of permits already reserved are not affected.
+ *
+ * <p><b>Sample usage:</b> Here is a class that sends at most two
+ * requests per second:
+ * <pre> {@code
+ * class ThrottledClient {
+ *   private final RateLimiter limiter = new RateLimiter(2.0);
+ *
+ *   void send(Request r) throws InterruptedException {
+ *     limiter.acquire();
+ *     doSend(r);
+ *   }
+ * }}</pre>
+ *
+ * @since 1.8
+ */
+public class RateLimiter {
+
+    /*
+     * Overview:
+     *
+     * The state is that of the "smooth" token bucket: the time
+     * nextFreeNanos (in System.nanoTime units) at which the next
+     * permit may be handed out, and the number of permits stored while
+     * no one asked for them.  Reserving permits first "resyncs",
+     * converting the time elapsed since nextFreeNanos, if any, into
+     * stored permits, one per coolDownInterval, up to maxPermits.  It
+     * then returns nextFreeNanos as the time the caller may proceed,
+     * and pushes nextFreeNanos back by the cost of the permits: the
+     * stable interval for each fresh permit, and for stored permits
+     * nothing in bursty mode, or in warm-up mode the area under a
+     * line going from the stable interval at thresholdPermits to
+     * coldFactor times it at maxPermits, so that a full bucket
+     * takes warmupNanos to drain.  As callers proceed at the
+     * previous value of nextFreeNanos, each acquisition is paid for
+     * by the next one.
+     *
+     * All of this is done under a lock, held for a few arithmetic
+     * operations.  Waiting is then done outside the lock, by parking
+     * until the reserved time; as reserved times increase in the
+     * order of reservations, so do wakeups.  Interrupted or timed-out
+     * waits do not give their permits back, which would require
+     * undoing the reservations made after them.
+     */
+
+    /** The factor by which the interval is stretched in cold warm-up mode */
+    private static final double COLD_FACTOR = 3.0;
+
+    /** Guards all fields below */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** The warm-up period, or 0 in bursty mode */
+    private final long warmupNanos;
+
+    /** In bursty mode, the number of seconds of permits stored */
+    private final double maxBurstSeconds;
+
+    /** The interval between permits at the stable rate */
+    private double stableIntervalNanos;
+
+    /** The number of permits currently stored */
+    private double storedPermits;
+
+    /** The maximum number of permits stored */
+    private double maxPermits;
+
+    /** In warm-up mode, the number of stored permits above which it is cold */
+    private double thresholdPermits;
+
+    /** In warm-up mode, the growth of the interval per stored permit */
+    private double slope;
+
+    /** The time at which the next permit may be handed out */
+    private long nextFreeNanos;
+
+    /**
+     * Creates a bursty {@code RateLimiter} with the given rate, which
+     * stores up to one second's worth of permits.
+     *
+     * @param permitsPerSecond the rate of permits
+     * @throws IllegalArgumentException if {@code permitsPerSecond} is
+     *         not positive
+     */
+    public RateLimiter(double permitsPerSecond) {
+        this(permitsPerSecond, 1.0);
+    }
+
+    /**
+     * Creates a bursty {@code RateLimiter} with the given rate, which
+     * stores up to the given number of seconds' worth of permits.
+     *
+     * @param permitsPerSecond the rate of permits
+     * @param maxBurstSeconds the number of seconds' worth of permits
+     *        stored while idle, or zero to store none
+     * @throws IllegalArgumentException if {@code permitsPerSecond} is
+     *         not positive, or {@code maxBurstSeconds} is negative
+     */
+    public RateLimiter(double permitsPerSecond, double maxBurstSeconds) {
+        if (!(maxBurstSeconds >= 0.0))
+            throw new IllegalArgumentException();
+        this.warmupNanos = 0L;
+        this.maxBurstSeconds = maxBurstSeconds;
+        this.nextFreeNanos = System.nanoTime();
+        setRate(permitsPerSecond);
+    }
+
+    /**
+     * Creates a warming-up {@code RateLimiter} with the given stable
+     * rate, which increases its rate from a third of the stable rate
+     * to the stable rate over the given warm-up period, starting cold.
+     *
+     * @param permitsPerSecond the stable rate of permits
+     * @param warmupPeriod the time to warm up from cold to the stable
+     *        rate
+     * @param unit the time unit of the {@code warmupPeriod} argument
+     * @throws IllegalArgumentException if {@code permitsPerSecond} or
+     *         {@code warmupPeriod} is not positive
+     * @throws NullPointerException if {@code unit} is null
+     */
+    public RateLimiter(double permitsPerSecond, long warmupPeriod,
+                       TimeUnit unit) {
+        if (unit == null)
+            throw new NullPointerException();
+        if (warmupPeriod <= 0L)
+            throw new IllegalArgumentException();
+        this.warmupNanos = unit.toNanos(warmupPeriod);
+        this.maxBurstSeconds = 0.0;
+        this.nextFreeNanos = System.nanoTime();
+        setRate(permitsPerSecond);
+    }
+
+    /**
+     * Sets the stable rate of this rate limiter.  Permits already
+     * reserved are not affected: a thread waiting for permits proceeds
+     * at the time computed from the rate when it asked for them.
+     * The permits stored are scaled to the new maximum, in proportion.
+     *
+     * @param permitsPerSecond the rate of permits
+     * @throws IllegalArgumentException if {@code permitsPerSecond} is
+     *         not positive
+     */
+    public void setRate(double permitsPerSecond) {
+        if (!(permitsPerSecond > 0.0) || Double.isInfinite(permitsPerSecond))
+            throw new IllegalArgumentException();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            resync(System.nanoTime());
+            double interval = TimeUnit.SECONDS.toNanos(1L) / permitsPerSecond;
+            double oldMaxPermits = maxPermits;
+            stableIntervalNanos = interval;
+            if (warmupNanos == 0L) {
+                maxPermits = maxBurstSeconds * permitsPerSecond;
+                storedPermits = (oldMaxPermits == 0.0) ? 0.0 :
+                    storedPermits * maxPermits / oldMaxPermits;
+            } else {
+                double coldInterval = interval * COLD_FACTOR;
+                thresholdPermits = 0.5 * warmupNanos / interval;
+                maxPermits = thresholdPermits +
+                    2.0 * warmupNanos / (interval + coldInterval);
+                slope = (coldInterval - interval) /
+                    (maxPermits - thresholdPermits);
+                storedPermits = (oldMaxPermits == 0.0) ? maxPermits :
+                    storedPermits * maxPermits / oldMaxPermits;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the stable rate of this rate limiter.
+     *
+     * @return the stable rate, in permits per second
+     */
+    public double getRate() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return TimeUnit.SECONDS.toNanos(1L) / stableIntervalNanos;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Acquires a permit from this rate limiter, blocking until it is
+     * available, or the thread is {@linkplain Thread#interrupt
+     * interrupted}.
+     *
+     * <p>If the current thread has its interrupted status set on entry
+     * to this method, no permit is taken.  If it is interrupted while
+     * waiting, the permit remains taken.  In both cases {@link
+     * InterruptedException} is thrown and the current thread's
+     * interrupted status is cleared.
+     *
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * Acquires the given number of permits from this rate limiter,
+     * blocking until they are available, or the thread is {@linkplain
+     * Thread#interrupt interrupted}, as for {@link #acquire()}.
+     *
+     * @param permits the number of permits to acquire
+     * @throws InterruptedException if the current thread is interrupted
+     * @throws IllegalArgumentException if {@code permits} is not
+     *         positive
+     */
+    public void acquire(int permits) throws InterruptedException {
+        if (permits <= 0) throw new IllegalArgumentException();
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        awaitNanos(reserveEarliest(permits, System.nanoTime()));
+    }
+
+    /**
+     * Acquires a permit from this rate limiter, blocking until it is
+     * available.  If the current thread is interrupted while waiting,
+     * it continues to wait, and its interrupted status is set on
+     * return.
+     */
+    public void acquireUninterruptibly() {
+        acquireUninterruptibly(1);
+    }
+
+    /**
+     * Acquires the given number of permits from this rate limiter,
+     * blocking until they are available, as for {@link
+     * #acquireUninterruptibly()}.
+     *
+     * @param permits the number of permits to acquire
+     * @throws IllegalArgumentException if {@code permits} is not
+     *         positive
+     */
+    public void acquireUninterruptibly(int permits) {
+        if (permits <= 0) throw new IllegalArgumentException();
+        long deadline = reserveEarliest(permits, System.nanoTime());
+        boolean interrupted = false;
+        long nanos;
+        while ((nanos = deadline - System.nanoTime()) > 0L) {
+            if (Thread.interrupted())
+                interrupted = true;     // parkNanos would not block
+            else
+                LockSupport.parkNanos(this, nanos);
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Acquires a permit from this rate limiter, only if it is
+     * available at the time of invocation.
+     *
+     * @return {@code true} if a permit was acquired and {@code false}
+     *         otherwise
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Acquires the given number of permits from this rate limiter, only
+     * if they are available at the time of invocation.
+     *
+     * @param permits the number of permits to acquire
+     * @return {@code true} if the permits were acquired and {@code false}
+     *         otherwise
+     * @throws IllegalArgumentException if {@code permits} is not
+     *         positive
+     */
+    public boolean tryAcquire(int permits) {
+        if (permits <= 0) throw new IllegalArgumentException();
+        return tryReserveEarliest(permits, 0L, System.nanoTime()) != Long.MIN_VALUE;
+    }
+
+    /**
+     * Acquires a permit from this rate limiter, if it becomes available
+     * within the given waiting time, as for {@link #tryAcquire(int,
+     * long, TimeUnit)}.
+     *
+     * @param timeout the maximum time to wait for a permit
+     * @param unit the time unit of the {@code timeout} argument
+     * @return {@code true} if a permit was acquired and {@code false}
+     *         if it would not be available within the waiting time
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        return tryAcquire(1, timeout, unit);
+    }
+
+    /**
+     * Acquires the given number of permits from this rate limiter, if
+     * they become available within the given waiting time.  Whether
+     * they do is known at the time of invocation: if they do, this
+     * method reserves them and waits until they are available, and
+     * otherwise it returns {@code false} at once, without waiting.
+     *
+     * <p>If the current thread has its interrupted status set on entry
+     * to this method, no permits are taken.  If it is interrupted while
+     * waiting, the permits remain taken.  In both cases {@link
+     * InterruptedException} is thrown and the current thread's
+     * interrupted status is cleared.
+     *
+     * @param permits the number of permits to acquire
+     * @param timeout the maximum time to wait for the permits
+     * @param unit the time unit of the {@code timeout} argument
+     * @return {@code true} if the permits were acquired and {@code false}
+     *         if they would not be available within the waiting time
+     * @throws InterruptedException if the current thread is interrupted
+     * @throws IllegalArgumentException if {@code permits} is not
+     *         positive
+     */
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (permits <= 0) throw new IllegalArgumentException();
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        long deadline = tryReserveEarliest(permits, unit.toNanos(timeout),
+                                           System.nanoTime());
+        if (deadline == Long.MIN_VALUE)
+            return false;
+        awaitNanos(deadline);
+        return true;
+    }
+
+    /**
+     * Reserves the given number of permits from this rate limiter,
+     * without waiting, returning the time until they are available.
+     * The caller must not proceed before this time has elapsed; for
+     * example, it may schedule its access after this delay.
+     *
+     * @param permits the number of permits to reserve
+     * @return the time until the permits are available, in nanoseconds,
+     *         or 0 if they are available now
+     * @throws IllegalArgumentException if {@code permits} is not
+     *         positive
+     */
+    public long reserve(int permits) {
+        if (permits <= 0) throw new IllegalArgumentException();
+        long now = System.nanoTime();
+        return Math.max(reserveEarliest(permits, now) - now, 0L);
+    }
+
+    /**
+     * Reserves the given number of permits from this rate limiter, only
+     * if they are available within the given time, without waiting,
+     * returning the time until they are available.
+     *
+     * @param permits the number of permits to reserve
+     * @param timeout the maximum time until the permits are available
+     * @param unit the time unit of the {@code timeout} argument
+     * @return the time until the permits are available, in nanoseconds,
+     *         or 0 if they are available now, or -1 if they would not be
+     *         available within the given time, in which case none are
+     *         reserved
+     * @throws IllegalArgumentException if {@code permits} is not
+     *         positive
+     */
+    public long tryReserve(int permits, long timeout, TimeUnit unit) {
+        if (permits <= 0) throw new IllegalArgumentException();
+        long now = System.nanoTime();
+        long deadline = tryReserveEarliest(permits, unit.toNanos(timeout), now);
+        return (deadline == Long.MIN_VALUE) ? -1L :
+            Math.max(deadline - now, 0L);
+    }
+
+    /**
+     * Reserves the given permits, returning the time at which they are
+     * available.
+     */
+    private long reserveEarliest(int permits, long now) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return reserveLocked(permits, now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves the given permits if they are available within the given
+     * time, returning the time at which they are, or Long.MIN_VALUE if
+     * they are not.
+     */
+    private long tryReserveEarliest(int permits, long timeoutNanos, long now) {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (nextFreeNanos - now > Math.max(timeoutNanos, 0L))
+                return Long.MIN_VALUE;
+            return reserveLocked(permits, now);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reserves the given permits, with the lock held: returns the time
+     * at which the caller may proceed, and charges the permits to the
+     * time at which the next caller may.
+     */
+    private long reserveLocked(int permits, long now) {
+        resync(now);
+        long start = nextFreeNanos;
+        double stored = Math.min(permits, storedPermits);
+        double fresh = permits - stored;
+        double cost = storedPermitsToNanos(storedPermits, stored) +
+            fresh * stableIntervalNanos;
+        // Keep nextFreeNanos comparable with nanoTime, saturating huge costs
+        long limit = (Long.MAX_VALUE >>> 1) - (start - now);
+        nextFreeNanos = start + (long)Math.min(cost, (double)limit);
+        storedPermits -= stored;
+        return start;
+    }
+
+    /**
+     * Stores the permits not handed out since nextFreeNanos, if it has
+     * passed.
+     */
+    private void resync(long now) {
+        long idle = now - nextFreeNanos;
+        if (idle > 0L) {
+            double interval = (warmupNanos == 0L) ? stableIntervalNanos :
+                warmupNanos / maxPermits;
+            storedPermits = Math.min(maxPermits,
+                                     storedPermits + idle / interval);
+            nextFreeNanos = now;
+        }
+    }
+
+    /**
+     * Returns the time charged for taking the given number of permits
+     * out of the given number stored: nothing in bursty mode, and in
+     * warm-up mode the integral of the interval over the permits taken.
+     */
+    private double storedPermitsToNanos(double stored, double take) {
+        if (warmupNanos == 0L)
+            return 0.0;
+        double nanos = 0.0;
+        double aboveThreshold = stored - thresholdPermits;
+        if (aboveThreshold > 0.0) {
+            double cold = Math.min(aboveThreshold, take);
+            nanos = cold * (permitsToInterval(aboveThreshold) +
+                            permitsToInterval(aboveThreshold - cold)) / 2.0;
+            take -= cold;
+        }
+        return nanos + take * stableIntervalNanos;
+    }
+
+    private double permitsToInterval(double permits) {
+        return stableIntervalNanos + permits * slope;
+    }
+
+    /**
+     * Parks until the given time, throwing InterruptedException if
+     * interrupted.
+     */
+    private void awaitNanos(long deadline) throws InterruptedException {
+        long nanos;
+        while ((nanos = deadline - System.nanoTime()) > 0L) {
+            LockSupport.parkNanos(this, nanos);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Returns the number of permits currently stored, which will be
+     * handed out before callers are made to wait.  This method is
+     * designed for use in monitoring of the system state, not for
+     * synchronization control.
+     *
+     * @return the number of permits stored
+     */
+    public double getStoredPermits() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            resync(System.nanoTime());
+            return storedPermits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the time until a permit asked for now would be available.
+     * This method is designed for use in monitoring of the system
+     * state, not for synchronization control.
+     *
+     * @return the time, in nanoseconds, or 0 if a permit is available now
+     */
+    public long getWaitNanos() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return Math.max(nextFreeNanos - System.nanoTime(), 0L);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a string identifying this rate limiter, as well as its
+     * state.  The state, in brackets, includes the String {@code
+     * "Rate ="} followed by the stable rate in permits per second, and
+     * the String {@code "Stored ="} followed by the number of stored
+     * permits.
+     *
+     * @return a string identifying this rate limiter, as well as its state
+     */
+    public String toString() {
+        return super.toString() + "[Rate = " + getRate() +
+            ", Stored = " + getStoredPermits() + "]";
+    }
+}
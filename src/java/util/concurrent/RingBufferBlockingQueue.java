@@ -0,0 +1,847 @@
+package java.util.concurrent;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded {@linkplain BlockingQueue blocking queue} backed by a ring
+ * buffer, in which offers and polls are lock-free (and, in the queues
+ * with a single producer or a single consumer, wait-free on that side).
+ * Like {@link ArrayBlockingQueue}, it orders elements FIFO and has a
+ * fixed capacity, but it neither takes a lock nor allocates a node per
+ * element, so it sustains much higher rates of transfer between threads
+ * that produce and consume in a steady stream.
+ *
+ * <p>Queues are created by factory methods specialized by the number of
+ * threads that may insert (<em>producers</em>) and remove
+ * (<em>consumers</em>) elements concurrently:
+ * <ul>
+ * <li>{@link #singleProducerSingleConsumer}: at most one thread at a
+ * time may insert, and at most one thread at a time may remove elements.
+ * <li>{@link #multiProducerSingleConsumer}: any number of threads may
+ * insert, and at most one thread at a time may remove elements.
+ * <li>{@link #multiProducerMultiConsumer}: any number of threads may
+ * insert and remove elements.
+ * </ul>
+ * The more restricted kinds are faster, but the restrictions are not
+ * checked: if they are violated, elements may be lost or duplicated.
+ * The methods that remove elements are {@code poll}, {@code take},
+ * {@code remove()}, {@code drainTo} and {@code clear}; {@code peek} and
+ * {@code element} may also only be called by a consumer.
+ *
+ * <p>The capacity is rounded up to a power of two.  When the queue is
+ * full or empty, the blocking methods wait according to a {@link
+ * WaitStrategy}, chosen when the queue is created, which trades the
+ * latency of handing over an element against the processor time spent
+ * waiting.
+ *
+ * <p>This queue does not permit {@code null} elements, and does not
+ * support the removal of arbitrary elements: {@link #remove(Object)},
+ * and the {@code remove} methods of its iterators, throw {@link
+ * UnsupportedOperationException}.  Iterators traverse a snapshot of the
+ * elements, taken when they are created, and never throw {@link
+ * java.util.ConcurrentModificationException}.
+ *
+ * <p>Memory consistency effects: As with other concurrent
+ * collections, actions in a thread prior to placing an object into a
+ * {@code RingBufferBlockingQueue}
+ * <a href="package-summary.html#MemoryVisibility"><i>happen-before</i></a>
+ * actions subsequent to the access or removal of that element from
+ * the {@code RingBufferBlockingQueue} in another thread.
+ *
+ * @param <E> the type of elements held in this collection
+ * @see ArrayBlockingQueue
+ * @since 1.8
+ */
+public abstract class RingBufferBlockingQueue<E> extends AbstractQueue<E>
+    implements BlockingQueue<E> {
+
+    /*
+     * All kinds of queue use the same layout: a power-of-two array of
+     * elements, indexed by ever-increasing producer and consumer
+     * indices (taken modulo the length of the array), each padded
+     * with @Contended, along with any field written mainly by the same
+     * side, to keep the two sides from sharing cache lines.
+     *
+     * In the single-consumer queues, a slot holds null when it is
+     * free.  The producer (or the producer that claimed the index by
+     * CAS, in MPSC) fills a slot with an ordered store, and the
+     * consumer empties it with an ordered store before advancing the
+     * consumer index, so that an element is never visible before its
+     * contents, and a slot is never refilled before it is emptied.
+     * In MPSC, the consumer may find the slot at its index still
+     * empty although a producer has claimed it, and then waits for
+     * the element to appear, which it does unless that producer
+     * stalls.
+     *
+     * The multi-consumer queue is Dmitry Vyukov's bounded MPMC queue:
+     * each slot has a sequence number that tells producers and
+     * consumers whether it is ready for the index they hold, and
+     * both sides claim indices by CAS.
+     *
+     * With the BLOCK strategy, waiting threads register in a count
+     * under the lock before rechecking the queue, and the other side
+     * signals after a full fence when the count is not zero, so the
+     * uncontended paths take no lock.
+     */
+
+    /**
+     * The ways in which a thread waits for a full queue to have room, or
+     * for an empty queue to have an element.  Strategies that wait
+     * actively hand over elements sooner, at the cost of occupying a
+     * processor while waiting: they are for threads that have a
+     * processor to themselves.
+     */
+    public enum WaitStrategy {
+        /**
+         * Retries continuously.  This gives the lowest latency, and
+         * occupies a processor for as long as the thread waits.
+         */
+        BUSY_SPIN,
+        /**
+         * Retries a few times, then {@linkplain Thread#yield yields}
+         * between retries.  This gives low latency, and lets other
+         * threads run if the processors are oversubscribed.
+         */
+        YIELD,
+        /**
+         * Retries, yields, then parks for increasing periods of up to
+         * about a millisecond between retries.  This uses little
+         * processor time when waits are long, at the cost of a
+         * latency of up to the parking period.
+         */
+        PARK,
+        /**
+         * Waits on a {@link Condition}, signalled by the other side.
+         * This uses no processor time while waiting, as in {@link
+         * ArrayBlockingQueue}, at the cost of a full fence on every
+         * insertion and removal, and of a lock and signal when
+         * another thread is waiting.
+         */
+        BLOCK
+    }
+
+    /** The number of retries before yielding. */
+    static final int SPIN_ROUNDS = 64;
+
+    /** The number of yields before parking. */
+    static final int YIELD_ROUNDS = 64;
+
+    /** The longest period of the PARK strategy. */
+    static final long MAX_PARK_NANOS = 1L << 20;
+
+    /** The maximum capacity. */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /** The elements */
+    final Object[] buffer;
+
+    /** buffer.length - 1 */
+    final int mask;
+
+    final WaitStrategy waitStrategy;
+
+    /** The lock and conditions of the BLOCK strategy, else null */
+    final ReentrantLock lock;
+    final Condition notEmpty;
+    final Condition notFull;
+
+    /** The index of the next element to insert */
+    @sun.misc.Contended("producer") volatile long producerIndex;
+
+    /** The number of producers waiting on notFull */
+    volatile int putWaiters;
+
+    /** The index of the next element to remove */
+    @sun.misc.Contended("consumer") volatile long consumerIndex;
+
+    /** The number of consumers waiting on notEmpty */
+    volatile int takeWaiters;
+
+    RingBufferBlockingQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || capacity > MAXIMUM_CAPACITY)
+            throw new IllegalArgumentException();
+        if (waitStrategy == null)
+            throw new NullPointerException();
+        int n = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new Object[n];
+        this.mask = n - 1;
+        this.waitStrategy = waitStrategy;
+        if (waitStrategy == WaitStrategy.BLOCK) {
+            lock = new ReentrantLock();
+            notEmpty = lock.newCondition();
+            notFull = lock.newCondition();
+        } else {
+            lock = null;
+            notEmpty = null;
+            notFull = null;
+        }
+    }
+
+    /**
+     * Creates a queue into which at most one thread at a time inserts
+     * elements, and from which at most one thread at a time removes
+     * elements.
+     *
+     * @param <E> the type of elements held in the queue
+     * @param capacity the minimum capacity of the queue
+     * @param waitStrategy how blocking methods wait
+     * @return a new queue
+     * @throws IllegalArgumentException if {@code capacity} is not
+     *         positive or greater than 2<sup>30</sup>
+     * @throws NullPointerException if {@code waitStrategy} is null
+     */
+    public static <E> RingBufferBlockingQueue<E> singleProducerSingleConsumer(
+        int capacity, WaitStrategy waitStrategy) {
+        return new SpscQueue<E>(capacity, waitStrategy);
+    }
+
+    /**
+     * Creates a queue into which any number of threads may insert
+     * elements, and from which at most one thread at a time removes
+     * elements.
+     *
+     * @param <E> the type of elements held in the queue
+     * @param capacity the minimum capacity of the queue
+     * @param waitStrategy how blocking methods wait
+     * @return a new queue
+     * @throws IllegalArgumentException if {@code capacity} is not
+     *         positive or greater than 2<sup>30</sup>
+     * @throws NullPointerException if {@code waitStrategy} is null
+     */
+    public static <E> RingBufferBlockingQueue<E> multiProducerSingleConsumer(
+        int capacity, WaitStrategy waitStrategy) {
+        return new MpscQueue<E>(capacity, waitStrategy);
+    }
+
+    /**
+     * Creates a queue into which, and from which, any number of threads
+     * may insert and remove elements.
+     *
+     * @param <E> the type of elements held in the queue
+     * @param capacity the minimum capacity of the queue
+     * @param waitStrategy how blocking methods wait
+     * @return a new queue
+     * @throws IllegalArgumentException if {@code capacity} is not
+     *         positive or greater than 2<sup>30</sup>
+     * @throws NullPointerException if {@code waitStrategy} is null
+     */
+    public static <E> RingBufferBlockingQueue<E> multiProducerMultiConsumer(
+        int capacity, WaitStrategy waitStrategy) {
+        return new MpmcQueue<E>(capacity, waitStrategy);
+    }
+
+    /* ---------------- Operations of each kind -------------- */
+
+    /** Inserts e if there is room, without signalling. */
+    abstract boolean tryOffer(Object e);
+
+    /** Removes an element, or returns null if empty, without signalling. */
+    abstract Object tryPoll();
+
+    /** Returns the head, or null if empty. */
+    abstract Object tryPeek();
+
+    /**
+     * Moves up to max elements to c, without signalling, and returns
+     * their number.  Overridden by single-consumer queues to publish
+     * the new consumer index once per batch.
+     */
+    @SuppressWarnings("unchecked")
+    int drain(Collection<? super E> c, int max) {
+        int n = 0;
+        Object e;
+        while (n < max && (e = tryPoll()) != null) {
+            c.add((E) e);
+            ++n;
+        }
+        return n;
+    }
+
+    final long slotOffset(long index) {
+        return ((long) ((int) index & mask) << ASHIFT) + ABASE;
+    }
+
+    /* ---------------- Waiting and signalling -------------- */
+
+    final boolean isFull() {
+        return producerIndex - consumerIndex > mask;
+    }
+
+    /**
+     * Waits, according to the wait strategy, for the queue to be not
+     * full (if producer) or not empty.
+     *
+     * @param round the number of previous waits of this operation
+     * @return the next round, or -1 if the deadline has passed
+     */
+    final int await(boolean producer, int round, boolean timed, long deadline)
+        throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        long nanos = 0L;
+        if (timed && (nanos = deadline - System.nanoTime()) <= 0L)
+            return -1;
+        switch (waitStrategy) {
+        case BUSY_SPIN:
+            break;
+        case YIELD:
+            if (round >= SPIN_ROUNDS)
+                Thread.yield();
+            break;
+        case PARK:
+            if (round >= SPIN_ROUNDS + YIELD_ROUNDS) {
+                int k = Math.min(round - SPIN_ROUNDS - YIELD_ROUNDS + 10, 20);
+                long p = Math.min(1L << k, MAX_PARK_NANOS);
+                LockSupport.parkNanos(this, timed ? Math.min(p, nanos) : p);
+            } else if (round >= SPIN_ROUNDS)
+                Thread.yield();
+            break;
+        default:
+            block(producer, timed, nanos);
+        }
+        return (round == Integer.MAX_VALUE) ? round : round + 1;
+    }
+
+    /**
+     * Waits on a condition until signalled, if the queue is still full
+     * (if producer) or empty after registering as a waiter.
+     */
+    private void block(boolean producer, boolean timed, long nanos)
+        throws InterruptedException {
+        final ReentrantLock lock = this.lock;
+        lock.lockInterruptibly();
+        try {
+            if (producer) {
+                putWaiters++;
+                try {
+                    if (isFull()) {
+                        if (timed)
+                            notFull.awaitNanos(nanos);
+                        else
+                            notFull.await();
+                    }
+                } finally {
+                    putWaiters--;
+                }
+            } else {
+                takeWaiters++;
+                try {
+                    if (isEmpty()) {
+                        if (timed)
+                            notEmpty.awaitNanos(nanos);
+                        else
+                            notEmpty.await();
+                    }
+                } finally {
+                    takeWaiters--;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Signals waiting consumers after n insertions (BLOCK only). */
+    final void signalNotEmpty(int n) {
+        UNSAFE.fullFence();
+        if (takeWaiters != 0) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                if (n == 1)
+                    notEmpty.signal();
+                else
+                    notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /** Signals waiting producers after n removals (BLOCK only). */
+    final void signalNotFull(int n) {
+        UNSAFE.fullFence();
+        if (putWaiters != 0) {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                if (n == 1)
+                    notFull.signal();
+                else
+                    notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /* ---------------- Queue methods -------------- */
+
+    /**
+     * Inserts the specified element at the tail of this queue if it is
+     * possible to do so immediately without exceeding the queue's capacity,
+     * returning {@code true} upon success and {@code false} if this queue
+     * is full.  This method is generally preferable to method {@link #add},
+     * which can fail to insert an element only by throwing an exception.
+     *
+     * @throws NullPointerException if the specified element is null
+     */
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+        if (!tryOffer(e))
+            return false;
+        if (lock != null)
+            signalNotEmpty(1);
+        return true;
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting
+     * for space to become available if the queue is full.
+     *
+     * @throws InterruptedException {@inheritDoc}
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void put(E e) throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        for (int round = 0; !tryOffer(e); )
+            round = await(true, round, false, 0L);
+        if (lock != null)
+            signalNotEmpty(1);
+    }
+
+    /**
+     * Inserts the specified element at the tail of this queue, waiting
+     * up to the specified wait time for space to become available if
+     * the queue is full.
+     *
+     * @throws InterruptedException {@inheritDoc}
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public boolean offer(E e, long timeout, TimeUnit unit)
+        throws InterruptedException {
+        if (e == null) throw new NullPointerException();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (int round = 0; !tryOffer(e); ) {
+            if ((round = await(true, round, true, deadline)) < 0)
+                return false;
+        }
+        if (lock != null)
+            signalNotEmpty(1);
+        return true;
+    }
+
+    public E poll() {
+        @SuppressWarnings("unchecked") E e = (E) tryPoll();
+        if (e != null && lock != null)
+            signalNotFull(1);
+        return e;
+    }
+
+    public E take() throws InterruptedException {
+        Object e;
+        for (int round = 0; (e = tryPoll()) == null; )
+            round = await(false, round, false, 0L);
+        if (lock != null)
+            signalNotFull(1);
+        @SuppressWarnings("unchecked") E x = (E) e;
+        return x;
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Object e;
+        for (int round = 0; (e = tryPoll()) == null; ) {
+            if ((round = await(false, round, true, deadline)) < 0)
+                return null;
+        }
+        if (lock != null)
+            signalNotFull(1);
+        @SuppressWarnings("unchecked") E x = (E) e;
+        return x;
+    }
+
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return (E) tryPeek();
+    }
+
+    /**
+     * Returns the number of elements in this queue.  The result is
+     * exact when no elements are being inserted or removed, and
+     * otherwise a value the size had while the method ran.
+     *
+     * @return the number of elements in this queue
+     */
+    public int size() {
+        for (;;) {
+            long c = consumerIndex;
+            long p = producerIndex;
+            if (c == consumerIndex)
+                return (int) Math.max(0L, Math.min(p - c, mask + 1L));
+        }
+    }
+
+    public boolean isEmpty() {
+        return producerIndex == consumerIndex;
+    }
+
+    /**
+     * Returns the number of additional elements that this queue can
+     * ideally (in the absence of memory or resource constraints) accept
+     * without blocking.  This is the capacity of the queue less its
+     * current {@code size}.
+     */
+    public int remainingCapacity() {
+        return mask + 1 - size();
+    }
+
+    /**
+     * Not supported: ring buffers only remove elements at their head.
+     *
+     * @throws UnsupportedOperationException always
+     */
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Removes the elements that this queue holds when the method is
+     * called.  Elements inserted concurrently may remain.
+     */
+    public void clear() {
+        int n = 0;
+        for (int k = size(); k > 0 && tryPoll() != null; --k)
+            ++n;
+        if (n > 0 && lock != null)
+            signalNotFull(n);
+    }
+
+    /**
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most the given number of available elements from this
+     * queue and adds them to the given collection.  Elements are removed
+     * in batches, publishing the progress of a single consumer once per
+     * batch rather than once per element.
+     *
+     * @throws UnsupportedOperationException {@inheritDoc}
+     * @throws ClassCastException            {@inheritDoc}
+     * @throws NullPointerException          {@inheritDoc}
+     * @throws IllegalArgumentException      {@inheritDoc}
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null)
+            throw new NullPointerException();
+        if (c == this)
+            throw new IllegalArgumentException();
+        if (maxElements <= 0)
+            return 0;
+        int n = drain(c, maxElements);
+        if (n > 0 && lock != null)
+            signalNotFull(n);
+        return n;
+    }
+
+    /**
+     * Returns an array containing the elements of this queue, in order,
+     * as they were at some point while the method ran.
+     *
+     * @return an array containing the elements in this queue
+     */
+    public Object[] toArray() {
+        Object[] a = new Object[Math.max(size(), 16)];
+        int n = 0;
+        long c = consumerIndex, p = producerIndex;
+        for (long i = c; i < p; ++i) {
+            Object e = UNSAFE.getObjectVolatile(buffer, slotOffset(i));
+            // If the consumers passed i, e may be from a later lap
+            long cc = consumerIndex;
+            if (cc > i) {
+                n = 0;
+                i = cc - 1;
+                p = producerIndex;
+                continue;
+            }
+            if (e == null)
+                break;
+            if (n == a.length)
+                a = Arrays.copyOf(a, n << 1);
+            a[n++] = e;
+        }
+        return Arrays.copyOf(a, n);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T[] toArray(T[] a) {
+        Object[] es = toArray();
+        int n = es.length;
+        if (a.length < n)
+            return (T[]) Arrays.copyOf(es, n, a.getClass());
+        System.arraycopy(es, 0, a, 0, n);
+        if (a.length > n)
+            a[n] = null;
+        return a;
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements in this queue,
+     * in proper sequence.  The iterator does not support {@code remove}.
+     *
+     * @return an iterator over the elements in this queue in proper sequence
+     */
+    public Iterator<E> iterator() {
+        return new Itr<E>(toArray());
+    }
+
+    static final class Itr<E> implements Iterator<E> {
+        private final Object[] snapshot;
+        private int cursor;
+
+        Itr(Object[] snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        public boolean hasNext() {
+            return cursor < snapshot.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E next() {
+            if (cursor >= snapshot.length)
+                throw new NoSuchElementException();
+            return (E) snapshot[cursor++];
+        }
+    }
+
+    /* ---------------- Single producer, single consumer -------------- */
+
+    static final class SpscQueue<E> extends RingBufferBlockingQueue<E> {
+        SpscQueue(int capacity, WaitStrategy waitStrategy) {
+            super(capacity, waitStrategy);
+        }
+
+        boolean tryOffer(Object e) {
+            long p = producerIndex, off = slotOffset(p);
+            if (UNSAFE.getObjectVolatile(buffer, off) != null)
+                return false;
+            UNSAFE.putOrderedObject(buffer, off, e);
+            UNSAFE.putOrderedLong(this, PRODUCER_INDEX, p + 1L);
+            return true;
+        }
+
+        Object tryPoll() {
+            long c = consumerIndex, off = slotOffset(c);
+            Object e = UNSAFE.getObjectVolatile(buffer, off);
+            if (e != null) {
+                UNSAFE.putOrderedObject(buffer, off, null);
+                UNSAFE.putOrderedLong(this, CONSUMER_INDEX, c + 1L);
+            }
+            return e;
+        }
+
+        Object tryPeek() {
+            return UNSAFE.getObjectVolatile(buffer, slotOffset(consumerIndex));
+        }
+
+        int drain(Collection<? super E> c, int max) {
+            return drainSingleConsumer(c, max);
+        }
+    }
+
+    /**
+     * Drains the queue by a single consumer, for which a null slot at
+     * the consumer index means the queue is empty, or (in MPSC) that an
+     * insertion is in progress, at which the batch ends.
+     */
+    @SuppressWarnings("unchecked")
+    final int drainSingleConsumer(Collection<? super E> c, int max) {
+        long ci = consumerIndex;
+        int limit = Math.min(max, mask + 1), n = 0;
+        try {
+            for (Object e; n < limit; ++n) {
+                long off = slotOffset(ci + n);
+                if ((e = UNSAFE.getObjectVolatile(buffer, off)) == null)
+                    break;
+                c.add((E) e);
+                UNSAFE.putOrderedObject(buffer, off, null);
+            }
+        } finally {
+            if (n > 0)
+                UNSAFE.putOrderedLong(this, CONSUMER_INDEX, ci + n);
+        }
+        return n;
+    }
+
+    /* ---------------- Multiple producers, single consumer -------------- */
+
+    static final class MpscQueue<E> extends RingBufferBlockingQueue<E> {
+        /** The consumer index last read by a producer; racy */
+        @sun.misc.Contended("producer") long consumerIndexCache;
+
+        MpscQueue(int capacity, WaitStrategy waitStrategy) {
+            super(capacity, waitStrategy);
+        }
+
+        boolean tryOffer(Object e) {
+            long p;
+            do {
+                p = producerIndex;
+                if (p - consumerIndexCache > mask) {
+                    long c = consumerIndex;
+                    if (p - c > mask)
+                        return false;
+                    consumerIndexCache = c;
+                }
+            } while (!UNSAFE.compareAndSwapLong(this, PRODUCER_INDEX, p, p + 1L));
+            UNSAFE.putOrderedObject(buffer, slotOffset(p), e);
+            return true;
+        }
+
+        Object tryPoll() {
+            long c = consumerIndex, off = slotOffset(c);
+            Object e = UNSAFE.getObjectVolatile(buffer, off);
+            if (e == null) {
+                if (c == producerIndex)
+                    return null;
+                // a producer claimed the slot but has not yet filled it
+                while ((e = UNSAFE.getObjectVolatile(buffer, off)) == null)
+                    Thread.yield();
+            }
+            UNSAFE.putOrderedObject(buffer, off, null);
+            UNSAFE.putOrderedLong(this, CONSUMER_INDEX, c + 1L);
+            return e;
+        }
+
+        Object tryPeek() {
+            long c = consumerIndex, off = slotOffset(c);
+            Object e = UNSAFE.getObjectVolatile(buffer, off);
+            if (e == null && c != producerIndex) {
+                while ((e = UNSAFE.getObjectVolatile(buffer, off)) == null)
+                    Thread.yield();
+            }
+            return e;
+        }
+
+        int drain(Collection<? super E> c, int max) {
+            return drainSingleConsumer(c, max);
+        }
+    }
+
+    /* ---------------- Multiple producers and consumers -------------- */
+
+    static final class MpmcQueue<E> extends RingBufferBlockingQueue<E> {
+        /**
+         * The sequence numbers of the slots: a slot is ready for the
+         * producer with index i when its sequence is i, and for the
+         * consumer with index i when it is i + 1.
+         */
+        final long[] sequences;
+
+        MpmcQueue(int capacity, WaitStrategy waitStrategy) {
+            super(capacity, waitStrategy);
+            long[] s = new long[buffer.length];
+            for (int i = 0; i < s.length; ++i)
+                s[i] = i;
+            this.sequences = s;
+        }
+
+        final long sequenceOffset(long index) {
+            return ((long) ((int) index & mask) << LSHIFT) + LBASE;
+        }
+
+        boolean tryOffer(Object e) {
+            final long[] seqs = sequences;
+            for (;;) {
+                long p = producerIndex, so = sequenceOffset(p);
+                long d = UNSAFE.getLongVolatile(seqs, so) - p;
+                if (d == 0L) {
+                    if (UNSAFE.compareAndSwapLong(this, PRODUCER_INDEX, p, p + 1L)) {
+                        UNSAFE.putOrderedObject(buffer, slotOffset(p), e);
+                        UNSAFE.putOrderedLong(seqs, so, p + 1L);
+                        return true;
+                    }
+                }
+                else if (d < 0L)  // the slot still holds the element of the previous lap
+                    return false;
+            }
+        }
+
+        Object tryPoll() {
+            final long[] seqs = sequences;
+            for (;;) {
+                long c = consumerIndex, so = sequenceOffset(c);
+                long d = UNSAFE.getLongVolatile(seqs, so) - (c + 1L);
+                if (d == 0L) {
+                    if (UNSAFE.compareAndSwapLong(this, CONSUMER_INDEX, c, c + 1L)) {
+                        long off = slotOffset(c);
+                        Object e = UNSAFE.getObject(buffer, off);
+                        UNSAFE.putObject(buffer, off, null);
+                        UNSAFE.putOrderedLong(seqs, so, c + mask + 1L);
+                        return e;
+                    }
+                }
+                else if (d < 0L)  // the slot is not yet filled
+                    return null;
+            }
+        }
+
+        Object tryPeek() {
+            final long[] seqs = sequences;
+            for (;;) {
+                long c = consumerIndex;
+                if (UNSAFE.getLongVolatile(seqs, sequenceOffset(c)) != c + 1L)
+                    return null;
+                Object e = UNSAFE.getObjectVolatile(buffer, slotOffset(c));
+                if (e != null && c == consumerIndex)
+                    return e;
+            }
+        }
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe UNSAFE;
+    private static final long PRODUCER_INDEX;
+    private static final long CONSUMER_INDEX;
+    private static final int ABASE;
+    private static final int ASHIFT;
+    private static final int LBASE;
+    private static final int LSHIFT;
+    static {
+        try {
+            UNSAFE = sun.misc.Unsafe.getUnsafe();
+            Class<?> k = RingBufferBlockingQueue.class;
+            PRODUCER_INDEX = UNSAFE.objectFieldOffset
+                (k.getDeclaredField("producerIndex"));
+            CONSUMER_INDEX = UNSAFE.objectFieldOffset
+                (k.getDeclaredField("consumerIndex"));
+            ABASE = UNSAFE.arrayBaseOffset(Object[].class);
+            int scale = UNSAFE.arrayIndexScale(Object[].class);
+            if ((scale & (scale - 1)) != 0)
+                throw new Error("data type scale not a power of two");
+            ASHIFT = 31 - Integer.numberOfLeadingZeros(scale);
+            LBASE = UNSAFE.arrayBaseOffset(long[].class);
+            int lscale = UNSAFE.arrayIndexScale(long[].class);
+            if ((lscale & (lscale - 1)) != 0)
+                throw new Error("data type scale not a power of two");
+            LSHIFT = 31 - Integer.numberOfLeadingZeros(lscale);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
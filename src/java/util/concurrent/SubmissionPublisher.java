@@ -0,0 +1,1225 @@
+package java.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Flow.Publisher;
+import java.util.concurrent.Flow.Subscriber;
+import java.util.concurrent.Flow.Subscription;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Flow.Publisher} that asynchronously issues submitted
+ * (non-null) items to current subscribers until it is closed.  Each
+ * current subscriber receives newly submitted items in the same order
+ * unless drops or exceptions are encountered.  Using a
+ * SubmissionPublisher allows item generators to act as compliant <a
+ * href="http://www.reactive-streams.org/"> reactive-streams</a>
+ * Publishers relying on drop handling and/or blocking for flow
+ * control.
+ *
+ * <p>A SubmissionPublisher uses the {@link Executor} supplied in its
+ * constructor for delivery to subscribers. The best choice of
+ * Executor depends on expected usage. If the generator(s) of
+ * submitted items run in separate threads, and the number of
+ * subscribers can be estimated, consider using a {@link
+ * Executors#newFixedThreadPool}. Otherwise consider using the
+ * default, normally the {@link ForkJoinPool#commonPool}.
+ *
+ * <p>Buffering allows producers and consumers to transiently operate
+ * at different rates.  Each subscriber uses an independent buffer.
+ * Buffers are created upon first use and expanded as needed up to
+ * the given maximum.  (The enforced capacity may be rounded up to the
+ * nearest power of two.)  Invocations of {@link
+ * Flow.Subscription#request(long) request} do not directly result in
+ * buffer expansion, but risk saturation if unfilled requests exceed
+ * the maximum capacity.  The default value of {@link
+ * Flow#defaultBufferSize()} may provide a useful starting point for
+ * choosing a capacity based on expected rates, resources, and usages.
+ *
+ * <p>Publication methods support different policies about what to do
+ * when buffers are saturated. Method {@link #submit submit} blocks
+ * until resources are available. This is simplest, but least
+ * responsive.  The {@code offer} methods may drop items (either
+ * immediately or with bounded timeout), but provide an opportunity to
+ * interpose a handler and then retry.
+ *
+ * <p>If any Subscriber method throws an exception, its subscription
+ * is cancelled.  If a handler is supplied as a constructor argument,
+ * it is invoked before cancellation upon an exception in method
+ * {@link Flow.Subscriber#onNext onNext}, but exceptions in methods
+ * {@link Flow.Subscriber#onSubscribe onSubscribe}, {@link
+ * Flow.Subscriber#onError(Throwable) onError} and {@link
+ * Flow.Subscriber#onComplete() onComplete} are not recorded or
+ * handled before cancellation.  If the supplied Executor throws
+ * {@link RejectedExecutionException} (or any other RuntimeException
+ * or Error) when attempting to execute a task, or a drop handler
+ * throws an exception when processing a dropped item, then the
+ * exception is rethrown.  In these cases, not all subscribers will
+ * have been issued the published item.  It is usually good practice
+ * to {@link #closeExceptionally closeExceptionally} in these cases.
+ *
+ * <p>Method {@link #consume(Consumer)} simplifies support for a
+ * common case in which the only action of a subscriber is to request
+ * and process all items using a supplied function.
+ *
+ * <p>This class may also serve as a convenient base for subclasses
+ * that generate items, and use the methods in this class to publish
+ * them.  For example here is a class that periodically publishes the
+ * items generated from a supplier. (In practice you might add methods
+ * to independently start and stop generation, to share Executors
+ * among publishers, and so on, or use a SubmissionPublisher as a
+ * component rather than a superclass.)
+ *
+ * <pre> {@code
+ * class PeriodicPublisher<T> extends SubmissionPublisher<T> {
+ *   final ScheduledFuture<?> periodicTask;
+ *   final ScheduledExecutorService scheduler;
+ *   PeriodicPublisher(Executor executor, int maxBufferCapacity,
+ *                     Supplier<? extends T> supplier,
+ *                     long period, TimeUnit unit) {
+ *     super(executor, maxBufferCapacity);
+ *     scheduler = new ScheduledThreadPoolExecutor(1);
+ *     periodicTask = scheduler.scheduleAtFixedRate(
+ *       () -> submit(supplier.get()), 0, period, unit);
+ *   }
+ *   public void close() {
+ *     periodicTask.cancel(false);
+ *     scheduler.shutdown();
+ *     super.close();
+ *   }
+ * }}</pre>
+ *
+ * @param <T> the published item type
+ * @since 1.8
+ */
+public class SubmissionPublisher<T> implements Publisher<T>,
+                                               AutoCloseable {
+    /*
+     * Each subscriber is managed by a BufferedSubscription, holding
+     * a ring buffer of items not yet delivered, grown by doubling up
+     * to the maximum capacity, along with the subscriber's demand and
+     * the pending control signals, all guarded by a lock of its own.
+     * Items are delivered by a task run on the executor, started when
+     * there is something to deliver (items and demand, or a
+     * termination signal) and no task is running.  The task first
+     * invokes onSubscribe, then repeatedly takes a batch of as many
+     * items as are buffered and requested (up to MAX_BATCH) under
+     * the lock, and delivers them outside it, until there is nothing
+     * left to deliver, when it clears the running flag under the lock
+     * and exits.  So there is at most one task per subscriber, and
+     * the subscriber's methods are invoked in sequence.  The disabled
+     * flag is also volatile, so that delivery of a batch stops as soon
+     * as the subscription is cancelled, without taking the lock per
+     * item.
+     *
+     * Publication holds the publisher's lock while offering an item
+     * to each subscription, so that all subscribers receive items in
+     * the same order.  Offers to full buffers are retried after the
+     * others, by blocking until there is space (or a timeout), as a
+     * ForkJoinPool.ManagedBlocker so that publishing from tasks of a
+     * ForkJoinPool does not starve the delivery tasks of the same
+     * pool.  Subscriptions that are cancelled or terminated are
+     * removed from the list of subscribers when next encountered.
+     */
+
+    /** The largest possible power of two array size. */
+    static final int BUFFER_CAPACITY_LIMIT = 1 << 30;
+
+    /** The initial size of the buffer of a subscription */
+    static final int INITIAL_CAPACITY = 32;
+
+    /** The maximum number of items delivered per hold of the lock */
+    static final int MAX_BATCH = 64;
+
+    /** Rounds capacity to a power of 2, so ring indices can be masked. */
+    static final int roundCapacity(int cap) {
+        int n = cap - 1;
+        n |= n >>> 1;
+        n |= n >>> 2;
+        n |= n >>> 4;
+        n |= n >>> 8;
+        n |= n >>> 16;
+        return (n <= 0) ? 1 : // at least 1
+            (n >= BUFFER_CAPACITY_LIMIT) ? BUFFER_CAPACITY_LIMIT : n + 1;
+    }
+
+    /**
+     * Default executor -- ForkJoinPool.commonPool() unless it cannot
+     * support parallelism.
+     */
+    private static final Executor ASYNC_POOL =
+        (ForkJoinPool.getCommonPoolParallelism() > 1) ?
+        ForkJoinPool.commonPool() : new CompletableFuture.ThreadPerTaskExecutor();
+
+    /** Guards clients and closing */
+    final ReentrantLock lock = new ReentrantLock();
+    /** The current subscriptions */
+    final ArrayList<BufferedSubscription<T>> clients =
+        new ArrayList<BufferedSubscription<T>>();
+    /** Run status, updated only under lock */
+    volatile boolean closed;
+    /** If non-null, the exception in closeExceptionally */
+    volatile Throwable closedException;
+
+    // Parameters for constructing BufferedSubscriptions
+    final Executor executor;
+    final BiConsumer<? super Subscriber<? super T>, ? super Throwable> onNextHandler;
+    final int maxBufferCapacity;
+
+    /**
+     * Creates a new SubmissionPublisher using the given Executor for
+     * async delivery to subscribers, with the given maximum buffer size
+     * for each subscriber, and, if non-null, the given handler invoked
+     * when any Subscriber throws an exception in method {@link
+     * Flow.Subscriber#onNext(Object) onNext}.
+     *
+     * @param executor the executor to use for async delivery,
+     * supporting creation of at least one independent thread
+     * @param maxBufferCapacity the maximum capacity for each
+     * subscriber's buffer (the enforced capacity may be rounded up to
+     * the nearest power of two and/or bounded by the largest value
+     * supported by this implementation; method {@link #getMaxBufferCapacity}
+     * returns the actual value)
+     * @param handler if non-null, procedure to invoke upon exception
+     * thrown in method {@code onNext}
+     * @throws NullPointerException if executor is null
+     * @throws IllegalArgumentException if maxBufferCapacity not
+     * positive
+     */
+    public SubmissionPublisher(Executor executor, int maxBufferCapacity,
+                               BiConsumer<? super Subscriber<? super T>, ? super Throwable> handler) {
+        if (executor == null)
+            throw new NullPointerException();
+        if (maxBufferCapacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.executor = executor;
+        this.onNextHandler = handler;
+        this.maxBufferCapacity = roundCapacity(maxBufferCapacity);
+    }
+
+    /**
+     * Creates a new SubmissionPublisher using the given Executor for
+     * async delivery to subscribers, with the given maximum buffer size
+     * for each subscriber, and no handler for Subscriber exceptions in
+     * method {@link Flow.Subscriber#onNext(Object) onNext}.
+     *
+     * @param executor the executor to use for async delivery,
+     * supporting creation of at least one independent thread
+     * @param maxBufferCapacity the maximum capacity for each
+     * subscriber's buffer (the enforced capacity may be rounded up to
+     * the nearest power of two and/or bounded by the largest value
+     * supported by this implementation; method {@link #getMaxBufferCapacity}
+     * returns the actual value)
+     * @throws NullPointerException if executor is null
+     * @throws IllegalArgumentException if maxBufferCapacity not
+     * positive
+     */
+    public SubmissionPublisher(Executor executor, int maxBufferCapacity) {
+        this(executor, maxBufferCapacity, null);
+    }
+
+    /**
+     * Creates a new SubmissionPublisher using the {@link
+     * ForkJoinPool#commonPool()} for async delivery to subscribers
+     * (unless it does not support a parallelism level of at least two,
+     * in which case, a new Thread is created to run each task), with
+     * maximum buffer capacity of {@link Flow#defaultBufferSize}, and no
+     * handler for Subscriber exceptions in method {@link
+     * Flow.Subscriber#onNext(Object) onNext}.
+     */
+    public SubmissionPublisher() {
+        this(ASYNC_POOL, Flow.defaultBufferSize(), null);
+    }
+
+    /**
+     * Adds the given Subscriber unless already subscribed.  If already
+     * subscribed, the Subscriber's {@link
+     * Flow.Subscriber#onError(Throwable) onError} method is invoked on
+     * the existing subscription with an {@link IllegalStateException}.
+     * Otherwise, upon success, the Subscriber's {@link
+     * Flow.Subscriber#onSubscribe onSubscribe} method is invoked
+     * asynchronously with a new {@link Flow.Subscription}.  If {@link
+     * Flow.Subscriber#onSubscribe onSubscribe} throws an exception, the
+     * subscription is cancelled. Otherwise, if this SubmissionPublisher
+     * was closed exceptionally, then the subscriber's {@link
+     * Flow.Subscriber#onError onError} method is invoked with the
+     * corresponding exception, or if closed without exception, the
+     * subscriber's {@link Flow.Subscriber#onComplete() onComplete}
+     * method is invoked.  Subscribers may enable receiving items by
+     * invoking the {@link Flow.Subscription#request(long) request}
+     * method of the new Subscription, and may unsubscribe by invoking
+     * its {@link Flow.Subscription#cancel() cancel} method.
+     *
+     * @param subscriber the subscriber
+     * @throws NullPointerException if subscriber is null
+     */
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) throw new NullPointerException();
+        BufferedSubscription<T> subscription =
+            new BufferedSubscription<T>(subscriber, executor, onNextHandler,
+                                        maxBufferCapacity);
+        BufferedSubscription<T> existing = null;
+        Throwable error = null;
+        boolean complete = false;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (closed) {
+                if ((error = closedException) == null)
+                    complete = true;
+            }
+            else {
+                for (Iterator<BufferedSubscription<T>> it = clients.iterator();
+                     it.hasNext();) {
+                    BufferedSubscription<T> b = it.next();
+                    if (b.isDisabled())
+                        it.remove();
+                    else if (subscriber.equals(b.subscriber)) {
+                        existing = b;
+                        break;
+                    }
+                }
+                if (existing == null)
+                    clients.add(subscription);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (existing != null)
+            existing.onError(new IllegalStateException("Duplicate subscribe"));
+        else if (error != null)
+            subscription.onError(error);
+        else if (complete)
+            subscription.onComplete();
+        else
+            subscription.startOnSubscribe();
+    }
+
+    /**
+     * Common implementation for all three forms of submit and offer.
+     * Acts as submit if nanos == Long.MAX_VALUE, else offer.
+     */
+    private int doOffer(T item, long nanos,
+                        BiPredicate<Subscriber<? super T>, ? super T> onDrop) {
+        if (item == null) throw new NullPointerException();
+        int lag = 0, drops = 0;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (closed)
+                throw new IllegalStateException("Closed");
+            ArrayList<BufferedSubscription<T>> retries = null;
+            for (Iterator<BufferedSubscription<T>> it = clients.iterator();
+                 it.hasNext();) {
+                BufferedSubscription<T> b = it.next();
+                int stat = b.offer(item);
+                if (stat == 0)
+                    it.remove();            // disabled
+                else if (stat < 0) {
+                    if (retries == null)
+                        retries = new ArrayList<BufferedSubscription<T>>();
+                    retries.add(b);
+                }
+                else if (stat > lag)
+                    lag = stat;
+            }
+            if (retries != null) {
+                for (BufferedSubscription<T> b : retries) {
+                    int stat = b.offer(item, nanos);
+                    if (stat < 0 && onDrop != null &&
+                        onDrop.test(b.subscriber, item))
+                        stat = b.offer(item);
+                    if (stat < 0)
+                        ++drops;
+                    else if (stat > lag)
+                        lag = stat;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return (drops > 0) ? -drops : lag;
+    }
+
+    /**
+     * Publishes the given item to each current subscriber by
+     * asynchronously invoking its {@link Flow.Subscriber#onNext(Object)
+     * onNext} method, blocking uninterruptibly while resources for any
+     * subscriber are unavailable. This method returns an estimate of
+     * the maximum lag (number of items submitted but not yet consumed)
+     * among all current subscribers. This value is at least one
+     * (accounting for this submitted item) if there are any
+     * subscribers, else zero.
+     *
+     * <p>If the Executor for this publisher throws a
+     * RejectedExecutionException (or any other RuntimeException or
+     * Error) when attempting to asynchronously notify subscribers,
+     * then this exception is rethrown, in which case not all
+     * subscribers will have been issued this item.
+     *
+     * @param item the (non-null) item to publish
+     * @return the estimated maximum lag among subscribers
+     * @throws IllegalStateException if closed
+     * @throws NullPointerException if item is null
+     * @throws RejectedExecutionException if thrown by Executor
+     */
+    public int submit(T item) {
+        return doOffer(item, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Publishes the given item, if possible, to each current subscriber
+     * by asynchronously invoking its {@link
+     * Flow.Subscriber#onNext(Object) onNext} method. The item may be
+     * dropped by one or more subscribers if resource limits are
+     * exceeded, in which case the given handler (if non-null) is
+     * invoked, and if it returns true, retried once.  Other calls to
+     * methods in this class by other threads are blocked while the
+     * handler is invoked.  Unless recovery is assured, options are
+     * usually limited to logging the error and/or issuing an {@link
+     * Flow.Subscriber#onError(Throwable) onError} signal to the
+     * subscriber.
+     *
+     * <p>This method returns a status indicator: If negative, it
+     * represents the (negative) number of drops (failed attempts to
+     * issue the item to a subscriber). Otherwise it is an estimate of
+     * the maximum lag (number of items submitted but not yet
+     * consumed) among all current subscribers. This value is at least
+     * one (accounting for this submitted item) if there are any
+     * subscribers, else zero.
+     *
+     * <p>If the Executor for this publisher throws a
+     * RejectedExecutionException (or any other RuntimeException or
+     * Error) when attempting to asynchronously notify subscribers, or
+     * the drop handler throws an exception when processing a dropped
+     * item, then this exception is rethrown.
+     *
+     * @param item the (non-null) item to publish
+     * @param onDrop if non-null, the handler invoked upon a drop to a
+     * subscriber, with arguments of the subscriber and item; if it
+     * returns true, an offer is re-attempted (once)
+     * @return if negative, the (negative) number of drops; otherwise
+     * an estimate of maximum lag
+     * @throws IllegalStateException if closed
+     * @throws NullPointerException if item is null
+     * @throws RejectedExecutionException if thrown by Executor
+     */
+    public int offer(T item,
+                     BiPredicate<Subscriber<? super T>, ? super T> onDrop) {
+        return doOffer(item, 0L, onDrop);
+    }
+
+    /**
+     * Publishes the given item, if possible, to each current subscriber
+     * by asynchronously invoking its {@link
+     * Flow.Subscriber#onNext(Object) onNext} method, blocking while
+     * resources for any subscription are unavailable, up to the
+     * specified timeout or until the caller thread is interrupted, at
+     * which point the given handler (if non-null) is invoked, and if it
+     * returns true, retried once. (The drop handler may distinguish
+     * timeouts from interrupts by checking whether the current thread
+     * is interrupted.)  Other calls to methods in this class by other
+     * threads are blocked while the handler is invoked.  Unless
+     * recovery is assured, options are usually limited to logging the
+     * error and/or issuing an {@link Flow.Subscriber#onError(Throwable)
+     * onError} signal to the subscriber.
+     *
+     * <p>This method returns a status indicator: If negative, it
+     * represents the (negative) number of drops (failed attempts to
+     * issue the item to a subscriber). Otherwise it is an estimate of
+     * the maximum lag (number of items submitted but not yet
+     * consumed) among all current subscribers. This value is at least
+     * one (accounting for this submitted item) if there are any
+     * subscribers, else zero.
+     *
+     * <p>If the Executor for this publisher throws a
+     * RejectedExecutionException (or any other RuntimeException or
+     * Error) when attempting to asynchronously notify subscribers, or
+     * the drop handler throws an exception when processing a dropped
+     * item, then this exception is rethrown.
+     *
+     * @param item the (non-null) item to publish
+     * @param timeout how long to wait for resources for any subscriber
+     * before giving up, in units of {@code unit}
+     * @param unit a {@code TimeUnit} determining how to interpret the
+     * {@code timeout} parameter
+     * @param onDrop if non-null, the handler invoked upon a drop to a
+     * subscriber, with arguments of the subscriber and item; if it
+     * returns true, an offer is re-attempted (once)
+     * @return if negative, the (negative) number of drops; otherwise
+     * an estimate of maximum lag
+     * @throws IllegalStateException if closed
+     * @throws NullPointerException if item is null
+     * @throws RejectedExecutionException if thrown by Executor
+     */
+    public int offer(T item, long timeout, TimeUnit unit,
+                     BiPredicate<Subscriber<? super T>, ? super T> onDrop) {
+        long nanos = unit.toNanos(timeout);
+        // distinguishes from untimed (only wrt interrupt policy)
+        if (nanos == Long.MAX_VALUE) --nanos;
+        return doOffer(item, nanos, onDrop);
+    }
+
+    /**
+     * Unless already closed, issues {@link
+     * Flow.Subscriber#onComplete() onComplete} signals to current
+     * subscribers, and disallows subsequent attempts to publish.
+     * Upon return, this method does <em>NOT</em> guarantee that all
+     * subscribers have yet completed.
+     */
+    public void close() {
+        ArrayList<BufferedSubscription<T>> bs = null;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (!closed) {
+                closed = true;
+                bs = new ArrayList<BufferedSubscription<T>>(clients);
+                clients.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (bs != null) {
+            for (BufferedSubscription<T> b : bs)
+                b.onComplete();
+        }
+    }
+
+    /**
+     * Unless already closed, issues {@link
+     * Flow.Subscriber#onError(Throwable) onError} signals to current
+     * subscribers with the given error, and disallows subsequent
+     * attempts to publish.  Future subscribers also receive the given
+     * error. Upon return, this method does <em>NOT</em> guarantee
+     * that all subscribers have yet completed.
+     *
+     * @param error the {@code onError} argument sent to subscribers
+     * @throws NullPointerException if error is null
+     */
+    public void closeExceptionally(Throwable error) {
+        if (error == null)
+            throw new NullPointerException();
+        ArrayList<BufferedSubscription<T>> bs = null;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            if (!closed) {
+                closedException = error;
+                closed = true;
+                bs = new ArrayList<BufferedSubscription<T>>(clients);
+                clients.clear();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (bs != null) {
+            for (BufferedSubscription<T> b : bs)
+                b.onError(error);
+        }
+    }
+
+    /**
+     * Returns true if this publisher is not accepting submissions.
+     *
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the exception associated with {@link
+     * #closeExceptionally(Throwable) closeExceptionally}, or null if
+     * not closed or if closed normally.
+     *
+     * @return the exception, or null if none
+     */
+    public Throwable getClosedException() {
+        return closedException;
+    }
+
+    /**
+     * Returns true if this publisher has any subscribers.
+     *
+     * @return true if this publisher has any subscribers
+     */
+    public boolean hasSubscribers() {
+        return getNumberOfSubscribers() > 0;
+    }
+
+    /**
+     * Returns the number of current subscribers.
+     *
+     * @return the number of current subscribers
+     */
+    public int getNumberOfSubscribers() {
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            return prune();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the disabled subscriptions, returning the number of
+     * others. Call only under lock.
+     */
+    private int prune() {
+        for (Iterator<BufferedSubscription<T>> it = clients.iterator();
+             it.hasNext();) {
+            if (it.next().isDisabled())
+                it.remove();
+        }
+        return clients.size();
+    }
+
+    /**
+     * Returns the Executor used for asynchronous delivery.
+     *
+     * @return the Executor used for asynchronous delivery
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Returns the maximum per-subscriber buffer capacity.
+     *
+     * @return the maximum per-subscriber buffer capacity
+     */
+    public int getMaxBufferCapacity() {
+        return maxBufferCapacity;
+    }
+
+    /**
+     * Returns a list of current subscribers for monitoring and
+     * tracking purposes, not for invoking {@link Flow.Subscriber}
+     * methods on the subscribers.
+     *
+     * @return list of current subscribers
+     */
+    public List<Subscriber<? super T>> getSubscribers() {
+        ArrayList<Subscriber<? super T>> subs =
+            new ArrayList<Subscriber<? super T>>();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            prune();
+            for (BufferedSubscription<T> b : clients)
+                subs.add(b.subscriber);
+        } finally {
+            lock.unlock();
+        }
+        return subs;
+    }
+
+    /**
+     * Returns true if the given Subscriber is currently subscribed.
+     *
+     * @param subscriber the subscriber
+     * @return true if currently subscribed
+     * @throws NullPointerException if subscriber is null
+     */
+    public boolean isSubscribed(Subscriber<? super T> subscriber) {
+        if (subscriber == null) throw new NullPointerException();
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            prune();
+            for (BufferedSubscription<T> b : clients) {
+                if (subscriber.equals(b.subscriber))
+                    return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an estimate of the minimum number of items requested
+     * (via {@link Flow.Subscription#request(long) request}) but not
+     * yet produced, among all current subscribers.
+     *
+     * @return the estimate, or zero if no subscribers
+     */
+    public long estimateMinimumDemand() {
+        long min = Long.MAX_VALUE;
+        boolean nonEmpty = false;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            prune();
+            for (BufferedSubscription<T> b : clients) {
+                long d = b.estimateDemand();
+                if (d < min)
+                    min = d;
+                nonEmpty = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return nonEmpty ? min : 0L;
+    }
+
+    /**
+     * Returns an estimate of the maximum number of items produced but
+     * not yet consumed among all current subscribers.
+     *
+     * @return the estimate
+     */
+    public int estimateMaximumLag() {
+        int max = 0;
+        final ReentrantLock lock = this.lock;
+        lock.lock();
+        try {
+            prune();
+            for (BufferedSubscription<T> b : clients) {
+                int n = b.estimateLag();
+                if (n > max)
+                    max = n;
+            }
+        } finally {
+            lock.unlock();
+        }
+        return max;
+    }
+
+    /**
+     * Processes all published items using the given Consumer function.
+     * Returns a CompletableFuture that is completed normally when this
+     * publisher signals {@link Flow.Subscriber#onComplete()
+     * onComplete}, or completed exceptionally upon any error, or an
+     * exception is thrown by the Consumer, or the returned
+     * CompletableFuture is cancelled, in which case no further items
+     * are processed.
+     *
+     * @param consumer the function applied to each onNext item
+     * @return a CompletableFuture that is completed normally
+     * when the publisher signals onComplete, and exceptionally
+     * upon any error or cancellation
+     * @throws NullPointerException if consumer is null
+     */
+    public CompletableFuture<Void> consume(Consumer<? super T> consumer) {
+        if (consumer == null)
+            throw new NullPointerException();
+        CompletableFuture<Void> status = new CompletableFuture<Void>();
+        subscribe(new ConsumerSubscriber<T>(status, consumer));
+        return status;
+    }
+
+    /** Subscriber for method consume */
+    static final class ConsumerSubscriber<T> implements Subscriber<T> {
+        final CompletableFuture<Void> status;
+        final Consumer<? super T> consumer;
+        Subscription subscription;
+        ConsumerSubscriber(CompletableFuture<Void> status,
+                           Consumer<? super T> consumer) {
+            this.status = status; this.consumer = consumer;
+        }
+        public final void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            status.whenComplete((v, e) -> subscription.cancel());
+            if (!status.isDone())
+                subscription.request(Long.MAX_VALUE);
+        }
+        public final void onError(Throwable ex) {
+            status.completeExceptionally(ex);
+        }
+        public final void onComplete() {
+            status.complete(null);
+        }
+        public final void onNext(T item) {
+            try {
+                consumer.accept(item);
+            } catch (Throwable ex) {
+                subscription.cancel();
+                status.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * The task delivering items and signals to a subscriber.  A
+     * separate class, so that subscriptions cannot be run as tasks.
+     */
+    static final class ConsumerTask<T> implements Runnable,
+        CompletableFuture.AsynchronousCompletionTask {
+        final BufferedSubscription<T> consumer;
+        ConsumerTask(BufferedSubscription<T> consumer) {
+            this.consumer = consumer;
+        }
+        public void run() {
+            consumer.consume();
+        }
+    }
+
+    /**
+     * A subscription with a buffer of items for its subscriber,
+     * guarded by a lock, and delivered by a ConsumerTask.  All fields
+     * after the lock are guarded by it; disabled is also read without
+     * it.
+     */
+    static final class BufferedSubscription<T> implements Subscription {
+        final Subscriber<? super T> subscriber;
+        final Executor executor;
+        final BiConsumer<? super Subscriber<? super T>, ? super Throwable> onNextHandler;
+        final int maxCapacity;
+        final ConsumerTask<T> task;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition notFull = lock.newCondition();
+        Object[] array;          // ring buffer, null until first item
+        int head;                // index of the first item in array
+        int count;               // number of items buffered
+        long demand;             // number of items requested, not delivered
+        boolean running;         // true while task is started or running
+        boolean subscribed;      // true once onSubscribe has been invoked
+        boolean closed;          // true if complete after buffered items
+        Throwable pendingError;  // if non-null, error to signal
+        volatile boolean disabled; // true if cancelled or terminated
+
+        BufferedSubscription(Subscriber<? super T> subscriber,
+                             Executor executor,
+                             BiConsumer<? super Subscriber<? super T>, ? super Throwable> onNextHandler,
+                             int maxCapacity) {
+            this.subscriber = subscriber;
+            this.executor = executor;
+            this.onNextHandler = onNextHandler;
+            this.maxCapacity = maxCapacity;
+            this.task = new ConsumerTask<T>(this);
+        }
+
+        final boolean isDisabled() {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                return disabled;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        final int estimateLag() {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        final long estimateDemand() {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                return Math.max(demand - count, 0L);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Disables this subscription, dropping its items.  Call only
+         * under lock.
+         */
+        private void disable() {
+            disabled = true;
+            array = null;
+            count = 0;
+            notFull.signalAll();
+        }
+
+        /**
+         * Returns true if the task should be started to deliver items
+         * or signals, marking it running if so.  Call only under lock.
+         */
+        private boolean shouldStart() {
+            if (running || disabled)
+                return false;
+            if (pendingError == null && (count == 0 || demand == 0L) &&
+                !(closed && count == 0))
+                return false;
+            return running = true;
+        }
+
+        /**
+         * Executes the task, or if the executor rejects it, disables
+         * this subscription and rethrows.
+         */
+        private void startTask() {
+            try {
+                executor.execute(task);
+            } catch (RuntimeException | Error ex) {
+                final ReentrantLock lock = this.lock;
+                lock.lock();
+                try {
+                    running = false;
+                    disable();
+                } finally {
+                    lock.unlock();
+                }
+                throw ex;
+            }
+        }
+
+        /**
+         * Starts the task to invoke onSubscribe.
+         */
+        final void startOnSubscribe() {
+            boolean start = false;
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                if (!running && !disabled)
+                    start = running = true;
+            } finally {
+                lock.unlock();
+            }
+            if (start)
+                startTask();
+        }
+
+        /**
+         * Tries to add the item to the buffer, growing it if needed.
+         *
+         * @return the number of items buffered, or -1 if the buffer is
+         * full, or 0 if this subscription is disabled
+         */
+        final int offer(T item) {
+            int stat;
+            boolean start = false;
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                if (disabled)
+                    stat = 0;
+                else if ((stat = add(item)) > 0)
+                    start = shouldStart();
+            } finally {
+                lock.unlock();
+            }
+            if (start)
+                startTask();
+            return stat;
+        }
+
+        /**
+         * Adds the item to the buffer if there is room. Call only under
+         * lock.
+         */
+        private int add(T item) {
+            Object[] a = array;
+            int n = count, cap = (a == null) ? 0 : a.length;
+            if (n >= cap) {
+                if (cap >= maxCapacity)
+                    return -1;
+                int newCap = (cap == 0) ?
+                    Math.min(INITIAL_CAPACITY, maxCapacity) : cap << 1;
+                Object[] b = new Object[newCap];
+                for (int i = 0; i < n; ++i)
+                    b[i] = a[(head + i) & (cap - 1)];
+                array = a = b;
+                head = 0;
+                cap = newCap;
+            }
+            a[(head + n) & (cap - 1)] = item;
+            return count = n + 1;
+        }
+
+        /**
+         * Tries to add the item, blocking while the buffer is full, up
+         * to the given time, or if Long.MAX_VALUE, uninterruptibly
+         * until there is room.
+         *
+         * @return as for offer(item)
+         */
+        final int offer(T item, long nanos) {
+            int stat = offer(item);
+            if (stat < 0 && nanos > 0L) {
+                SpaceBlocker blocker = new SpaceBlocker(nanos);
+                do {
+                    try {
+                        ForkJoinPool.managedBlock(blocker);
+                    } catch (InterruptedException ie) {
+                        blocker.interrupted = true;
+                    }
+                } while ((stat = offer(item)) < 0 &&
+                         !blocker.timedOut && !blocker.interrupted);
+                if (blocker.interrupted)
+                    Thread.currentThread().interrupt();
+            }
+            return stat;
+        }
+
+        /**
+         * Blocks a publishing thread until the buffer has room, this
+         * subscription is disabled, or the time elapses.
+         */
+        final class SpaceBlocker implements ForkJoinPool.ManagedBlocker {
+            final boolean timed;
+            final long deadline;
+            boolean timedOut;
+            boolean interrupted;
+
+            SpaceBlocker(long nanos) {
+                timed = (nanos != Long.MAX_VALUE);
+                deadline = timed ? System.nanoTime() + nanos : 0L;
+            }
+
+            private boolean full() {
+                return !disabled && count >= maxCapacity;
+            }
+
+            public boolean isReleasable() {
+                if (timedOut || interrupted)
+                    return true;
+                final ReentrantLock lock = BufferedSubscription.this.lock;
+                lock.lock();
+                try {
+                    return !full();
+                } finally {
+                    lock.unlock();
+                }
+            }
+
+            public boolean block() throws InterruptedException {
+                final ReentrantLock lock = BufferedSubscription.this.lock;
+                lock.lock();
+                try {
+                    while (full()) {
+                        if (!timed)
+                            notFull.awaitUninterruptibly();
+                        else {
+                            long nanos = deadline - System.nanoTime();
+                            if (nanos <= 0L) {
+                                timedOut = true;
+                                break;
+                            }
+                            notFull.awaitNanos(nanos);
+                        }
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Issues an onComplete signal, once the items buffered are
+         * delivered.
+         */
+        final void onComplete() {
+            boolean start = false;
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                if (!disabled) {
+                    closed = true;
+                    start = shouldStart();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (start)
+                startTask();
+        }
+
+        /**
+         * Issues an onError signal, dropping the items buffered.
+         */
+        final void onError(Throwable ex) {
+            boolean start = false;
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                if (!disabled && pendingError == null) {
+                    pendingError = ex;
+                    array = null;
+                    count = 0;
+                    notFull.signalAll();
+                    start = shouldStart();
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (start)
+                startTask();
+        }
+
+        public void cancel() {
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                disable();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        public void request(long n) {
+            boolean start = false;
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                if (disabled)
+                    return;
+                if (n <= 0L) {
+                    if (pendingError == null)
+                        pendingError = new IllegalArgumentException
+                            ("non-positive subscription request");
+                }
+                else {
+                    long d = demand + n;
+                    demand = (d < 0L) ? Long.MAX_VALUE : d;
+                }
+                start = shouldStart();
+            } finally {
+                lock.unlock();
+            }
+            if (start)
+                startTask();
+        }
+
+        /**
+         * Consumer loop, run by the task: invokes onSubscribe if not
+         * yet done, then delivers batches of items while there are
+         * items and demand, and the pending termination signal, if
+         * any, when due.
+         */
+        final void consume() {
+            final Subscriber<? super T> s = subscriber;
+            final ReentrantLock lock = this.lock;
+            boolean subscribing;
+            lock.lock();
+            try {
+                subscribing = !subscribed;
+                subscribed = true;
+            } finally {
+                lock.unlock();
+            }
+            if (subscribing) {
+                try {
+                    s.onSubscribe(this);
+                } catch (Throwable ex) {
+                    lock.lock();
+                    try {
+                        running = false;
+                        disable();
+                    } finally {
+                        lock.unlock();
+                    }
+                    return;
+                }
+            }
+            for (;;) {
+                Object[] batch = null;
+                Throwable error = null;
+                boolean complete = false;
+                lock.lock();
+                try {
+                    int n;
+                    if (disabled) {
+                        running = false;
+                        return;
+                    }
+                    else if ((error = pendingError) != null) {
+                        running = false;
+                        disable();
+                    }
+                    else if ((n = (int)Math.min(Math.min(count, demand),
+                                                MAX_BATCH)) > 0) {
+                        Object[] a = array;
+                        int mask = a.length - 1;
+                        batch = new Object[n];
+                        for (int i = 0; i < n; ++i) {
+                            int j = (head + i) & mask;
+                            batch[i] = a[j];
+                            a[j] = null;
+                        }
+                        head = (head + n) & mask;
+                        count -= n;
+                        demand -= n;
+                        notFull.signalAll();
+                    }
+                    else if (closed && count == 0) {
+                        running = false;
+                        disable();
+                        complete = true;
+                    }
+                    else {
+                        running = false;
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (error != null) {
+                    try {
+                        s.onError(error);
+                    } catch (Throwable ignore) {
+                    }
+                    return;
+                }
+                if (complete) {
+                    try {
+                        s.onComplete();
+                    } catch (Throwable ignore) {
+                    }
+                    return;
+                }
+                for (Object x : batch) {
+                    if (disabled)       // cancelled within the batch
+                        break;
+                    @SuppressWarnings("unchecked") T item = (T) x;
+                    try {
+                        s.onNext(item);
+                    } catch (Throwable ex) {
+                        handleOnNext(s, ex);
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Processes exception in Subscriber.onNext: invokes the
+         * handler, if any, and then terminates the subscription with
+         * onError, unless it was cancelled.
+         */
+        private void handleOnNext(Subscriber<? super T> s, Throwable ex) {
+            BiConsumer<? super Subscriber<? super T>, ? super Throwable> h;
+            if ((h = onNextHandler) != null) {
+                try {
+                    h.accept(s, ex);
+                } catch (Throwable ignore) {
+                }
+            }
+            boolean wasDisabled;
+            final ReentrantLock lock = this.lock;
+            lock.lock();
+            try {
+                wasDisabled = disabled;
+                running = false;
+                disable();
+            } finally {
+                lock.unlock();
+            }
+            if (!wasDisabled) {
+                try {
+                    s.onError(ex);
+                } catch (Throwable ignore) {
+                }
+            }
+        }
+    }
+}
@@ -509,6 +509,22 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     private volatile int maximumPoolSize;
 
+    /**
+     * Statistics of the tasks run, or null if not enabled.
+     */
+    private volatile ExecutorStatistics statistics;
+
+    /**
+     * The submission times of the tasks submitted with execute while
+     * statistics are enabled and not yet run, by task identity.  Kept
+     * aside rather than in wrappers, so that the queue holds only the
+     * tasks as submitted, as ordering queues such as
+     * PriorityBlockingQueue require.  Weak, so that tasks removed from
+     * the queue by other means are not retained.  Null until
+     * statistics are first enabled.
+     */
+    private volatile ConcurrentWeakHashMap<Runnable,Long> submitTimes;
+
     /**
      * The default rejected execution handler
      */
@@ -787,11 +803,28 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      * ScheduledThreadPoolExecutor
      */
 
+    /**
+     * Records the submission time of the given task, unless it is
+     * already queued with one.
+     */
+    private void recordSubmitTime(Runnable command) {
+        ConcurrentWeakHashMap<Runnable,Long> m = submitTimes;
+        if (m != null)
+            m.putIfAbsent(command, System.nanoTime());
+    }
+
     /**
      * Invokes the rejected execution handler for the given command.
      * Package-protected for use by ScheduledThreadPoolExecutor.
      */
     final void reject(Runnable command) {
+        ExecutorStatistics stats = statistics;
+        if (stats != null) {
+            stats.rejected.increment();
+            ConcurrentWeakHashMap<Runnable,Long> m = submitTimes;
+            if (m != null)
+                m.remove(command);
+        }
         handler.rejectedExecution(command, this);
     }
 
@@ -1099,8 +1132,18 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     wt.interrupt();
                 }
                 try {
+                    ExecutorStatistics stats = statistics;
+                    long start = 0L;
+                    if (stats != null) {
+                        ConcurrentWeakHashMap<Runnable,Long> m = submitTimes;
+                        Long submitTime;
+                        if (m != null && (submitTime = m.remove(task)) != null)
+                            stats.queueWait.record(System.nanoTime() - submitTime);
+                    }
                     beforeExecute(wt, task);
                     Throwable thrown = null;
+                    if (stats != null)
+                        start = System.nanoTime();
                     try {
                         task.run();
                     } catch (RuntimeException x) {
@@ -1110,6 +1153,8 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
                     } catch (Throwable x) {
                         thrown = x; throw new Error(x);
                     } finally {
+                        if (stats != null)
+                            stats.executed(System.nanoTime() - start, thrown);
                         afterExecute(task, thrown);
                     }
                 } finally {
@@ -1300,6 +1345,10 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         if (command == null) {
             throw new NullPointerException();
         }
+        // 若开启了统计，则在旁表中记录任务的提交时间，用于统计排队等待时间
+        if (statistics != null) {
+            recordSubmitTime(command);
+        }
         int c = ctl.get();
         // 若工作线程数小于核心线程数，则创建新的线程，并把当前任务 command 作为这个线程的第一个任务
         if (workerCountOf(c) < corePoolSize) {
@@ -1725,6 +1774,9 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
      */
     public boolean remove(Runnable task) {
         boolean removed = workQueue.remove(task);
+        ConcurrentWeakHashMap<Runnable,Long> m;
+        if (removed && (m = submitTimes) != null)
+            m.remove(task);
         tryTerminate(); // In case SHUTDOWN and now empty
         return removed;
     }
@@ -1862,6 +1914,63 @@ public class ThreadPoolExecutor extends AbstractExecutorService {
         }
     }
 
+    /**
+     * Enables or disables the collection of {@link ExecutorStatistics}
+     * of the tasks run by this pool: the time each task waits in the
+     * queue, the time it takes to run, and the numbers of failed and
+     * rejected tasks.  Enabling statistics registers them as a {@link
+     * java.lang.management.ExecutorMXBean}, and replaces any previously
+     * collected; disabling them unregisters them.
+     *
+     * <p>While statistics are enabled, the submission time of each
+     * task submitted with {@code execute} is recorded in a table kept
+     * by this pool, keyed by the identity of the task, and each task
+     * execution is timed, at the cost of a table update and of a few
+     * calls to {@link System#nanoTime} per task.  Tasks are queued
+     * as submitted, so any {@linkplain #getQueue queue}, including one
+     * ordering its tasks, may be used.  If the same task object is
+     * queued more than once at a time, its earliest submission time is
+     * recorded for the first of its executions only.
+     *
+     * @param enabled {@code true} to enable statistics, {@code false} to
+     *        disable them
+     * @since 1.8
+     */
+    public void setStatisticsEnabled(boolean enabled) {
+        ExecutorStatistics s;
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            if (enabled) {
+                s = statistics;
+                if (submitTimes == null)
+                    submitTimes = ConcurrentWeakHashMap.newIdentityMap();
+                statistics = s = ExecutorStatistics.register(
+                    this, (s == null) ? null : s.getName());
+            }
+            else if ((s = statistics) != null) {
+                statistics = null;
+                ExecutorStatistics.unregister(this);
+            }
+        } finally {
+            mainLock.unlock();
+        }
+        if (s != null)
+            ExecutorStatistics.changed(s.getName());
+    }
+
+    /**
+     * Returns the statistics of the tasks run by this pool, or {@code
+     * null} if they are not enabled.
+     *
+     * @return the statistics, or {@code null} if not enabled
+     * @see #setStatisticsEnabled
+     * @since 1.8
+     */
+    public ExecutorStatistics getStatistics() {
+        return statistics;
+    }
+
     /**
      * Returns a string identifying this pool, as well as its state,
      * including indications of run state and estimated worker and
@@ -0,0 +1,342 @@
+package java.util.concurrent;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A controller that adjusts the core pool size of a {@link
+ * ThreadPoolExecutor} to its load.  The sizer measures the tasks the
+ * pool runs through its {@link #beforeExecute beforeExecute} and
+ * {@link #afterExecute afterExecute} methods, which the pool must call
+ * from its own hook methods, and at the end of each sampling interval
+ * computes a new core pool size with its {@link Policy}, which it sets
+ * with {@link ThreadPoolExecutor#setCorePoolSize}.  For example:
+ *
+ *  <pre> {@code
+ * class AdaptiveThreadPoolExecutor extends ThreadPoolExecutor {
+ *   private final ThreadPoolSizer sizer;
+ *
+ *   public AdaptiveThreadPoolExecutor(int maxPoolSize) {
+ *     super(1, maxPoolSize, 60, TimeUnit.SECONDS,
+ *           new LinkedBlockingQueue<Runnable>());
+ *     sizer = new ThreadPoolSizer(this, 1, maxPoolSize,
+ *                                 ThreadPoolSizer.Policy.LITTLES_LAW,
+ *                                 1, TimeUnit.SECONDS);
+ *   }
+ *
+ *   protected void beforeExecute(Thread t, Runnable r) {
+ *     super.beforeExecute(t, r);
+ *     sizer.beforeExecute(t, r);
+ *   }
+ *
+ *   protected void afterExecute(Runnable r, Throwable t) {
+ *     super.afterExecute(r, t);
+ *     sizer.afterExecute(r, t);
+ *   }
+ * }}</pre>
+ *
+ * <p>Decisions are made by a thread of the pool, after it runs a task
+ * that completes after the end of an interval, so the sizer needs no
+ * thread of its own; the pool is not resized while it runs no tasks,
+ * unless {@link #sample} is called.  The sizer only changes the core
+ * pool size, within the bounds given to it and the maximum pool size of
+ * the pool, so it is meant for pools with an unbounded or large queue,
+ * whose size is their core size.
+ *
+ * <p>The sizer implements {@link ThreadPoolSizerMXBean}, so its
+ * measurements and decisions can be monitored, and resizing turned off,
+ * through JMX.
+ *
+ * @since 1.8
+ */
+public class ThreadPoolSizer implements ThreadPoolSizerMXBean {
+
+    /**
+     * The ways in which a sizer computes the core pool size.
+     */
+    public enum Policy {
+        /**
+         * Sizes the pool by Little's law: the number of threads busy
+         * on average is the arrival rate times the mean service time,
+         * which is divided by the target utilization, and to which are
+         * added the threads needed to run the queued tasks within one
+         * interval.  The pool grows at once, and shrinks by half the
+         * difference per interval.  This suits tasks whose service
+         * time does not depend much on the number of threads.
+         */
+        LITTLES_LAW,
+        /**
+         * Sizes the pool by hill climbing: moves the core pool size by
+         * a step each interval while tasks are queued or threads are
+         * busier than the target utilization, keeping the direction of
+         * the last move unless throughput fell after it.  The pool
+         * shrinks when its queue is empty and one thread fewer would
+         * still be within the target utilization.  This suits tasks
+         * contending for a shared resource, for which more threads may
+         * mean less throughput.
+         */
+        HILL_CLIMBING
+    }
+
+    /** The weight of the latest interval in the smoothed measurements. */
+    static final double SMOOTHING = 0.5;
+
+    /** Throughput changes smaller than this fraction are noise. */
+    static final double NOISE = 0.05;
+
+    private final ThreadPoolExecutor pool;
+    private final Policy policy;
+    private final int minPoolSize;
+    private final int maxPoolSize;
+    private final long intervalNanos;
+    private volatile double targetUtilization = 0.8;
+    private volatile boolean enabled = true;
+
+    // Updated by pool threads
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder busyNanos = new LongAdder();
+    private final ThreadLocal<long[]> startTime = new ThreadLocal<long[]>() {
+        protected long[] initialValue() { return new long[1]; }
+    };
+
+    /** The time of the next sample */
+    private volatile long nextSample;
+
+    /** Guards sampling */
+    private final ReentrantLock sampleLock = new ReentrantLock();
+
+    // Guarded by sampleLock; read racily by the MXBean getters
+    private long lastSample;
+    private long lastCompleted;
+    private long lastBusyNanos;
+    private int lastQueueSize;
+    private volatile double arrivalRate;
+    private volatile double throughput;
+    private volatile double serviceNanos;
+    private volatile double queueWaitNanos;
+    private volatile int targetPoolSize;
+    private volatile long resizeCount;
+    private volatile String lastDecision = "";
+    // hill climbing
+    private int direction = 1;
+    private double lastThroughput;
+    private int lastSize;
+
+    /**
+     * Creates a sizer for the given pool, which sets its core pool size
+     * to {@code minPoolSize} if it is smaller.
+     *
+     * @param pool the pool to resize
+     * @param minPoolSize the smallest core pool size to set
+     * @param maxPoolSize the largest core pool size to set
+     * @param policy the sizing policy
+     * @param interval the sampling interval
+     * @param unit the time unit of {@code interval}
+     * @throws IllegalArgumentException if {@code minPoolSize} is not
+     *         positive, {@code maxPoolSize} is less than {@code
+     *         minPoolSize} or greater than the maximum pool size of the
+     *         pool, or {@code interval} is not positive
+     * @throws NullPointerException if {@code pool}, {@code policy} or
+     *         {@code unit} is null
+     */
+    public ThreadPoolSizer(ThreadPoolExecutor pool, int minPoolSize,
+                           int maxPoolSize, Policy policy,
+                           long interval, TimeUnit unit) {
+        if (pool == null || policy == null)
+            throw new NullPointerException();
+        if (minPoolSize <= 0 || maxPoolSize < minPoolSize ||
+            maxPoolSize > pool.getMaximumPoolSize() || interval <= 0L)
+            throw new IllegalArgumentException();
+        this.pool = pool;
+        this.policy = policy;
+        this.minPoolSize = minPoolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.intervalNanos = unit.toNanos(interval);
+        if (pool.getCorePoolSize() < minPoolSize)
+            pool.setCorePoolSize(minPoolSize);
+        this.targetPoolSize = pool.getCorePoolSize();
+        long now = System.nanoTime();
+        this.lastSample = now;
+        this.nextSample = now + intervalNanos;
+    }
+
+    /**
+     * Records the start of a task.  To be called from the {@code
+     * beforeExecute} method of the pool.
+     *
+     * @param t the thread that will run task {@code r}
+     * @param r the task that will be executed
+     */
+    public void beforeExecute(Thread t, Runnable r) {
+        startTime.get()[0] = System.nanoTime();
+    }
+
+    /**
+     * Records the completion of a task, and takes a sample if the
+     * sampling interval has elapsed.  To be called from the {@code
+     * afterExecute} method of the pool.
+     *
+     * @param r the runnable that has completed
+     * @param t the exception that caused termination, or null if
+     * execution completed normally
+     */
+    public void afterExecute(Runnable r, Throwable t) {
+        long now = System.nanoTime();
+        busyNanos.add(now - startTime.get()[0]);
+        completed.increment();
+        if (now - nextSample >= 0L)
+            sample();
+    }
+
+    public void sample() {
+        final ReentrantLock lock = this.sampleLock;
+        if (!lock.tryLock())
+            return;
+        try {
+            long now = System.nanoTime();
+            long dt = now - lastSample;
+            if (dt <= 0L)
+                return;
+            long c = completed.sum(), b = busyNanos.sum();
+            long dc = c - lastCompleted, db = b - lastBusyNanos;
+            int q = pool.getQueue().size();
+            lastSample = now;
+            lastCompleted = c;
+            lastBusyNanos = b;
+            nextSample = now + intervalNanos;
+            double seconds = dt / 1e9;
+            double x = dc / seconds;
+            double lambda = Math.max(0.0, (dc + q - lastQueueSize) / seconds);
+            lastQueueSize = q;
+            throughput = smooth(throughput, x);
+            arrivalRate = smooth(arrivalRate, lambda);
+            if (dc > 0)
+                serviceNanos = smooth(serviceNanos, (double) db / dc);
+            queueWaitNanos = (arrivalRate > 0.0) ? q / arrivalRate * 1e9 : 0.0;
+            int size = pool.getCorePoolSize();
+            int target = (policy == Policy.LITTLES_LAW) ?
+                littlesLaw(size, q, dt) : hillClimb(size, q, (double) db / dt);
+            target = Math.max(minPoolSize,
+                              Math.min(target, Math.min(maxPoolSize,
+                                                        pool.getMaximumPoolSize())));
+            targetPoolSize = target;
+            if (target != size && enabled) {
+                pool.setCorePoolSize(target);
+                resizeCount++;
+            }
+            lastDecision = String.format(
+                "%s %d -> %d: arrival %.1f/s, throughput %.1f/s, " +
+                "service %.3f ms, queue %d, queue wait %.3f ms",
+                (target > size) ? "grow" : (target < size) ? "shrink" : "keep",
+                size, target, arrivalRate, throughput, serviceNanos / 1e6,
+                q, queueWaitNanos / 1e6);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static double smooth(double old, double x) {
+        return (old == 0.0) ? x : SMOOTHING * x + (1.0 - SMOOTHING) * old;
+    }
+
+    /**
+     * Returns the size needed by Little's law, growing at once and
+     * shrinking by half the difference.
+     */
+    private int littlesLaw(int size, int q, long dt) {
+        double s = serviceNanos;
+        double busy = arrivalRate * s / 1e9;
+        double backlog = q * s / dt;
+        int need = (int) Math.min(Integer.MAX_VALUE,
+                                  Math.ceil(busy / targetUtilization + backlog));
+        if (need >= size)
+            return need;
+        return size - Math.max(1, (size - need) >>> 1);
+    }
+
+    /**
+     * Returns the next size of the hill climb, given the mean number of
+     * busy threads over the interval.
+     */
+    private int hillClimb(int size, int q, double busy) {
+        double x = throughput, lastX = lastThroughput;
+        boolean moved = lastSize != 0 && lastSize != size;
+        lastThroughput = x;
+        lastSize = size;
+        int step = Math.max(1, size >>> 3);
+        if (q == 0 && busy < (size - 1) * targetUtilization) {
+            direction = -1;                 // idle: shrink
+        } else if (q == 0 && busy <= size * targetUtilization) {
+            return size;                    // within target: hold
+        } else if (!moved) {
+            direction = 1;                  // loaded: climb
+        } else if (x - lastX < -NOISE * lastX) {
+            direction = -direction;         // last move hurt: reverse
+        } else if (size <= minPoolSize) {
+            direction = 1;
+        }
+        return size + direction * step;
+    }
+
+    public String getPolicy() {
+        return policy.name();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMinPoolSize() {
+        return minPoolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    public int getCorePoolSize() {
+        return pool.getCorePoolSize();
+    }
+
+    public int getTargetPoolSize() {
+        return targetPoolSize;
+    }
+
+    public double getTargetUtilization() {
+        return targetUtilization;
+    }
+
+    public void setTargetUtilization(double targetUtilization) {
+        if (!(targetUtilization > 0.0 && targetUtilization <= 1.0))
+            throw new IllegalArgumentException();
+        this.targetUtilization = targetUtilization;
+    }
+
+    public double getArrivalRate() {
+        return arrivalRate;
+    }
+
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public double getMeanServiceTime() {
+        return serviceNanos / 1e6;
+    }
+
+    public double getEstimatedQueueWait() {
+        return queueWaitNanos / 1e6;
+    }
+
+    public long getResizeCount() {
+        return resizeCount;
+    }
+
+    public String getLastDecision() {
+        return lastDecision;
+    }
+}
@@ -0,0 +1,142 @@
+package java.util.concurrent;
+
+/**
+ * The management interface of a {@link ThreadPoolSizer}: the
+ * measurements on which it bases its decisions, and the decisions
+ * themselves.  A sizer may be registered with an {@code MBeanServer}
+ * under any name, for example:
+ *
+ *  <pre> {@code
+ * ManagementFactory.getPlatformMBeanServer().registerMBean(
+ *     sizer, new ObjectName("com.example:type=ThreadPoolSizer,name=requests"));}</pre>
+ *
+ * <p>Rates are per second, and times are in milliseconds.  The
+ * measurements are those of the last completed sampling interval, after
+ * smoothing.
+ *
+ * @see ThreadPoolSizer
+ * @since 1.8
+ */
+public interface ThreadPoolSizerMXBean {
+
+    /**
+     * Returns the name of the sizing policy.
+     *
+     * @return the name of the sizing policy
+     */
+    String getPolicy();
+
+    /**
+     * Returns {@code true} if the sizer resizes the pool.
+     *
+     * @return {@code true} if the sizer resizes the pool
+     */
+    boolean isEnabled();
+
+    /**
+     * Enables or disables resizing.  A disabled sizer goes on measuring,
+     * but leaves the core pool size unchanged.
+     *
+     * @param enabled {@code true} to enable resizing
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the smallest core pool size the sizer sets.
+     *
+     * @return the minimum core pool size
+     */
+    int getMinPoolSize();
+
+    /**
+     * Returns the largest core pool size the sizer sets.
+     *
+     * @return the maximum core pool size
+     */
+    int getMaxPoolSize();
+
+    /**
+     * Returns the core pool size of the pool.
+     *
+     * @return the current core pool size
+     */
+    int getCorePoolSize();
+
+    /**
+     * Returns the core pool size the sizer last computed, which it sets
+     * if enabled.
+     *
+     * @return the target core pool size
+     */
+    int getTargetPoolSize();
+
+    /**
+     * Returns the fraction of the time threads are expected to be busy
+     * that the sizer aims for.
+     *
+     * @return the target utilization, between 0 and 1
+     */
+    double getTargetUtilization();
+
+    /**
+     * Sets the fraction of the time threads should be busy, which the
+     * sizer aims for.  Lower values give shorter queue waits, at the
+     * cost of more threads.
+     *
+     * @param targetUtilization the target utilization
+     * @throws IllegalArgumentException if {@code targetUtilization} is not
+     *         greater than 0 and at most 1
+     */
+    void setTargetUtilization(double targetUtilization);
+
+    /**
+     * Returns the estimated rate at which tasks are submitted.
+     *
+     * @return tasks per second
+     */
+    double getArrivalRate();
+
+    /**
+     * Returns the rate at which tasks are completed.
+     *
+     * @return tasks per second
+     */
+    double getThroughput();
+
+    /**
+     * Returns the mean time tasks take to run.
+     *
+     * @return milliseconds
+     */
+    double getMeanServiceTime();
+
+    /**
+     * Returns the mean time tasks wait in the queue, estimated by
+     * Little's law from the queue length and the arrival rate.
+     *
+     * @return milliseconds
+     */
+    double getEstimatedQueueWait();
+
+    /**
+     * Returns the number of times the sizer changed the core pool size.
+     *
+     * @return the number of resizes
+     */
+    long getResizeCount();
+
+    /**
+     * Returns a description of the last decision: the sizes before and
+     * after, and the measurements it was based on.
+     *
+     * @return the last decision, or an empty string if none yet
+     */
+    String getLastDecision();
+
+    /**
+     * Takes a sample and makes a decision now, if no other thread is
+     * doing so, instead of when a task next completes after the end of
+     * the sampling interval.
+     */
+    void sample();
+}
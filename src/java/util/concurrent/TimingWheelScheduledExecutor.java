@@ -0,0 +1,858 @@
+package java.util.concurrent;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link ScheduledExecutorService} that keeps its delayed tasks in a
+ * hierarchical hashed timing wheel, and runs them in a given {@link
+ * Executor}.  Scheduling and cancelling a task take constant time and
+ * never contend on a shared lock, unlike in {@link
+ * ScheduledThreadPoolExecutor}, whose delay queue is a binary heap under
+ * a single lock.  This makes the class suitable for very large numbers
+ * of short-lived timeouts, most of which are cancelled before they
+ * expire.
+ *
+ * <p>Time is divided into <em>ticks</em> of a fixed duration, set when
+ * the executor is created.  A task becomes eligible to run at the end of
+ * the tick in which its delay elapses, so it may run up to one tick late,
+ * but never early.  Tasks that become eligible in the same tick are
+ * handed to the worker executor in batches, each run as a single task of
+ * the worker executor, in order of scheduling within each wheel slot.
+ * The worker executor should therefore have enough threads for the
+ * tasks, which should be short, or should themselves hand off longer
+ * work.
+ *
+ * <p>The timing wheel is maintained by a single timer thread, created
+ * with the given {@link ThreadFactory} when the first task is scheduled.
+ * Other threads only enqueue new and cancelled tasks for it, so the
+ * timer thread is the only one to touch the wheel.  While no tasks are
+ * scheduled, the timer thread waits without ticking.
+ *
+ * <p>As in {@code ScheduledThreadPoolExecutor}, tasks scheduled with a
+ * zero or negative delay, including those passed to {@code execute} and
+ * {@code submit}, are run as soon as possible: here, they are handed to
+ * the worker executor at once.  After {@link #shutdown}, periodic tasks
+ * are cancelled, and delayed tasks still run when their delay elapses.
+ * The worker executor belongs to the caller: shutting down this
+ * executor does not shut it down, and this executor terminates once
+ * the tasks it handed over have completed.
+ *
+ * @since 1.8
+ */
+public class TimingWheelScheduledExecutor extends AbstractExecutorService
+    implements ScheduledExecutorService {
+
+    /*
+     * The wheel has several levels, each of wheelSize slots.  A slot
+     * of level L covers wheelSize^L ticks, and the levels together
+     * cover every tick that fits in a long, so a deadline never
+     * overflows the wheel.  A task whose deadline tick t is after the
+     * current tick c goes to the lowest level L such that t and c have
+     * the same digits (in base wheelSize) above position L, in the
+     * slot given by digit L of t.  When the current tick reaches a
+     * multiple of wheelSize^L, the slot of level L for the new digit
+     * is emptied and its tasks reinserted, which moves them down; a
+     * task in a slot of level 0 then has exactly the deadline of the
+     * current tick when its slot is reached, and expires.  Each slot
+     * is a doubly-linked list of tasks, so a task is unlinked in
+     * constant time.
+     *
+     * New tasks, and tasks that are cancelled, are passed to the timer
+     * thread through queues, which it drains at each tick.  The timer
+     * thread holds mainLock while it changes the wheel, but not while
+     * it sleeps or hands tasks over, so that shutdown methods can
+     * inspect the wheel under the same lock.
+     */
+
+    /** The maximum number of tasks run as one task of the worker executor. */
+    static final int MAX_BATCH = 64;
+
+    /** The maximum delay, which keeps deadlines from overflowing. */
+    static final long MAX_DELAY = Long.MAX_VALUE >>> 1;
+
+    // runState
+    static final int RUNNING    = 0;
+    static final int SHUTDOWN   = 1;
+    static final int STOP       = 2;
+    static final int TERMINATED = 3;
+
+    private final Executor executor;
+    private final ThreadFactory threadFactory;
+    private final long tickNanos;
+    private final long startTime;
+    private final int wheelBits;
+    private final int wheelMask;
+    private final WheelTask<?>[][] wheels;
+
+    /** Tasks scheduled but not yet in the wheel */
+    private final ConcurrentLinkedQueue<WheelTask<?>> incoming =
+        new ConcurrentLinkedQueue<WheelTask<?>>();
+
+    /** Cancelled tasks that may still be in the wheel */
+    private final ConcurrentLinkedQueue<WheelTask<?>> cancelled =
+        new ConcurrentLinkedQueue<WheelTask<?>>();
+
+    /** Guards the wheel, the timer thread's start, and termination */
+    private final ReentrantLock mainLock = new ReentrantLock();
+    private final Condition termination = mainLock.newCondition();
+
+    /** The number of batches handed to the executor and not yet run */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong sequencer = new AtomicLong();
+
+    private volatile int runState;
+    private volatile Thread timer;
+    private volatile boolean timerRunning;
+    private volatile boolean timerIdle;
+
+    // Fields below are accessed by the timer thread, under mainLock
+
+    /** The last tick processed */
+    private long currentTick;
+
+    /** The number of tasks in the wheel */
+    private int count;
+
+    /** Tasks expired in the current round, to hand to the executor */
+    private WheelTask<?>[] expired = new WheelTask<?>[MAX_BATCH];
+    private int expiredCount;
+
+    /**
+     * Creates a new executor with the given tick duration and 512 slots
+     * per wheel level, which runs tasks in the given executor, and
+     * creates its timer thread with {@link Executors#defaultThreadFactory}.
+     *
+     * @param tickDuration the duration of a tick
+     * @param unit the time unit of {@code tickDuration}
+     * @param executor the executor in which tasks are run
+     * @throws IllegalArgumentException if {@code tickDuration} is not
+     *         positive
+     * @throws NullPointerException if {@code unit} or {@code executor} is
+     *         null
+     */
+    public TimingWheelScheduledExecutor(long tickDuration, TimeUnit unit,
+                                        Executor executor) {
+        this(tickDuration, unit, 512, executor,
+             Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Creates a new executor with the given tick duration and number of
+     * slots per wheel level, which runs tasks in the given executor, and
+     * creates its timer thread with the given factory.
+     *
+     * @param tickDuration the duration of a tick
+     * @param unit the time unit of {@code tickDuration}
+     * @param wheelSize the number of slots of each level of the wheel,
+     *        rounded up to a power of two
+     * @param executor the executor in which tasks are run
+     * @param threadFactory the factory of the timer thread
+     * @throws IllegalArgumentException if {@code tickDuration} or
+     *         {@code wheelSize} is not positive, or {@code wheelSize} is
+     *         greater than 2<sup>20</sup>
+     * @throws NullPointerException if {@code unit}, {@code executor} or
+     *         {@code threadFactory} is null
+     */
+    public TimingWheelScheduledExecutor(long tickDuration, TimeUnit unit,
+                                        int wheelSize, Executor executor,
+                                        ThreadFactory threadFactory) {
+        if (tickDuration <= 0L || wheelSize <= 0 || wheelSize > (1 << 20))
+            throw new IllegalArgumentException();
+        if (executor == null || threadFactory == null)
+            throw new NullPointerException();
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.executor = executor;
+        this.threadFactory = threadFactory;
+        int bits = (wheelSize <= 2) ? 1 :
+            32 - Integer.numberOfLeadingZeros(wheelSize - 1);
+        this.wheelBits = bits;
+        this.wheelMask = (1 << bits) - 1;
+        this.wheels = new WheelTask<?>[(63 + bits - 1) / bits][];
+        this.startTime = System.nanoTime();
+    }
+
+    final long now() {
+        return System.nanoTime();
+    }
+
+    private class WheelTask<V>
+            extends FutureTask<V> implements RunnableScheduledFuture<V> {
+
+        /** Sequence number to break ties FIFO */
+        private final long sequenceNumber;
+
+        /** The time the task is enabled to execute in nanoTime units */
+        private long time;
+
+        /**
+         * Period in nanoseconds for repeating tasks.  A positive
+         * value indicates fixed-rate execution.  A negative value
+         * indicates fixed-delay execution.  A value of 0 indicates a
+         * non-repeating task.
+         */
+        private final long period;
+
+        /** The tick at the end of which the task is enabled */
+        long deadline;
+
+        /** The slot holding the task, or -1 if not in the wheel */
+        int level = -1, slot;
+
+        /** Links of the slot, used by the timer thread */
+        WheelTask<?> prev, next;
+
+        WheelTask(Runnable r, V result, long ns, long period) {
+            super(r, result);
+            this.time = ns;
+            this.period = period;
+            this.sequenceNumber = sequencer.getAndIncrement();
+        }
+
+        WheelTask(Callable<V> callable, long ns) {
+            super(callable);
+            this.time = ns;
+            this.period = 0;
+            this.sequenceNumber = sequencer.getAndIncrement();
+        }
+
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - now(), NANOSECONDS);
+        }
+
+        public int compareTo(Delayed other) {
+            if (other == this) // compare zero if same object
+                return 0;
+            if (other instanceof WheelTask) {
+                WheelTask<?> x = (WheelTask<?>)other;
+                long diff = time - x.time;
+                if (diff < 0)
+                    return -1;
+                else if (diff > 0)
+                    return 1;
+                else if (sequenceNumber < x.sequenceNumber)
+                    return -1;
+                else
+                    return 1;
+            }
+            long diff = getDelay(NANOSECONDS) - other.getDelay(NANOSECONDS);
+            return (diff < 0) ? -1 : (diff > 0) ? 1 : 0;
+        }
+
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        private void setNextRunTime() {
+            long p = period;
+            if (p > 0)
+                time += p;
+            else
+                time = triggerTime(-p);
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean c = super.cancel(mayInterruptIfRunning);
+            if (c)
+                taskCancelled(this);
+            return c;
+        }
+
+        public void run() {
+            boolean periodic = isPeriodic();
+            if (periodic && runState != RUNNING)
+                cancel(false);
+            else if (!periodic)
+                WheelTask.super.run();
+            else if (WheelTask.super.runAndReset()) {
+                setNextRunTime();
+                reExecutePeriodic(this);
+            }
+        }
+    }
+
+    /**
+     * Runs a batch of expired tasks.
+     */
+    private final class Batch implements Runnable {
+        private final WheelTask<?>[] tasks;
+        private final int size;
+
+        Batch(WheelTask<?>[] tasks, int size) {
+            this.tasks = tasks;
+            this.size = size;
+        }
+
+        public void run() {
+            try {
+                for (int i = 0; i < size; ++i)
+                    tasks[i].run();
+            } finally {
+                if (inFlight.decrementAndGet() == 0 && runState >= SHUTDOWN)
+                    tryTerminate();
+            }
+        }
+    }
+
+    /**
+     * Returns the nanoTime-based trigger time of a delayed action.
+     */
+    final long triggerTime(long delay) {
+        return now() + Math.min(Math.max(delay, 0L), MAX_DELAY);
+    }
+
+    /* ---------------- Scheduling -------------- */
+
+    /**
+     * Schedules a task: hands it over at once if its time has come,
+     * else passes it to the timer thread.
+     */
+    private void delayedExecute(WheelTask<?> task) {
+        if (task.time - now() <= 0L) {
+            dispatch(task);
+            return;
+        }
+        if (runState != RUNNING || !ensureTimer())
+            throw new RejectedExecutionException("Executor is shut down");
+        incoming.add(task);
+        if (runState != RUNNING && incoming.remove(task))
+            task.cancel(false);
+        else if (timerIdle)
+            LockSupport.unpark(timer);
+    }
+
+    /**
+     * Hands a task whose time has come to the executor.
+     */
+    private void dispatch(WheelTask<?> task) {
+        inFlight.incrementAndGet();
+        if (runState != RUNNING) {
+            if (inFlight.decrementAndGet() == 0)
+                tryTerminate();
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        try {
+            executor.execute(new Batch(new WheelTask<?>[] { task }, 1));
+        } catch (RuntimeException | Error ex) {
+            if (inFlight.decrementAndGet() == 0 && runState >= SHUTDOWN)
+                tryTerminate();
+            throw ex;
+        }
+    }
+
+    /**
+     * Requeues a periodic task after a run, unless shut down.
+     */
+    private void reExecutePeriodic(WheelTask<?> task) {
+        if (runState == RUNNING && ensureTimer()) {
+            incoming.add(task);
+            if (runState != RUNNING && incoming.remove(task))
+                task.cancel(false);
+            else if (timerIdle)
+                LockSupport.unpark(timer);
+        } else
+            task.cancel(false);
+    }
+
+    private void taskCancelled(WheelTask<?> task) {
+        if (timerRunning)
+            cancelled.add(task);
+    }
+
+    /**
+     * Starts the timer thread if not yet started.
+     *
+     * @return false if shut down before the timer thread started
+     */
+    private boolean ensureTimer() {
+        if (timer != null)
+            return true;
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            if (timer == null) {
+                if (runState != RUNNING)
+                    return false;
+                Thread t = threadFactory.newThread(new Runnable() {
+                        public void run() { runTimer(); }
+                    });
+                if (t == null)
+                    throw new RejectedExecutionException("No timer thread");
+                timerRunning = true;
+                timer = t;
+                t.start();
+            }
+            return true;
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /* ---------------- Timer thread -------------- */
+
+    /**
+     * Main loop of the timer thread.
+     */
+    final void runTimer() {
+        final ReentrantLock mainLock = this.mainLock;
+        try {
+            for (;;) {
+                WheelTask<?>[] batch;
+                int n;
+                boolean empty;
+                mainLock.lock();
+                try {
+                    if (runState >= STOP)
+                        break;
+                    long target = (now() - startTime) / tickNanos;
+                    // An empty wheel has no ticks to process: jump over
+                    // any idle period before inserting new tasks, so
+                    // they are placed relative to the current time.
+                    if (count == 0 && target > currentTick)
+                        currentTick = target;
+                    transferTasks();
+                    while (currentTick < target && count > 0)
+                        advance(++currentTick);
+                    if (count == 0 && target > currentTick)
+                        currentTick = target;
+                    empty = (count == 0);
+                    if (empty && runState >= SHUTDOWN && incoming.isEmpty() &&
+                        expiredCount == 0)
+                        break;
+                    batch = expired;
+                    n = expiredCount;
+                    if (n > 0) {
+                        expired = new WheelTask<?>[MAX_BATCH];
+                        expiredCount = 0;
+                    }
+                } finally {
+                    mainLock.unlock();
+                }
+                if (n > 0)
+                    handOver(batch, n);
+                if (empty) {
+                    timerIdle = true;
+                    if (incoming.isEmpty() && runState == RUNNING)
+                        LockSupport.park(this);
+                    timerIdle = false;
+                } else {
+                    long wake = startTime + (currentTick + 1L) * tickNanos - now();
+                    if (wake > 0L)
+                        LockSupport.parkNanos(this, wake);
+                }
+            }
+        } finally {
+            timerRunning = false;
+            tryTerminate();
+        }
+    }
+
+    /**
+     * Moves new tasks into the wheel, and cancelled tasks out of it.
+     */
+    private void transferTasks() {
+        WheelTask<?> t;
+        while ((t = incoming.poll()) != null) {
+            if (!t.isCancelled()) {
+                t.deadline = deadlineTick(t.time);
+                insert(t);
+            }
+        }
+        while ((t = cancelled.poll()) != null) {
+            if (t.level >= 0)
+                unlink(t);
+        }
+    }
+
+    /**
+     * Returns the tick at the end of which a task with the given
+     * trigger time is enabled.
+     */
+    private long deadlineTick(long time) {
+        long elapsed = time - startTime;
+        if (elapsed <= 0L)
+            return 0L;
+        return (elapsed - 1L) / tickNanos + 1L;
+    }
+
+    /**
+     * Inserts a task into the wheel, or expires it if it is due.
+     */
+    private void insert(WheelTask<?> t) {
+        long d = t.deadline, c = currentTick;
+        if (d <= c) {
+            expire(t);
+            return;
+        }
+        int bits = wheelBits, level = 0;
+        while (level < wheels.length - 1 &&
+               (d >>> ((level + 1) * bits)) != (c >>> ((level + 1) * bits)))
+            ++level;
+        int slot = (int) (d >>> (level * bits)) & wheelMask;
+        WheelTask<?>[] w = wheels[level];
+        if (w == null)
+            wheels[level] = w = new WheelTask<?>[wheelMask + 1];
+        WheelTask<?> h = w[slot];
+        t.level = level;
+        t.slot = slot;
+        t.prev = null;
+        t.next = h;
+        if (h != null)
+            h.prev = t;
+        w[slot] = t;
+        ++count;
+    }
+
+    private void unlink(WheelTask<?> t) {
+        WheelTask<?> p = t.prev, n = t.next;
+        if (p != null)
+            p.next = n;
+        else
+            wheels[t.level][t.slot] = n;
+        if (n != null)
+            n.prev = p;
+        t.prev = t.next = null;
+        t.level = -1;
+        --count;
+    }
+
+    /**
+     * Removes the tasks of a slot, in the order they were inserted.
+     */
+    private WheelTask<?> takeSlot(int level, int slot) {
+        WheelTask<?>[] w = wheels[level];
+        WheelTask<?> h;
+        if (w == null || (h = w[slot]) == null)
+            return null;
+        w[slot] = null;
+        // reverse the list, which was built by pushing
+        WheelTask<?> r = null;
+        for (WheelTask<?> t = h, n; t != null; t = n) {
+            n = t.next;
+            t.next = r;
+            t.prev = null;
+            t.level = -1;
+            r = t;
+            --count;
+        }
+        return r;
+    }
+
+    /**
+     * Processes the given tick: cascades the slots of the higher levels
+     * that it reaches, then expires its slot of level 0.
+     */
+    private void advance(long tick) {
+        int bits = wheelBits;
+        for (int level = wheels.length - 1; level > 0; --level) {
+            int shift = level * bits;
+            if ((tick & ((1L << shift) - 1L)) == 0L) {
+                WheelTask<?> t = takeSlot(level, (int) (tick >>> shift) & wheelMask);
+                for (WheelTask<?> n; t != null; t = n) {
+                    n = t.next;
+                    t.next = null;
+                    if (!t.isCancelled())
+                        insert(t);
+                }
+            }
+        }
+        WheelTask<?> t = takeSlot(0, (int) tick & wheelMask);
+        for (WheelTask<?> n; t != null; t = n) {
+            n = t.next;
+            t.next = null;
+            if (!t.isCancelled())
+                expire(t);
+        }
+    }
+
+    private void expire(WheelTask<?> t) {
+        int n = expiredCount;
+        if (n == expired.length)
+            expired = Arrays.copyOf(expired, n << 1);
+        expired[n] = t;
+        expiredCount = n + 1;
+    }
+
+    /**
+     * Hands expired tasks to the executor, in batches of up to
+     * MAX_BATCH tasks.  Tasks that the executor rejects, or fails to
+     * accept by throwing any other exception, are cancelled, so that
+     * the exception cannot kill the timer thread.
+     */
+    private void handOver(WheelTask<?>[] tasks, int n) {
+        for (int i = 0; i < n; i += MAX_BATCH) {
+            int k = Math.min(MAX_BATCH, n - i);
+            WheelTask<?>[] b;
+            if (i == 0 && k == tasks.length)
+                b = tasks;
+            else {
+                b = new WheelTask<?>[k];
+                System.arraycopy(tasks, i, b, 0, k);
+            }
+            inFlight.incrementAndGet();
+            try {
+                executor.execute(new Batch(b, k));
+            } catch (RuntimeException | Error ex) {
+                inFlight.decrementAndGet();
+                for (int j = 0; j < k; ++j)
+                    b[j].cancel(false);
+            }
+        }
+    }
+
+    /* ---------------- Lifecycle -------------- */
+
+    final void tryTerminate() {
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            if (runState >= SHUTDOWN && runState < TERMINATED &&
+                !timerRunning && inFlight.get() == 0) {
+                runState = TERMINATED;
+                termination.signalAll();
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /**
+     * Initiates an orderly shutdown in which previously submitted
+     * tasks are executed, but no new tasks will be accepted.
+     * Delayed tasks run when their delays elapse; periodic tasks are
+     * cancelled.  Invocation has no additional effect if already shut
+     * down.
+     *
+     * <p>This method does not wait for previously submitted tasks to
+     * complete execution.  Use {@link #awaitTermination awaitTermination}
+     * to do that.
+     */
+    public void shutdown() {
+        List<WheelTask<?>> periodic = new ArrayList<WheelTask<?>>();
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            if (runState != RUNNING)
+                return;
+            runState = SHUTDOWN;
+            for (WheelTask<?>[] w : wheels) {
+                if (w != null) {
+                    for (WheelTask<?> t : w) {
+                        for (; t != null; t = t.next) {
+                            if (t.isPeriodic())
+                                periodic.add(t);
+                        }
+                    }
+                }
+            }
+            for (WheelTask<?> t : incoming) {
+                if (t.isPeriodic())
+                    periodic.add(t);
+            }
+        } finally {
+            mainLock.unlock();
+        }
+        for (WheelTask<?> t : periodic)
+            t.cancel(false);
+        Thread t = timer;
+        if (t != null)
+            LockSupport.unpark(t);
+        tryTerminate();
+    }
+
+    /**
+     * Attempts to stop all actively executing tasks, halts the
+     * processing of waiting tasks, and returns a list of the tasks
+     * that were awaiting execution.  The tasks already handed to the
+     * worker executor are not interrupted.
+     *
+     * @return list of tasks that never commenced execution.
+     *         Each element of this list is a {@link ScheduledFuture},
+     *         including those tasks submitted using {@code execute},
+     *         which are for scheduling purposes used as the basis of a
+     *         zero-delay {@code ScheduledFuture}.
+     */
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            if (runState < STOP)
+                runState = STOP;
+            for (int level = 0; level < wheels.length; ++level) {
+                WheelTask<?>[] w = wheels[level];
+                if (w != null) {
+                    for (int slot = 0; slot < w.length; ++slot) {
+                        for (WheelTask<?> t = takeSlot(level, slot), n; t != null; t = n) {
+                            n = t.next;
+                            t.next = null;
+                            if (!t.isCancelled())
+                                tasks.add(t);
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < expiredCount; ++i)
+                tasks.add(expired[i]);
+            expiredCount = 0;
+            for (WheelTask<?> t; (t = incoming.poll()) != null; ) {
+                if (!t.isCancelled())
+                    tasks.add(t);
+            }
+            cancelled.clear();
+        } finally {
+            mainLock.unlock();
+        }
+        Thread t = timer;
+        if (t != null)
+            LockSupport.unpark(t);
+        tryTerminate();
+        return tasks;
+    }
+
+    public boolean isShutdown() {
+        return runState != RUNNING;
+    }
+
+    public boolean isTerminated() {
+        return runState == TERMINATED;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        final ReentrantLock mainLock = this.mainLock;
+        mainLock.lock();
+        try {
+            for (;;) {
+                if (runState == TERMINATED)
+                    return true;
+                if (nanos <= 0)
+                    return false;
+                nanos = termination.awaitNanos(nanos);
+            }
+        } finally {
+            mainLock.unlock();
+        }
+    }
+
+    /* ---------------- ScheduledExecutorService methods -------------- */
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public ScheduledFuture<?> schedule(Runnable command,
+                                       long delay,
+                                       TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        WheelTask<Void> t = new WheelTask<Void>(command, null,
+                                                triggerTime(unit.toNanos(delay)), 0L);
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable,
+                                           long delay,
+                                           TimeUnit unit) {
+        if (callable == null || unit == null)
+            throw new NullPointerException();
+        WheelTask<V> t = new WheelTask<V>(callable,
+                                          triggerTime(unit.toNanos(delay)));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     * @throws IllegalArgumentException   {@inheritDoc}
+     */
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command,
+                                                  long initialDelay,
+                                                  long period,
+                                                  TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        if (period <= 0)
+            throw new IllegalArgumentException();
+        WheelTask<Void> t =
+            new WheelTask<Void>(command, null,
+                                triggerTime(unit.toNanos(initialDelay)),
+                                unit.toNanos(period));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     * @throws IllegalArgumentException   {@inheritDoc}
+     */
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command,
+                                                     long initialDelay,
+                                                     long delay,
+                                                     TimeUnit unit) {
+        if (command == null || unit == null)
+            throw new NullPointerException();
+        if (delay <= 0)
+            throw new IllegalArgumentException();
+        WheelTask<Void> t =
+            new WheelTask<Void>(command, null,
+                                triggerTime(unit.toNanos(initialDelay)),
+                                -unit.toNanos(delay));
+        delayedExecute(t);
+        return t;
+    }
+
+    /**
+     * Executes {@code command} with zero required delay.
+     *
+     * @throws RejectedExecutionException if the task cannot be
+     *         accepted for execution because the executor has been
+     *         shut down
+     * @throws NullPointerException {@inheritDoc}
+     */
+    public void execute(Runnable command) {
+        schedule(command, 0, NANOSECONDS);
+    }
+
+    // Override AbstractExecutorService methods
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public Future<?> submit(Runnable task) {
+        return schedule(task, 0, NANOSECONDS);
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public <T> Future<T> submit(Runnable task, T result) {
+        return schedule(Executors.callable(task, result), 0, NANOSECONDS);
+    }
+
+    /**
+     * @throws RejectedExecutionException {@inheritDoc}
+     * @throws NullPointerException       {@inheritDoc}
+     */
+    public <T> Future<T> submit(Callable<T> task) {
+        return schedule(task, 0, NANOSECONDS);
+    }
+}
@@ -0,0 +1,729 @@
+package java.util.concurrent.atomic;
+
+import java.io.Serializable;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A histogram of non-negative {@code long} values, such as latencies in
+ * nanoseconds, recorded concurrently by many threads, from which
+ * percentiles can be read.  As with {@link LongAdder}, when recordings
+ * (method {@link #record}) are contended across threads, the set of
+ * counters may grow dynamically to reduce contention, so that recording
+ * scales with the number of threads, without locking.  Methods {@link
+ * #snapshot} and {@link #intervalSnapshot} return an immutable {@link
+ * Snapshot} of the counts, combined across the counters, from which
+ * percentiles and other statistics are computed.
+ *
+ * <p>Values are counted in <em>log-linear</em> buckets, as in the
+ * HdrHistogram library: the range of values is divided into ranges of
+ * powers of two, each divided into equal buckets, enough of them that
+ * each value is counted with a precision of the given number of
+ * significant decimal digits.  For example, with three significant
+ * digits, a value of 1,000,000 is counted in a bucket of width 1024, so
+ * a percentile read as 1,000,000 is accurate to within 0.1%.  Values
+ * greater than the highest trackable value given at construction are
+ * counted as that value.
+ *
+ * <p>A histogram takes memory in proportion to {@code
+ * 10}<sup><i>digits</i></sup> times the logarithm of the highest
+ * trackable value, for each counter: with three digits and values up
+ * to one hour in nanoseconds, about 300 kilobytes.  Under contention
+ * there may be one counter for each processor, so fewer digits, or
+ * a lower highest trackable value, should be preferred for histograms
+ * updated by many threads.
+ *
+ * <p>Snapshots are taken without blocking threads that are recording,
+ * and so may count some but not all of the values recorded while they
+ * are taken; each value is counted exactly once in the successive
+ * snapshots returned by {@link #intervalSnapshot}.  Snapshots of
+ * histograms with the same configuration can be {@linkplain
+ * Snapshot#merge merged}, for example to combine the histograms of
+ * several servers, or of several intervals.
+ *
+ * @since 1.8
+ */
+public class LongHistogram implements Serializable {
+    private static final long serialVersionUID = -3474328429136548313L;
+
+    /*
+     * Overview:
+     *
+     * The counters are organized as in Striped64, whose probe and
+     * table-size bound this class shares, except that a "cell" is a
+     * whole array of bucket counts (plus a sum of values, for the
+     * mean) rather than a single long, and the base is such a cell
+     * too.  A recording CASes the count of its bucket in the base
+     * while there is no contention, and in the cell selected by the
+     * thread's probe otherwise.  A failed CAS signals contention, and
+     * leads, as in Striped64.longAccumulate, to rehashing the probe,
+     * creating a cell, or doubling the table up to the number of
+     * CPUs.  The sums are updated by unconditional adds once the
+     * count has been.
+     *
+     * Snapshots read every count with a volatile read.  Interval
+     * snapshots subtract the counts of the previous interval
+     * snapshot, which are kept under the histogram's monitor, so
+     * recording never waits for a snapshot, and a value is counted
+     * in the first interval snapshot that reads its count.
+     */
+
+    /**
+     * The bucket layout, computed from the significant digits and the
+     * highest trackable value as in HdrHistogram, with a unit of 1.
+     * Bucket index i of the counts array covers the values from
+     * lowestValue(i) to highestValue(i).
+     */
+    static final class Layout implements Serializable {
+        private static final long serialVersionUID = 2958437409825327395L;
+
+        final long highestTrackableValue;
+        final int significantDigits;
+        final int subBucketHalfCountMagnitude;
+        final int subBucketHalfCount;
+        final long subBucketMask;
+        final int leadingZeroCountBase;
+        final int length;
+
+        Layout(long highestTrackableValue, int significantDigits) {
+            if (significantDigits < 0 || significantDigits > 5 ||
+                highestTrackableValue < 2L)
+                throw new IllegalArgumentException();
+            this.highestTrackableValue = highestTrackableValue;
+            this.significantDigits = significantDigits;
+            long largestSingleUnit = 2L;
+            for (int i = 0; i < significantDigits; ++i)
+                largestSingleUnit *= 10L;
+            int mag = 64 - Long.numberOfLeadingZeros(largestSingleUnit - 1L);
+            subBucketHalfCountMagnitude = Math.max(mag, 1) - 1;
+            int subBucketCount = 1 << (subBucketHalfCountMagnitude + 1);
+            subBucketHalfCount = subBucketCount >>> 1;
+            subBucketMask = subBucketCount - 1;
+            leadingZeroCountBase = 63 - subBucketHalfCountMagnitude;
+            long smallestUntrackable = subBucketCount;
+            int buckets = 1;
+            while (smallestUntrackable <= highestTrackableValue) {
+                if (smallestUntrackable > Long.MAX_VALUE / 2) {
+                    ++buckets;
+                    break;
+                }
+                smallestUntrackable <<= 1;
+                ++buckets;
+            }
+            length = (buckets + 1) * subBucketHalfCount;
+        }
+
+        int indexOf(long value) {
+            if (value > highestTrackableValue)
+                value = highestTrackableValue;
+            int bucket = leadingZeroCountBase -
+                Long.numberOfLeadingZeros(value | subBucketMask);
+            int subBucket = (int)(value >>> bucket);
+            return ((bucket + 1) << subBucketHalfCountMagnitude) +
+                (subBucket - subBucketHalfCount);
+        }
+
+        long lowestValue(int index) {
+            int bucket = (index >> subBucketHalfCountMagnitude) - 1;
+            int subBucket = (index & (subBucketHalfCount - 1)) +
+                subBucketHalfCount;
+            if (bucket < 0) {
+                subBucket -= subBucketHalfCount;
+                bucket = 0;
+            }
+            return (long)subBucket << bucket;
+        }
+
+        long highestValue(int index) {
+            int bucket = Math.max((index >> subBucketHalfCountMagnitude) - 1, 0);
+            return lowestValue(index) + (1L << bucket) - 1L;
+        }
+
+        boolean equals(Layout l) {
+            return highestTrackableValue == l.highestTrackableValue &&
+                significantDigits == l.significantDigits;
+        }
+    }
+
+    /**
+     * A set of bucket counts and their sum of values.  Padded like
+     * Striped64.Cell, as cells of a table are allocated together.
+     */
+    @sun.misc.Contended static final class Counts {
+        final long[] counts;
+        volatile long sum;
+        Counts(int length) {
+            counts = new long[length];
+        }
+        final long get(int i) {
+            return UNSAFE.getLongVolatile(counts, offset(i));
+        }
+        final boolean cas(int i, long cmp, long val) {
+            return UNSAFE.compareAndSwapLong(counts, offset(i), cmp, val);
+        }
+        final void add(int i, long x) {
+            UNSAFE.getAndAddLong(counts, offset(i), x);
+        }
+        final void addSum(long x) {
+            UNSAFE.getAndAddLong(this, SUM, x);
+        }
+        final void reset() {
+            for (int i = 0; i < counts.length; ++i)
+                UNSAFE.putLongVolatile(counts, offset(i), 0L);
+            sum = 0L;
+        }
+        private static long offset(int i) {
+            return ((long)i << ASHIFT) + ABASE;
+        }
+    }
+
+    final Layout layout;
+
+    /** The counts used while there is no contention */
+    private final transient Counts base;
+
+    /** Table of counts. When non-null, size is a power of 2. */
+    private transient volatile Counts[] cells;
+
+    /** Spinlock (locked via CAS) used when resizing and/or creating cells */
+    private transient volatile int cellsBusy;
+
+    /** The counts and sum at the last interval snapshot, under this lock */
+    private transient long[] intervalCounts;
+    private transient long intervalSum;
+
+    /**
+     * Creates a new histogram, empty, of the values from 0 to the
+     * given highest trackable value, with the given precision.
+     *
+     * @param highestTrackableValue the highest value to count
+     * separately; greater values are counted as this value
+     * @param significantDigits the number of significant decimal digits
+     * to which values are counted, from 0 to 5
+     * @throws IllegalArgumentException if {@code highestTrackableValue}
+     *         is less than 2, or {@code significantDigits} is not
+     *         between 0 and 5
+     */
+    public LongHistogram(long highestTrackableValue, int significantDigits) {
+        this(new Layout(highestTrackableValue, significantDigits));
+    }
+
+    private LongHistogram(Layout layout) {
+        this.layout = layout;
+        this.base = new Counts(layout.length);
+    }
+
+    /**
+     * Records the given value.
+     *
+     * @param value the value
+     * @throws IllegalArgumentException if {@code value} is negative
+     */
+    public void record(long value) {
+        record(value, 1L);
+    }
+
+    /**
+     * Records the given value the given number of times.
+     *
+     * @param value the value
+     * @param count the number of times to record it
+     * @throws IllegalArgumentException if {@code value} or {@code count}
+     *         is negative
+     */
+    public void record(long value, long count) {
+        if (value < 0L || count < 0L)
+            throw new IllegalArgumentException();
+        int i = layout.indexOf(value);
+        Counts[] as; Counts a; long v; int m;
+        if ((as = cells) != null || !(a = base).cas(i, v = a.get(i), v + count)) {
+            boolean uncontended = true;
+            if (as == null || (m = as.length - 1) < 0 ||
+                (a = as[Striped64.getProbe() & m]) == null ||
+                !(uncontended = a.cas(i, v = a.get(i), v + count)))
+                a = recordContended(i, count, uncontended);
+        }
+        a.addSum(value * count);
+    }
+
+    /**
+     * Handles cases of recordings involving initialization, resizing,
+     * creating new cells, and/or contention, as does
+     * Striped64.longAccumulate.
+     *
+     * @return the counts to which the count was added
+     */
+    private Counts recordContended(int i, long count, boolean wasUncontended) {
+        int h;
+        if ((h = Striped64.getProbe()) == 0) {
+            ThreadLocalRandom.current(); // force initialization
+            h = Striped64.getProbe();
+            wasUncontended = true;
+        }
+        boolean collide = false;                // True if last slot nonempty
+        for (;;) {
+            Counts[] as; Counts a; int n; long v;
+            if ((as = cells) != null && (n = as.length) > 0) {
+                if ((a = as[(n - 1) & h]) == null) {
+                    if (cellsBusy == 0) {       // Try to attach new cell
+                        Counts r = new Counts(layout.length);
+                        r.counts[i] = count;    // Optimistically create
+                        if (cellsBusy == 0 && casCellsBusy()) {
+                            boolean created = false;
+                            try {               // Recheck under lock
+                                Counts[] rs; int k, j;
+                                if ((rs = cells) != null &&
+                                    (k = rs.length) > 0 &&
+                                    rs[j = (k - 1) & h] == null) {
+                                    rs[j] = r;
+                                    created = true;
+                                }
+                            } finally {
+                                cellsBusy = 0;
+                            }
+                            if (created)
+                                return r;
+                            continue;           // Slot is now non-empty
+                        }
+                    }
+                    collide = false;
+                }
+                else if (!wasUncontended)       // CAS already known to fail
+                    wasUncontended = true;      // Continue after rehash
+                else if (a.cas(i, v = a.get(i), v + count))
+                    return a;
+                else if (n >= Striped64.NCPU || cells != as)
+                    collide = false;            // At max size or stale
+                else if (!collide)
+                    collide = true;
+                else if (cellsBusy == 0 && casCellsBusy()) {
+                    try {
+                        if (cells == as) {      // Expand table unless stale
+                            Counts[] rs = new Counts[n << 1];
+                            for (int j = 0; j < n; ++j)
+                                rs[j] = as[j];
+                            cells = rs;
+                        }
+                    } finally {
+                        cellsBusy = 0;
+                    }
+                    collide = false;
+                    continue;                   // Retry with expanded table
+                }
+                h = Striped64.advanceProbe(h);
+            }
+            else if (cellsBusy == 0 && cells == as && casCellsBusy()) {
+                Counts r = null;
+                try {                           // Initialize table
+                    if (cells == as) {
+                        Counts[] rs = new Counts[2];
+                        r = rs[h & 1] = new Counts(layout.length);
+                        r.counts[i] = count;
+                        cells = rs;
+                    }
+                } finally {
+                    cellsBusy = 0;
+                }
+                if (r != null)
+                    return r;
+            }
+            else if ((a = base).cas(i, v = a.get(i), v + count))
+                return a;                       // Fall back on using base
+        }
+    }
+
+    private boolean casCellsBusy() {
+        return UNSAFE.compareAndSwapInt(this, CELLSBUSY, 0, 1);
+    }
+
+    /**
+     * Adds the counts and sum of the given counts to the given array,
+     * returning the sum plus the given one.
+     */
+    private static long addTo(Counts a, long[] counts, long sum) {
+        for (int i = 0; i < counts.length; ++i)
+            counts[i] += a.get(i);
+        return sum + a.sum;
+    }
+
+    /**
+     * Returns a snapshot of the values recorded since this histogram
+     * was created or last {@linkplain #reset reset}.
+     *
+     * @return a snapshot of all recorded values
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[layout.length];
+        long sum = addTo(base, counts, 0L);
+        Counts[] as = cells;
+        if (as != null) {
+            for (Counts a : as) {
+                if (a != null)
+                    sum = addTo(a, counts, sum);
+            }
+        }
+        return new Snapshot(layout, counts, sum);
+    }
+
+    /**
+     * Returns a snapshot of the values recorded since the last call to
+     * this method, or if none, since this histogram was created or last
+     * {@linkplain #reset reset}.  Each recorded value is counted in
+     * exactly one of the snapshots returned by successive calls, so
+     * that, for example, a monitoring thread calling this method
+     * periodically obtains the distribution of values in each period.
+     *
+     * @return a snapshot of the values recorded since the last call
+     */
+    public synchronized Snapshot intervalSnapshot() {
+        Snapshot s = snapshot();
+        long[] counts = s.counts, last = intervalCounts;
+        long[] delta = counts.clone();
+        if (last != null) {
+            for (int i = 0; i < delta.length; ++i)
+                delta[i] -= last[i];
+        }
+        long sum = s.sum - intervalSum;
+        intervalCounts = counts;
+        intervalSum = s.sum;
+        return new Snapshot(layout, delta, sum);
+    }
+
+    /**
+     * Resets the counts of all values to zero.  This method may be a
+     * useful alternative to creating a new histogram, but is only
+     * effective if there are no concurrent recordings, as for {@link
+     * LongAdder#reset}.
+     */
+    public synchronized void reset() {
+        base.reset();
+        Counts[] as = cells;
+        if (as != null) {
+            for (Counts a : as) {
+                if (a != null)
+                    a.reset();
+            }
+        }
+        intervalCounts = null;
+        intervalSum = 0L;
+    }
+
+    /**
+     * Returns the highest value counted separately.
+     *
+     * @return the highest trackable value
+     */
+    public long getHighestTrackableValue() {
+        return layout.highestTrackableValue;
+    }
+
+    /**
+     * Returns the number of significant decimal digits to which values
+     * are counted.
+     *
+     * @return the number of significant digits
+     */
+    public int getSignificantDigits() {
+        return layout.significantDigits;
+    }
+
+    /**
+     * Returns the String representation of a {@linkplain #snapshot
+     * snapshot} of this histogram.
+     *
+     * @return the String representation of a snapshot of this histogram
+     */
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * An immutable distribution of values, from a {@link LongHistogram}
+     * or merged from several.  The values returned by its methods are
+     * those of the buckets the values were counted in: percentiles and
+     * maxima are the highest values of their buckets, and minima the
+     * lowest, so that they are precise to the number of significant
+     * digits of the histogram.
+     *
+     * @since 1.8
+     */
+    public static final class Snapshot implements Serializable {
+        private static final long serialVersionUID = -6103262811541582409L;
+
+        /** @serial the bucket layout */
+        final Layout layout;
+        /** @serial the count of each bucket */
+        final long[] counts;
+        /** @serial the sum of the values */
+        final long sum;
+        /** The sum of the counts, recomputed on deserialization */
+        private transient long totalCount;
+
+        Snapshot(Layout layout, long[] counts, long sum) {
+            this.layout = layout;
+            this.counts = counts;
+            this.sum = sum;
+            this.totalCount = totalCount(counts);
+        }
+
+        private static long totalCount(long[] counts) {
+            long n = 0L;
+            for (long c : counts)
+                n += c;
+            return n;
+        }
+
+        /**
+         * Returns the number of values recorded.
+         *
+         * @return the number of values recorded
+         */
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        /**
+         * Returns the sum of the values recorded, as recorded, not
+         * rounded to their buckets.  Values greater than the highest
+         * trackable value are summed as recorded too.
+         *
+         * @return the sum of the values recorded
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Returns the mean of the values recorded.
+         *
+         * @return the mean, or {@code NaN} if no values were recorded
+         */
+        public double getMean() {
+            long n = getTotalCount();
+            return (n == 0L) ? Double.NaN : (double)sum / n;
+        }
+
+        /**
+         * Returns the lowest value recorded, to the precision of the
+         * histogram.
+         *
+         * @return the lowest value of the lowest non-empty bucket, or 0
+         *         if no values were recorded
+         */
+        public long getMin() {
+            for (int i = 0; i < counts.length; ++i) {
+                if (counts[i] != 0L)
+                    return layout.lowestValue(i);
+            }
+            return 0L;
+        }
+
+        /**
+         * Returns the highest value recorded, to the precision of the
+         * histogram.
+         *
+         * @return the highest value of the highest non-empty bucket, or 0
+         *         if no values were recorded
+         */
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; --i) {
+                if (counts[i] != 0L)
+                    return highestValue(i);
+            }
+            return 0L;
+        }
+
+        /**
+         * Returns the value at the given percentile: the value below or
+         * at which lie the given percentage of the values recorded, to
+         * the precision of the histogram.
+         *
+         * @param percentile the percentile, from 0 to 100
+         * @return the value at the percentile, or 0 if no values were
+         *         recorded
+         * @throws IllegalArgumentException if {@code percentile} is not
+         *         between 0 and 100
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (!(percentile >= 0.0 && percentile <= 100.0))
+                throw new IllegalArgumentException();
+            long n = getTotalCount();
+            if (n == 0L)
+                return 0L;
+            long rank = Math.max(1L, (long)Math.ceil(percentile / 100.0 * n));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; ++i) {
+                if ((seen += counts[i]) >= rank)
+                    return highestValue(i);
+            }
+            return getMax();
+        }
+
+        /**
+         * Returns the number of values recorded that were counted in the
+         * same bucket as the given value.
+         *
+         * @param value the value
+         * @return the count of the bucket of the value
+         * @throws IllegalArgumentException if {@code value} is negative
+         */
+        public long getCountAtValue(long value) {
+            if (value < 0L)
+                throw new IllegalArgumentException();
+            return counts[layout.indexOf(value)];
+        }
+
+        /**
+         * Returns the highest value counted separately by the histogram.
+         *
+         * @return the highest trackable value
+         */
+        public long getHighestTrackableValue() {
+            return layout.highestTrackableValue;
+        }
+
+        /**
+         * Returns the number of significant decimal digits to which
+         * values are counted.
+         *
+         * @return the number of significant digits
+         */
+        public int getSignificantDigits() {
+            return layout.significantDigits;
+        }
+
+        /**
+         * Returns the distribution of the values of this snapshot and
+         * the given one together.
+         *
+         * @param other the other snapshot
+         * @return the merged snapshot
+         * @throws IllegalArgumentException if the snapshots are of
+         *         histograms with different highest trackable values or
+         *         significant digits
+         */
+        public Snapshot merge(Snapshot other) {
+            if (!layout.equals(other.layout))
+                throw new IllegalArgumentException("Incompatible histograms");
+            long[] c = counts.clone();
+            for (int i = 0; i < c.length; ++i)
+                c[i] += other.counts[i];
+            return new Snapshot(layout, c, sum + other.sum);
+        }
+
+        private long highestValue(int i) {
+            return Math.min(layout.highestValue(i), layout.highestTrackableValue);
+        }
+
+        /**
+         * Returns a String summarizing this distribution: the number of
+         * values, their mean, some percentiles, and the maximum.
+         *
+         * @return a String summarizing this distribution
+         */
+        public String toString() {
+            return "[count = " + getTotalCount() +
+                ", mean = " + getMean() +
+                ", p50 = " + getValueAtPercentile(50.0) +
+                ", p90 = " + getValueAtPercentile(90.0) +
+                ", p99 = " + getValueAtPercentile(99.0) +
+                ", p99.9 = " + getValueAtPercentile(99.9) +
+                ", max = " + getMax() + "]";
+        }
+
+        /**
+         * Reconstitutes this snapshot from a stream (that is,
+         * deserializes it), checking that its counts match its layout.
+         * @param s the stream
+         * @throws ClassNotFoundException if the class of a serialized object
+         *         could not be found
+         * @throws java.io.IOException if an I/O error occurs
+         */
+        private void readObject(java.io.ObjectInputStream s)
+            throws java.io.IOException, ClassNotFoundException {
+            s.defaultReadObject();
+            if (layout == null || counts == null ||
+                counts.length != layout.length)
+                throw new java.io.InvalidObjectException("Invalid snapshot");
+            totalCount = totalCount(counts);
+        }
+    }
+
+    /**
+     * Serialization proxy, used to avoid reference to the non-public
+     * layout of the counters in the serialized form.
+     * @serial include
+     */
+    private static class SerializationProxy implements Serializable {
+        private static final long serialVersionUID = -3474328429136548313L;
+
+        /**
+         * The current snapshot of the histogram.
+         * @serial
+         */
+        private final Snapshot snapshot;
+
+        SerializationProxy(LongHistogram h) {
+            snapshot = h.snapshot();
+        }
+
+        /**
+         * Returns a {@code LongHistogram} object with initial state
+         * held by this proxy.
+         *
+         * @return a {@code LongHistogram} object with initial state
+         * held by this proxy.
+         */
+        private Object readResolve() {
+            LongHistogram h = new LongHistogram(snapshot.layout);
+            System.arraycopy(snapshot.counts, 0, h.base.counts, 0,
+                             snapshot.counts.length);
+            h.base.sum = snapshot.sum;
+            return h;
+        }
+    }
+
+    /**
+     * Returns a
+     * <a href="../../../../serialized-form.html#java.util.concurrent.atomic.LongHistogram.SerializationProxy">
+     * SerializationProxy</a>
+     * representing the state of this instance.
+     *
+     * @return a {@link SerializationProxy}
+     * representing the state of this instance
+     */
+    private Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    /**
+     * @param s the stream
+     * @throws java.io.InvalidObjectException always
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.InvalidObjectException {
+        throw new java.io.InvalidObjectException("Proxy required");
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe UNSAFE;
+    private static final long CELLSBUSY;
+    private static final long SUM;
+    private static final long ABASE;
+    private static final int ASHIFT;
+    static {
+        try {
+            UNSAFE = sun.misc.Unsafe.getUnsafe();
+            CELLSBUSY = UNSAFE.objectFieldOffset
+                (LongHistogram.class.getDeclaredField("cellsBusy"));
+            SUM = UNSAFE.objectFieldOffset
+                (Counts.class.getDeclaredField("sum"));
+            ABASE = UNSAFE.arrayBaseOffset(long[].class);
+            int scale = UNSAFE.arrayIndexScale(long[].class);
+            if ((scale & (scale - 1)) != 0)
+                throw new Error("data type scale not a power of two");
+            ASHIFT = 31 - Integer.numberOfLeadingZeros(scale);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
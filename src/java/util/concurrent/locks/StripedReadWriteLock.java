@@ -0,0 +1,719 @@
+package java.util.concurrent.locks;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reentrant {@link ReadWriteLock} biased towards readers, for data
+ * that is read far more often than it is written, by many threads at
+ * once.  Its read lock can be acquired and released concurrently by
+ * threads on different processors without any of them writing to
+ * memory that another writes to, so that, unlike that of {@link
+ * ReentrantReadWriteLock}, its throughput grows with the number of
+ * processors.  Unlike the optimistic reads of {@link StampedLock}, its
+ * read lock may be held while calling code that must not see
+ * inconsistent data, or that blocks.  In exchange, acquiring the write
+ * lock is slower, as it must check for readers on every processor, and
+ * each lock takes some memory per processor.
+ *
+ * <p>This lock supports the following properties:
+ *
+ * <ul>
+ * <li><b>Acquisition order</b>
+ *
+ * <p>Readers register themselves in one of a number of counters, one
+ * per processor or so, each on its own cache line, and chosen by the
+ * per-thread hash codes also used by {@link
+ * java.util.concurrent.atomic.LongAdder}, which are changed when two
+ * threads contend for the same counter.  A writer first acquires a
+ * {@link ReentrantLock}, then announces itself to readers, and waits
+ * for the counts of readers to drop to zero.  Readers that find a
+ * writer announced wait for the writer lock to be released.
+ *
+ * <p>When constructed as non-fair (the default), readers wait only for
+ * a writer that holds the lock, so continuous reading can delay
+ * writers indefinitely.  When constructed as fair, readers also wait
+ * behind threads queued for the writer lock, which is itself fair, so
+ * that writers are granted the lock in arrival order, once the readers
+ * that arrived before them have released it.
+ *
+ * <li><b>Reentrancy</b>
+ *
+ * <p>Both the read and the write lock are reentrant, and a reader
+ * already holding the read lock never waits for a writer.  The writer
+ * can acquire the read lock, and so downgrade from the write lock to
+ * the read lock by acquiring the read lock and then releasing the write
+ * lock.  Upgrading from the read lock to the write lock is not
+ * possible: a thread holding the read lock that tries to acquire the
+ * write lock waits for itself forever.
+ *
+ * <li><b>Interruption and timeouts</b>
+ *
+ * <p>Both locks support interruption and timeouts during acquisition.
+ *
+ * <li><b>{@link Condition} support</b>
+ *
+ * <p>The write lock provides a {@link Condition} implementation that
+ * behaves in the same way, with respect to the write lock, as the
+ * {@link Condition} implementation provided by {@link
+ * ReentrantLock#newCondition} does for {@link ReentrantLock}.  The read
+ * lock does not support a {@link Condition}, and {@code
+ * readLock().newCondition()} throws {@code
+ * UnsupportedOperationException}.
+ *
+ * <li><b>Instrumentation</b>
+ *
+ * <p>This class supports methods to determine whether locks are held.
+ * These methods are designed for monitoring system state, not for
+ * synchronization control.
+ * </ul>
+ *
+ * <p>Serialization of this class behaves in the same way as built-in
+ * locks: a deserialized lock is in the unlocked state, regardless of
+ * its state when serialized.
+ *
+ * <p><b>Sample usage</b>.  A cache of configuration, read by every
+ * request and reloaded now and then:
+ *
+ *  <pre> {@code
+ * class Settings {
+ *   private final Map<String, String> m = new HashMap<String, String>();
+ *   private final ReadWriteLock rwl = new StripedReadWriteLock();
+ *   private final Lock r = rwl.readLock();
+ *   private final Lock w = rwl.writeLock();
+ *
+ *   public String get(String key) {
+ *     r.lock();
+ *     try { return m.get(key); }
+ *     finally { r.unlock(); }
+ *   }
+ *
+ *   public void reload(Map<String, String> settings) {
+ *     w.lock();
+ *     try {
+ *       m.clear();
+ *       m.putAll(settings);
+ *     } finally { w.unlock(); }
+ *   }
+ * }}</pre>
+ *
+ * @since 1.8
+ */
+public class StripedReadWriteLock implements ReadWriteLock, java.io.Serializable {
+    private static final long serialVersionUID = 8316406133286582431L;
+
+    /*
+     * Overview:
+     *
+     * The read side is a "reader indicator": an array of counters,
+     * each padded against false sharing and created on first use by
+     * CAS into its slot.  A reader increments the counter chosen by
+     * its thread probe (using CAS, and moving to another counter on
+     * failure, as in Striped64), then reads the writerPresent flag.
+     * A writer acquires writerLock, sets writerPresent, then reads
+     * every counter until each is zero.  All of these are volatile
+     * accesses, and so totally ordered: either the reader sees the
+     * flag, or the writer sees the reader's count.  A reader that
+     * sees the flag undoes its increment and acquires writerLock,
+     * which excludes writers, increments its counter while holding
+     * it, and releases it.  So readers only ever wait in
+     * writerLock's queue, in which fair mode also places arriving
+     * readers whenever threads are queued.
+     *
+     * A thread's read holds are counted in a ThreadLocal, which also
+     * records the counter it registered in, so that only the first
+     * acquisition touches a counter, and the release decrements the
+     * same one whatever the probe has become since.  A writer waits
+     * for counters by parking; a releasing reader that sees
+     * writerPresent unparks the writer, which sets the flag and then
+     * waiter before scanning the counters, and rescans.  A writer that
+     * may not be interrupted clears its interrupt status while it
+     * waits, since park returns at once while it is set, and restores
+     * it when done.
+     *
+     * The write lock's Condition clears writerPresent before waiting,
+     * since waiting releases writerLock, and sets it and waits for
+     * readers again after reacquiring it, not counting a read hold of
+     * the waiting thread itself.
+     */
+
+    /** Number of CPUS, to size the array of reader counters */
+    static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * A counter of readers, padded to its own cache line.
+     */
+    @sun.misc.Contended static final class Cell {
+        volatile long readers;
+        Cell(long x) { readers = x; }
+        final boolean cas(long cmp, long val) {
+            return U.compareAndSwapLong(this, READERS, cmp, val);
+        }
+        final long add(long x) {
+            return U.getAndAddLong(this, READERS, x);
+        }
+    }
+
+    /**
+     * The read holds of a thread, and the counter they are registered
+     * in.
+     */
+    static final class ReadHolds {
+        int count;
+        Cell cell;
+    }
+
+    /** The writer lock, also the queue of waiting readers */
+    private final ReentrantLock writerLock;
+
+    /** The reader counters, a power of two of them, filled lazily */
+    private transient Cell[] cells;
+
+    /** The read holds of each thread */
+    private transient ThreadLocal<ReadHolds> readHolds;
+
+    /** True while a writer holds, or is acquiring, the write lock */
+    private transient volatile boolean writerPresent;
+
+    /** The writer waiting for readers to leave, if any */
+    private transient volatile Thread waiter;
+
+    private final boolean fair;
+
+    // views
+    transient ReadLockView readLockView;
+    transient WriteLockView writeLockView;
+
+    /**
+     * Creates a new {@code StripedReadWriteLock} with the default
+     * (nonfair) ordering properties.
+     */
+    public StripedReadWriteLock() {
+        this(false);
+    }
+
+    /**
+     * Creates a new {@code StripedReadWriteLock} with the given fairness
+     * policy.
+     *
+     * @param fair {@code true} if writers should acquire the lock in
+     *        arrival order, with readers waiting behind them
+     */
+    public StripedReadWriteLock(boolean fair) {
+        this.fair = fair;
+        this.writerLock = new ReentrantLock(fair);
+        init();
+    }
+
+    private void init() {
+        int n = 1;
+        while (n < NCPU)
+            n <<= 1;
+        cells = new Cell[n];
+        readHolds = new ThreadLocal<ReadHolds>() {
+            protected ReadHolds initialValue() { return new ReadHolds(); }
+        };
+    }
+
+    // Read side
+
+    /**
+     * Registers the current thread as a reader in its counter, creating
+     * it if needed, and returns the counter.
+     */
+    private Cell register() {
+        Cell[] as = cells;
+        int m = as.length - 1, h;
+        if ((h = U.getInt(Thread.currentThread(), PROBE)) == 0) {
+            ThreadLocalRandom.current(); // force initialization
+            h = U.getInt(Thread.currentThread(), PROBE);
+        }
+        for (;;) {
+            long j = ((long)(h & m) << ASHIFT) + ABASE;
+            Cell a = (Cell)U.getObjectVolatile(as, j);
+            long v;
+            if (a == null) {
+                Cell r = new Cell(1L);
+                if (U.compareAndSwapObject(as, j, null, r))
+                    return r;
+            }
+            else if (a.cas(v = a.readers, v + 1L))
+                return a;
+            h ^= h << 13;                   // Rehash, as in Striped64
+            h ^= h >>> 17;
+            h ^= h << 5;
+            U.putInt(Thread.currentThread(), PROBE, h);
+        }
+    }
+
+    /**
+     * Unregisters a reader from the given counter, waking the writer
+     * waiting for readers to leave, if any.
+     */
+    private void unregister(Cell a) {
+        a.add(-1L);
+        Thread w;
+        if (writerPresent && (w = waiter) != null)
+            LockSupport.unpark(w);
+    }
+
+    /**
+     * Tries to acquire the read lock without waiting, returning false if
+     * a writer other than the current thread is present, or if barging
+     * is disallowed and threads are queued for the writer lock.
+     */
+    private boolean tryReadFast(ReadHolds rh, boolean barge) {
+        if (rh.count > 0) {
+            ++rh.count;
+            return true;
+        }
+        Cell a = register();
+        if ((writerPresent && !writerLock.isHeldByCurrentThread()) ||
+            (!barge && writerLock.hasQueuedThreads())) {
+            unregister(a);
+            return false;
+        }
+        rh.cell = a;
+        rh.count = 1;
+        return true;
+    }
+
+    /**
+     * Registers the current thread as a reader while it holds the
+     * writer lock, which excludes writers.
+     */
+    private void readUnderWriterLock(ReadHolds rh) {
+        try {
+            rh.cell = register();
+            rh.count = 1;
+        } finally {
+            writerLock.unlock();
+        }
+    }
+
+    final void lockRead() {
+        ReadHolds rh = readHolds.get();
+        if (!tryReadFast(rh, !fair)) {
+            writerLock.lock();
+            readUnderWriterLock(rh);
+        }
+    }
+
+    final void lockReadInterruptibly() throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        ReadHolds rh = readHolds.get();
+        if (!tryReadFast(rh, !fair)) {
+            writerLock.lockInterruptibly();
+            readUnderWriterLock(rh);
+        }
+    }
+
+    final boolean tryLockRead() {
+        ReadHolds rh = readHolds.get();
+        if (tryReadFast(rh, true))
+            return true;
+        if (!writerLock.tryLock())
+            return false;
+        readUnderWriterLock(rh);
+        return true;
+    }
+
+    final boolean tryLockRead(long nanos) throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+        ReadHolds rh = readHolds.get();
+        if (tryReadFast(rh, !fair))
+            return true;
+        if (!writerLock.tryLock(nanos, TimeUnit.NANOSECONDS))
+            return false;
+        readUnderWriterLock(rh);
+        return true;
+    }
+
+    final void unlockRead() {
+        ReadHolds rh = readHolds.get();
+        if (rh.count <= 0)
+            throw new IllegalMonitorStateException(
+                "attempt to unlock read lock, not locked by current thread");
+        if (--rh.count == 0) {
+            Cell a = rh.cell;
+            rh.cell = null;
+            unregister(a);
+        }
+    }
+
+    // Write side
+
+    /**
+     * Waits until the only reader left is the current thread, if it
+     * holds a read lock in the given counter, and otherwise none.
+     *
+     * @param own the counter of the current thread's read holds, or null
+     * @param interruptible whether to return on interrupt
+     * @param deadline the time to give up, if nanos is positive
+     * @param timed whether to give up at the deadline
+     * @return 1 if no other readers are left, 0 if timed out, or -1 if
+     * interrupted
+     */
+    private int awaitReaders(Cell own, boolean interruptible,
+                             boolean timed, long deadline) {
+        Cell[] as = cells;
+        int n = as.length;
+        boolean interrupted = false;
+        waiter = Thread.currentThread();
+        try {
+            for (int i = 0; i < n; ) {
+                Cell a = (Cell)U.getObjectVolatile(
+                    as, ((long)i << ASHIFT) + ABASE);
+                if (a == null || a.readers == ((a == own) ? 1L : 0L))
+                    ++i;
+                else if (Thread.interrupted()) {
+                    if (interruptible)
+                        return -1;
+                    interrupted = true;     // park would not block
+                }
+                else if (!timed)
+                    LockSupport.park(this);
+                else {
+                    long ns = deadline - System.nanoTime();
+                    if (ns <= 0L)
+                        return 0;
+                    LockSupport.parkNanos(this, ns);
+                }
+            }
+            return 1;
+        } finally {
+            waiter = null;
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Announces the writer holding the writer lock, and waits for
+     * readers.  Releases the writer lock if the wait fails.
+     */
+    private int announceWriter(boolean interruptible,
+                               boolean timed, long deadline) {
+        if (writerLock.getHoldCount() > 1)
+            return 1;                       // reentrant
+        writerPresent = true;
+        int r = awaitReaders(null, interruptible, timed, deadline);
+        if (r <= 0) {
+            writerPresent = false;
+            writerLock.unlock();
+        }
+        return r;
+    }
+
+    final void lockWrite() {
+        writerLock.lock();
+        announceWriter(false, false, 0L);
+    }
+
+    final void lockWriteInterruptibly() throws InterruptedException {
+        writerLock.lockInterruptibly();
+        if (announceWriter(true, false, 0L) < 0)
+            throw new InterruptedException();
+    }
+
+    final boolean tryLockWrite() {
+        if (!writerLock.tryLock())
+            return false;
+        if (writerLock.getHoldCount() > 1)
+            return true;
+        writerPresent = true;
+        Cell[] as = cells;
+        for (int i = 0; i < as.length; ++i) {
+            Cell a = (Cell)U.getObjectVolatile(
+                as, ((long)i << ASHIFT) + ABASE);
+            if (a != null && a.readers != 0L) {
+                writerPresent = false;
+                writerLock.unlock();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    final boolean tryLockWrite(long nanos) throws InterruptedException {
+        long deadline = System.nanoTime() + nanos;
+        if (!writerLock.tryLock(nanos, TimeUnit.NANOSECONDS))
+            return false;
+        int r = announceWriter(true, true, deadline);
+        if (r < 0)
+            throw new InterruptedException();
+        return r > 0;
+    }
+
+    final void unlockWrite() {
+        if (!writerLock.isHeldByCurrentThread())
+            throw new IllegalMonitorStateException();
+        if (writerLock.getHoldCount() == 1)
+            writerPresent = false;
+        writerLock.unlock();
+    }
+
+    // Public methods
+
+    public Lock readLock() {
+        ReadLockView v;
+        return ((v = readLockView) != null ? v :
+                (readLockView = new ReadLockView()));
+    }
+
+    public Lock writeLock() {
+        WriteLockView v;
+        return ((v = writeLockView) != null ? v :
+                (writeLockView = new WriteLockView()));
+    }
+
+    /**
+     * Returns {@code true} if this lock has fairness set true.
+     *
+     * @return {@code true} if this lock has fairness set true
+     */
+    public final boolean isFair() {
+        return fair;
+    }
+
+    /**
+     * Queries the number of threads holding the read lock, counting a
+     * thread with reentrant holds once.  This method is designed for
+     * use in monitoring system state, not for synchronization control.
+     *
+     * @return the number of threads holding the read lock
+     */
+    public int getReadLockCount() {
+        long n = 0L;
+        Cell[] as = cells;
+        for (int i = 0; i < as.length; ++i) {
+            Cell a = (Cell)U.getObjectVolatile(
+                as, ((long)i << ASHIFT) + ABASE);
+            if (a != null)
+                n += a.readers;
+        }
+        return (int)Math.max(0L, Math.min(n, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Queries the number of reentrant read holds on this lock by the
+     * current thread.
+     *
+     * @return the number of holds on the read lock by the current thread,
+     *         or zero if the read lock is not held by the current thread
+     */
+    public int getReadHoldCount() {
+        return readHolds.get().count;
+    }
+
+    /**
+     * Queries if the write lock is held by any thread.  This method is
+     * designed for use in monitoring system state, not for
+     * synchronization control.
+     *
+     * @return {@code true} if any thread holds the write lock and
+     *         {@code false} otherwise
+     */
+    public boolean isWriteLocked() {
+        return writerPresent && writerLock.isLocked();
+    }
+
+    /**
+     * Queries if the write lock is held by the current thread.
+     *
+     * @return {@code true} if the current thread holds the write lock and
+     *         {@code false} otherwise
+     */
+    public boolean isWriteLockedByCurrentThread() {
+        return writerLock.isHeldByCurrentThread();
+    }
+
+    /**
+     * Queries the number of reentrant write holds on this lock by the
+     * current thread.
+     *
+     * @return the number of holds on the write lock by the current thread,
+     *         or zero if the write lock is not held by the current thread
+     */
+    public int getWriteHoldCount() {
+        return writerLock.getHoldCount();
+    }
+
+    /**
+     * Queries whether any threads are waiting to acquire the write
+     * lock, or waiting for a writer to release it.  This method is
+     * designed for use in monitoring system state, not for
+     * synchronization control.
+     *
+     * @return {@code true} if there may be other threads waiting to
+     *         acquire the lock
+     */
+    public final boolean hasQueuedThreads() {
+        return writerLock.hasQueuedThreads();
+    }
+
+    /**
+     * Returns a string identifying this lock, as well as its lock state.
+     * The state, in brackets, includes the String {@code "Write locks ="}
+     * followed by 1 if the write lock is held and 0 otherwise, and the
+     * String {@code "Read locks ="} followed by the number of threads
+     * holding read locks.
+     *
+     * @return a string identifying this lock, as well as its lock state
+     */
+    public String toString() {
+        int w = isWriteLocked() ? 1 : 0;
+        return super.toString() +
+            "[Write locks = " + w + ", Read locks = " + getReadLockCount() + "]";
+    }
+
+    /**
+     * Reconstitutes this lock from a stream (that is, deserializes it),
+     * in the unlocked state.
+     */
+    private void readObject(java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+        s.defaultReadObject();
+        init();
+    }
+
+    // views
+
+    final class ReadLockView implements Lock {
+        public void lock() { lockRead(); }
+        public void lockInterruptibly() throws InterruptedException {
+            lockReadInterruptibly();
+        }
+        public boolean tryLock() { return tryLockRead(); }
+        public boolean tryLock(long time, TimeUnit unit)
+            throws InterruptedException {
+            return tryLockRead(unit.toNanos(time));
+        }
+        public void unlock() { unlockRead(); }
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+        public String toString() {
+            return super.toString() +
+                "[Read locks = " + getReadLockCount() + "]";
+        }
+    }
+
+    final class WriteLockView implements Lock {
+        public void lock() { lockWrite(); }
+        public void lockInterruptibly() throws InterruptedException {
+            lockWriteInterruptibly();
+        }
+        public boolean tryLock() { return tryLockWrite(); }
+        public boolean tryLock(long time, TimeUnit unit)
+            throws InterruptedException {
+            return tryLockWrite(unit.toNanos(time));
+        }
+        public void unlock() { unlockWrite(); }
+        public Condition newCondition() {
+            return new WriterCondition(writerLock.newCondition());
+        }
+        public String toString() {
+            Thread o = isWriteLocked() ? writerLock.getOwner() : null;
+            return super.toString() + ((o == null) ?
+                                       "[Unlocked]" :
+                                       "[Locked by thread " + o.getName() + "]");
+        }
+    }
+
+    /**
+     * A Condition of the write lock, withdrawing the writer while
+     * waiting and announcing it again after.
+     */
+    final class WriterCondition implements Condition {
+        final Condition cond;
+        WriterCondition(Condition cond) { this.cond = cond; }
+
+        private void release() {
+            if (!writerLock.isHeldByCurrentThread())
+                throw new IllegalMonitorStateException();
+            writerPresent = false;
+        }
+
+        private void reacquire() {
+            writerPresent = true;
+            ReadHolds rh = readHolds.get();
+            awaitReaders(rh.count > 0 ? rh.cell : null, false, false, 0L);
+        }
+
+        public void await() throws InterruptedException {
+            release();
+            try {
+                cond.await();
+            } finally {
+                reacquire();
+            }
+        }
+
+        public void awaitUninterruptibly() {
+            release();
+            try {
+                cond.awaitUninterruptibly();
+            } finally {
+                reacquire();
+            }
+        }
+
+        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+            release();
+            try {
+                return cond.awaitNanos(nanosTimeout);
+            } finally {
+                reacquire();
+            }
+        }
+
+        public boolean await(long time, TimeUnit unit)
+            throws InterruptedException {
+            release();
+            try {
+                return cond.await(time, unit);
+            } finally {
+                reacquire();
+            }
+        }
+
+        public boolean awaitUntil(Date deadline) throws InterruptedException {
+            release();
+            try {
+                return cond.awaitUntil(deadline);
+            } finally {
+                reacquire();
+            }
+        }
+
+        public void signal() { cond.signal(); }
+        public void signalAll() { cond.signalAll(); }
+    }
+
+    // Unsafe mechanics
+    private static final sun.misc.Unsafe U;
+    private static final long READERS;
+    private static final long PROBE;
+    private static final long ABASE;
+    private static final int ASHIFT;
+    static {
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            READERS = U.objectFieldOffset
+                (Cell.class.getDeclaredField("readers"));
+            PROBE = U.objectFieldOffset
+                (Thread.class.getDeclaredField("threadLocalRandomProbe"));
+            ABASE = U.arrayBaseOffset(Cell[].class);
+            int scale = U.arrayIndexScale(Cell[].class);
+            if ((scale & (scale - 1)) != 0)
+                throw new Error("data type scale not a power of two");
+            ASHIFT = 31 - Integer.numberOfLeadingZeros(scale);
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -26,6 +26,9 @@ package java.util.stream;
 
 import java.util.Objects;
 import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.IntFunction;
 import java.util.function.Supplier;
 
@@ -148,6 +151,19 @@ abstract class AbstractPipeline<E_IN, E_OUT, S extends BaseStream<E_OUT, S>>
      */
     private boolean parallel;
 
+    /**
+     * The pool in which to evaluate the pipeline if parallel, or null for
+     * the pool of the thread invoking the terminal operation, or the common
+     * pool; only valid for the source stage.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * The target number of elements per leaf task if parallel, or zero for
+     * the default; only valid for the source stage.
+     */
+    private long splitSize;
+
     /**
      * Constructor for the head of a stream pipeline.
      *
@@ -230,10 +246,37 @@ abstract class AbstractPipeline<E_IN, E_OUT, S extends BaseStream<E_OUT, S>>
         linkedOrConsumed = true;
 
         return isParallel()
-               ? terminalOp.evaluateParallel(this, sourceSpliterator(terminalOp.getOpFlags()))
+               ? evaluateInPool(() -> terminalOp.evaluateParallel(this, sourceSpliterator(terminalOp.getOpFlags())))
                : terminalOp.evaluateSequential(this, sourceSpliterator(terminalOp.getOpFlags()));
     }
 
+    /**
+     * Performs a parallel evaluation in the pool set by
+     * {@link #parallel(ForkJoinPool)}, if any, so that the tasks it forks run
+     * in that pool.  If there is none, or the current thread is a worker of
+     * that pool, performs it in the current thread, whose tasks are forked in
+     * its own pool, or the common pool.
+     *
+     * @param <R> the type of result
+     * @param evaluation the evaluation
+     * @return the result of the evaluation
+     */
+    final <R> R evaluateInPool(Callable<R> evaluation) {
+        ForkJoinPool p = sourceStage.pool;
+        if (p == null || ForkJoinTask.getPool() == p) {
+            try {
+                return evaluation.call();
+            }
+            catch (RuntimeException | Error e) {
+                throw e;
+            }
+            catch (Exception e) {
+                throw new RuntimeException(e); // evaluations throw no checked exceptions
+            }
+        }
+        return p.invoke(ForkJoinTask.adapt(evaluation));
+    }
+
     /**
      * Collect the elements output from the pipeline stage.
      *
@@ -254,7 +297,10 @@ abstract class AbstractPipeline<E_IN, E_OUT, S extends BaseStream<E_OUT, S>>
             // upstream slice and upstream operations will not be included
             // in this slice
             depth = 0;
-            return opEvaluateParallel(previousStage, previousStage.sourceSpliterator(0), generator);
+            return evaluateInPool(() -> opEvaluateParallel(previousStage, previousStage.sourceSpliterator(0), generator));
+        }
+        else if (isParallel()) {
+            return evaluateInPool(() -> evaluate(sourceSpliterator(0), true, generator));
         }
         else {
             return evaluate(sourceSpliterator(0), true, generator);
@@ -312,6 +358,24 @@ abstract class AbstractPipeline<E_IN, E_OUT, S extends BaseStream<E_OUT, S>>
         return (S) this;
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public final S parallel(ForkJoinPool pool) {
+        Objects.requireNonNull(pool);
+        sourceStage.parallel = true;
+        sourceStage.pool = pool;
+        return (S) this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public final S splitSize(long size) {
+        if (size < 0L)
+            throw new IllegalArgumentException();
+        sourceStage.splitSize = size;
+        return (S) this;
+    }
+
     @Override
     public void close() {
         linkedOrConsumed = true;
@@ -360,8 +424,11 @@ abstract class AbstractPipeline<E_IN, E_OUT, S extends BaseStream<E_OUT, S>>
                 throw new IllegalStateException(MSG_CONSUMED);
             }
         }
+        else if (isParallel()) {
+            return wrap(this, () -> evaluateInPool(() -> sourceSpliterator(0)), true);
+        }
         else {
-            return wrap(this, () -> sourceSpliterator(0), isParallel());
+            return wrap(this, () -> sourceSpliterator(0), false);
         }
     }
 
@@ -461,6 +528,11 @@ abstract class AbstractPipeline<E_IN, E_OUT, S extends BaseStream<E_OUT, S>>
         return p.getOutputShape();
     }
 
+    @Override
+    final long getSplitSize() {
+        return sourceStage.splitSize;
+    }
+
     @Override
     final <P_IN> long exactOutputSizeIfKnown(Spliterator<P_IN> spliterator) {
         return StreamOpFlag.SIZED.isKnown(getStreamAndOpFlags()) ? spliterator.getExactSizeIfKnown() : -1;
@@ -27,6 +27,7 @@ package java.util.stream;
 import java.util.Spliterator;
 import java.util.concurrent.CountedCompleter;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Abstract base class for most fork-join tasks used to implement stream ops.
@@ -185,6 +186,27 @@ abstract class AbstractTask<P_IN, P_OUT, R,
         return est > 0L ? est : 1L;
     }
 
+    /**
+     * Returns a suggested target leaf size for the given pipeline based on
+     * the initial size estimate: the split size of the pipeline if one was
+     * set, otherwise the estimate divided among four leaves per thread of
+     * the pool of the current thread, or of the common pool.
+     *
+     * @param helper the pipeline helper
+     * @param sizeEstimate the initial size estimate
+     * @return suggested target leaf size
+     */
+    static long suggestTargetSize(PipelineHelper<?> helper, long sizeEstimate) {
+        long s = helper.getSplitSize();
+        if (s > 0L)
+            return s;
+        ForkJoinPool p = ForkJoinTask.getPool();
+        if (p == null || p == ForkJoinPool.commonPool())
+            return suggestTargetSize(sizeEstimate);
+        long est = sizeEstimate / ((long)p.getParallelism() << 2);
+        return est > 0L ? est : 1L;
+    }
+
     /**
      * Returns the targetSize, initializing it via the supplied
      * size estimate if not already initialized.
@@ -192,7 +214,7 @@ abstract class AbstractTask<P_IN, P_OUT, R,
     protected final long getTargetSize(long sizeEstimate) {
         long s;
         return ((s = targetSize) != 0 ? s :
-                (targetSize = suggestTargetSize(sizeEstimate)));
+                (targetSize = suggestTargetSize(helper, sizeEstimate)));
     }
 
     /**
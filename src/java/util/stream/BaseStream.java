@@ -29,8 +29,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.Objects;
 import java.util.Spliterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.IntConsumer;
 import java.util.function.Predicate;
 
@@ -116,6 +118,73 @@ public interface BaseStream<T, S extends BaseStream<T, S>>
      */
     S parallel();
 
+    /**
+     * Returns an equivalent stream that is parallel, and whose parallel
+     * evaluation runs its tasks in the given pool rather than in the
+     * {@link ForkJoinPool#commonPool() common pool}.  This bounds the
+     * parallelism of the stream by that of the pool, and isolates it from
+     * the parallel streams evaluated in other pools, so that, for example,
+     * the requests of different tenants or classes can each be given a pool
+     * of their own.  May return itself, either because the stream was
+     * already parallel in this pool, or because the underlying stream state
+     * was modified.
+     *
+     * <p>The pool applies to the whole pipeline, and stays in effect if
+     * {@link #parallel()} is invoked later; if {@link #sequential()} is
+     * invoked later, the stream is evaluated sequentially in the thread
+     * invoking the terminal operation.  A terminal operation invoked by a
+     * thread that is not a worker of the pool submits the evaluation to the
+     * pool, and waits for it to complete.
+     *
+     * <p>This is an <a href="package-summary.html#StreamOps">intermediate
+     * operation</a>.
+     *
+     * @implSpec
+     * The default implementation checks that the pool is non-null, and
+     * returns {@link #parallel()}, ignoring the pool.  Implementations that
+     * evaluate parallel streams in fork/join tasks, as do those created by
+     * {@link StreamSupport}, evaluate them in the pool.
+     *
+     * @param pool the pool in which to evaluate this stream
+     * @return a parallel stream
+     * @throws NullPointerException if the pool is null
+     */
+    default S parallel(ForkJoinPool pool) {
+        Objects.requireNonNull(pool);
+        return parallel();
+    }
+
+    /**
+     * Returns an equivalent stream whose parallel evaluation splits its
+     * source into pieces of about the given number of elements, each
+     * processed by a task, rather than into about four times as many pieces
+     * as the parallelism of the pool in which it is evaluated.  Smaller
+     * pieces balance the load better when elements take very uneven times
+     * to process; larger pieces reduce the overhead of tasks when elements
+     * are cheap to process.  The size is a hint: a source that cannot be
+     * split finely enough yields larger pieces.  May return itself.
+     *
+     * <p>The size applies to the whole pipeline, and has no effect on
+     * sequential evaluation.
+     *
+     * <p>This is an <a href="package-summary.html#StreamOps">intermediate
+     * operation</a>.
+     *
+     * @implSpec
+     * The default implementation checks the size, and returns this stream,
+     * ignoring the hint.
+     *
+     * @param size the number of elements per piece, or zero for the default
+     * @return a stream with the given split size
+     * @throws IllegalArgumentException if the size is negative
+     */
+    @SuppressWarnings("unchecked")
+    default S splitSize(long size) {
+        if (size < 0L)
+            throw new IllegalArgumentException();
+        return (S) this;
+    }
+
     /**
      * Returns an equivalent stream that is
      * <a href="package-summary.html#Ordering">unordered</a>.  May return
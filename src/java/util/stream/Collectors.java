@@ -44,8 +44,11 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.StringJoiner;
+import java.util.concurrent.BloomFilter;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountMinSketch;
+import java.util.concurrent.HyperLogLog;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.BinaryOperator;
@@ -1534,6 +1537,121 @@ public final class Collectors {
                 (l, r) -> { l.combine(r); return l; }, CH_ID);
     }
 
+    /**
+     * Returns a concurrent {@code Collector} that adds the input elements
+     * to a {@link BloomFilter} sized for the given number of elements and
+     * false positive probability.
+     *
+     * <p>This is a {@link Collector.Characteristics#CONCURRENT concurrent} and
+     * {@link Collector.Characteristics#UNORDERED unordered} Collector: in a
+     * parallel reduction, all threads add to the same filter, which never
+     * locks, rather than building filters to be merged.
+     *
+     * @param <T> the type of the input elements
+     * @param expectedInsertions the expected number of distinct elements
+     * @param fpp the desired false positive probability, between 0 and 1,
+     *        exclusive
+     * @return a {@code Collector} adding the input elements to a Bloom filter
+     * @throws IllegalArgumentException if {@code expectedInsertions} is not
+     *         positive, or {@code fpp} is not between 0 and 1
+     * @see BloomFilter#merge
+     */
+    public static <T>
+    Collector<T, ?, BloomFilter<T>> toBloomFilter(long expectedInsertions, double fpp) {
+        if (expectedInsertions <= 0L || !(fpp > 0.0 && fpp < 1.0))
+            throw new IllegalArgumentException();
+        return new CollectorImpl<T, BloomFilter<T>, BloomFilter<T>>(
+                () -> new BloomFilter<T>(expectedInsertions, fpp),
+                BloomFilter::add,
+                (l, r) -> { l.merge(r); return l; }, CH_CONCURRENT_ID);
+    }
+
+    /**
+     * Returns a concurrent {@code Collector} that counts the occurrences of
+     * the input elements in a {@link CountMinSketch} of the given relative
+     * error and probability of exceeding it.
+     *
+     * <p>This is a {@link Collector.Characteristics#CONCURRENT concurrent} and
+     * {@link Collector.Characteristics#UNORDERED unordered} Collector: in a
+     * parallel reduction, all threads add to the same sketch, which never
+     * locks, rather than building sketches to be merged.
+     *
+     * @param <T> the type of the input elements
+     * @param epsilon the relative error, between 0 and 1, exclusive
+     * @param delta the probability of exceeding the error, between 0 and 1,
+     *        exclusive
+     * @return a {@code Collector} counting the input elements in a Count-Min
+     *         sketch
+     * @throws IllegalArgumentException if {@code epsilon} or {@code delta} is
+     *         not between 0 and 1
+     * @see CountMinSketch#merge
+     */
+    public static <T>
+    Collector<T, ?, CountMinSketch<T>> toCountMinSketch(double epsilon, double delta) {
+        if (!(epsilon > 0.0 && epsilon < 1.0) || !(delta > 0.0 && delta < 1.0))
+            throw new IllegalArgumentException();
+        return new CollectorImpl<T, CountMinSketch<T>, CountMinSketch<T>>(
+                () -> new CountMinSketch<T>(epsilon, delta),
+                CountMinSketch::add,
+                (l, r) -> { l.merge(r); return l; }, CH_CONCURRENT_ID);
+    }
+
+    /**
+     * Returns a concurrent {@code Collector} that adds the input elements to
+     * a {@link HyperLogLog} sketch of the given precision.
+     *
+     * <p>This is a {@link Collector.Characteristics#CONCURRENT concurrent} and
+     * {@link Collector.Characteristics#UNORDERED unordered} Collector: in a
+     * parallel reduction, all threads add to the same sketch, which never
+     * locks, rather than building sketches to be merged.
+     *
+     * @param <T> the type of the input elements
+     * @param precision the number of bits of the hash selecting a register,
+     *        from 4 to 18
+     * @return a {@code Collector} adding the input elements to a HyperLogLog
+     *         sketch
+     * @throws IllegalArgumentException if {@code precision} is less than 4 or
+     *         greater than 18
+     * @see HyperLogLog#merge
+     */
+    public static <T>
+    Collector<T, ?, HyperLogLog> toHyperLogLog(int precision) {
+        if (precision < 4 || precision > 18)
+            throw new IllegalArgumentException();
+        return new CollectorImpl<T, HyperLogLog, HyperLogLog>(
+                () -> new HyperLogLog(precision),
+                HyperLogLog::add,
+                (l, r) -> { l.merge(r); return l; }, CH_CONCURRENT_ID);
+    }
+
+    /**
+     * Returns a concurrent {@code Collector} that estimates the number of
+     * distinct input elements, with a relative standard error of about
+     * 0.8%, in memory of about 12 kilobytes however many there are.  This
+     * is an alternative to {@code distinct().count()}, which holds all of
+     * the distinct elements, for streams with too many to hold.
+     *
+     * @implSpec
+     * This produces a result equivalent to:
+     * <pre>{@code
+     *     collectingAndThen(toHyperLogLog(HyperLogLog.DEFAULT_PRECISION),
+     *                       HyperLogLog::cardinality)
+     * }</pre>
+     *
+     * @param <T> the type of the input elements
+     * @return a {@code Collector} estimating the number of distinct input
+     *         elements
+     * @see HyperLogLog
+     */
+    public static <T> Collector<T, ?, Long>
+    countingDistinctApproximately() {
+        return new CollectorImpl<T, HyperLogLog, Long>(
+                HyperLogLog::new,
+                HyperLogLog::add,
+                (l, r) -> { l.merge(r); return l; },
+                HyperLogLog::cardinality, CH_CONCURRENT_NOID);
+    }
+
     /**
      * Implementation class used by partitioningBy.
      */
@@ -71,6 +71,15 @@ abstract class PipelineHelper<P_OUT> {
      */
     abstract int getStreamAndOpFlags();
 
+    /**
+     * Gets the split size set by {@link BaseStream#splitSize}: the target
+     * number of elements per leaf task of a parallel evaluation of this
+     * pipeline.
+     *
+     * @return the split size, or zero if not set
+     */
+    abstract long getSplitSize();
+
     /**
      * Returns the exact output size of the portion of the output resulting from
      * applying the pipeline stages described by this {@code PipelineHelper} to
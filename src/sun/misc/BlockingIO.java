@@ -0,0 +1,126 @@
+package sun.misc;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A possibly blocking I/O operation that, when run by a worker thread
+ * of a {@link ForkJoinPool}, is performed within {@link
+ * ForkJoinPool#managedBlock}, so that the pool may release an idle
+ * worker or create a spare one to keep its parallelism while the
+ * caller is blocked.  Without this, blocking reads in the tasks of a
+ * parallel stream occupy workers of the common pool, starving every
+ * other parallel computation in the JVM until they return.
+ *
+ * <p>Callers construct an instance only when {@link #inForkJoinPool}
+ * returns {@code true}, so that reads by other threads cost no more
+ * than a type check:
+ *
+ * <pre> {@code
+ * if (BlockingIO.inForkJoinPool())
+ *     return new BlockingIO() {
+ *         protected int perform() throws IOException {
+ *             return read0();
+ *         }
+ *     }.run();
+ * return read0();}</pre>
+ *
+ * <p>Compensations are counted by the pool's {@link
+ * java.util.concurrent.ExecutorStatistics} when enabled.  If the pool
+ * has reached its limit of spare threads, the operation is performed
+ * without compensation.
+ */
+public abstract class BlockingIO implements ForkJoinPool.ManagedBlocker {
+    private int result;
+    private IOException exception;
+    private boolean done;
+
+    /**
+     * Returns {@code true} if the current thread is a worker of a
+     * {@code ForkJoinPool}, so that blocking operations should be run
+     * through a {@code BlockingIO}.
+     *
+     * @return {@code true} if the current thread is a fork/join worker
+     */
+    public static boolean inForkJoinPool() {
+        return Thread.currentThread() instanceof ForkJoinWorkerThread;
+    }
+
+    /**
+     * Performs the operation.
+     *
+     * @return the result of the operation
+     * @throws IOException if the operation does
+     */
+    protected abstract int perform() throws IOException;
+
+    /**
+     * Returns {@code true} if {@link #perform} is known not to block,
+     * for example because input is already available, in which case it
+     * is performed without compensation.  This implementation returns
+     * {@code false}.
+     *
+     * @return {@code true} if the operation would not block
+     */
+    protected boolean isReady() {
+        return false;
+    }
+
+    /**
+     * Performs the operation, within a managed block if the current
+     * thread is a worker of a {@code ForkJoinPool}.
+     *
+     * @return the result of the operation
+     * @throws IOException if the operation does
+     */
+    public final int run() throws IOException {
+        if (!inForkJoinPool())
+            return perform();
+        try {
+            ForkJoinPool.managedBlock(this);
+        } catch (InterruptedException unused) {
+            // not thrown by block
+        } catch (RejectedExecutionException noSpares) {
+            // thread limit reached: block uncompensated
+        }
+        if (!done)
+            runOnce();
+        if (exception != null)
+            throw exception;
+        return result;
+    }
+
+    private void runOnce() {
+        try {
+            result = perform();
+        } catch (IOException ex) {
+            exception = ex;
+        }
+        done = true;
+    }
+
+    /**
+     * Performs the operation unless already done.
+     *
+     * @return {@code true}
+     */
+    public final boolean block() {
+        if (!done)
+            runOnce();
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if the operation has been performed, first
+     * performing it if {@link #isReady} says it would not block.
+     *
+     * @return {@code true} if the operation has been performed
+     */
+    public final boolean isReleasable() {
+        if (!done && isReady())
+            runOnce();
+        return done;
+    }
+}
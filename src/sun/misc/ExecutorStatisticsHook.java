@@ -0,0 +1,47 @@
+package sun.misc;
+
+import java.util.function.Consumer;
+
+/**
+ * The hook by which {@link java.util.concurrent.ExecutorStatistics}
+ * reports that the statistics of a pool were enabled, replaced or
+ * disabled, to the listener installed by {@link
+ * java.lang.management.ManagementFactory} once the platform {@code
+ * MBeanServer} is created, so that the {@link
+ * java.lang.management.ExecutorMXBean} of the pool is registered or
+ * unregistered at once.  {@code java.util.concurrent} cannot otherwise
+ * call into {@code java.lang.management} without loading it.
+ */
+public final class ExecutorStatisticsHook {
+    private static volatile Consumer<String> listener;
+
+    private ExecutorStatisticsHook() {}
+
+    /**
+     * Installs the listener, invoked with the name of a pool whose
+     * statistics changed.
+     *
+     * @param l the listener
+     */
+    public static void setListener(Consumer<String> l) {
+        listener = l;
+    }
+
+    /**
+     * Reports that the statistics of the pool of the given name were
+     * enabled, replaced or disabled.  Any exception thrown by the
+     * listener is ignored, so that enabling statistics never fails
+     * because of their management.
+     *
+     * @param name the name of the pool
+     */
+    public static void statisticsChanged(String name) {
+        Consumer<String> l = listener;
+        if (l != null && name != null) {
+            try {
+                l.accept(name);
+            } catch (RuntimeException | Error ignore) {
+            }
+        }
+    }
+}
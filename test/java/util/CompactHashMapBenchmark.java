@@ -0,0 +1,88 @@
+package java.util;
+
+import java.util.function.Supplier;
+
+/**
+ * CompactHashMap 与 HashMap、LinkedHashMap 的对比：put、get、迭代的耗时，以及每个键值对占用的堆内存。
+ * CompactHashMap 把 hash、key、value 放在平铺的数组里，不为每个键值对分配 Node，所以每个键值对占用更少的内存。
+ * 三种 map 轮流测试，让 JIT 对 Map 接口调用点的优化对三者一样；每项取各轮中的最小值。
+ * 内存通过 GC 前后的 Runtime#totalMemory - Runtime#freeMemory 粗略估算，只统计 map 本身，不包括 key 和 value。
+ */
+public class CompactHashMapBenchmark {
+
+    private static final int SIZE = 1_000_000;
+    private static final int ROUNDS = 5;
+
+    private static final String[] NAMES = {"HashMap", "LinkedHashMap", "CompactHashMap"};
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        List<Supplier<Map<Integer, Integer>>> factories =
+                Arrays.asList(HashMap::new, LinkedHashMap::new, CompactHashMap::new);
+        Integer[] keys = new Integer[SIZE];
+        Random random = new Random(42);
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = random.nextInt();
+        }
+        // 查找顺序与插入顺序不同，避免 HashMap 的 Node 按分配顺序被顺序访问而占便宜
+        Integer[] lookups = keys.clone();
+        Collections.shuffle(Arrays.asList(lookups), random);
+        // [map][put, get, iterate]
+        long[][] best = new long[NAMES.length][3];
+        for (long[] b : best) {
+            Arrays.fill(b, Long.MAX_VALUE);
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int m = 0; m < NAMES.length; m++) {
+                bench(factories.get(m).get(), keys, lookups, best[m]);
+            }
+        }
+        for (int m = 0; m < NAMES.length; m++) {
+            System.out.printf("%-15s put %6.1f ns/op  get %6.1f ns/op  iterate %6.1f ns/op  %5.1f bytes/entry%n",
+                    NAMES[m], (double) best[m][0] / SIZE, (double) best[m][1] / SIZE,
+                    (double) best[m][2] / SIZE, bytesPerEntry(factories.get(m), keys));
+        }
+    }
+
+    private static void bench(Map<Integer, Integer> map, Integer[] keys, Integer[] lookups, long[] best) {
+        long start = System.nanoTime();
+        for (Integer key : keys) {
+            map.put(key, key);
+        }
+        best[0] = Math.min(best[0], System.nanoTime() - start);
+
+        start = System.nanoTime();
+        long sum = 0;
+        for (Integer key : lookups) {
+            sum += map.get(key);
+        }
+        best[1] = Math.min(best[1], System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (Map.Entry<Integer, Integer> e : map.entrySet()) {
+            sum += e.getValue();
+        }
+        best[2] = Math.min(best[2], System.nanoTime() - start);
+        sink = sum;
+    }
+
+    private static double bytesPerEntry(Supplier<Map<Integer, Integer>> factory, Integer[] keys) {
+        long before = usedMemory();
+        Map<Integer, Integer> map = factory.get();
+        for (Integer key : keys) {
+            map.put(key, key);
+        }
+        long after = usedMemory();
+        sink = map;
+        return (double) (after - before) / map.size();
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,107 @@
+package java.util.concurrent;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * ConcurrentEliminationStack 与 ConcurrentLinkedDeque、LinkedBlockingDeque 作为 LIFO 对象池的对比：
+ * 1 到 64 个线程各自反复 push 一个元素再 pop 一个元素，统计每秒完成的 push/pop 对数。
+ * ConcurrentLinkedDeque 的 push/pop 都要 CAS 同一个头结点，LinkedBlockingDeque 要抢同一把锁，
+ * 而 ConcurrentEliminationStack 在 CAS 头结点失败时，让同时到来的 push 和 pop 在消除数组（Exchanger 的 arena）里直接配对抵消。
+ * 三种栈在每个线程数下轮流测试，每项取各轮中的最大值；栈里预先放入一些元素，模拟池中有空闲对象的情况。
+ * 消除只在多核上生效，单核机器上三者的差别主要是加锁和分配的开销。
+ */
+public class ConcurrentEliminationStackBenchmark {
+
+    private static final int OPS_PER_THREAD = 1_000_000;
+    private static final int ROUNDS = 3;
+    private static final int PREFILL = 1024;
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    private static final String[] NAMES = {"ConcurrentLinkedDeque", "LinkedBlockingDeque", "ConcurrentEliminationStack"};
+
+    private static volatile Object sink;
+
+    /** 把不同的栈统一成 push/pop 两个操作 */
+    private static final class Stack {
+        final Consumer<Integer> push;
+        final Supplier<Integer> pop;
+
+        Stack(Consumer<Integer> push, Supplier<Integer> pop) {
+            this.push = push;
+            this.pop = pop;
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        List<Supplier<Stack>> factories = Arrays.asList(
+                () -> {
+                    ConcurrentLinkedDeque<Integer> d = new ConcurrentLinkedDeque<>();
+                    return new Stack(d::push, d::pollFirst);
+                },
+                () -> {
+                    LinkedBlockingDeque<Integer> d = new LinkedBlockingDeque<>();
+                    return new Stack(d::push, d::pollFirst);
+                },
+                () -> {
+                    ConcurrentEliminationStack<Integer> s = new ConcurrentEliminationStack<>();
+                    return new Stack(s::push, s::pop);
+                });
+        System.out.printf("%-8s", "threads");
+        for (String name : NAMES) {
+            System.out.printf("%28s", name);
+        }
+        System.out.println("   (million push/pop pairs per second)");
+        for (int threads : THREADS) {
+            double[] best = new double[NAMES.length];
+            for (int round = 0; round < ROUNDS; round++) {
+                for (int s = 0; s < NAMES.length; s++) {
+                    best[s] = Math.max(best[s], bench(factories.get(s).get(), threads));
+                }
+            }
+            System.out.printf("%-8d", threads);
+            for (double b : best) {
+                System.out.printf("%28.2f", b);
+            }
+            System.out.println();
+        }
+    }
+
+    private static double bench(Stack stack, int threads) throws InterruptedException {
+        for (int i = 0; i < PREFILL; i++) {
+            stack.push.accept(i);
+        }
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                Integer item = 0;
+                long sum = 0;
+                for (int i = 0; i < OPS_PER_THREAD; i++) {
+                    stack.push.accept(item);
+                    Integer x = stack.pop.get();
+                    if (x != null) {
+                        item = x;
+                        sum += x;
+                    }
+                }
+                sink = sum;
+            });
+            workers[t].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread w : workers) {
+            w.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+        return (double) threads * OPS_PER_THREAD * 1000 / elapsed;
+    }
+}
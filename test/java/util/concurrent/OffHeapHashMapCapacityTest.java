@@ -0,0 +1,37 @@
+package java.util.concurrent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * OffHeapHashMap 的容量是按段划分的：每个段有自己的容量，键按哈希分到各段。
+ * 少于 128 个条目的小 store 只有一个段，一定能放下所要求的条目数；
+ * 更大的 store 给每个段留出期望条目数加 5 个标准差的余量，随机键几乎不会在放满之前抛出 "Store is full"。
+ * 对若干容量各做多次试验，插入随机键直到所要求的条目数，统计提前放满的次数，应都为 0。
+ */
+public class OffHeapHashMapCapacityTest {
+
+    private static final long[] CAPACITIES = {1, 2, 3, 16, 100, 127, 128, 1000, 10000};
+    private static final int TRIALS = 200;
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random();
+        ByteBuffer key = ByteBuffer.allocate(8);
+        ByteBuffer value = ByteBuffer.allocate(8);
+        for (long capacity : CAPACITIES) {
+            int failures = 0;
+            for (int t = 0; t < TRIALS; t++) {
+                try (OffHeapHashMap map = OffHeapHashMap.allocate(8, 8, capacity)) {
+                    for (long i = 0; i < capacity; i++) {
+                        key.putLong(0, random.nextLong());
+                        map.put(key, value);
+                    }
+                } catch (IllegalStateException e) {
+                    failures++;
+                }
+            }
+            System.out.printf("capacity %6d: full too early %d/%d%n", capacity, failures, TRIALS);
+        }
+    }
+}
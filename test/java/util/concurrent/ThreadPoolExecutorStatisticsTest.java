@@ -0,0 +1,65 @@
+package java.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 开启统计后，以 PriorityBlockingQueue 为工作队列的线程池仍能正常工作：
+ * 提交时间记录在线程池自己的旁表里，队列中放的仍是提交的任务本身，
+ * 所以任务按优先级出队，不会因包装对象不是 Comparable 而抛出 ClassCastException。
+ * 单个工作线程先被一个任务占住，其余任务排队，之后应按优先级从高到低执行，并记录排队等待时间。
+ */
+public class ThreadPoolExecutorStatisticsTest {
+
+    /** 带优先级的任务，数值越小越先执行 */
+    static final class PriorityTask implements Runnable, Comparable<PriorityTask> {
+        final int priority;
+        final List<Integer> order;
+
+        PriorityTask(int priority, List<Integer> order) {
+            this.priority = priority;
+            this.order = order;
+        }
+
+        @Override
+        public void run() {
+            synchronized (order) {
+                order.add(priority);
+            }
+        }
+
+        @Override
+        public int compareTo(PriorityTask o) {
+            return Integer.compare(priority, o.priority);
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>());
+        pool.setStatisticsEnabled(true);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // 占住唯一的工作线程，让后面的任务进入队列
+        pool.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignore) {
+            }
+        });
+        started.await();
+        List<Integer> order = new ArrayList<>();
+        for (int p : new int[]{5, 3, 9, 1, 7}) {
+            pool.execute(new PriorityTask(p, order));
+        }
+        System.out.println("queued: " + pool.getQueue().size());   // 5，队列中是任务本身
+        release.countDown();
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        System.out.println("order: " + order);                      // [1, 3, 5, 7, 9]
+        ExecutorStatistics stats = pool.getStatistics();
+        System.out.println("completed: " + stats.getCompletedTaskCount());   // 6
+        System.out.println("queue wait p50 (ns): " + stats.getQueueWaitTimePercentile(50.0));
+    }
+}